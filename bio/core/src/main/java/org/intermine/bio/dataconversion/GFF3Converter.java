@@ -11,6 +11,7 @@ package org.intermine.bio.dataconversion;
  */
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -63,6 +64,9 @@ public class GFF3Converter extends DataConverter
     private GFF3RecordHandler handler;
     private GFF3SeqHandler sequenceHandler;
     private boolean dontCreateLocations;
+    private int parserThreads = 1;
+    private boolean flushPerSequence = false;
+    private String currentSequenceId = null;
     private final Map<String, Item> dataSets = new HashMap<String, Item>();
     private final Map<String, Item> dataSources = new HashMap<String, Item>();
 
@@ -233,6 +237,27 @@ public class GFF3Converter extends DataConverter
      * @throws ObjectStoreException if an error occurs storing items
      */
     public void parse(BufferedReader bReader)  throws IOException, ObjectStoreException {
+        if (flushPerSequence) {
+            // finish the last sequence of the previous file
+            flushSequence();
+        }
+        currentSequenceId = null;
+        Iterator<?> recordIter;
+        if (parserThreads > 1) {
+            recordIter = GFF3Parser.parse(bReader, parserThreads);
+        } else {
+            recordIter = GFF3Parser.parse(bReader);
+        }
+        try {
+            parseRecords(recordIter);
+        } finally {
+            if (recordIter instanceof Closeable) {
+                ((Closeable) recordIter).close();
+            }
+        }
+    }
+
+    private void parseRecords(Iterator<?> recordIter) throws ObjectStoreException {
         GFF3Record record;
         long start, now, opCount;
 
@@ -241,7 +266,7 @@ public class GFF3Converter extends DataConverter
         boolean duplicates = false;
         Set<String> processedIds = new HashSet<String>();
         Set<String> duplicatedIds = new HashSet<String>();
-        for (Iterator<?> i = GFF3Parser.parse(bReader); i.hasNext();) {
+        for (Iterator<?> i = recordIter; i.hasNext();) {
             record = (GFF3Record) i.next();
 
             // we only care about dupes if we are NOT creating locations
@@ -253,6 +278,10 @@ public class GFF3Converter extends DataConverter
                     processedIds.add(record.getId());
                 }
             }
+            if (flushPerSequence && !record.getSequenceID().equals(currentSequenceId)) {
+                flushSequence();
+                currentSequenceId = record.getSequenceID();
+            }
             if (!duplicates) {
                 process(record);
             }
@@ -282,6 +311,22 @@ public class GFF3Converter extends DataConverter
         handler.clearFinalItems();
     }
 
+    /**
+     * Called when flushPerSequence is set and the sequence ID of the records changes. Stores the
+     * final Items of the handler and forgets the identifiers of the features seen so far, so
+     * that memory use is bounded by the largest sequence rather than the whole file.
+     * @throws ObjectStoreException if an error occurs storing items
+     */
+    protected void flushSequence() throws ObjectStoreException {
+        if (currentSequenceId != null) {
+            LOG.info("Finished sequence " + currentSequenceId + ", flushing "
+                    + identifierMap.size() + " feature identifiers");
+            storeAll();
+            identifierMap.clear();
+            identifiersToIds.clear();
+        }
+    }
+
     /**
      * process GFF3 record and give a xml presentation
      * @param record GFF3Record
@@ -772,6 +817,26 @@ public class GFF3Converter extends DataConverter
         this.dontCreateLocations = dontCreateLocations;
     }
 
+    /**
+     * Set the number of threads used to parse the GFF file. If greater than 1 the file is
+     * split into blocks by sequence ID which are parsed in parallel, the default is 1.
+     * @param parserThreads the number of parsing threads
+     */
+    public void setParserThreads(int parserThreads) {
+        this.parserThreads = parserThreads;
+    }
+
+    /**
+     * Set the flushPerSequence flag, the default is false. If true, features are forgotten as
+     * soon as the records for their sequence have been processed, so a child feature must appear
+     * on the same sequence as its parent, and all records for a sequence must be together in the
+     * file.  The final Items of the GFF3RecordHandler are also stored at the end of each sequence.
+     * @param flushPerSequence if true, flush features when the sequence ID changes
+     */
+    public void setFlushPerSequence(boolean flushPerSequence) {
+        this.flushPerSequence = flushPerSequence;
+    }
+
     /**
      * Create and add a synonym Item from the given information.
      * @param subject the subject of the new Synonym
@@ -10,12 +10,26 @@ package org.intermine.bio.io.gff3;
  *
  */
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 
+import org.intermine.util.ObjectPipe;
+
 /**
  * A parser for GFF3 files.  This code was taken from Matthew Pocock's GFF3 parser in BioJava.
  *
@@ -24,6 +38,12 @@ import java.io.IOException;
 
 public final class GFF3Parser
 {
+    /**
+     * The maximum number of lines handed to a parsing thread in one block by
+     * parse(BufferedReader, int).
+     */
+    public static final int BLOCK_SIZE = 5000;
+
     private GFF3Parser() {
         // nothing to do
     }
@@ -35,29 +55,8 @@ public final class GFF3Parser
      * @throws IOException if there is an error during reading or parsing
      */
     public static Iterator<?> parse(final BufferedReader reader) throws IOException {
-        String line = null;
         StringBuilder headerBuilder = new StringBuilder();
-
-        while ((line = reader.readLine()) != null) {
-            String trimmedLine = line.trim();
-
-            if (trimmedLine.length() == 0) {
-                continue;
-            }
-
-            // gather up the header information.
-            if (trimmedLine.startsWith("#")) {
-                headerBuilder.append(trimmedLine);
-                continue;
-            }
-
-            // throws IOException if the first GFF line isn't valid
-            new GFF3Record(headerBuilder.toString(), trimmedLine);
-
-            break;
-        }
-
-        final String firstGFFLine = line;
+        final String firstGFFLine = readHeader(reader, headerBuilder);
         final String header =  headerBuilder.toString();
 
         return new Iterator<Object>() {
@@ -94,4 +93,205 @@ public final class GFF3Parser
             }
         };
     }
+
+    /**
+     * Read GFF3 lines from a BufferedReader and return an Iterator over the GFF3Records, parsing
+     * the lines on several threads.  Lines are read in blocks of up to BLOCK_SIZE lines, each
+     * block holding lines for a single sequence ID, and the blocks are parsed concurrently.
+     * Records are returned in the same order as they appear in the file, so the result is
+     * identical to that of parse(BufferedReader).  Only a few blocks per thread are held in
+     * memory at any time.  The iterator should be closed if it is not read to the end, to stop
+     * the reading and parsing threads.
+     *
+     * @param reader the Reader to reader from
+     * @param threads the number of parsing threads to use
+     * @return an Iterator over the GFF3Record objects from the reader
+     * @throws IOException if there is an error reading the header or parsing the first line
+     */
+    public static BlockIterator parse(BufferedReader reader, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Illegal number of threads: " + threads);
+        }
+        StringBuilder headerBuilder = new StringBuilder();
+        String firstGFFLine = readHeader(reader, headerBuilder);
+        return new BlockIterator(reader, headerBuilder.toString(), firstGFFLine, threads);
+    }
+
+    /**
+     * Read the header lines, returning the first GFF line.  Throws IOException if the first GFF
+     * line isn't valid.
+     */
+    private static String readHeader(BufferedReader reader, StringBuilder headerBuilder)
+        throws IOException {
+        String line = null;
+        while ((line = reader.readLine()) != null) {
+            String trimmedLine = line.trim();
+
+            if (trimmedLine.length() == 0) {
+                continue;
+            }
+
+            // gather up the header information.
+            if (trimmedLine.startsWith("#")) {
+                headerBuilder.append(trimmedLine);
+                continue;
+            }
+
+            // throws IOException if the first GFF line isn't valid
+            new GFF3Record(headerBuilder.toString(), trimmedLine);
+
+            break;
+        }
+        return line;
+    }
+
+    private static String getSequenceID(String line) {
+        int tab = line.indexOf('\t');
+        return (tab == -1 ? line : line.substring(0, tab));
+    }
+
+    /**
+     * An Iterator over the GFF3Records of a file, parsed in blocks on several threads by
+     * parse(BufferedReader, int).
+     */
+    public static final class BlockIterator implements Iterator<GFF3Record>, Closeable
+    {
+        private final ObjectPipe<Future<List<GFF3Record>>> blocks;
+        private final ExecutorService pool;
+        private volatile boolean closed = false;
+        private Iterator<GFF3Record> currentBlock = Collections.<GFF3Record>emptyList().iterator();
+
+        private BlockIterator(final BufferedReader reader, final String header,
+                final String firstGFFLine, int threads) {
+            blocks = new ObjectPipe<Future<List<GFF3Record>>>(threads * 2);
+            pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int count = 0;
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "GFF3Parser worker " + (++count));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            Thread readerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        List<String> lines = new ArrayList<String>();
+                        String blockSequence = null;
+                        String line = firstGFFLine;
+                        while (line != null && !line.startsWith(">") && !closed) {
+                            String trimmedLine = line.trim();
+                            if (trimmedLine.length() > 0 && !trimmedLine.startsWith("#")) {
+                                String sequence = getSequenceID(trimmedLine);
+                                if (lines.size() >= BLOCK_SIZE || (!lines.isEmpty()
+                                        && !sequence.equals(blockSequence))) {
+                                    blocks.put(pool.submit(new BlockParser(header, lines)));
+                                    lines = new ArrayList<String>();
+                                }
+                                blockSequence = sequence;
+                                lines.add(line);
+                            }
+                            line = reader.readLine();
+                        }
+                        if (!lines.isEmpty() && !closed) {
+                            blocks.put(pool.submit(new BlockParser(header, lines)));
+                        }
+                    } catch (final IOException e) {
+                        FutureTask<List<GFF3Record>> failed =
+                            new FutureTask<List<GFF3Record>>(new Callable<List<GFF3Record>>() {
+                                @Override
+                                public List<GFF3Record> call() throws IOException {
+                                    throw e;
+                                }
+                            });
+                        failed.run();
+                        blocks.put(failed);
+                    } catch (RejectedExecutionException e) {
+                        // closed while a block was being submitted
+                    } finally {
+                        pool.shutdown();
+                        blocks.finish();
+                    }
+                }
+            }, "GFF3Parser reader");
+            readerThread.setDaemon(true);
+            readerThread.start();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!currentBlock.hasNext()) {
+                if (closed || !blocks.hasNext()) {
+                    return false;
+                }
+                try {
+                    currentBlock = blocks.next().get().iterator();
+                } catch (ExecutionException e) {
+                    close();
+                    throw new RuntimeException("IOException while getting next GFF record",
+                            e.getCause());
+                } catch (InterruptedException e) {
+                    close();
+                    throw new RuntimeException("Interrupted while getting next GFF record", e);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public GFF3Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return currentBlock.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove not supported");
+        }
+
+        /**
+         * Stop reading and parsing, discarding any blocks not yet returned.  The reading thread
+         * stops after its current line, and the parsing threads are shut down.
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            currentBlock = Collections.<GFF3Record>emptyList().iterator();
+            pool.shutdownNow();
+            // take any waiting blocks, so that the reading thread is never left blocked on a full
+            // pipe, until it has finished
+            while (blocks.hasNext()) {
+                blocks.next().cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Parses one block of GFF lines into GFF3Records.
+     */
+    private static class BlockParser implements Callable<List<GFF3Record>>
+    {
+        private final String header;
+        private final List<String> lines;
+
+        BlockParser(String header, List<String> lines) {
+            this.header = header;
+            this.lines = lines;
+        }
+
+        @Override
+        public List<GFF3Record> call() throws IOException {
+            List<GFF3Record> records = new ArrayList<GFF3Record>(lines.size());
+            for (String line : lines) {
+                records.add(new GFF3Record(header, line));
+            }
+            return records;
+        }
+    }
 }
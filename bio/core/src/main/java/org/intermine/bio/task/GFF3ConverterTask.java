@@ -22,6 +22,7 @@ import org.intermine.bio.dataconversion.GFF3SeqHandler;
 import org.intermine.bio.io.gff3.GFF3Parser;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.dataconversion.ObjectStoreItemWriter;
+import org.intermine.dataconversion.PipedItemWriter;
 import org.intermine.metadata.Model;
 
 
@@ -53,6 +54,9 @@ public class GFF3ConverterTask extends Task
     private String seqHandlerClassName;
 
     private boolean dontCreateLocations = false;
+    private int parserThreads = 1;
+    private boolean flushPerSequence = false;
+    private boolean pipedWriter = false;
 
      /**
      * Set the data fileset
@@ -162,6 +166,35 @@ public class GFF3ConverterTask extends Task
         this.dontCreateLocations = dontCreateLocations;
     }
 
+    /**
+     * Set the number of threads to parse the GFF files with, the default is 1.  If greater than 1
+     * the files are parsed in parallel.
+     * @param parserThreads the number of parsing threads
+     */
+    public void setParserThreads(int parserThreads) {
+        this.parserThreads = parserThreads;
+    }
+
+    /**
+     * Set the pipedWriter flag, the default is false.  If true, Items are written to the
+     * objectstore on a separate thread.  ItemWriter.store() then returns null rather than the id
+     * of the Item, so only set this if the GFF3RecordHandler does not use the ids.
+     * @param pipedWriter if true, write Items on a separate thread
+     */
+    public void setPipedWriter(boolean pipedWriter) {
+        this.pipedWriter = pipedWriter;
+    }
+
+    /**
+     * Set the flushPerSequence flag, the default is false.  If true, the features of each
+     * sequence are dropped from memory once the next sequence starts.  Only set this for files
+     * that are sorted by sequence and where parents are on the same sequence as their children.
+     * @param flushPerSequence if true, flush features when the sequence changes
+     */
+    public void setFlushPerSequence(boolean flushPerSequence) {
+        this.flushPerSequence = flushPerSequence;
+    }
+
     /**
      * @see Task#execute()
      */
@@ -200,6 +233,9 @@ public class GFF3ConverterTask extends Task
         try {
             osw = ObjectStoreWriterFactory.getObjectStoreWriter(targetAlias);
             writer = new ObjectStoreItemWriter(osw);
+            if (pipedWriter) {
+                writer = new PipedItemWriter(writer, 10000);
+            }
             Model tgtModel = Model.getInstanceByName(model);
             GFF3RecordHandler recordHandler;
             if (handlerClassName == null) {
@@ -238,6 +274,8 @@ public class GFF3ConverterTask extends Task
             if (dontCreateLocations) {
                 gff3converter.setDontCreateLocations(dontCreateLocations);
             }
+            gff3converter.setParserThreads(parserThreads);
+            gff3converter.setFlushPerSequence(flushPerSequence);
             DirectoryScanner ds = fileSet.getDirectoryScanner(getProject());
             String[] files = ds.getIncludedFiles();
             if (files.length == 0) {
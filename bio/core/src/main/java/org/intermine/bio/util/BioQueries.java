@@ -10,6 +10,7 @@ package org.intermine.bio.util;
  *
  */
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -17,6 +18,7 @@ import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 import org.intermine.metadata.ConstraintOp;
+import org.intermine.objectstore.query.BagConstraint;
 import org.intermine.objectstore.query.ConstraintSet;
 import org.intermine.objectstore.query.ContainsConstraint;
 import org.intermine.objectstore.query.Query;
@@ -58,6 +60,32 @@ public abstract class BioQueries
         Class<?> subjectCls, boolean orderBySubject, boolean hasLength,
         boolean hasChromosomeLocation, int batchSize)
         throws ObjectStoreException {
+        return findLocationAndObjects(os, objectCls, subjectCls, null, orderBySubject, hasLength,
+                hasChromosomeLocation, batchSize);
+    }
+
+    /**
+     * Query ObjectStore for all Location object between given object (eg. Chromosome) and
+     * subject (eg. Gene) classes, for some of the objects only.  Return an iterator over the
+     * results ordered by subject if orderBySubject is true, otherwise order by object.
+     *
+     * @param os the ObjectStore to find the Locations in
+     * @param objectCls object type of the Location
+     * @param subjectCls subject type of the Location
+     * @param objectIds the ids of the objectCls objects to find Locations on, or null for all
+     * @param orderBySubject if true order the results using the subjectCls, otherwise order by
+     * objectCls
+     * @param hasLength if true, only query locations where the objectCls object has a non-zero
+     * length, e.g. a chromosome's length should be greater than zero
+     * @param batchSize the batch size for the results object
+     * @param hasChromosomeLocation if true, only query where the subject has a chromosome location
+     * @return a Results object: object.id, subject, location
+     * @throws ObjectStoreException if problem reading ObjectStore
+     */
+    public static Results findLocationAndObjects(ObjectStore os, Class<?> objectCls,
+        Class<?> subjectCls, Collection<Integer> objectIds, boolean orderBySubject,
+        boolean hasLength, boolean hasChromosomeLocation, int batchSize)
+        throws ObjectStoreException {
         // TODO check objectCls and subjectCls assignable to BioEntity
 
         Query q = new Query();
@@ -92,6 +120,10 @@ public abstract class BioQueries
         ContainsConstraint cc2 = new ContainsConstraint(ref2, ConstraintOp.CONTAINS, qcSub);
         cs.addConstraint(cc2);
 
+        if (objectIds != null) {
+            cs.addConstraint(new BagConstraint(qfObj, ConstraintOp.IN, objectIds));
+        }
+
         if (hasLength) {
             QueryField qfObjLength = new QueryField(qcObj, "length");
             SimpleConstraint lengthNotNull =
@@ -0,0 +1,259 @@
+package org.intermine.bio.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.intermine.ObjectStoreWriterInterMineImpl;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.ResultsRow;
+
+/**
+ * Splits the chromosomes in the database between a number of workers, so that a post-process that
+ * works on one chromosome at a time can use several threads.
+ * <p>
+ * Chromosomes are shared out by length, longest first, each going to the worker with the least
+ * work so far. Each worker is given its own ObjectStoreWriter, with a fixed number of blocks of
+ * IDs reserved in worker order, so the IDs a worker creates do not depend on how the threads are
+ * scheduled. A worker that uses up its blocks fails rather than taking more from the shared
+ * sequence; run with more threads, or with more blocks per worker, if that happens.
+ * <p>
+ * The partitioner starts a transaction on each writer before its worker runs, and commits them
+ * all only once every worker has finished, so workers must not start or commit transactions
+ * themselves. If any worker fails, every transaction is aborted and nothing is stored. If the
+ * writer passed in is not an ObjectStoreWriterInterMineImpl, or only one thread is wanted, one
+ * worker is run over every chromosome using that writer, in a single transaction.
+ */
+public class ChromosomePartitioner
+{
+    private static final Logger LOG = Logger.getLogger(ChromosomePartitioner.class);
+    private static final int DEFAULT_BLOCKS = 2;
+
+    private final ObjectStoreWriter osw;
+    private final int threads;
+    private final int blocks;
+
+    /**
+     * Work done on some of the chromosomes.
+     */
+    public interface Worker
+    {
+        /**
+         * Process the features on a set of chromosomes.
+         *
+         * @param osw the ObjectStoreWriter to store new objects with
+         * @param chromosomeIds the ids of the chromosomes to process, in id order, or null for
+         * every chromosome
+         * @throws Exception if anything goes wrong
+         */
+        void process(ObjectStoreWriter osw, List<Integer> chromosomeIds) throws Exception;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param osw the ObjectStoreWriter of the post-process
+     * @param threads the greatest number of workers to run at once
+     */
+    public ChromosomePartitioner(ObjectStoreWriter osw, int threads) {
+        this(osw, threads, DEFAULT_BLOCKS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param osw the ObjectStoreWriter of the post-process
+     * @param threads the greatest number of workers to run at once
+     * @param blocks the number of blocks of IDs to reserve for each worker, each holding
+     * a million IDs
+     */
+    public ChromosomePartitioner(ObjectStoreWriter osw, int threads, int blocks) {
+        this.osw = osw;
+        this.threads = threads;
+        this.blocks = Math.max(1, blocks);
+    }
+
+    /**
+     * Run a worker over every chromosome.
+     *
+     * @param worker the work to do
+     * @throws ObjectStoreException if a worker fails
+     */
+    public void run(final Worker worker) throws ObjectStoreException {
+        List<List<Integer>> partitions = null;
+        if (threads > 1 && osw instanceof ObjectStoreWriterInterMineImpl) {
+            partitions = partition(findChromosomeLengths(osw.getObjectStore()), threads);
+        }
+        if (partitions == null || partitions.size() <= 1) {
+            try {
+                osw.beginTransaction();
+                worker.process(osw, null);
+                osw.commitTransaction();
+            } catch (ObjectStoreException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ObjectStoreException(e);
+            } finally {
+                if (osw.isInTransaction()) {
+                    osw.abortTransaction();
+                }
+            }
+            return;
+        }
+
+        ObjectStore os = osw.getObjectStore();
+        List<ObjectStoreWriterInterMineImpl> writers
+            = new ArrayList<ObjectStoreWriterInterMineImpl>();
+        ExecutorService executor = Executors.newFixedThreadPool(partitions.size());
+        try {
+            for (int i = 0; i < partitions.size(); i++) {
+                List<Long> reserved = new ArrayList<Long>();
+                for (int j = 0; j < blocks; j++) {
+                    reserved.add(Long.valueOf(
+                            ((ObjectStoreWriterInterMineImpl) osw).reserveSerialBlock()));
+                }
+                ObjectStoreWriterInterMineImpl partitionWriter
+                    = new ObjectStoreWriterInterMineImpl(os);
+                writers.add(partitionWriter);
+                partitionWriter.setSerialBlocks(reserved);
+                partitionWriter.beginTransaction();
+            }
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < partitions.size(); i++) {
+                final List<Integer> partition = partitions.get(i);
+                final ObjectStoreWriterInterMineImpl partitionWriter = writers.get(i);
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        long start = System.currentTimeMillis();
+                        worker.process(partitionWriter, partition);
+                        LOG.info("Processed " + partition.size() + " chromosomes in "
+                                + (System.currentTimeMillis() - start) + " ms");
+                        return null;
+                    }
+                }));
+            }
+            ObjectStoreException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new ObjectStoreException("Failed to process chromosomes",
+                                e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    throw new ObjectStoreException(e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            for (ObjectStoreWriterInterMineImpl partitionWriter : writers) {
+                partitionWriter.commitTransaction();
+            }
+        } finally {
+            executor.shutdownNow();
+            for (ObjectStoreWriterInterMineImpl partitionWriter : writers) {
+                try {
+                    if (partitionWriter.isInTransaction()) {
+                        partitionWriter.abortTransaction();
+                    }
+                    partitionWriter.close();
+                } catch (ObjectStoreException e) {
+                    LOG.warn("Failed to close ObjectStoreWriter", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Share out chromosomes between partitions, longest first, each to the partition with the
+     * least total length so far. Ties are broken by id so the result depends only on the input.
+     *
+     * @param lengths map from chromosome id to length, null lengths count as zero
+     * @param count the greatest number of partitions
+     * @return the non-empty partitions, each a list of chromosome ids in id order
+     */
+    protected static List<List<Integer>> partition(Map<Integer, Integer> lengths, int count) {
+        List<Map.Entry<Integer, Integer>> chromosomes
+            = new ArrayList<Map.Entry<Integer, Integer>>(lengths.entrySet());
+        Collections.sort(chromosomes, new Comparator<Map.Entry<Integer, Integer>>() {
+            @Override
+            public int compare(Map.Entry<Integer, Integer> a, Map.Entry<Integer, Integer> b) {
+                int retval = Long.compare(length(b.getValue()), length(a.getValue()));
+                return retval != 0 ? retval : a.getKey().compareTo(b.getKey());
+            }
+        });
+        int partitionCount = Math.max(1, Math.min(count, chromosomes.size()));
+        List<List<Integer>> partitions = new ArrayList<List<Integer>>();
+        long[] totals = new long[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions.add(new ArrayList<Integer>());
+        }
+        for (Map.Entry<Integer, Integer> chromosome : chromosomes) {
+            int smallest = 0;
+            for (int i = 1; i < partitionCount; i++) {
+                if (totals[i] < totals[smallest]) {
+                    smallest = i;
+                }
+            }
+            partitions.get(smallest).add(chromosome.getKey());
+            totals[smallest] += length(chromosome.getValue());
+        }
+        List<List<Integer>> retval = new ArrayList<List<Integer>>();
+        for (List<Integer> partition : partitions) {
+            if (!partition.isEmpty()) {
+                Collections.sort(partition);
+                retval.add(partition);
+            }
+        }
+        return retval;
+    }
+
+    private static long length(Integer length) {
+        return length == null ? 0 : length.longValue();
+    }
+
+    private static Map<Integer, Integer> findChromosomeLengths(ObjectStore os)
+        throws ObjectStoreException {
+        Query q = new Query();
+        QueryClass qcChr = new QueryClass(os.getModel().getClassDescriptorByName("Chromosome")
+                .getType());
+        QueryField qfId = new QueryField(qcChr, "id");
+        q.addFrom(qcChr);
+        q.addToSelect(qfId);
+        q.addToSelect(new QueryField(qcChr, "length"));
+        q.addToOrderBy(qfId);
+        Map<Integer, Integer> retval = new LinkedHashMap<Integer, Integer>();
+        for (Object row : os.execute(q, 10000, false, false, false)) {
+            ResultsRow<?> rr = (ResultsRow<?>) row;
+            retval.put((Integer) rr.get(0), (Integer) rr.get(1));
+        }
+        return retval;
+    }
+}
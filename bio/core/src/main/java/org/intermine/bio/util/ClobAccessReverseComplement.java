@@ -23,6 +23,19 @@ import org.intermine.objectstore.query.ClobAccess;
  */
 public class ClobAccessReverseComplement extends ClobAccess
 {
+    // the complement of each ASCII character, or 0 if it is not part of a DNA sequence
+    private static final char[] COMPLEMENTS = new char[128];
+
+    static {
+        String pairs = "CGGCATTANNUAYRRYSSWWKMMKBVVBDHHD..";
+        for (int i = 0; i < pairs.length(); i += 2) {
+            char in = pairs.charAt(i);
+            char out = pairs.charAt(i + 1);
+            COMPLEMENTS[in] = out;
+            COMPLEMENTS[Character.toLowerCase(in)] = Character.toLowerCase(out);
+        }
+    }
+
     private ClobAccess originalClobAccess;
 
     /**
@@ -51,59 +64,27 @@ public class ClobAccessReverseComplement extends ClobAccess
      * @return the complement character
      */
     public char translate(char in) {
-
-        boolean inputWasLowerCase = false;
-        if (Character.isLowerCase(in)) {
-            in = Character.toUpperCase(in);
-            inputWasLowerCase = true;
-        }
-
-        switch (in) {
-            case 'C':
-                return returnChar('G', inputWasLowerCase);
-            case 'G':
-                return returnChar('C', inputWasLowerCase);
-            case 'A':
-                return returnChar('T', inputWasLowerCase);
-            case 'T':
-                return returnChar('A', inputWasLowerCase);
-            case 'N':
-                return returnChar('N', inputWasLowerCase);
-            case 'U':
-                return returnChar('A', inputWasLowerCase);
-            case 'Y':
-                return returnChar('R', inputWasLowerCase);
-            case 'R':
-                return returnChar('Y', inputWasLowerCase);
-            case 'S':
-                return returnChar('S', inputWasLowerCase);
-            case 'W':
-                return returnChar('W', inputWasLowerCase);
-            case 'K':
-                return returnChar('M', inputWasLowerCase);
-            case 'M':
-                return returnChar('K', inputWasLowerCase);
-            case 'B':
-                return returnChar('V', inputWasLowerCase);
-            case 'V':
-                return returnChar('B', inputWasLowerCase);
-            case 'D':
-                return returnChar('H', inputWasLowerCase);
-            case 'H':
-                return returnChar('D', inputWasLowerCase);
-            case '.':
-                return returnChar('.', inputWasLowerCase);
-            default:
-                throw new IllegalArgumentException("DNA sequence is invalid - cannot contain "
-                        + in);
+        char retval = (in < COMPLEMENTS.length) ? COMPLEMENTS[in] : 0;
+        if (retval == 0) {
+            throw new IllegalArgumentException("DNA sequence is invalid - cannot contain "
+                    + Character.toUpperCase(in));
         }
+        return retval;
     }
 
-    private static char returnChar(char c, boolean toLowerCase) {
-        if (toLowerCase) {
-            return Character.toLowerCase(c);
+    /**
+     * Reverses and complements a range of a char array in place.
+     *
+     * @param chars the array
+     * @param start the index of the first character of the range
+     * @param end the index after the last character of the range
+     */
+    private void reverseComplement(char[] chars, int start, int end) {
+        for (int i = start, j = end - 1; i <= j; i++, j--) {
+            char c = translate(chars[i]);
+            chars[i] = translate(chars[j]);
+            chars[j] = c;
         }
-        return c;
     }
 
     /**
@@ -130,25 +111,10 @@ public class ClobAccessReverseComplement extends ClobAccess
      * {@inheritDoc}
      */
     @Override
-    public String toString() {
-        init();
-        StringBuilder retval = new StringBuilder();
-        int lowestPage = offset / CLOB_PAGE_SIZE;
-        int highestPage = (offset + length - 1) / CLOB_PAGE_SIZE;
-        for (int page = highestPage; page >= lowestPage; page--) {
-            String pageText = (String) results.get(page);
-            if (page == highestPage) {
-                pageText = pageText.substring(0, offset + length - page * CLOB_PAGE_SIZE);
-            }
-            if (page == lowestPage) {
-                pageText = pageText.substring(offset - page * CLOB_PAGE_SIZE, pageText.length());
-            }
-            for (int cNo = pageText.length() - 1; cNo >= 0; cNo--) {
-                char origC = pageText.charAt(cNo);
-                retval.append(translate(origC));
-            }
-        }
-        return retval.toString();
+    public char[] toCharArray() {
+        char[] retval = super.toCharArray();
+        reverseComplement(retval, 0, retval.length);
+        return retval;
     }
 
     /**
@@ -159,20 +125,14 @@ public class ClobAccessReverseComplement extends ClobAccess
         init();
         int lowestPage = offset / CLOB_PAGE_SIZE;
         int highestPage = (offset + length - 1) / CLOB_PAGE_SIZE;
+        char[] buffer = new char[Math.min(length, CLOB_PAGE_SIZE)];
         for (int page = highestPage; page >= lowestPage; page--) {
-            StringBuilder retval = new StringBuilder();
-            String pageText = (String) results.get(page);
-            if (page == highestPage) {
-                pageText = pageText.substring(0, offset + length - page * CLOB_PAGE_SIZE);
-            }
-            if (page == lowestPage) {
-                pageText = pageText.substring(offset - page * CLOB_PAGE_SIZE, pageText.length());
-            }
-            for (int cNo = pageText.length() - 1; cNo >= 0; cNo--) {
-                char origC = pageText.charAt(cNo);
-                retval.append(translate(origC));
-            }
-            out.print(retval.toString());
+            int pageStart = page * CLOB_PAGE_SIZE;
+            int start = Math.max(offset, pageStart);
+            int end = Math.min(offset + length, pageStart + CLOB_PAGE_SIZE);
+            getChars(getPage(page), start - pageStart, end - pageStart, buffer, 0);
+            reverseComplement(buffer, 0, end - start);
+            out.print(new String(buffer, 0, end - start));
         }
     }
 
@@ -98,6 +98,68 @@ public class GFF3ParserTest extends TestCase
         }
     }
 
+    public void testParseParallel() throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getClassLoader().getResourceAsStream("gff_test_data.gff3")));
+        List<String> expected = new ArrayList<String>();
+        Iterator iter = GFF3Parser.parse(reader);
+        while (iter.hasNext()) {
+            expected.add(iter.next().toString());
+        }
+
+        reader = new BufferedReader(new InputStreamReader(getClass().getClassLoader().getResourceAsStream("gff_test_data.gff3")));
+        List<String> records = new ArrayList<String>();
+        Iterator<GFF3Record> parallelIter = GFF3Parser.parse(reader, 3);
+        while (parallelIter.hasNext()) {
+            records.add(parallelIter.next().toString());
+        }
+        assertEquals(expected, records);
+    }
+
+    public void testParseParallelBlocks() throws Exception {
+        StringBuffer gff = new StringBuffer();
+        for (int i = 0; i < GFF3Parser.BLOCK_SIZE * 3; i++) {
+            gff.append(i % 7 == 0 ? "4" : "X").append("\t.\texon\t").append(i + 1).append("\t")
+                .append(i + 10).append("\t.\t-\t.\tID=exon").append(i).append("\n");
+            if (i % 1000 == 0) {
+                gff.append("# comment\n\n");
+            }
+        }
+        gff.append("##FASTA\n>4\nACGT\n");
+        List<String> expected = new ArrayList<String>();
+        Iterator iter = GFF3Parser.parse(new BufferedReader(new StringReader(gff.toString())));
+        while (iter.hasNext()) {
+            expected.add(((GFF3Record) iter.next()).toGFF3());
+        }
+        List<String> records = new ArrayList<String>();
+        Iterator<GFF3Record> parallelIter =
+            GFF3Parser.parse(new BufferedReader(new StringReader(gff.toString())), 4);
+        while (parallelIter.hasNext()) {
+            records.add(parallelIter.next().toGFF3());
+        }
+        assertEquals(GFF3Parser.BLOCK_SIZE * 3, expected.size());
+        assertEquals(expected, records);
+    }
+
+    public void testParseParallelClose() throws Exception {
+        StringBuffer gff = new StringBuffer();
+        for (int i = 0; i < GFF3Parser.BLOCK_SIZE * 20; i++) {
+            gff.append("X\t.\texon\t").append(i + 1).append("\t").append(i + 10)
+                .append("\t.\t-\t.\tID=exon").append(i).append("\n");
+        }
+        GFF3Parser.BlockIterator parallelIter =
+            GFF3Parser.parse(new BufferedReader(new StringReader(gff.toString())), 2);
+        assertEquals("exon0", parallelIter.next().getId());
+        // the reading thread is blocked on the full pipe until the iterator is closed
+        parallelIter.close();
+        assertFalse(parallelIter.hasNext());
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("GFF3Parser")) {
+                thread.join(10000);
+                assertFalse(thread.getName(), thread.isAlive());
+            }
+        }
+    }
+
     public void testDecoding() throws Exception {
         String input = "2L\t.\tgene\t14263522\t14328265\t.\t+\t.\t" +
                 "ID=CG15288;Name=wb;Dbxref=FlyBase:FBan0015288,FlyBase:FBgn0004002;cyto_range=35A3-35A4;" +
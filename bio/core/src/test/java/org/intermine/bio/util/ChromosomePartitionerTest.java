@@ -0,0 +1,62 @@
+package org.intermine.bio.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class ChromosomePartitionerTest extends TestCase
+{
+    public ChromosomePartitionerTest(String arg) {
+        super(arg);
+    }
+
+    public void testPartition() throws Exception {
+        Map<Integer, Integer> lengths = new LinkedHashMap<Integer, Integer>();
+        lengths.put(1, 100);
+        lengths.put(2, 60);
+        lengths.put(3, 50);
+        lengths.put(4, 40);
+        lengths.put(5, null);
+        lengths.put(6, 10);
+
+        List<List<Integer>> partitions = ChromosomePartitioner.partition(lengths, 2);
+        // longest first, each to the smaller total: 1, 4 (140) and 2, 3, 6, 5 (120)
+        assertEquals(Arrays.asList(Arrays.asList(1, 4), Arrays.asList(2, 3, 5, 6)), partitions);
+    }
+
+    public void testSameForAnyOrder() throws Exception {
+        Map<Integer, Integer> lengths = new LinkedHashMap<Integer, Integer>();
+        Map<Integer, Integer> reversed = new LinkedHashMap<Integer, Integer>();
+        for (int i = 0; i < 50; i++) {
+            lengths.put(i, (i * 37) % 11);
+            reversed.put(49 - i, ((49 - i) * 37) % 11);
+        }
+        assertEquals(ChromosomePartitioner.partition(lengths, 4),
+                ChromosomePartitioner.partition(reversed, 4));
+        assertEquals(4, ChromosomePartitioner.partition(lengths, 4).size());
+    }
+
+    public void testFewChromosomes() throws Exception {
+        Map<Integer, Integer> lengths = new HashMap<Integer, Integer>();
+        lengths.put(7, 10);
+        assertEquals(Collections.singletonList(Collections.singletonList(7)),
+                ChromosomePartitioner.partition(lengths, 8));
+        assertTrue(ChromosomePartitioner.partition(new HashMap<Integer, Integer>(), 8)
+                .isEmpty());
+    }
+}
@@ -10,6 +10,9 @@ package org.intermine.bio.postprocess;
  *
  */
 
+import java.util.Collections;
+import java.util.Set;
+
 import org.intermine.task.CreateIndexesTask;
 
 import org.intermine.postprocess.PostProcessor;
@@ -55,4 +58,20 @@ public class CreateAttributeIndexesProcess extends PostProcessor
         cit.setObjectStore(osw.getObjectStore());
         cit.execute();
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getReads() {
+        return Collections.singleton("InterMineObject");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getWrites() {
+        return Collections.emptySet();
+    }
 }
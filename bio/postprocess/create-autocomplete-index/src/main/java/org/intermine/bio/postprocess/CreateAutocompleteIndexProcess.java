@@ -11,6 +11,8 @@ package org.intermine.bio.postprocess;
  */
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 
 import org.intermine.web.autocompletion.AutoCompleter;
 import org.apache.tools.ant.BuildException;
@@ -58,4 +60,20 @@ public class CreateAutocompleteIndexProcess extends PostProcessor
         }
 
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getReads() {
+        return Collections.singleton("InterMineObject");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getWrites() {
+        return Collections.emptySet();
+    }
 }
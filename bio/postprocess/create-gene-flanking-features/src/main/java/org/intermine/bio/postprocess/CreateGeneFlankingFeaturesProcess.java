@@ -12,12 +12,15 @@ package org.intermine.bio.postprocess;
 
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.intermine.bio.util.BioQueries;
+import org.intermine.bio.util.ChromosomePartitioner;
 import org.intermine.bio.util.PostProcessUtil;
 import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.MetaDataException;
@@ -47,7 +50,8 @@ public class CreateGeneFlankingFeaturesProcess extends PostProcessor
     private ObjectStore os;
     private DataSet dataSet;
     private DataSource dataSource;
-    private Map<Integer, Chromosome> chrs = new HashMap<Integer, Chromosome>();
+    private Map<Integer, Chromosome> chrs = new ConcurrentHashMap<Integer, Chromosome>();
+    private int threads = 1;
 
     /**
      * The sizes in kb of flanking regions to create.
@@ -81,6 +85,15 @@ public class CreateGeneFlankingFeaturesProcess extends PostProcessor
         }
     }
 
+    /**
+     * Set the number of threads to create flanking regions with.  Chromosomes are shared out
+     * between the threads, each of which stores its regions with its own ObjectStoreWriter.
+     * @param threads the number of threads, 1 by default
+     */
+    public void setChromosomeThreads(String threads) {
+        this.threads = Integer.parseInt(threads.trim());
+    }
+
     /**
      * {@inheritDoc}
      * <br/>
@@ -91,9 +104,6 @@ public class CreateGeneFlankingFeaturesProcess extends PostProcessor
     public void postProcess()
             throws ObjectStoreException {
 
-        Results results = BioQueries.findLocationAndObjects(os,
-                Chromosome.class, Gene.class, false, false, false, 1000);
-
         dataSet = (DataSet) DynamicUtil.createObject(Collections
                 .singleton(DataSet.class));
         dataSet.setName("modMine gene flanking regions");
@@ -102,30 +112,37 @@ public class CreateGeneFlankingFeaturesProcess extends PostProcessor
         dataSet.setUrl("http://intermine.modencode.org");
         dataSet.setDataSource(dataSource);
 
-        Iterator<?> resIter = results.iterator();
-
-        int count = 0;
+        final AtomicInteger count = new AtomicInteger(0);
+        new ChromosomePartitioner(osw, threads).run(new ChromosomePartitioner.Worker() {
+            @Override
+            public void process(ObjectStoreWriter writer, List<Integer> chromosomeIds)
+                throws ObjectStoreException {
+                Results results = BioQueries.findLocationAndObjects(os, Chromosome.class,
+                        Gene.class, chromosomeIds, false, false, false, 1000);
+                Iterator<?> resIter = results.iterator();
+
+                while (resIter.hasNext()) {
+                    ResultsRow<?> rr = (ResultsRow<?>) resIter.next();
+                    Integer chrId = (Integer) rr.get(0);
+                    Gene gene = (Gene) rr.get(1);
+                    Location loc = (Location) rr.get(2);
+                    createAndStoreFlankingRegion(writer, getChromosome(chrId), loc, gene);
+                    int done = count.getAndIncrement();
+                    if ((done % 1000) == 0) {
+                        LOG.info("Created flanking regions for " + done + " genes.");
+                    }
+                }
+            }
+        });
 
         osw.beginTransaction();
-        while (resIter.hasNext()) {
-            ResultsRow<?> rr = (ResultsRow<?>) resIter.next();
-            Integer chrId = (Integer) rr.get(0);
-            Gene gene = (Gene) rr.get(1);
-            Location loc = (Location) rr.get(2);
-            createAndStoreFlankingRegion(getChromosome(chrId), loc, gene);
-            if ((count % 1000) == 0) {
-                LOG.info("Created flanking regions for " + count + " genes.");
-            }
-            count++;
-        }
         osw.store(dataSet);
-
         osw.commitTransaction();
     }
 
 
-    private void createAndStoreFlankingRegion(Chromosome chr, Location geneLoc, Gene gene)
-            throws ObjectStoreException {
+    private void createAndStoreFlankingRegion(ObjectStoreWriter writer, Chromosome chr,
+            Location geneLoc, Gene gene) throws ObjectStoreException {
         // This code can't cope with chromosomes that don't have a length
         if (chr.getLength() == null) {
             LOG.warn("Attempted to create GeneFlankingRegions on a chromosome without a length: "
@@ -218,8 +235,8 @@ public class CreateGeneFlankingFeaturesProcess extends PostProcessor
                     region.setLength(new Integer((location.getEnd().intValue()
                             - location.getStart().intValue()) + 1));
 
-                    osw.store(location);
-                    osw.store(region);
+                    writer.store(location);
+                    writer.store(region);
                 }
             }
         }
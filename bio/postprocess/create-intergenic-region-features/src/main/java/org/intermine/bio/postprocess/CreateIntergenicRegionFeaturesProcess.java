@@ -10,17 +10,21 @@ package org.intermine.bio.postprocess;
  *
  */
 
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.intermine.bio.util.BioQueries;
+import org.intermine.bio.util.ChromosomePartitioner;
 import org.intermine.bio.util.PostProcessUtil;
 import org.intermine.metadata.MetaDataException;
 import org.intermine.metadata.Model;
@@ -54,6 +58,7 @@ public class CreateIntergenicRegionFeaturesProcess extends PostProcessor
     private Model model;
     private DataSet dataSet;
     private DataSource dataSource;
+    private int threads = 1;
 
     /**
      * Create a new instance
@@ -64,6 +69,15 @@ public class CreateIntergenicRegionFeaturesProcess extends PostProcessor
         super(osw);
     }
 
+    /**
+     * Set the number of threads to create regions with.  Chromosomes are shared out between the
+     * threads, each of which stores its regions with its own ObjectStoreWriter.
+     * @param threads the number of threads, 1 by default
+     */
+    public void setChromosomeThreads(String threads) {
+        this.threads = Integer.parseInt(threads.trim());
+    }
+
     /**
      * {@inheritDoc}
      * <br/>
@@ -93,14 +107,43 @@ public class CreateIntergenicRegionFeaturesProcess extends PostProcessor
             return;
         }
 
-        Results results = BioQueries.findLocationAndObjects(os, Chromosome.class, Gene.class, false,
-                false, false, 1000);
         dataSet = (DataSet) DynamicUtil.createObject(Collections.singleton(DataSet.class));
         dataSet.setName("FlyMine intergenic regions");
         dataSet.setDescription("Intergenic regions created by FlyMine");
         dataSet.setVersion("" + new Date()); // current time and date
         dataSet.setUrl("http://www.flymine.org");
         dataSet.setDataSource(dataSource);
+        // the regions may be stored by several writers, so fix the id of the DataSet first
+        dataSet.setId(osw.getSerial());
+
+        final AtomicBoolean created = new AtomicBoolean(false);
+        new ChromosomePartitioner(osw, threads).run(new ChromosomePartitioner.Worker() {
+            @Override
+            public void process(ObjectStoreWriter writer, List<Integer> chromosomeIds)
+                throws ObjectStoreException {
+                if (createIntergenicRegions(writer, chromosomeIds)) {
+                    created.set(true);
+                }
+            }
+        });
+
+        if (created.get()) {
+            // we've created some IntergenicRegion objects so store() the DataSet
+            osw.beginTransaction();
+            osw.store(dataSet);
+            osw.commitTransaction();
+        }
+    }
+
+    /**
+     * Create and store the IntergenicRegions on some chromosomes.
+     *
+     * @return true if any chromosomes with genes were found
+     */
+    private boolean createIntergenicRegions(ObjectStoreWriter writer,
+        List<Integer> chromosomeIds) throws ObjectStoreException {
+        Results results = BioQueries.findLocationAndObjects(os, Chromosome.class, Gene.class,
+                chromosomeIds, false, false, false, 1000);
 
         Iterator<?> resIter = results.iterator();
 
@@ -108,7 +151,6 @@ public class CreateIntergenicRegionFeaturesProcess extends PostProcessor
         Set<Location> locationSet = new HashSet<Location>();
         Map<Integer, Set<Gene>> locToGeneMap = new HashMap<Integer, Set<Gene>>();
 
-        osw.beginTransaction();
         while (resIter.hasNext()) {
             ResultsRow<?> rr = (ResultsRow<?>) resIter.next();
             Integer chrId = (Integer) rr.get(0);
@@ -119,7 +161,7 @@ public class CreateIntergenicRegionFeaturesProcess extends PostProcessor
                 Iterator<SequenceFeature> irIter =
                         createFeatures(locationSet, locToGeneMap, previousChrId);
                 try {
-                    storeIntergenicRegions(osw, irIter);
+                    storeIntergenicRegions(writer, irIter);
                 } catch (IllegalAccessException e) {
                     throw new RuntimeException("Failed to store intergenic region " + e);
                 }
@@ -137,15 +179,12 @@ public class CreateIntergenicRegionFeaturesProcess extends PostProcessor
             Iterator<SequenceFeature> irIter =
                     createFeatures(locationSet, locToGeneMap, previousChrId);
             try {
-                storeIntergenicRegions(osw, irIter);
+                storeIntergenicRegions(writer, irIter);
             } catch (IllegalAccessException e) {
                 throw new RuntimeException("Failed to store intergenic region " + e);
             }
-
-            // we've created some IntergenicRegion objects so store() the DataSet
-            osw.store(dataSet);
         }
-        osw.commitTransaction();
+        return previousChrId != null;
     }
 
     private static void addToLocToGeneMap(Map<Integer, Set<Gene>> locToGeneMap, Location loc,
@@ -338,4 +377,22 @@ public class CreateIntergenicRegionFeaturesProcess extends PostProcessor
             }
         };
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getReads() {
+        return new HashSet<String>(Arrays.asList("Gene", "Location", "Chromosome", "Organism",
+                "DataSet", "DataSource"));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getWrites() {
+        return new HashSet<String>(Arrays.asList("IntergenicRegion", "Location", "Gene",
+                "DataSet", "DataSource"));
+    }
 }
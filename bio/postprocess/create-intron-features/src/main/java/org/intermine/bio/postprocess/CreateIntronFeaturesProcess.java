@@ -10,17 +10,21 @@ package org.intermine.bio.postprocess;
  *
  */
 
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.intermine.bio.util.ChromosomePartitioner;
 import org.intermine.bio.util.Constants;
 import org.intermine.bio.util.PostProcessUtil;
 import org.intermine.metadata.MetaDataException;
@@ -65,6 +69,7 @@ public class CreateIntronFeaturesProcess extends PostProcessor
     private DataSource dataSource;
     private Set<Integer> taxonIds = new HashSet<Integer>();
     private Model model;
+    private int threads = 1;
 
     protected Map<String, SequenceFeature> intronMap = new HashMap<String, SequenceFeature>();
     protected Map<SequenceFeature, Set<SequenceFeature>> intronTranscripts =
@@ -103,6 +108,15 @@ public class CreateIntronFeaturesProcess extends PostProcessor
         }
     }
 
+    /**
+     * Set the number of threads to create introns with.  Chromosomes are shared out between the
+     * threads, each of which stores its introns with its own ObjectStoreWriter.
+     * @param threads the number of threads, 1 by default
+     */
+    public void setChromosomeThreads(String threads) {
+        this.threads = Integer.parseInt(threads.trim());
+    }
+
     /**
      * {@inheritDoc}
      * <br/>
@@ -122,12 +136,6 @@ public class CreateIntronFeaturesProcess extends PostProcessor
         dataSet.setUrl("http://www.intermine.org");
         dataSet.setDataSource(dataSource);
 
-        // Documented as an example of how to use the query API
-
-        // This query finds all transcripts and their chromosome locations and exons
-        // for each transcript with the exon chromosome location.  This is then used
-        // to calculate intron locations.
-
         try {
             final String message = "Now performing create introns postprocess ";
             PostProcessUtil.checkFieldExists(model, "Transcript", "exons", message);
@@ -137,6 +145,42 @@ public class CreateIntronFeaturesProcess extends PostProcessor
             return;
         }
 
+        // the introns may be stored by several writers, so fix the id of the DataSet first
+        dataSet.setId(osw.getSerial());
+
+        final AtomicInteger stored = new AtomicInteger(0);
+        new ChromosomePartitioner(osw, threads).run(new ChromosomePartitioner.Worker() {
+            @Override
+            public void process(ObjectStoreWriter writer, List<Integer> chromosomeIds)
+                throws ObjectStoreException {
+                stored.addAndGet(createIntrons(writer, chromosomeIds));
+            }
+        });
+
+        if (stored.get() > 1) {
+            osw.beginTransaction();
+            osw.store(dataSet);
+            osw.commitTransaction();
+        }
+    }
+
+    /**
+     * Create and store the introns of the transcripts on some chromosomes.
+     *
+     * @return the number of introns stored
+     */
+    private int createIntrons(ObjectStoreWriter writer, List<Integer> chromosomeIds)
+        throws ObjectStoreException {
+        Map<String, SequenceFeature> introns = new HashMap<String, SequenceFeature>();
+        Map<SequenceFeature, Set<SequenceFeature>> transcriptsByIntron =
+                new HashMap<SequenceFeature, Set<SequenceFeature>>();
+
+        // Documented as an example of how to use the query API
+
+        // This query finds all transcripts and their chromosome locations and exons
+        // for each transcript with the exon chromosome location.  This is then used
+        // to calculate intron locations.
+
         // Construct a new query and a set to hold constraints that will be ANDed together
         Query q = new Query();
         ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
@@ -163,6 +207,16 @@ public class CreateIntronFeaturesProcess extends PostProcessor
             cs.addConstraint(new BagConstraint(qfTaxonId, ConstraintOp.IN, taxonIds));
         }
 
+        // restrict to the transcripts located on the chromosomes of this worker
+        if (chromosomeIds != null) {
+            QueryClass qcChr = new QueryClass(Chromosome.class);
+            q.addFrom(qcChr);
+            QueryObjectReference chrRef = new QueryObjectReference(qcTranLoc, "locatedOn");
+            cs.addConstraint(new ContainsConstraint(chrRef, ConstraintOp.CONTAINS, qcChr));
+            QueryField qfChrId = new QueryField(qcChr, "id");
+            cs.addConstraint(new BagConstraint(qfChrId, ConstraintOp.IN, chromosomeIds));
+        }
+
         // Include the Exon class from the Transcript.exons collection
         QueryClass qcExon = new QueryClass(model.getClassDescriptorByName("Exon").getType());
         q.addFrom(qcExon);
@@ -207,7 +261,6 @@ public class CreateIntronFeaturesProcess extends PostProcessor
         Gene lastGene = null;
         int tranCount = 0, exonCount = 0, intronCount = 0;
 
-        osw.beginTransaction();
         while (resultsIter.hasNext()) {
             // Results is a list of ResultsRows, each ResultsRow contains the objects/fields
             // that were added to the select list of the query.  The order of columns is
@@ -223,7 +276,8 @@ public class CreateIntronFeaturesProcess extends PostProcessor
 
             if (!thisTran.getId().equals(lastTran.getId())) {
                 tranCount++;
-                intronCount += createIntronFeatures(locationSet, lastTran, lastTranLoc, lastGene);
+                intronCount += createIntronFeatures(writer, introns, transcriptsByIntron,
+                        locationSet, lastTran, lastTranLoc, lastGene);
                 exonCount += locationSet.size();
                 if ((tranCount % 1000) == 0) {
                     LOG.info("Created " + intronCount + " Introns for " + tranCount
@@ -239,7 +293,8 @@ public class CreateIntronFeaturesProcess extends PostProcessor
         }
 
         if (lastTran != null) {
-            intronCount += createIntronFeatures(locationSet, lastTran, lastTranLoc, lastGene);
+            intronCount += createIntronFeatures(writer, introns, transcriptsByIntron,
+                    locationSet, lastTran, lastTranLoc, lastGene);
             tranCount++;
             exonCount += locationSet.size();
         }
@@ -248,24 +303,20 @@ public class CreateIntronFeaturesProcess extends PostProcessor
 
         //osw.beginTransaction();
         int stored = 0;
-        for (Iterator<String> i = intronMap.keySet().iterator(); i.hasNext();) {
+        for (Iterator<String> i = introns.keySet().iterator(); i.hasNext();) {
             String identifier = i.next();
-            SequenceFeature intron = intronMap.get(identifier);
-            Set<SequenceFeature> transcripts = intronTranscripts.get(intron);
+            SequenceFeature intron = introns.get(identifier);
+            Set<SequenceFeature> transcripts = transcriptsByIntron.get(intron);
             if (transcripts != null) {
                 intron.setFieldValue("transcripts", transcripts);
             }
-            osw.store(intron);
+            writer.store(intron);
             stored++;
             if (stored % 1000 == 0) {
                 LOG.info("Stored " + stored + " introns.");
             }
         }
-
-        if (intronMap.size() > 1) {
-            osw.store(dataSet);
-        }
-        osw.commitTransaction();
+        return stored;
     }
 
 
@@ -283,6 +334,15 @@ public class CreateIntronFeaturesProcess extends PostProcessor
     protected int createIntronFeatures(Set<Location> locationSet, SequenceFeature transcript,
                                        Location tranLoc, Gene gene)
             throws ObjectStoreException {
+        return createIntronFeatures(osw, intronMap, intronTranscripts, locationSet, transcript,
+                tranLoc, gene);
+    }
+
+    private int createIntronFeatures(ObjectStoreWriter writer,
+            Map<String, SequenceFeature> introns,
+            Map<SequenceFeature, Set<SequenceFeature>> transcriptsByIntron,
+            Set<Location> locationSet, SequenceFeature transcript, Location tranLoc, Gene gene)
+            throws ObjectStoreException {
         if (locationSet.size() == 1 || tranLoc == null || transcript == null
                 || transcript.getLength() == null) {
             return 0;
@@ -325,7 +385,7 @@ public class CreateIntronFeaturesProcess extends PostProcessor
             String identifier = "intron_chr" + chr.getPrimaryIdentifier()
                     + "_" + Integer.toString(newLocStart) + ".." + Integer.toString(newLocEnd);
 
-            if (intronMap.get(identifier) == null) {
+            if (introns.get(identifier) == null) {
                 Class<?> intronCls = model.getClassDescriptorByName("Intron").getType();
                 Intron intron = (Intron)
                         DynamicUtil.createObject(Collections.singleton(intronCls));
@@ -346,27 +406,47 @@ public class CreateIntronFeaturesProcess extends PostProcessor
                 location.addDataSets(dataSet);
 
                 intron.setChromosomeLocation(location);
-                osw.store(location);
+                writer.store(location);
 
                 int length = location.getEnd().intValue() - location.getStart().intValue() + 1;
                 intron.setLength(new Integer(length));
-                addToIntronTranscripts(intron, transcript);
-                intronMap.put(identifier, intron);
+                addToIntronTranscripts(transcriptsByIntron, intron, transcript);
+                introns.put(identifier, intron);
             } else {
-                SequenceFeature intron = intronMap.get(identifier);
-                addToIntronTranscripts(intron, transcript);
-                intronMap.put(identifier, intron);
+                SequenceFeature intron = introns.get(identifier);
+                addToIntronTranscripts(transcriptsByIntron, intron, transcript);
+                introns.put(identifier, intron);
             }
         }
         return intronCount;
     }
 
-    private void addToIntronTranscripts(SequenceFeature intron, SequenceFeature transcript) {
-        Set<SequenceFeature> transcripts = intronTranscripts.get(intron);
+    private static void addToIntronTranscripts(
+            Map<SequenceFeature, Set<SequenceFeature>> transcriptsByIntron,
+            SequenceFeature intron, SequenceFeature transcript) {
+        Set<SequenceFeature> transcripts = transcriptsByIntron.get(intron);
         if (transcripts == null) {
             transcripts = new HashSet<SequenceFeature>();
-            intronTranscripts.put(intron, transcripts);
+            transcriptsByIntron.put(intron, transcripts);
         }
         transcripts.add(transcript);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getReads() {
+        return new HashSet<String>(Arrays.asList("Transcript", "Exon", "Gene", "Location",
+                "Chromosome", "Organism", "DataSet", "DataSource"));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getWrites() {
+        return new HashSet<String>(Arrays.asList("Intron", "Location", "Transcript", "Gene",
+                "DataSet", "DataSource"));
+    }
 }
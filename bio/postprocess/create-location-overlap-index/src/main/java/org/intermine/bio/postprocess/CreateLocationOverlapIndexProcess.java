@@ -14,6 +14,8 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collections;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.intermine.objectstore.ObjectStoreWriter;
@@ -112,4 +114,20 @@ public class CreateLocationOverlapIndexProcess extends PostProcessor
         statement.close();
         return hasIndex;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getReads() {
+        return Collections.singleton("Location");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getWrites() {
+        return Collections.emptySet();
+    }
 }
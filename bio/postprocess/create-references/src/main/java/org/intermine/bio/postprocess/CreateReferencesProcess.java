@@ -10,6 +10,7 @@ package org.intermine.bio.postprocess;
  *
  */
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -369,4 +370,22 @@ public class CreateReferencesProcess extends PostProcessor
             }
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getReads() {
+        return new HashSet<String>(Arrays.asList("ChromosomeBand", "Location", "Chromosome",
+                "Gene", "Transcript", "Exon", "UTR", "CDS"));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getWrites() {
+        return new HashSet<String>(Arrays.asList("Chromosome", "ChromosomeBand", "Exon", "UTR",
+                "CDS"));
+    }
 }
@@ -11,9 +11,11 @@ package org.intermine.bio.postprocess;
  */
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import org.apache.tools.ant.BuildException;
 import org.intermine.api.config.ClassKeyHelper;
 import org.intermine.metadata.FieldDescriptor;
@@ -65,4 +67,20 @@ public class CreateSearchIndexProcess extends PostProcessor
         }
 
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getReads() {
+        return Collections.singleton("InterMineObject");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getWrites() {
+        return Collections.emptySet();
+    }
 }
@@ -15,8 +15,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.intermine.bio.util.ChromosomePartitioner;
 import org.intermine.bio.util.Constants;
 import org.intermine.bio.util.PostProcessUtil;
 import org.intermine.metadata.MetaDataException;
@@ -28,14 +32,17 @@ import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.ObjectStoreWriter;
 import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.query.BagConstraint;
 import org.intermine.objectstore.query.ConstraintSet;
 import org.intermine.objectstore.query.ContainsConstraint;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
 import org.intermine.objectstore.query.QueryCollectionReference;
+import org.intermine.objectstore.query.QueryField;
 import org.intermine.objectstore.query.QueryObjectReference;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.objectstore.query.SubqueryConstraint;
 import org.intermine.objectstore.query.iql.IqlQuery;
 import org.intermine.util.DynamicUtil;
 import org.intermine.postprocess.PostProcessor;
@@ -52,6 +59,7 @@ public class MakeSpanningLocationsProcess extends PostProcessor
 {
     Model model = Model.getInstanceByName("genomic");
     protected ObjectStore os;
+    private int threads = 1;
 
     /**
      * Create a new instance
@@ -62,6 +70,16 @@ public class MakeSpanningLocationsProcess extends PostProcessor
         super(osw);
     }
 
+    /**
+     * Set the number of threads to create locations with.  Chromosomes are shared out between
+     * the threads, each of which stores its locations with its own ObjectStoreWriter.  Locations
+     * on objects other than chromosomes are created afterwards.
+     * @param threads the number of threads, 1 by default
+     */
+    public void setChromosomeThreads(String threads) {
+        this.threads = Integer.parseInt(threads.trim());
+    }
+
     /**
      * {@inheritDoc}
      * <br/>
@@ -98,8 +116,8 @@ public class MakeSpanningLocationsProcess extends PostProcessor
             return;
         }
 
-        Class<?> parentClass = model.getClassDescriptorByName(parentClsName).getType();
-        Class<?> childClass = model.getClassDescriptorByName(childClsName).getType();
+        final Class<?> parentClass = model.getClassDescriptorByName(parentClsName).getType();
+        final Class<?> childClass = model.getClassDescriptorByName(childClsName).getType();
 
         Query parentIdQuery =
                 new IqlQuery("SELECT DISTINCT a1_.id as id FROM "
@@ -111,7 +129,7 @@ public class MakeSpanningLocationsProcess extends PostProcessor
             os = osw.getObjectStore();
         }
         Results parentIdResults = os.execute(parentIdQuery);
-        Set<Object> locatedParents = new HashSet<Object>();
+        final Set<Object> locatedParents = new HashSet<Object>();
         Iterator<?> parentIdIter = parentIdResults.iterator();
 
         while (parentIdIter.hasNext()) {
@@ -119,7 +137,29 @@ public class MakeSpanningLocationsProcess extends PostProcessor
             locatedParents.add(parentId);
         }
 
-        Iterator<?> resIter = findCollections(os, parentClass, childClass, refField);
+        final AtomicBoolean partitioned = new AtomicBoolean(false);
+        new ChromosomePartitioner(osw, threads).run(new ChromosomePartitioner.Worker() {
+            @Override
+            public void process(ObjectStoreWriter writer, List<Integer> chromosomeIds)
+                throws ObjectStoreException {
+                if (chromosomeIds != null) {
+                    partitioned.set(true);
+                }
+                createSpanningLocations(writer, findCollections(os, parentClass, childClass,
+                        refField, chromosomeIds, false), locatedParents);
+            }
+        });
+        if (partitioned.get()) {
+            // the workers only created locations on chromosomes
+            osw.beginTransaction();
+            createSpanningLocations(osw, findCollections(os, parentClass, childClass, refField,
+                    null, true), locatedParents);
+            osw.commitTransaction();
+        }
+    }
+
+    private void createSpanningLocations(ObjectStoreWriter writer, Iterator<?> resIter,
+            Set<Object> locatedParents) throws ObjectStoreException {
 
         // Map of location.objects to Maps from parent objects to a to their (new) start and end
         // positions.  eg.  Chromosome10 -> Exon1 -> SimpleLoc {start -> 2111, end -> 2999}
@@ -174,7 +214,6 @@ public class MakeSpanningLocationsProcess extends PostProcessor
             // sure all exons are on the same strand)
         }
 
-        osw.beginTransaction();
         // make new locations and store them
         Iterator<?> locatedOnObjectIterator = locatedOnObjectMap.keySet().iterator();
         while (locatedOnObjectIterator.hasNext()) {
@@ -197,19 +236,19 @@ public class MakeSpanningLocationsProcess extends PostProcessor
                 newLocation.setFeature(parentObject);
                 newLocation.setLocatedOn(locatedOnObject);
 
-                osw.store(newLocation);
+                writer.store(newLocation);
             }
         }
-        osw.commitTransaction();
     }
 
     /**
      * Query a class like Transcript that refers to a collection of located classes (like Exon) and
-     * return an Results object containing Transcript, Exon, Exon location and location.object
+     * return an Results object containing Transcript, Exon, Exon location and location.object,
+     * optionally only for locations on some chromosomes or only for locations not on chromosomes
      */
     private static Iterator<?> findCollections(ObjectStore os, Class<?> parentClass,
-                                               Class<?> childClass, String refField)
-            throws ObjectStoreException {
+            Class<?> childClass, String refField, List<Integer> chromosomeIds,
+            boolean notOnChromosomes) throws ObjectStoreException {
 
         Query q = new Query();
         q.setDistinct(false);
@@ -242,6 +281,19 @@ public class MakeSpanningLocationsProcess extends PostProcessor
         ContainsConstraint cc3 = new ContainsConstraint(ref3, ConstraintOp.CONTAINS, qcChild);
         cs.addConstraint(cc3);
 
+        if (chromosomeIds != null) {
+            QueryField qfLocObjectId = new QueryField(qcLocObject, "id");
+            cs.addConstraint(new BagConstraint(qfLocObjectId, ConstraintOp.IN, chromosomeIds));
+        }
+        if (notOnChromosomes) {
+            Query chrQuery = new Query();
+            QueryClass qcChr = new QueryClass(os.getModel().getClassDescriptorByName("Chromosome")
+                    .getType());
+            chrQuery.addFrom(qcChr);
+            chrQuery.addToSelect(qcChr);
+            cs.addConstraint(new SubqueryConstraint(qcLocObject, ConstraintOp.NOT_IN, chrQuery));
+        }
+
         q.setConstraint(cs);
 
         ((ObjectStoreInterMineImpl) os).precompute(q,
@@ -10,7 +10,9 @@ package org.intermine.bio.postprocess;
  *
  */
 
+import java.util.Collections;
 import java.util.Properties;
+import java.util.Set;
 import org.intermine.modelproduction.MetadataManager;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreSummary;
@@ -70,4 +72,20 @@ public class SummariseObjectstoreProcess extends PostProcessor
             throw new BuildException("Could not find the class keys " + e);
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getReads() {
+        return Collections.singleton("InterMineObject");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getWrites() {
+        return Collections.emptySet();
+    }
 }
@@ -10,7 +10,10 @@ package org.intermine.bio.postprocess;
  *
  */
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -102,6 +105,24 @@ public class TransferSequencesProcess extends PostProcessor
         osw.store(feature);
     }
 
+    /**
+     * Join sequences into a new PendingClob, copying each of them only once.
+     *
+     * @param parts the sequences, in order
+     * @return the joined sequence
+     */
+    private static PendingClob concatenate(Deque<ClobAccess> parts) {
+        int length = 0;
+        for (ClobAccess part : parts) {
+            length += part.length();
+        }
+        StringBuilder bases = new StringBuilder(length);
+        for (ClobAccess part : parts) {
+            bases.append(part.toCharArray());
+        }
+        return new PendingClob(bases.toString());
+    }
+
     /**
      * Use the Location relations to copy the sequence from the Chromosomes to every
      * SequenceFeature that is located on a Chromosome and which doesn't already have a
@@ -435,7 +456,7 @@ public class TransferSequencesProcess extends PostProcessor
         Iterator<?> resIter = res.iterator();
 
         SequenceFeature currentTranscript = null;
-        StringBuffer currentTranscriptBases = new StringBuffer();
+        Deque<ClobAccess> currentTranscriptBases = new ArrayDeque<ClobAccess>();
 
         long start = System.currentTimeMillis();
         int i = 0;
@@ -446,8 +467,7 @@ public class TransferSequencesProcess extends PostProcessor
             if (currentTranscript == null || !transcript.equals(currentTranscript)) {
                 if (currentTranscript != null) {
                     // copy sequence to transcript
-                    storeNewSequence(currentTranscript,
-                            new PendingClob(currentTranscriptBases.toString()));
+                    storeNewSequence(currentTranscript, concatenate(currentTranscriptBases));
                     i++;
                     if (i % 100 == 0) {
                         long now = System.currentTimeMillis();
@@ -455,7 +475,7 @@ public class TransferSequencesProcess extends PostProcessor
                                 + " (avg = " + ((60000L * i) / (now - start)) + " per minute)");
                     }
                 }
-                currentTranscriptBases = new StringBuffer();
+                currentTranscriptBases = new ArrayDeque<ClobAccess>();
                 currentTranscript = transcript;
             }
 
@@ -464,15 +484,15 @@ public class TransferSequencesProcess extends PostProcessor
 
             // add exon
             if (location.getStrand() != null && "-1".equals(location.getStrand())) {
-                currentTranscriptBases.insert(0, exonSequence.getResidues().toString());
+                currentTranscriptBases.addFirst(exonSequence.getResidues());
             } else {
-                currentTranscriptBases.append(exonSequence.getResidues().toString());
+                currentTranscriptBases.addLast(exonSequence.getResidues());
             }
         }
         if (currentTranscript == null) {
             LOG.error("in transferToTranscripts(): no Transcripts found");
         } else {
-            storeNewSequence(currentTranscript, new PendingClob(currentTranscriptBases.toString()));
+            storeNewSequence(currentTranscript, concatenate(currentTranscriptBases));
         }
 
         LOG.info("Finished setting " + i + " Trascript sequences - took "
@@ -505,7 +525,7 @@ public class TransferSequencesProcess extends PostProcessor
         Iterator<?> resIter = res.iterator();
 
         SequenceFeature currentCDS = null;
-        StringBuffer currentCDSBases = new StringBuffer();
+        Deque<ClobAccess> currentCDSBases = new ArrayDeque<ClobAccess>();
         Sequence chromosomeSequence = chr.getSequence();
 
         long start = System.currentTimeMillis();
@@ -518,7 +538,7 @@ public class TransferSequencesProcess extends PostProcessor
             if (currentCDS == null || !cds.equals(currentCDS)) {
                 if (currentCDS != null) {
                     // copy sequence to CDS
-                    storeNewSequence(currentCDS, new PendingClob(currentCDSBases.toString()));
+                    storeNewSequence(currentCDS, concatenate(currentCDSBases));
                     i++;
                     if (i % 100 == 0) {
                         long now = System.currentTimeMillis();
@@ -527,7 +547,7 @@ public class TransferSequencesProcess extends PostProcessor
                     }
                 }
                 // reset for current CDS
-                currentCDSBases = new StringBuffer();
+                currentCDSBases = new ArrayDeque<ClobAccess>();
                 currentCDS = cds;
             }
 
@@ -536,15 +556,15 @@ public class TransferSequencesProcess extends PostProcessor
             // add CDS
             ClobAccess clob = getSubSequence(chromosomeSequence, location);
             if (location.getStrand() != null && "-1".equals(location.getStrand())) {
-                currentCDSBases.insert(0, clob.toString());
+                currentCDSBases.addFirst(clob);
             } else {
-                currentCDSBases.append(clob.toString());
+                currentCDSBases.addLast(clob);
             }
         }
         if (currentCDS == null) {
             LOG.error("in transferToCDSs(): no CDSs found");
         } else {
-            storeNewSequence(currentCDS, new PendingClob(currentCDSBases.toString()));
+            storeNewSequence(currentCDS, concatenate(currentCDSBases));
         }
 
         LOG.info("Finished setting " + i + " CDS sequences - took "
@@ -606,4 +626,21 @@ public class TransferSequencesProcess extends PostProcessor
         q.setConstraint(cs);
         return q;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getReads() {
+        return new HashSet<String>(Arrays.asList("Chromosome", "Location", "SequenceFeature",
+                "Sequence"));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getWrites() {
+        return new HashSet<String>(Arrays.asList("SequenceFeature", "Sequence"));
+    }
 }
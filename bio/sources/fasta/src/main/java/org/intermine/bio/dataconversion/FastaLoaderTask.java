@@ -10,14 +10,25 @@ package org.intermine.bio.dataconversion;
  *
  */
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -25,12 +36,15 @@ import org.apache.tools.ant.BuildException;
 import org.biojava.nbio.core.exceptions.ParserException;
 import org.biojava.nbio.core.sequence.DNASequence;
 import org.biojava.nbio.core.sequence.ProteinSequence;
+import org.biojava.nbio.core.sequence.compound.AminoAcidCompound;
+import org.biojava.nbio.core.sequence.compound.AminoAcidCompoundSet;
 import org.biojava.nbio.core.sequence.compound.AmbiguityDNACompoundSet;
 import org.biojava.nbio.core.sequence.compound.NucleotideCompound;
 import org.biojava.nbio.core.sequence.io.DNASequenceCreator;
 import org.biojava.nbio.core.sequence.io.FastaReader;
-import org.biojava.nbio.core.sequence.io.FastaReaderHelper;
+import org.biojava.nbio.core.sequence.io.GenericFastaHeaderParser;
 import org.biojava.nbio.core.sequence.io.PlainFastaHeaderParser;
+import org.biojava.nbio.core.sequence.io.ProteinSequenceCreator;
 import org.biojava.nbio.core.sequence.template.Sequence;
 import org.intermine.bio.util.OrganismData;
 import org.intermine.bio.util.OrganismRepository;
@@ -56,11 +70,17 @@ import org.intermine.task.FileDirectDataLoaderTask;
 public class FastaLoaderTask extends FileDirectDataLoaderTask
 {
     private static final Logger LOG = Logger.getLogger(FastaLoaderTask.class);
+    // files are parsed in blocks of SEQUENCE_BATCH_SIZE sequences or MAX_BLOCK_LENGTH characters
+    private static final int SEQUENCE_BATCH_SIZE = 1000;
+    private static final int MAX_BLOCK_LENGTH = 16 * 1024 * 1024;
+    private static final int DEFAULT_PARSER_THREADS = 4;
 
     private String sequenceType = "dna";
+    private int parserThreads = DEFAULT_PARSER_THREADS;
     private String classAttribute = "primaryIdentifier";
     private Organism org;
     private String className;
+    private Class<? extends InterMineObject> imClass = null;
     private int storeCount = 0;
     private String dataSourceName = null;
     private DataSource dataSource = null;
@@ -160,6 +180,19 @@ public class FastaLoaderTask extends FileDirectDataLoaderTask
         this.licence = licence;
     }
 
+    /**
+     * Set the number of threads to parse the FASTA files with, the default is 4.
+     *
+     * @param parserThreads the number of parsing threads
+     */
+    public void setParserThreads(String parserThreads) {
+        int threads = Integer.parseInt(parserThreads.trim());
+        if (threads < 1) {
+            throw new BuildException("parserThreads must be at least 1, not " + threads);
+        }
+        this.parserThreads = threads;
+    }
+
     /**
      * Directly set the array of files to read from.  Use this for testing with junit.
      * @param files the File objects
@@ -234,28 +267,42 @@ public class FastaLoaderTask extends FileDirectDataLoaderTask
      */
     @Override
     public void processFile(File file) {
+        ExecutorService pool = Executors.newFixedThreadPool(parserThreads);
+        BufferedReader reader = null;
         try {
             System.err .println("reading " + sequenceType + " sequence from: " + file);
             LOG.debug("FastaLoaderTask loading file " + file.getName());
-            if ("dna".equalsIgnoreCase(sequenceType)) {
-                FastaReader<DNASequence, NucleotideCompound> aFastaReader
-                        = new FastaReader<DNASequence, NucleotideCompound>(file,
-                        new PlainFastaHeaderParser<DNASequence, NucleotideCompound>(),
-                        new DNASequenceCreator(AmbiguityDNACompoundSet.getDNACompoundSet()));
-
-                LinkedHashMap<String, DNASequence> b = aFastaReader.process();
-                for (Entry<String, DNASequence> entry : b.entrySet()) {
-                    Sequence bioJavaSequence = entry.getValue();
-                    processSequence(getOrganism(bioJavaSequence), bioJavaSequence);
-                }
-            } else {
-                LinkedHashMap<String, ProteinSequence> b =
-                        FastaReaderHelper.readFastaProteinSequence(file);
-                for (Entry<String, ProteinSequence> entry : b.entrySet()) {
-                    Sequence bioJavaSequence = entry.getValue();
-                    processSequence(getOrganism((ProteinSequence) bioJavaSequence),
-                            bioJavaSequence);
+            // Split the file into blocks of whole FASTA records and parse the blocks in parallel,
+            // processing the parsed sequences in file order as the blocks complete.
+            LinkedList<Future<Collection<? extends Sequence<?>>>> blocks =
+                new LinkedList<Future<Collection<? extends Sequence<?>>>>();
+            // ISO-8859-1 maps every byte to one char and back, so the blocks handed to BioJava
+            // are byte for byte what is in the file
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                    StandardCharsets.ISO_8859_1));
+            StringBuilder block = new StringBuilder();
+            int blockSequences = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(">")) {
+                    if (blockSequences >= SEQUENCE_BATCH_SIZE
+                            || block.length() >= MAX_BLOCK_LENGTH) {
+                        blocks.add(pool.submit(new BlockParser(block.toString())));
+                        block = new StringBuilder();
+                        blockSequences = 0;
+                        while (blocks.size() > parserThreads * 2) {
+                            processSequences(blocks.removeFirst());
+                        }
+                    }
+                    blockSequences++;
                 }
+                block.append(line).append('\n');
+            }
+            if (blockSequences > 0) {
+                blocks.add(pool.submit(new BlockParser(block.toString())));
+            }
+            while (!blocks.isEmpty()) {
+                processSequences(blocks.removeFirst());
             }
         } catch (ParserException e) {
             throw new BuildException("sequence not in fasta format or wrong alphabet for: "
@@ -267,7 +314,76 @@ public class FastaLoaderTask extends FileDirectDataLoaderTask
         } catch (ObjectStoreException e) {
             throw new BuildException("ObjectStore problem while processing: " + file, e);
         } catch (IOException e) {
-            throw new BuildException("error while closing FileReader for: " + file, e);
+            throw new BuildException("error while reading: " + file, e);
+        } catch (InterruptedException e) {
+            throw new BuildException("interrupted while parsing: " + file, e);
+        } finally {
+            pool.shutdownNow();
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    LOG.warn("Failed to close " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for a block to be parsed and then process its sequences in order.
+     */
+    private void processSequences(Future<Collection<? extends Sequence<?>>> block)
+        throws ObjectStoreException, IOException, InterruptedException {
+        Collection<? extends Sequence<?>> sequences;
+        try {
+            sequences = block.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("error parsing FASTA", cause);
+        }
+        for (Sequence<?> bioJavaSequence : sequences) {
+            if ("dna".equalsIgnoreCase(sequenceType)) {
+                processSequence(getOrganism(bioJavaSequence), bioJavaSequence);
+            } else {
+                processSequence(getOrganism((ProteinSequence) bioJavaSequence), bioJavaSequence);
+            }
+        }
+    }
+
+    /**
+     * Parses a block of FASTA records with BioJava.
+     */
+    private class BlockParser implements Callable<Collection<? extends Sequence<?>>>
+    {
+        private final String block;
+
+        BlockParser(String block) {
+            this.block = block;
+        }
+
+        @Override
+        public Collection<? extends Sequence<?>> call() throws IOException {
+            InputStream is = new ByteArrayInputStream(
+                    block.getBytes(StandardCharsets.ISO_8859_1));
+            if ("dna".equalsIgnoreCase(sequenceType)) {
+                FastaReader<DNASequence, NucleotideCompound> aFastaReader
+                    = new FastaReader<DNASequence, NucleotideCompound>(is,
+                        new PlainFastaHeaderParser<DNASequence, NucleotideCompound>(),
+                        new DNASequenceCreator(AmbiguityDNACompoundSet.getDNACompoundSet()));
+                return aFastaReader.process().values();
+            } else {
+                FastaReader<ProteinSequence, AminoAcidCompound> aFastaReader
+                    = new FastaReader<ProteinSequence, AminoAcidCompound>(is,
+                        new GenericFastaHeaderParser<ProteinSequence, AminoAcidCompound>(),
+                        new ProteinSequenceCreator(
+                                AminoAcidCompoundSet.getAminoAcidCompoundSet()));
+                return aFastaReader.process().values();
+            }
         }
     }
 
@@ -310,21 +426,7 @@ public class FastaLoaderTask extends FileDirectDataLoaderTask
         flymineSequence.setLength(bioJavaSequence.getLength());
         flymineSequence.setMd5checksum(md5checksum);
 
-        Class<? extends InterMineObject> imClass;
-        Class<?> c;
-        try {
-            c = Class.forName(className);
-            if (InterMineObject.class.isAssignableFrom(c)) {
-                imClass = (Class<? extends InterMineObject>) c;
-            } else {
-                throw new RuntimeException("Feature className must be a valid class in the model"
-                        + " that inherits from InterMineObject, but was: " + className);
-            }
-        } catch (ClassNotFoundException e1) {
-            throw new RuntimeException("unknown class: " + className
-                    + " while creating new Sequence object");
-        }
-        BioEntity imo = (BioEntity) getDirectDataLoader().createObject(imClass);
+        BioEntity imo = (BioEntity) getDirectDataLoader().createObject(getFeatureClass());
 
         String attributeValue = getIdentifier(bioJavaSequence);
         try {
@@ -371,6 +473,31 @@ public class FastaLoaderTask extends FileDirectDataLoaderTask
         }
     }
 
+    /**
+     * Return the class to create features with, looking it up only the first time.
+     * @return the class named by className
+     */
+    @SuppressWarnings("unchecked")
+    private Class<? extends InterMineObject> getFeatureClass() {
+        if (imClass == null) {
+            Class<?> c;
+            try {
+                c = Class.forName(className);
+                if (InterMineObject.class.isAssignableFrom(c)) {
+                    imClass = (Class<? extends InterMineObject>) c;
+                } else {
+                    throw new RuntimeException("Feature className must be a valid class in the"
+                            + " model that inherits from InterMineObject, but was: "
+                            + className);
+                }
+            } catch (ClassNotFoundException e1) {
+                throw new RuntimeException("unknown class: " + className
+                        + " while creating new Sequence object");
+            }
+        }
+        return imClass;
+    }
+
     /**
      * Return the DataSet to add to each object.
      * @return the DataSet
@@ -49,10 +49,15 @@ public class VcfLoaderTask extends FileDirectDataLoaderTask
     private DataSet dataset = null;
     private DataSource datasource = null;
     private Map<String, ProxyReference> chromosomes = new HashMap<String, ProxyReference>();
+    private Map<String, Class<? extends InterMineObject>> classes =
+        new HashMap<String, Class<? extends InterMineObject>>();
 
     //Set this if we want to do some testing...
     private File[] files = null;
     private static final String NAMESPACE = "org.intermine.model.bio";
+    // the DirectDataLoader stores objects (a feature and a Location per record), and queries
+    // their primary keys, in batches of this size
+    private static final int BATCH_SIZE = 20000;
 
 
     /**
@@ -135,11 +140,13 @@ public class VcfLoaderTask extends FileDirectDataLoaderTask
             fileReader = new FileReader(file);
             BufferedReader reader = new BufferedReader(fileReader);
 
+            getDirectDataLoader().setBatchSize(BATCH_SIZE);
             Iterator lineIter = FormattedTextParser.parseTabDelimitedReader(reader);
             while (lineIter.hasNext()) {
                 String[] line = (String[]) lineIter.next();
                 processRecord(line);
             }
+            reader.close();
         } catch (FileNotFoundException e) {
             throw new BuildException("problem reading file - file not found: " + file, e);
         } catch (IOException e) {
@@ -177,21 +184,7 @@ public class VcfLoaderTask extends FileDirectDataLoaderTask
             }
         }
 
-        String className =  TypeUtil.generateClassName(NAMESPACE, type);
-        Class<? extends InterMineObject> imClass;
-        Class<?> c;
-        try {
-            c = Class.forName(className);
-            if (InterMineObject.class.isAssignableFrom(c)) {
-                imClass = (Class<? extends InterMineObject>) c;
-            } else {
-                throw new RuntimeException("Feature className must be a valid class in the "
-                        + "model that inherits from InterMineObject, but was: " + className);
-            }
-        } catch (ClassNotFoundException e1) {
-            throw new BuildException("unknown class: " + className
-                    + " while creating new SequenceAlteration object");
-        }
+        Class<? extends InterMineObject> imClass = getFeatureClass(type);
         SequenceAlteration snp
             = (SequenceAlteration) getDirectDataLoader().createObject(imClass);
 
@@ -215,6 +208,29 @@ public class VcfLoaderTask extends FileDirectDataLoaderTask
         getDirectDataLoader().store(snp);
     }
 
+    @SuppressWarnings("unchecked")
+    private Class<? extends InterMineObject> getFeatureClass(String type) {
+        Class<? extends InterMineObject> imClass = classes.get(type);
+        if (imClass == null) {
+            String className =  TypeUtil.generateClassName(NAMESPACE, type);
+            Class<?> c;
+            try {
+                c = Class.forName(className);
+                if (InterMineObject.class.isAssignableFrom(c)) {
+                    imClass = (Class<? extends InterMineObject>) c;
+                } else {
+                    throw new RuntimeException("Feature className must be a valid class in the "
+                            + "model that inherits from InterMineObject, but was: " + className);
+                }
+            } catch (ClassNotFoundException e1) {
+                throw new BuildException("unknown class: " + className
+                        + " while creating new SequenceAlteration object");
+            }
+            classes.put(type, imClass);
+        }
+        return imClass;
+    }
+
     private ProxyReference getChromosome(String identifier) throws ObjectStoreException {
         ProxyReference chromosomeRef = chromosomes.get(identifier);
         if (chromosomeRef == null) {
@@ -237,7 +253,7 @@ public class VcfLoaderTask extends FileDirectDataLoaderTask
         final int length = 1;
         Location location = getDirectDataLoader().createObject(
                 org.intermine.model.bio.Location.class);
-        int start = new Integer(pos);
+        int start = Integer.parseInt(pos);
         int end = start + length;
         if (start < end) {
             location.setStart(start);
@@ -0,0 +1,465 @@
+package org.intermine.bio.web.logic;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.intermine.api.InterMineAPI;
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.model.bio.Chromosome;
+import org.intermine.model.bio.Location;
+import org.intermine.model.bio.Organism;
+import org.intermine.model.bio.SequenceFeature;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.ContainsConstraint;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryObjectReference;
+import org.intermine.objectstore.query.Results;
+import org.intermine.objectstore.query.ResultsRow;
+
+/**
+ * An in-memory index of the locations of sequence features on chromosomes, used to answer
+ * genomic region searches without running an overlap query for every region.
+ *
+ * <p>
+ * The locations of each chromosome are held in arrays sorted by start, laid out as an implicit
+ * augmented interval tree: the middle element of every run of 2^(k+1) - 1 locations records the
+ * greatest end in that run, so the locations overlapping a region are found in O(log n + k)
+ * time without any per-node objects.
+ * </p>
+ *
+ * <p>
+ * The index is enabled with the web property <code>genomicRegionSearch.intervalIndex</code>.
+ * It is loaded with a single query in a background thread the first time it is asked for, and
+ * loaded again when <code>project.releaseVersion</code> changes. Until it is ready callers should
+ * fall back to running queries.
+ * </p>
+ */
+public final class GenomicRegionIndex
+{
+    /** The web property that enables the index. */
+    public static final String ENABLED_PROPERTY = "genomicRegionSearch.intervalIndex";
+
+    private static final Logger LOG = Logger.getLogger(GenomicRegionIndex.class);
+    private static final String RELEASE_PROPERTY = "project.releaseVersion";
+
+    private static GenomicRegionIndex current = null;
+    private static String loading = null;
+    private static String failed = null;
+
+    // organism short name -> chromosome primaryIdentifier -> locations
+    private final Map<String, Map<String, Intervals>> intervals;
+    private String key = null;
+
+    private GenomicRegionIndex(Map<String, Map<String, Intervals>> intervals) {
+        this.intervals = intervals;
+    }
+
+    /**
+     * Returns the index for the current release, starting to load it if it is enabled and has
+     * not been loaded yet.
+     *
+     * @param im the InterMineAPI
+     * @param webProperties the web properties
+     * @return the index, or null if it is disabled or not loaded yet
+     */
+    public static synchronized GenomicRegionIndex getIndex(final InterMineAPI im,
+            Properties webProperties) {
+        if (!"true".equalsIgnoreCase(webProperties.getProperty(ENABLED_PROPERTY))) {
+            return null;
+        }
+        final ObjectStore os = im.getObjectStore();
+        final String release = os + "/" + webProperties.getProperty(RELEASE_PROPERTY);
+        if (current != null && release.equals(current.key)) {
+            return current;
+        }
+        if (loading == null && !release.equals(failed)) {
+            loading = release;
+            Thread loader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long startTime = System.currentTimeMillis();
+                    GenomicRegionIndex index = null;
+                    try {
+                        index = load(os,
+                                GenomicRegionSearchService.DEFAULT_REGION_INIT_BATCH_SIZE);
+                        index.key = release;
+                        LOG.info("Loaded genomic region index in "
+                                + (System.currentTimeMillis() - startTime) + " ms");
+                    } catch (RuntimeException e) {
+                        LOG.error("Failed to load genomic region index", e);
+                    } finally {
+                        loaded(index, release);
+                    }
+                }
+            }, "GenomicRegionIndex loader");
+            loader.setDaemon(true);
+            loader.start();
+        }
+        return null;
+    }
+
+    private static synchronized void loaded(GenomicRegionIndex index, String release) {
+        loading = null;
+        if (index == null) {
+            failed = release;
+        } else {
+            current = index;
+        }
+    }
+
+    /**
+     * Loads the locations of all sequence features on chromosomes.
+     *
+     * @param os the ObjectStore to read from
+     * @param batchSize the query batch size to use
+     * @return a new index
+     */
+    public static GenomicRegionIndex load(ObjectStore os, int batchSize) {
+        Query q = new Query();
+        QueryClass qcOrg = new QueryClass(Organism.class);
+        QueryClass qcChr = new QueryClass(Chromosome.class);
+        QueryClass qcFeature = new QueryClass(SequenceFeature.class);
+        QueryClass qcLoc = new QueryClass(Location.class);
+        q.addFrom(qcLoc);
+        q.addFrom(qcFeature);
+        q.addFrom(qcChr);
+        q.addFrom(qcOrg);
+        q.addToSelect(new QueryField(qcOrg, "shortName"));
+        q.addToSelect(new QueryField(qcChr, "primaryIdentifier"));
+        q.addToSelect(new QueryField(qcLoc, "start"));
+        q.addToSelect(new QueryField(qcLoc, "end"));
+        q.addToSelect(new QueryField(qcLoc, "strand"));
+        q.addToSelect(new QueryField(qcLoc, "id"));
+        q.addToSelect(new QueryField(qcFeature, "id"));
+        q.addToSelect(new QueryField(qcFeature, "class"));
+
+        ConstraintSet constraints = new ConstraintSet(ConstraintOp.AND);
+        constraints.addConstraint(new ContainsConstraint(new QueryObjectReference(qcFeature,
+                "organism"), ConstraintOp.CONTAINS, qcOrg));
+        constraints.addConstraint(new ContainsConstraint(new QueryObjectReference(qcLoc,
+                "feature"), ConstraintOp.CONTAINS, qcFeature));
+        constraints.addConstraint(new ContainsConstraint(new QueryObjectReference(qcLoc,
+                "locatedOn"), ConstraintOp.CONTAINS, qcChr));
+        q.setConstraint(constraints);
+
+        Builder builder = new Builder();
+        Results results = os.execute(q, batchSize, true, false, false);
+        for (Iterator<?> iter = results.iterator(); iter.hasNext();) {
+            ResultsRow<?> row = (ResultsRow<?>) iter.next();
+            Integer start = (Integer) row.get(2);
+            Integer end = (Integer) row.get(3);
+            if (start == null || end == null) {
+                continue;
+            }
+            builder.add((String) row.get(0), (String) row.get(1), start.intValue(),
+                    end.intValue(), (String) row.get(4), ((Integer) row.get(5)).intValue(),
+                    ((Integer) row.get(6)).intValue(), (Class<?>) row.get(7));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Finds the features with a location that overlaps a region.
+     *
+     * @param organismName the short name of the organism
+     * @param chr the primaryIdentifier of the chromosome
+     * @param start the start of the region
+     * @param end the end of the region
+     * @param featureTypes the classes of feature to find
+     * @param strand "1" or "-1" to find only locations on that strand, or null for both
+     * @return the ids of the features, in order of the start of the location
+     */
+    public List<Integer> findFeatureIds(String organismName, String chr, int start, int end,
+            Set<Class<?>> featureTypes, String strand) {
+        return find(organismName, chr, start, end, featureTypes, strand, false);
+    }
+
+    /**
+     * Finds the locations that overlap a region.
+     *
+     * @param organismName the short name of the organism
+     * @param chr the primaryIdentifier of the chromosome
+     * @param start the start of the region
+     * @param end the end of the region
+     * @param featureTypes the classes of feature to find
+     * @param strand "1" or "-1" to find only locations on that strand, or null for both
+     * @return the ids of the locations, in order of start
+     */
+    public List<Integer> findLocationIds(String organismName, String chr, int start, int end,
+            Set<Class<?>> featureTypes, String strand) {
+        return find(organismName, chr, start, end, featureTypes, strand, true);
+    }
+
+    private List<Integer> find(String organismName, String chr, int start, int end,
+            Set<Class<?>> featureTypes, String strand, boolean locationIds) {
+        Map<String, Intervals> chromosomes = intervals.get(organismName);
+        Intervals chrIntervals = (chromosomes == null) ? null : chromosomes.get(chr);
+        if (chrIntervals == null) {
+            return Collections.emptyList();
+        }
+        return chrIntervals.find(start, end, featureTypes,
+                (strand == null) ? null : Byte.valueOf(parseStrand(strand)), locationIds);
+    }
+
+    private static byte parseStrand(String strand) {
+        if ("1".equals(strand) || "+1".equals(strand)) {
+            return 1;
+        }
+        if ("-1".equals(strand)) {
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Collects locations and builds an index from them.
+     */
+    static final class Builder
+    {
+        private final Map<String, Map<String, Intervals.Builder>> builders
+            = new HashMap<String, Map<String, Intervals.Builder>>();
+
+        /**
+         * Add a location.
+         *
+         * @param organismName the short name of the organism
+         * @param chr the primaryIdentifier of the chromosome
+         * @param start the start of the location
+         * @param end the end of the location
+         * @param strand the strand of the location
+         * @param locationId the id of the location
+         * @param featureId the id of the feature
+         * @param featureType the class of the feature
+         */
+        void add(String organismName, String chr, int start, int end, String strand,
+                int locationId, int featureId, Class<?> featureType) {
+            Map<String, Intervals.Builder> chromosomes = builders.get(organismName);
+            if (chromosomes == null) {
+                chromosomes = new HashMap<String, Intervals.Builder>();
+                builders.put(organismName, chromosomes);
+            }
+            Intervals.Builder builder = chromosomes.get(chr);
+            if (builder == null) {
+                builder = new Intervals.Builder();
+                chromosomes.put(chr, builder);
+            }
+            builder.add(Math.min(start, end), Math.max(start, end), parseStrand(strand),
+                    locationId, featureId, featureType);
+        }
+
+        /**
+         * @return a new index of the locations added
+         */
+        GenomicRegionIndex build() {
+            Map<String, Map<String, Intervals>> intervals
+                = new HashMap<String, Map<String, Intervals>>();
+            for (Map.Entry<String, Map<String, Intervals.Builder>> organism
+                    : builders.entrySet()) {
+                Map<String, Intervals> chromosomes = new HashMap<String, Intervals>();
+                for (Map.Entry<String, Intervals.Builder> chr : organism.getValue().entrySet()) {
+                    chromosomes.put(chr.getKey(), chr.getValue().build());
+                }
+                intervals.put(organism.getKey(), chromosomes);
+            }
+            builders.clear();
+            return new GenomicRegionIndex(intervals);
+        }
+    }
+
+    /**
+     * The locations on one chromosome, sorted by start.
+     */
+    private static final class Intervals
+    {
+        // the bottom levels of the tree are scanned rather than descended
+        private static final int SCAN_LEVEL = 3;
+
+        private final int size;
+        private final int[] starts;
+        private final int[] ends;
+        private final int[] maxEnds;
+        private final byte[] strands;
+        private final int[] locationIds;
+        private final int[] featureIds;
+        private final Class<?>[] featureTypes;
+        private final int maxLevel;
+
+        Intervals(int size, int[] starts, int[] ends, byte[] strands, int[] locationIds,
+                int[] featureIds, Class<?>[] featureTypes) {
+            this.size = size;
+            this.starts = starts;
+            this.ends = ends;
+            this.strands = strands;
+            this.locationIds = locationIds;
+            this.featureIds = featureIds;
+            this.featureTypes = featureTypes;
+            maxEnds = new int[size];
+            maxLevel = index();
+        }
+
+        // Fill in maxEnds, returning the level of the root. Leaves are at the even indexes and
+        // the node at level k has the lowest k bits set, so its children are k - 1 levels down
+        // at 2^(k-1) either side. A right child past the end stands for the rightmost nodes.
+        private int index() {
+            if (size == 0) {
+                return -1;
+            }
+            int lastIndex = 0;
+            int last = 0;
+            for (int i = 0; i < size; i += 2) {
+                lastIndex = i;
+                last = ends[i];
+                maxEnds[i] = last;
+            }
+            int k;
+            for (k = 1; (1L << k) <= size; k++) {
+                int x = 1 << (k - 1);
+                int step = x << 2;
+                for (int i = (x << 1) - 1; i < size; i += step) {
+                    int right = (i + x < size) ? maxEnds[i + x] : last;
+                    maxEnds[i] = Math.max(ends[i], Math.max(maxEnds[i - x], right));
+                }
+                lastIndex = (((lastIndex >> k) & 1) != 0) ? lastIndex - x : lastIndex + x;
+                if (lastIndex < size && maxEnds[lastIndex] > last) {
+                    last = maxEnds[lastIndex];
+                }
+            }
+            return k - 1;
+        }
+
+        List<Integer> find(int from, int to, Set<Class<?>> types, Byte strand,
+                boolean locations) {
+            List<Integer> retval = new ArrayList<Integer>();
+            if (size == 0) {
+                return retval;
+            }
+            // node, level, and whether the left child has been visited
+            int[] nodes = new int[2 * maxLevel + 4];
+            int[] levels = new int[nodes.length];
+            boolean[] visited = new boolean[nodes.length];
+            int top = 0;
+            nodes[top] = (1 << maxLevel) - 1;
+            levels[top] = maxLevel;
+            visited[top++] = false;
+            while (top > 0) {
+                top--;
+                int x = nodes[top];
+                int k = levels[top];
+                if (k <= SCAN_LEVEL) {
+                    int first = x >> k << k;
+                    int last = (int) Math.min(size, first + (1L << (k + 1)) - 1);
+                    for (int i = first; i < last && starts[i] <= to; i++) {
+                        if (ends[i] >= from) {
+                            add(retval, i, types, strand, locations);
+                        }
+                    }
+                } else if (!visited[top]) {
+                    int y = x - (1 << (k - 1));
+                    visited[top++] = true;
+                    if (y >= size || maxEnds[y] >= from) {
+                        nodes[top] = y;
+                        levels[top] = k - 1;
+                        visited[top++] = false;
+                    }
+                } else if (x < size && starts[x] <= to) {
+                    if (ends[x] >= from) {
+                        add(retval, x, types, strand, locations);
+                    }
+                    nodes[top] = x + (1 << (k - 1));
+                    levels[top] = k - 1;
+                    visited[top++] = false;
+                }
+            }
+            return retval;
+        }
+
+        private void add(List<Integer> found, int i, Set<Class<?>> types, Byte strand,
+                boolean locations) {
+            if ((types == null || types.contains(featureTypes[i]))
+                    && (strand == null || strands[i] == strand.byteValue())) {
+                found.add(Integer.valueOf(locations ? locationIds[i] : featureIds[i]));
+            }
+        }
+
+        /**
+         * Collects the locations on one chromosome.
+         */
+        static final class Builder
+        {
+            private int size = 0;
+            private int[] starts = new int[16];
+            private int[] ends = new int[16];
+            private byte[] strands = new byte[16];
+            private int[] locationIds = new int[16];
+            private int[] featureIds = new int[16];
+            private Class<?>[] featureTypes = new Class<?>[16];
+
+            void add(int start, int end, byte strand, int locationId, int featureId,
+                    Class<?> featureType) {
+                if (size == starts.length) {
+                    int capacity = size * 2;
+                    starts = Arrays.copyOf(starts, capacity);
+                    ends = Arrays.copyOf(ends, capacity);
+                    strands = Arrays.copyOf(strands, capacity);
+                    locationIds = Arrays.copyOf(locationIds, capacity);
+                    featureIds = Arrays.copyOf(featureIds, capacity);
+                    featureTypes = Arrays.copyOf(featureTypes, capacity);
+                }
+                starts[size] = start;
+                ends[size] = end;
+                strands[size] = strand;
+                locationIds[size] = locationId;
+                featureIds[size] = featureId;
+                featureTypes[size] = featureType;
+                size++;
+            }
+
+            Intervals build() {
+                // sort by start, keeping the original position in the low bits
+                long[] order = new long[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = ((long) starts[i] << 32) | i;
+                }
+                Arrays.sort(order);
+                int[] sortedStarts = new int[size];
+                int[] sortedEnds = new int[size];
+                byte[] sortedStrands = new byte[size];
+                int[] sortedLocationIds = new int[size];
+                int[] sortedFeatureIds = new int[size];
+                Class<?>[] sortedFeatureTypes = new Class<?>[size];
+                for (int i = 0; i < size; i++) {
+                    int from = (int) order[i];
+                    sortedStarts[i] = starts[from];
+                    sortedEnds[i] = ends[from];
+                    sortedStrands[i] = strands[from];
+                    sortedLocationIds[i] = locationIds[from];
+                    sortedFeatureIds[i] = featureIds[from];
+                    sortedFeatureTypes[i] = featureTypes[from];
+                }
+                return new Intervals(size, sortedStarts, sortedEnds, sortedStrands,
+                        sortedLocationIds, sortedFeatureIds, sortedFeatureTypes);
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -56,6 +57,9 @@ import org.intermine.web.logic.session.SessionMethods;
  */
 public class GenomicRegionSearchQueryRunner implements Runnable
 {
+    // the number of locations to fetch the rows for in one query when using the index
+    private static final int LOCATION_BATCH_SIZE = 10000;
+
     private HttpServletRequest request = null;
     private String spanUUIDString = null;
     private GenomicRegionSearchConstraint grsc = null;
@@ -159,58 +163,120 @@ public class GenomicRegionSearchQueryRunner implements Runnable
             request.getSession().setAttribute("spanOverlapFullStatMap", spanOverlapFullStatMap);
 
             try {
-                ObjectStore os = SessionMethods.getInterMineAPI(
-                        request.getSession()).getObjectStore();
+                InterMineAPI im = SessionMethods.getInterMineAPI(request.getSession());
+                ObjectStore os = im.getObjectStore();
+                GenomicRegionIndex index = GenomicRegionIndex.getIndex(im,
+                        SessionMethods.getWebProperties(request.getSession()
+                                .getServletContext()));
+
+                if (index != null) {
+                    indexedQueryExecutor(os, index, spanOverlapResultDisplayMap,
+                            spanOverlapResultStatMap);
+                    return;
+                }
 
                 for (Entry<GenomicRegion, Query> e : queryMap.entrySet()) {
                     Results results = os.execute(e.getValue());
+                    addSpanResults(e.getKey(), results, spanOverlapResultDisplayMap,
+                            spanOverlapResultStatMap);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
 
-                    List<List<String>> spanResults = new ArrayList<List<String>>();
+    /**
+     * Find the locations in all the regions from the index, and then fetch the rows for them
+     * with a few queries by location id, rather than running an overlap query for each region.
+     */
+    private void indexedQueryExecutor(ObjectStore os, GenomicRegionIndex index,
+            Map<GenomicRegion, List<List<String>>> spanOverlapResultDisplayMap,
+            Map<GenomicRegion, Map<String, Integer>> spanOverlapResultStatMap) {
+        Map<GenomicRegion, List<Integer>> locationMap = GenomicRegionSearchUtil
+            .findRegionLocationIds(index, queryMap.keySet(), grsc.getExtendedRegionSize(),
+                    grsc.getOrgName(), grsc.getFeatureTypes(), grsc.getStrandSpecific());
+
+        Set<Integer> locationIds = new LinkedHashSet<Integer>();
+        for (List<Integer> ids : locationMap.values()) {
+            locationIds.addAll(ids);
+        }
 
-                    Map<String, Integer> spanStatMap = new HashMap<String, Integer>();
-                    ValueComparator bvc =  new ValueComparator(spanStatMap);
-                    TreeMap<String, Integer> sortedStatMap = new TreeMap<String, Integer>(bvc);
+        // location id - row, without the location id
+        Map<Integer, List<Object>> rowMap = new HashMap<Integer, List<Object>>();
+        List<Integer> batch = new ArrayList<Integer>();
+        for (Iterator<Integer> iter = locationIds.iterator(); iter.hasNext();) {
+            batch.add(iter.next());
+            if (batch.size() == LOCATION_BATCH_SIZE || !iter.hasNext()) {
+                Results results = os.execute(GenomicRegionSearchUtil
+                        .createLocationRowQuery(batch));
+                for (Object o : results) {
+                    ResultsRow<?> row = (ResultsRow<?>) o;
+                    rowMap.put((Integer) row.get(0),
+                            new ArrayList<Object>(row.subList(1, row.size())));
+                }
+                batch.clear();
+            }
+        }
 
-                    if (results == null || results.isEmpty()) {
-                        spanOverlapResultDisplayMap.put(e.getKey(), null);
-                    }
-                    else {
-                        for (Iterator<?> iter = results.iterator(); iter.hasNext();) {
-                            ResultsRow<?> row = (ResultsRow<?>) iter.next();
-
-                            List<String> resultRow = new ArrayList<String>();
-
-                            for (Object o : row) {
-                                String item = new String();
-
-                                // NULL for symbol or PID
-                                o = o == null ? new String() : o;
-
-                                if (o instanceof Class) {
-                                    item = ((Class) o).getSimpleName();
-                                    // add class stat to spanStatMap
-                                    if (spanStatMap.containsKey(item)) {
-                                        spanStatMap.put(item, spanStatMap.get(item) + 1);
-                                    } else {
-                                        spanStatMap.put(item, 1);
-                                    }
-                                } else {
-                                    item = o.toString();
-                                }
-
-                                resultRow.add(item);
-                            }
-                            spanResults.add(resultRow);
-                        }
-                        spanOverlapResultDisplayMap.put(e.getKey(), spanResults);
+        for (Entry<GenomicRegion, List<Integer>> e : locationMap.entrySet()) {
+            // the region queries are distinct
+            Set<List<Object>> rows = new LinkedHashSet<List<Object>>();
+            for (Integer locationId : e.getValue()) {
+                List<Object> row = rowMap.get(locationId);
+                if (row != null) {
+                    rows.add(row);
+                }
+            }
+            addSpanResults(e.getKey(), rows, spanOverlapResultDisplayMap,
+                    spanOverlapResultStatMap);
+        }
+    }
+
+    private static void addSpanResults(GenomicRegion span, Collection<?> results,
+            Map<GenomicRegion, List<List<String>>> spanOverlapResultDisplayMap,
+            Map<GenomicRegion, Map<String, Integer>> spanOverlapResultStatMap) {
+        List<List<String>> spanResults = new ArrayList<List<String>>();
+
+        Map<String, Integer> spanStatMap = new HashMap<String, Integer>();
+        ValueComparator bvc =  new ValueComparator(spanStatMap);
+        TreeMap<String, Integer> sortedStatMap = new TreeMap<String, Integer>(bvc);
+
+        if (results == null || results.isEmpty()) {
+            spanOverlapResultDisplayMap.put(span, null);
+        }
+        else {
+            for (Iterator<?> iter = results.iterator(); iter.hasNext();) {
+                List<?> row = (List<?>) iter.next();
 
-                        sortedStatMap.putAll(spanStatMap);
-                        spanOverlapResultStatMap.put(e.getKey(), sortedStatMap);
+                List<String> resultRow = new ArrayList<String>();
+
+                for (Object o : row) {
+                    String item = new String();
+
+                    // NULL for symbol or PID
+                    o = o == null ? new String() : o;
+
+                    if (o instanceof Class) {
+                        item = ((Class) o).getSimpleName();
+                        // add class stat to spanStatMap
+                        if (spanStatMap.containsKey(item)) {
+                            spanStatMap.put(item, spanStatMap.get(item) + 1);
+                        } else {
+                            spanStatMap.put(item, 1);
+                        }
+                    } else {
+                        item = o.toString();
                     }
+
+                    resultRow.add(item);
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
+                spanResults.add(resultRow);
             }
+            spanOverlapResultDisplayMap.put(span, spanResults);
+
+            sortedStatMap.putAll(spanStatMap);
+            spanOverlapResultStatMap.put(span, sortedStatMap);
         }
     }
 
@@ -123,6 +123,8 @@ public class GenomicRegionSearchService
         this.classDescrs = (Map<String, String>) request.getSession()
                 .getServletContext().getAttribute("classDescriptions");
         this.initBatchSize = getInitBatchSize();
+        // start loading the location index, if enabled, before the first search is run
+        GenomicRegionIndex.getIndex(interMineAPI, webProperties);
     }
 
     /**
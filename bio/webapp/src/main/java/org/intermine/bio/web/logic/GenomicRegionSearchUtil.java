@@ -384,6 +384,126 @@ public final class GenomicRegionSearchUtil
         return queryMap;
     }
 
+    /**
+     * Find the features in user regions from the in-memory index, finding the same features as
+     * the queries made by createRegionListQueries.
+     *
+     * @param index the index of feature locations
+     * @param genomicRegions list of gr
+     * @param extension the flanking
+     * @param organismName org short name
+     * @param featureTypes ft
+     * @param strandSpecific flag
+     * @return map of gr-feature ids
+     */
+    public static Map<GenomicRegion, List<Integer>> findRegionFeatureIds(
+            GenomicRegionIndex index, Collection<GenomicRegion> genomicRegions, int extension,
+            String organismName, Set<Class<?>> featureTypes, boolean strandSpecific) {
+        return findInRegions(index, genomicRegions, extension, organismName, featureTypes,
+                strandSpecific, false);
+    }
+
+    /**
+     * Find the locations of features in user regions from the in-memory index, finding the
+     * locations of the rows returned by the queries made by createQueryList.
+     *
+     * @param index the index of feature locations
+     * @param genomicRegions list of gr
+     * @param extension the flanking
+     * @param organismName org short name
+     * @param featureTypes ft
+     * @param strandSpecific flag
+     * @return map of gr-location ids, in order of start
+     */
+    public static Map<GenomicRegion, List<Integer>> findRegionLocationIds(
+            GenomicRegionIndex index, Collection<GenomicRegion> genomicRegions, int extension,
+            String organismName, Set<Class<?>> featureTypes, boolean strandSpecific) {
+        return findInRegions(index, genomicRegions, extension, organismName, featureTypes,
+                strandSpecific, true);
+    }
+
+    private static Map<GenomicRegion, List<Integer>> findInRegions(GenomicRegionIndex index,
+            Collection<GenomicRegion> genomicRegions, int extension, String organismName,
+            Set<Class<?>> featureTypes, boolean strandSpecific, boolean locationIds) {
+
+        Map<GenomicRegion, List<Integer>> idMap = new LinkedHashMap<GenomicRegion,
+            List<Integer>>();
+
+        for (GenomicRegion aSpan : genomicRegions) {
+            int start;
+            int end;
+
+            if (extension > 0) {
+                aSpan = extendGenomicRegion(aSpan, extension);
+                start = aSpan.getExtendedStart();
+                end = aSpan.getExtendedEnd();
+            } else {
+                start = aSpan.getStart();
+                end = aSpan.getEnd();
+            }
+
+            String strand = null;
+            if (strandSpecific) {
+                strand = aSpan.getMinusStrand() ? "-1" : "1";
+            }
+
+            if (locationIds) {
+                idMap.put(aSpan, index.findLocationIds(organismName, aSpan.getChr(), start, end,
+                        featureTypes, strand));
+            } else {
+                idMap.put(aSpan, index.findFeatureIds(organismName, aSpan.getChr(), start, end,
+                        featureTypes, strand));
+            }
+        }
+
+        return idMap;
+    }
+
+    /**
+     * Create a query for the rows that createQueryList would return for some locations.
+     * The first column is the id of the location, followed by the columns of those queries.
+     *
+     * @param locationIds the ids of the locations
+     * @return a query
+     */
+    public static Query createLocationRowQuery(Collection<Integer> locationIds) {
+        Query q = new Query();
+
+        QueryClass qcChr = new QueryClass(Chromosome.class);
+        QueryClass qcFeature = new QueryClass(SequenceFeature.class);
+        QueryClass qcLoc = new QueryClass(Location.class);
+
+        QueryField qfLocId = new QueryField(qcLoc, "id");
+
+        q.addFrom(qcLoc);
+        q.addFrom(qcFeature);
+        q.addFrom(qcChr);
+        q.addToSelect(qfLocId);
+        q.addToSelect(new QueryField(qcFeature, "id"));
+        q.addToSelect(new QueryField(qcFeature, "primaryIdentifier"));
+        q.addToSelect(new QueryField(qcFeature, "symbol"));
+        q.addToSelect(new QueryField(qcFeature, "class"));
+        q.addToSelect(new QueryField(qcChr, "primaryIdentifier"));
+        q.addToSelect(new QueryField(qcLoc, "start"));
+        q.addToSelect(new QueryField(qcLoc, "end"));
+        q.addToSelect(new QueryField(qcLoc, "strand"));
+
+        ConstraintSet constraints = new ConstraintSet(ConstraintOp.AND);
+        q.setConstraint(constraints);
+
+        // Location.feature = SequenceFeature
+        constraints.addConstraint(new ContainsConstraint(new QueryObjectReference(qcLoc,
+                "feature"), ConstraintOp.CONTAINS, qcFeature));
+
+        // Location.locatedOn = Chromosome
+        constraints.addConstraint(new ContainsConstraint(new QueryObjectReference(qcLoc,
+                "locatedOn"), ConstraintOp.CONTAINS, qcChr));
+
+        constraints.addConstraint(new BagConstraint(qfLocId, ConstraintOp.IN, locationIds));
+
+        return q;
+    }
+
     /**
      * To extend genomic region
      * @param gr GenomicRegion
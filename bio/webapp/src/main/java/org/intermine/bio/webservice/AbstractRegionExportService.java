@@ -76,17 +76,20 @@ public abstract class AbstractRegionExportService extends GenomicRegionSearchSer
 
         GenomicRegionSearchListInput searchInput = (GenomicRegionSearchListInput) input;
 
-        Set<Integer> objectIds = new HashSet<Integer>();
-        Map<GenomicRegion, Query> queries = createQueries(searchInput.getSearchInfo());
-        for (Entry<GenomicRegion, Query> e: queries.entrySet()) {
-            Query q = e.getValue();
-            ObjectStore objectstore = im.getObjectStore();
-            Results rs = objectstore.execute(q);
-            Iterator<Object> it = rs.iterator();
-            while (it.hasNext()) {
-                ResultsRow rr = (ResultsRow) it.next();
-                Integer id = (Integer) rr.get(0);
-                objectIds.add(id);
+        Set<Integer> objectIds = findFeatureIds(searchInput.getSearchInfo());
+        if (objectIds == null) {
+            objectIds = new HashSet<Integer>();
+            Map<GenomicRegion, Query> queries = createQueries(searchInput.getSearchInfo());
+            for (Entry<GenomicRegion, Query> e: queries.entrySet()) {
+                Query q = e.getValue();
+                ObjectStore objectstore = im.getObjectStore();
+                Results rs = objectstore.execute(q);
+                Iterator<Object> it = rs.iterator();
+                while (it.hasNext()) {
+                    ResultsRow rr = (ResultsRow) it.next();
+                    Integer id = (Integer) rr.get(0);
+                    objectIds.add(id);
+                }
             }
         }
 
@@ -11,6 +11,7 @@ package org.intermine.bio.webservice;
  */
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -21,6 +22,7 @@ import org.intermine.api.bag.ClassKeysNotFoundException;
 import org.intermine.api.bag.UnknownBagTypeException;
 import org.intermine.api.profile.InterMineBag;
 import org.intermine.api.profile.Profile;
+import org.intermine.bio.web.logic.GenomicRegionIndex;
 import org.intermine.bio.web.logic.GenomicRegionSearchQueryRunner;
 import org.intermine.bio.web.logic.GenomicRegionSearchUtil;
 import org.intermine.bio.web.model.GenomicRegion;
@@ -100,6 +102,13 @@ public class GenomicRegionSearchService extends ListMakerService
         UnknownBagTypeException {
         final InterMineBag tempBag = profile.createBag(
                 input.getTemporaryListName(), type, input.getDescription(), im.getClassKeys());
+        Set<Integer> ids = findFeatureIds(input.getSearchInfo());
+        if (ids != null) {
+            if (!ids.isEmpty()) {
+                tempBag.addIdsToBag(ids, type);
+            }
+            return tempBag;
+        }
         Map<GenomicRegion, Query> queries = createQueries(input.getSearchInfo());
         for (Entry<GenomicRegion, Query> e : queries.entrySet()) {
             Query q = e.getValue();
@@ -150,4 +159,24 @@ public class GenomicRegionSearchService extends ListMakerService
                 info.getOrganism()), info.getOrganism(), info.getFeatureClasses(),
                 info.getStrandSpecific());
     }
+
+    /**
+     * Find the features in the regions from the in-memory index of feature locations, if it is
+     * enabled and loaded.
+     * @param info The options input object.
+     * @return The ids of the objects in any of the regions, or null if there is no index.
+     */
+    protected Set<Integer> findFeatureIds(GenomicRegionSearchInfo info) {
+        GenomicRegionIndex index = GenomicRegionIndex.getIndex(im, webProperties);
+        if (index == null) {
+            return null;
+        }
+        Set<Integer> ids = new LinkedHashSet<Integer>();
+        for (List<Integer> regionIds : GenomicRegionSearchUtil.findRegionFeatureIds(index,
+                info.getGenomicRegions(), info.getExtension(), info.getOrganism(),
+                info.getFeatureClasses(), info.getStrandSpecific()).values()) {
+            ids.addAll(regionIds);
+        }
+        return ids;
+    }
 }
@@ -0,0 +1,139 @@
+package org.intermine.webservice.server.jbrowse.genomic;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * Counts of the features that overlap each of a row of equal width bins along a reference
+ * sequence.
+ *
+ * <p>
+ * The counts are gathered from the bucket that each feature starts in and the bucket that it
+ * ends in, as returned by WIDTH_BUCKET, so a single grouped query is enough to fill them in.
+ * For each bin this holds the number of features that start in it and the number of features
+ * that start before it and reach into it. Together with running totals of the starts, that
+ * gives the number of features overlapping any run of adjacent bins in constant time.
+ * </p>
+ */
+public final class DensityBins
+{
+    private final int start;
+    private final int binWidth;
+    private final int[] starts;
+    private final int[] crossing;
+    private long[] startTotals;
+
+    /**
+     * Constructor.
+     *
+     * @param start the interbase position of the start of the first bin
+     * @param binWidth the width of each bin
+     * @param binCount the number of bins
+     */
+    public DensityBins(int start, int binWidth, int binCount) {
+        if (binWidth < 1 || binCount < 1) {
+            throw new IllegalArgumentException("binWidth and binCount must be greater than 0");
+        }
+        this.start = start;
+        this.binWidth = binWidth;
+        starts = new int[binCount];
+        // holds differences until complete() is called
+        crossing = new int[binCount + 1];
+    }
+
+    /**
+     * @return the interbase position of the start of the first bin
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return the width of each bin
+     */
+    public int getBinWidth() {
+        return binWidth;
+    }
+
+    /**
+     * @return the number of bins
+     */
+    public int getBinCount() {
+        return starts.length;
+    }
+
+    /**
+     * Record some features. The buckets are numbered as by WIDTH_BUCKET over the base
+     * co-ordinates of the bins, so 0 is before the first bin and getBinCount() + 1 is after the
+     * last one.
+     *
+     * @param startBucket the bucket containing the start of the features
+     * @param endBucket the bucket containing the end of the features
+     * @param count the number of features
+     */
+    public void add(int startBucket, int endBucket, int count) {
+        if (startTotals != null) {
+            throw new IllegalStateException("Cannot add to complete DensityBins");
+        }
+        int firstBin = startBucket - 1;
+        int lastBin = Math.min(endBucket, starts.length) - 1;
+        if (lastBin < Math.max(firstBin, 0) || firstBin >= starts.length) {
+            return;
+        }
+        if (firstBin >= 0) {
+            starts[firstBin] += count;
+        }
+        if (lastBin > firstBin) {
+            crossing[firstBin + 1] += count;
+            crossing[lastBin + 1] -= count;
+        }
+    }
+
+    /**
+     * Finish adding features, so that the bins may be read.
+     *
+     * @return this object
+     */
+    public DensityBins complete() {
+        startTotals = new long[starts.length + 1];
+        int running = 0;
+        for (int i = 0; i < starts.length; i++) {
+            running += crossing[i];
+            crossing[i] = running;
+            startTotals[i + 1] = startTotals[i] + starts[i];
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of features that overlap a run of adjacent bins.
+     *
+     * @param from the index of the first bin
+     * @param to the index after the last bin
+     * @return the number of features
+     */
+    public int count(int from, int to) {
+        if (startTotals == null) {
+            throw new IllegalStateException("DensityBins are not complete");
+        }
+        return (int) (startTotals[to] - startTotals[from]) + crossing[from];
+    }
+
+    /**
+     * @return the number of features overlapping each bin
+     */
+    public int[] getCounts() {
+        int[] counts = new int[starts.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = count(i, i + 1);
+        }
+        return counts;
+    }
+}
@@ -23,16 +23,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.log4j.Logger;
 import org.intermine.api.InterMineAPI;
+import org.intermine.api.query.MainHelper;
 import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.ConstraintOp;
 import org.intermine.metadata.Model;
@@ -49,8 +45,10 @@ import org.intermine.objectstore.query.QueryExpression;
 import org.intermine.objectstore.query.QueryField;
 import org.intermine.objectstore.query.QueryFunction;
 import org.intermine.objectstore.query.QueryObjectReference;
+import org.intermine.objectstore.query.QuerySelectable;
 import org.intermine.objectstore.query.QueryValue;
 import org.intermine.objectstore.query.SimpleConstraint;
+import org.intermine.objectstore.query.WidthBucketFunction;
 import org.intermine.pathquery.Constraints;
 import org.intermine.pathquery.PathConstraintRange;
 import org.intermine.pathquery.PathQuery;
@@ -156,40 +154,6 @@ public class Engine extends CommandRunner
         }
     }
 
-    private static List<Segment> sliceUp(int n, Segment segment) {
-        if (n < 1) {
-            throw new IllegalArgumentException("n must be greater than 0");
-        }
-        if (segment == null || segment.getWidth() == null) {
-            throw new IllegalArgumentException("segment must be non null with defined width");
-        }
-        List<Segment> subsegments = new ArrayList<Segment>();
-        int sliceWidth = segment.getWidth() / n;
-        int inital = Math.max(0, segment.getStart());
-        int end = segment.getEnd();
-        for (int i = inital; i < end; i += sliceWidth) {
-            subsegments.add(segment.subsegment(i, Math.min(end, i + sliceWidth)));
-        }
-        return subsegments;
-    }
-
-    private static final class PathQueryCounter implements Callable<Integer>
-    {
-        final PathQuery pq;
-        final ObjectStore os;
-
-        PathQueryCounter(PathQuery pq, ObjectStore os) {
-            this.pq = pq.clone();
-            this.os = os;
-        }
-
-        @Override
-        public Integer call() throws Exception {
-            Query q = pathQueryToOSQ(pq);
-            return os.count(q, ObjectStore.SEQUENCE_IGNORE);
-        }
-    }
-
     private static Map<MultiKey, Integer> maxima = new ConcurrentHashMap<MultiKey, Integer>();
 
     /**
@@ -197,24 +161,21 @@ public class Engine extends CommandRunner
      */
     @Override
     public void densities(Command command) {
-        final int nSlices = getNumberOfSlices(command);
-        List<PathQuery> segmentQueries = getSliceQueries(command, nSlices);
-        List<Future<Integer>> pending = countInParallel(segmentQueries);
         List<Integer> results = new ArrayList<Integer>();
-
         int max = 0, sum = 0;
-        for (Future<Integer> future: pending) {
-            try {
-                Integer r = future.get();
-                if (r != null && r > max) {
+        Integer bpb = null;
+        Segment segment = command.getSegment();
+        if (segment != Segment.NEGATIVE_SEGMENT) {
+            if (segment == null || segment.getWidth() == null) {
+                throw new IllegalArgumentException("segment must be non null with defined width");
+            }
+            bpb = Math.max(1, segment.getWidth() / getNumberOfSlices(command));
+            for (int r : getDensities(command, bpb)) {
+                if (r > max) {
                     max = r;
                 }
                 sum += r;
                 results.add(r);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            } catch (ExecutionException e) {
-                throw new RuntimeException(e);
             }
         }
         double mean = Double.valueOf(sum) / results.size();
@@ -222,13 +183,12 @@ public class Engine extends CommandRunner
         Map<String, Object> result = new HashMap<String, Object>();
         Map<String, Number> binStats = new HashMap<String, Number>();
         Integer currentMax = 0;
-        if (command.getSegment() != Segment.NEGATIVE_SEGMENT) {
-            Integer bpb = command.getSegment().getWidth() / nSlices;
+        if (segment != Segment.NEGATIVE_SEGMENT) {
             binStats.put("basesPerBin", bpb);
             MultiKey maxKey = new MultiKey(// Key by domain, type, ref-seq and band size
                     command.getDomain(),
                     command.getType("SequenceFeature"),
-                    command.getSegment().getSection(),
+                    segment.getSection(),
                     bpb);
             currentMax = maxima.get(maxKey);
             if (currentMax == null || max > currentMax) {
@@ -259,30 +219,74 @@ public class Engine extends CommandRunner
         return width / numBPB;
     }
 
-    private List<PathQuery> getSliceQueries(Command command, final int nSlices) {
-        if (command.getSegment() == Segment.NEGATIVE_SEGMENT) {
-            return Collections.emptyList();
-        }
-        List<Segment> slices = sliceUp(nSlices, command.getSegment());
-        List<PathQuery> segmentQueries = new ArrayList<PathQuery>();
-        for (Segment s: slices) {
-            segmentQueries.add(getSFPathQuery(command, s));
-        }
-        return segmentQueries;
+    // Count the features overlapping each bin of the command's segment.
+    private int[] getDensities(Command command, int binWidth) {
+        Segment segment = command.getSegment();
+        int from = Math.max(0, segment.getStart());
+        int to = segment.getEnd();
+        if (to <= from) {
+            return new int[0];
+        }
+        int binCount = (to - from + binWidth - 1) / binWidth;
+        return countInBins(command, segment, new DensityBins(from, binWidth, binCount))
+            .getCounts();
     }
 
-    private List<Future<Integer>> countInParallel(List<PathQuery> segmentQueries) {
-        if (segmentQueries.isEmpty()) {
-            return Collections.emptyList();
-        }
-        ExecutorService executor = Executors.newFixedThreadPool(segmentQueries.size());
-        List<Future<Integer>> pending = new ArrayList<Future<Integer>>();
-        for (PathQuery pq: segmentQueries) {
-            Callable<Integer> counter = new PathQueryCounter(pq, getAPI().getObjectStore());
-            pending.add(executor.submit(counter));
-        }
-        executor.shutdown();
-        return pending;
+    /*
+     * Count the features that overlap each of a row of bins with one query, grouping them by
+     * the WIDTH_BUCKETs their start and end fall into.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private DensityBins countInBins(Command command, Segment segment, DensityBins densities) {
+        int from = densities.getStart();
+        int binWidth = densities.getBinWidth();
+        int binCount = densities.getBinCount();
+        String type = command.getType("SequenceFeature");
+        PathQuery pq = getSFPathQuery(command, segment);
+        pq.addViews(format("%s.chromosomeLocation.start", type),
+                format("%s.chromosomeLocation.end", type));
+        Map<String, QuerySelectable> pathToQueryNode = new HashMap<String, QuerySelectable>();
+        Query features;
+        try {
+            features = MainHelper.makeQuery(pq, new HashMap(), pathToQueryNode, null,
+                    new HashMap());
+        } catch (ObjectStoreException e) {
+            throw new RuntimeException("Error generating query.", e);
+        }
+        // Convert Interbase -> Base co-ordinates: start + 1
+        QueryEvaluable lower = new QueryValue(Double.valueOf(from + 1));
+        QueryEvaluable upper = new QueryValue(Double.valueOf(from + 1 + (double) binWidth
+                * binCount));
+        QueryEvaluable bins = new QueryValue(Integer.valueOf(binCount));
+        QueryFunction startBucket = new WidthBucketFunction(new QueryCast((QueryField)
+                pathToQueryNode.get(format("%s.chromosomeLocation.start", type)), Double.class),
+                lower, upper, bins);
+        QueryFunction endBucket = new WidthBucketFunction(new QueryCast((QueryField)
+                pathToQueryNode.get(format("%s.chromosomeLocation.end", type)), Double.class),
+                lower, upper, bins);
+        features.clearSelect();
+        features.clearOrderBy();
+        features.setDistinct(false);
+        features.addToSelect(startBucket);
+        features.addToSelect(endBucket);
+
+        Query q = new Query();
+        q.setDistinct(false);
+        q.addFrom(features);
+        QueryField starts = new QueryField(features, startBucket);
+        QueryField ends = new QueryField(features, endBucket);
+        q.addToSelect(starts);
+        q.addToSelect(ends);
+        q.addToSelect(new QueryFunction());
+        q.addToGroupBy(starts);
+        q.addToGroupBy(ends);
+
+        for (Object row : getAPI().getObjectStore().execute(q, 1000, false, false, false)) {
+            List<?> columns = (List<?>) row;
+            densities.add(((Number) columns.get(0)).intValue(),
+                    ((Number) columns.get(1)).intValue(), ((Number) columns.get(2)).intValue());
+        }
+        return densities.complete();
     }
 
     private PathQuery getSFPathQuery(Command command) {
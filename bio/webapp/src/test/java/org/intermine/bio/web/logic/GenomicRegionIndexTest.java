@@ -0,0 +1,104 @@
+package org.intermine.bio.web.logic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GenomicRegionIndexTest {
+
+    private static final int LENGTH = 1000000;
+    private static final Class<?>[] TYPES = {String.class, Integer.class, Long.class};
+
+    // start, end, strand, type
+    private int[][] locations;
+    private GenomicRegionIndex index;
+
+    @Before
+    public void setup() {
+        Random random = new Random(11);
+        locations = new int[5000][];
+        GenomicRegionIndex.Builder builder = new GenomicRegionIndex.Builder();
+        for (int i = 0; i < locations.length; i++) {
+            int start = 1 + random.nextInt(LENGTH);
+            int end = start + random.nextInt(i % 50 == 0 ? 200000 : 2000);
+            int strand = random.nextBoolean() ? 1 : -1;
+            int type = random.nextInt(TYPES.length);
+            locations[i] = new int[] {start, end, strand, type};
+            builder.add("D. melanogaster", "2L", start, end, Integer.toString(strand), i,
+                    1000000 + i, TYPES[type]);
+        }
+        builder.add("D. melanogaster", "X", 5, 10, "1", -1, -1, String.class);
+        index = builder.build();
+    }
+
+    @Test
+    public void sameAsOverlapQuery() {
+        Random random = new Random(3);
+        Set<Class<?>> types = new HashSet<Class<?>>(Arrays.asList(TYPES));
+        for (int test = 0; test < 500; test++) {
+            int start = random.nextInt(LENGTH);
+            int end = start + random.nextInt(test % 10 == 0 ? 100000 : 5000);
+            List<Integer> found = index.findLocationIds("D. melanogaster", "2L", start, end,
+                    types, null);
+            assertStartOrder(found);
+            assertEquals(overlaps(start, end, types, 0), sorted(found));
+        }
+    }
+
+    @Test
+    public void typesAndStrand() {
+        Set<Class<?>> types = new HashSet<Class<?>>(Arrays.asList(TYPES[0], TYPES[2]));
+        List<Integer> found = index.findLocationIds("D. melanogaster", "2L", 200000, 300000,
+                types, "-1");
+        assertEquals(overlaps(200000, 300000, types, -1), sorted(found));
+        List<Integer> features = index.findFeatureIds("D. melanogaster", "2L", 200000, 300000,
+                types, "-1");
+        assertEquals(found.size(), features.size());
+        assertEquals(Integer.valueOf(1000000 + found.get(0)), features.get(0));
+    }
+
+    @Test
+    public void otherChromosomes() {
+        assertEquals(Collections.singletonList(-1), index.findLocationIds("D. melanogaster", "X",
+                10, 20, null, null));
+        assertTrue(index.findLocationIds("D. melanogaster", "X", 11, 20, null, null).isEmpty());
+        assertTrue(index.findLocationIds("D. melanogaster", "3R", 1, LENGTH, null, null)
+                .isEmpty());
+        assertTrue(index.findLocationIds("H. sapiens", "2L", 1, LENGTH, null, null).isEmpty());
+    }
+
+    // What an OverlapConstraint on the start and end of each location would find
+    private List<Integer> overlaps(int start, int end, Set<Class<?>> types, int strand) {
+        List<Integer> retval = new ArrayList<Integer>();
+        for (int i = 0; i < locations.length; i++) {
+            int[] location = locations[i];
+            if (location[0] <= end && location[1] >= start && types.contains(TYPES[location[3]])
+                    && (strand == 0 || location[2] == strand)) {
+                retval.add(i);
+            }
+        }
+        return retval;
+    }
+
+    private void assertStartOrder(List<Integer> found) {
+        for (int i = 1; i < found.size(); i++) {
+            assertTrue(locations[found.get(i - 1)][0] <= locations[found.get(i)][0]);
+        }
+    }
+
+    private static List<Integer> sorted(List<Integer> ids) {
+        List<Integer> retval = new ArrayList<Integer>(ids);
+        Collections.sort(retval);
+        return retval;
+    }
+}
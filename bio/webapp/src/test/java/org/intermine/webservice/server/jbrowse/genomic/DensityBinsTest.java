@@ -0,0 +1,74 @@
+package org.intermine.webservice.server.jbrowse.genomic;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DensityBinsTest {
+
+    private static final int LENGTH = 100000;
+
+    // base co-ordinates, start and end inclusive
+    private int[][] features;
+
+    @Before
+    public void setup() {
+        Random random = new Random(7);
+        features = new int[2000][];
+        for (int i = 0; i < features.length; i++) {
+            int start = 1 + random.nextInt(LENGTH);
+            int end = Math.min(LENGTH, start + random.nextInt(i % 10 == 0 ? 20000 : 500));
+            features[i] = new int[] {start, end};
+        }
+    }
+
+    @Test
+    public void sameAsOverlappingSlices() {
+        int from = 12345, to = 87654, width = 1000;
+        assertArrayEquals(countOverlaps(from, to, width), bin(from, to, width).getCounts());
+    }
+
+    @Test
+    public void fromStart() {
+        assertArrayEquals(countOverlaps(0, LENGTH, 3000), bin(0, LENGTH, 3000).getCounts());
+    }
+
+    // What WIDTH_BUCKET and a query grouped by the start and end buckets would give
+    private DensityBins bin(int from, int to, int width) {
+        int binCount = (to - from + width - 1) / width;
+        DensityBins bins = new DensityBins(from, width, binCount);
+        for (int[] feature : features) {
+            if (feature[0] <= to && feature[1] > from) {
+                bins.add(bucket(feature[0], from, width, binCount),
+                        bucket(feature[1], from, width, binCount), 1);
+            }
+        }
+        return bins.complete();
+    }
+
+    private static int bucket(int position, int from, int width, int binCount) {
+        int lower = from + 1;
+        if (position < lower) {
+            return 0;
+        }
+        return Math.min(binCount + 1, (position - lower) / width + 1);
+    }
+
+    // The counts that one overlap query per interbase slice would give
+    private int[] countOverlaps(int from, int to, int width) {
+        int[] counts = new int[(to - from + width - 1) / width];
+        for (int i = 0; i < counts.length; i++) {
+            int sliceStart = from + i * width;
+            int sliceEnd = Math.min(to, sliceStart + width);
+            for (int[] feature : features) {
+                if (feature[0] <= sliceEnd && feature[1] > sliceStart) {
+                    counts[i]++;
+                }
+            }
+        }
+        return counts;
+    }
+}
@@ -22,6 +22,8 @@ import org.intermine.api.profile.ProfileManager;
 import org.intermine.api.profile.TagManager;
 import org.intermine.api.query.MemoryQueryStore;
 import org.intermine.api.query.PathQueryExecutor;
+import org.intermine.api.query.QueryAdmissionController;
+import org.intermine.api.query.ResultsCache;
 import org.intermine.api.query.QueryStore;
 import org.intermine.api.query.WebResultsExecutor;
 import org.intermine.api.template.TemplateManager;
@@ -57,6 +59,8 @@ public class InterMineAPI
     protected LinkRedirectManager linkRedirector;
     protected FriendlyMineManager friendlyMineManager;
     protected QueryStore queryStore;
+    protected ResultsCache resultsCache;
+    protected QueryAdmissionController queryAdmissionController;
 
     // query executors are cached per profile
     private final Map<Profile, WebResultsExecutor> wreCache =
@@ -96,6 +100,7 @@ public class InterMineAPI
         this.trackerDelegate = trackerDelegate;
         this.linkRedirector = linkRedirector;
         this.queryStore = new MemoryQueryStore(1024);
+        this.resultsCache = new ResultsCache(objectStore);
         initUserProfileResources(userProfileWriter);
     }
 
@@ -169,6 +174,44 @@ public class InterMineAPI
         return templateSummariser;
     }
 
+    /**
+     * @return the cache of PathQuery results pages shared by the PathQueryExecutors
+     */
+    public ResultsCache getResultsCache() {
+        return resultsCache;
+    }
+
+    /**
+     * Replace the cache of PathQuery results pages, for example with one configured from the web
+     * properties.  PathQueryExecutors that already exist use the new cache too.
+     *
+     * @param resultsCache the cache, or null to always run queries
+     */
+    public void setResultsCache(ResultsCache resultsCache) {
+        synchronized (pqeCache) {
+            this.resultsCache = resultsCache;
+            for (PathQueryExecutor executor : pqeCache.values()) {
+                executor.setResultsCache(resultsCache);
+            }
+        }
+    }
+
+    /**
+     * @return the controller that decides when web service queries may run, or null if they
+     * always run at once
+     */
+    public QueryAdmissionController getQueryAdmissionController() {
+        return queryAdmissionController;
+    }
+
+    /**
+     * @param queryAdmissionController the controller that decides when web service queries may
+     * run, or null to run them at once
+     */
+    public void setQueryAdmissionController(QueryAdmissionController queryAdmissionController) {
+        this.queryAdmissionController = queryAdmissionController;
+    }
+
     /**
      * @param profile the user that is executing the query
      * @return the webResultsExecutor
@@ -201,6 +244,7 @@ public class InterMineAPI
             if (retval == null) {
                 retval = new PathQueryExecutor(objectStore, profile,
                         bagQueryRunner, bagManager);
+                retval.setResultsCache(resultsCache);
                 pqeCache.put(profile, retval);
             }
             return retval;
@@ -10,9 +10,11 @@ package org.intermine.api.query;
  *
  */
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -50,6 +52,7 @@ public class PathQueryExecutor extends QueryExecutor
     public static final int DEFAULT_BATCH_SIZE = 5000;
     private static final long MAX_WAIT_TIME = 2000;
     private int batchSize = DEFAULT_BATCH_SIZE;
+    private ResultsCache resultsCache = null;
 
     /**
      * Sets batch size.
@@ -60,6 +63,15 @@ public class PathQueryExecutor extends QueryExecutor
         this.batchSize = size;
     }
 
+    /**
+     * Sets the cache used to serve repeated requests for the same page of results from memory.
+     *
+     * @param resultsCache the cache, or null to always run queries
+     */
+    public void setResultsCache(ResultsCache resultsCache) {
+        this.resultsCache = resultsCache;
+    }
+
     /**
      * Constructor with necessary objects.
      *
@@ -119,10 +131,28 @@ public class PathQueryExecutor extends QueryExecutor
 
     public ExportResultsIterator execute(PathQuery pathQuery, final int start,
             final int limit) throws ObjectStoreException {
+        return execute(pathQuery, start, limit, null);
+    }
+
+    /**
+     * Executes object store query and returns results as iterator over rows, once the query has
+     * been admitted by a ticket.
+     *
+     * @param pathQuery path query to be executed
+     * @param start index of first result which will be retrieved
+     * @param limit maximum number of results
+     * @param ticket a ticket from a QueryAdmissionController that must admit the query before it
+     * runs, or null to run it at once
+     * @return results
+     * @throws ObjectStoreException if fail to execute query, or the query is not admitted
+     */
+    public ExportResultsIterator execute(PathQuery pathQuery, final int start,
+            final int limit, QueryAdmissionController.Ticket ticket) throws ObjectStoreException {
         Map<String, QuerySelectable> pathToQueryNode = new HashMap<String, QuerySelectable>();
         Map<String, BagQueryResult> returnBagQueryResults = new HashMap<String, BagQueryResult>();
 
-        Query q = makeQuery(pathQuery, returnBagQueryResults, pathToQueryNode);
+        Map<String, InterMineBag> allBags = bagManager.getCurrentBags(profile);
+        Query q = makeQuery(pathQuery, allBags, returnBagQueryResults, pathToQueryNode);
         Results results = os.execute(q, batchSize, true, true, false);
 
         // If realQ = q this means that the query has never executed before.
@@ -136,6 +166,20 @@ public class PathQueryExecutor extends QueryExecutor
             queryToPathToQueryNode.put(q, pathToQueryNode);
         }
 
+        String cacheKey = null;
+        if (resultsCache != null) {
+            cacheKey = resultsCache.getKey(pathQuery, q, allBags, start, limit);
+            List<List<ResultElement>> rows = resultsCache.get(cacheKey);
+            if (rows != null) {
+                return new CachedResultIterator(pathQuery, q, results, pathToQueryNode, rows);
+            }
+        }
+
+        // Only queries that will go to the database need to be admitted
+        if (ticket != null) {
+            ticket.admit(q);
+        }
+
         // Prime the results -- although lazy, ExportResults are always fetched to be
         // evaluated, and we want errors thrown here, not later when they are swallowed
         // by the list interface.
@@ -145,14 +189,23 @@ public class PathQueryExecutor extends QueryExecutor
             // Ignore, it just means it's empty.
         }
 
-        return new ResultIterator(pathQuery, q, results, pathToQueryNode, start, limit);
+        ResultIterator iter = new ResultIterator(pathQuery, q, results, pathToQueryNode, start,
+                limit);
+        if (resultsCache != null) {
+            iter.cacheResults(resultsCache, cacheKey);
+        }
+        return iter;
     }
 
     private Query makeQuery(PathQuery pathQuery, Map<String, BagQueryResult> pathToBagQueryResult,
             Map<String, QuerySelectable> pathToQueryNode) throws ObjectStoreException {
+        return makeQuery(pathQuery, bagManager.getCurrentBags(profile), pathToBagQueryResult,
+                pathToQueryNode);
+    }
 
-        Map<String, InterMineBag> allBags = bagManager.getCurrentBags(profile);
-
+    private Query makeQuery(PathQuery pathQuery, Map<String, InterMineBag> allBags,
+            Map<String, BagQueryResult> pathToBagQueryResult,
+            Map<String, QuerySelectable> pathToQueryNode) throws ObjectStoreException {
         Query q = MainHelper.makeQuery(pathQuery, allBags, pathToQueryNode, bagQueryRunner,
                 pathToBagQueryResult);
         return q;
@@ -259,6 +312,9 @@ class ResultIterator extends ExportResultsIterator
     private int counter = 0;
     private final int limit;
     private final int start;
+    private ResultsCache cache = null;
+    private String cacheKey = null;
+    private List<List<ResultElement>> returned = null;
 
     /**
      * Constructor for ExportResultsIterator. This creates a new instance from the given
@@ -281,6 +337,18 @@ class ResultIterator extends ExportResultsIterator
         this.start = start;
     }
 
+    /**
+     * Add the rows returned by this iterator to a cache, once all of them have been read.
+     *
+     * @param resultsCache the cache to add the rows to
+     * @param key the key of this page in the cache
+     */
+    void cacheResults(ResultsCache resultsCache, String key) {
+        this.cache = resultsCache;
+        this.cacheKey = key;
+        this.returned = new ArrayList<List<ResultElement>>();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -291,15 +359,23 @@ class ResultIterator extends ExportResultsIterator
             if (super.hasNext()) {
                 next();
             } else {
-                return false;
+                return pageFinished();
             }
         }
 
         if (counter >= (limit + start)) {
-            return false;
+            return pageFinished();
         } else {
-            return super.hasNext();
+            return super.hasNext() || pageFinished();
+        }
+    }
+
+    private boolean pageFinished() {
+        if (returned != null) {
+            cache.put(cacheKey, returned);
+            returned = null;
         }
+        return false;
     }
 
     /**
@@ -308,7 +384,62 @@ class ResultIterator extends ExportResultsIterator
     @Override
     public List<ResultElement> next() {
         List<ResultElement> ret = super.next();
+        if (returned != null && counter >= start) {
+            if (returned.size() < ResultsCache.MAX_PAGE_ROWS) {
+                returned.add(ret);
+            } else {
+                // too big to cache
+                returned = null;
+            }
+        }
         counter++;
         return ret;
     }
 }
+
+/**
+ * An iterator over a page of results from a ResultsCache.  The Results object is only used to
+ * describe the query, no rows are read from it.
+ */
+class CachedResultIterator extends ExportResultsIterator
+{
+    private final Iterator<List<ResultElement>> rows;
+
+    /**
+     * Constructor.
+     *
+     * @param pathQuery a PathQuery to run.
+     * @param q The object-store query this path-query corresponds to.
+     * @param results the results object created when executing the query
+     * @param pathToQueryNode a map from path in pathQuery to QuerySelectable in the generated
+     * ObjectStore query
+     * @param rows the cached rows
+     * @throws ObjectStoreException if something goes wrong
+     */
+    CachedResultIterator(PathQuery pathQuery, Query q, Results results,
+            Map<String, QuerySelectable> pathToQueryNode, List<List<ResultElement>> rows)
+        throws ObjectStoreException {
+        super(pathQuery, q, results, pathToQueryNode);
+        this.rows = rows.iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return rows.hasNext();
+    }
+
+    @Override
+    public List<ResultElement> next() {
+        return rows.next();
+    }
+
+    @Override
+    public void goFaster() {
+        // nothing to speed up
+    }
+
+    @Override
+    public void releaseGoFaster() {
+        // nothing to release
+    }
+}
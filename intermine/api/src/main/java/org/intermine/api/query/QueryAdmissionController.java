@@ -0,0 +1,352 @@
+package org.intermine.api.query;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.intermine.metrics.Counter;
+import org.intermine.metrics.Histogram;
+import org.intermine.metrics.MetricsRegistry;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreQueryDurationException;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.query.Query;
+
+/**
+ * Decides whether a query may run now, based on its estimated cost, so that a few expensive
+ * queries cannot take every database connection and make cheap queries wait.
+ * <p>
+ * Queries are sorted into lanes by the time the database expects them to take. Each lane runs a
+ * limited number of queries at once and lets a limited number wait, in order, for a limited time.
+ * A query that cannot join the queue of its lane is rejected, so the client can be told to try
+ * again later, and a query that costs more than every lane allows is refused with an
+ * ObjectStoreQueryDurationException. A lane may also have a deadline, after which the query is
+ * cancelled with ObjectStoreInterMineImpl.cancelRequest().
+ * <p>
+ * Lanes are configured with properties, in order of increasing cost:
+ * <pre>
+ * ws.admission.lanes = cheap, expensive
+ * ws.admission.cheap.maxCost = 1000       (estimated milliseconds, default unlimited)
+ * ws.admission.cheap.concurrency = 8      (queries running at once, default 4)
+ * ws.admission.cheap.queue = 64           (queries waiting, default 16)
+ * ws.admission.cheap.wait = 5000          (milliseconds a query may wait, default 10000)
+ * ws.admission.cheap.deadline = 30000     (milliseconds a query may run, default no limit)
+ * </pre>
+ */
+public class QueryAdmissionController
+{
+    private static final Logger LOG = Logger.getLogger(QueryAdmissionController.class);
+
+    /** The prefix of the properties that configure the lanes. */
+    public static final String PREFIX = "ws.admission.";
+
+    private static final ScheduledThreadPoolExecutor DEADLINES = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread retval = new Thread(r, "QueryAdmissionController deadlines");
+                    retval.setDaemon(true);
+                    return retval;
+                }
+            });
+
+    static {
+        DEADLINES.setRemoveOnCancelPolicy(true);
+    }
+
+    private final ObjectStore os;
+    private final List<Lane> lanes = new ArrayList<Lane>();
+
+    /**
+     * Constructor.
+     *
+     * @param os the ObjectStore the queries run in
+     * @param props the properties that configure the lanes
+     * @throws IllegalArgumentException if no lanes are configured, or a property is not a number
+     */
+    public QueryAdmissionController(ObjectStore os, Properties props) {
+        this.os = os;
+        String names = props.getProperty(PREFIX + "lanes");
+        if (StringUtils.isBlank(names)) {
+            throw new IllegalArgumentException("No lanes configured in " + PREFIX + "lanes");
+        }
+        for (String name : StringUtils.split(names, ", ")) {
+            lanes.add(new Lane(name, props));
+        }
+    }
+
+    /**
+     * Creates a QueryAdmissionController if any lanes are configured.
+     *
+     * @param os the ObjectStore the queries run in
+     * @param props the properties that configure the lanes
+     * @return a QueryAdmissionController, or null if every query should be admitted at once
+     */
+    public static QueryAdmissionController fromProperties(ObjectStore os, Properties props) {
+        if (StringUtils.isBlank(props.getProperty(PREFIX + "lanes"))) {
+            return null;
+        }
+        return new QueryAdmissionController(os, props);
+    }
+
+    /**
+     * Creates a ticket for a request. The ticket admits the request's query when it has been made,
+     * and must be closed in the same Thread when the request has finished with the results.
+     *
+     * @return a new Ticket
+     */
+    public Ticket newTicket() {
+        return new Ticket();
+    }
+
+    /**
+     * Returns the lane for queries of a certain cost.
+     *
+     * @param cost the estimated time of the query in milliseconds
+     * @return the cheapest lane that takes queries of this cost, or null if there is none
+     */
+    protected Lane getLaneForCost(long cost) {
+        for (Lane lane : lanes) {
+            if (cost <= lane.maxCost) {
+                return lane;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A request's place in a lane.
+     */
+    public class Ticket
+    {
+        private Lane lane = null;
+        private long cost = 0;
+        private int queuePosition = 0;
+        private boolean registered = false;
+        private ScheduledFuture<?> deadline = null;
+        private volatile boolean expired = false;
+
+        /**
+         * Waits until a query may run. A ticket admits only one query, and further calls do
+         * nothing, so a request that runs several queries is admitted by the cost of the first.
+         *
+         * @param q the query
+         * @throws QueryRejectedException if the lane for the query is busy
+         * @throws ObjectStoreQueryDurationException if the query costs more than any lane allows
+         * @throws ObjectStoreException if the query cannot be estimated
+         */
+        public void admit(Query q) throws ObjectStoreException {
+            if (lane != null) {
+                return;
+            }
+            cost = os.estimate(q).getComplete();
+            Lane chosen = getLaneForCost(cost);
+            if (chosen == null) {
+                throw new ObjectStoreQueryDurationException("Estimated time to run query (" + cost
+                        + " ms) greater than permitted maximum ("
+                        + lanes.get(lanes.size() - 1).maxCost + " ms)");
+            }
+            queuePosition = chosen.acquire();
+            lane = chosen;
+            if (lane.deadline > 0 && os instanceof ObjectStoreInterMineImpl) {
+                final ObjectStoreInterMineImpl ios = (ObjectStoreInterMineImpl) os;
+                try {
+                    ios.registerRequestId(this);
+                    registered = true;
+                } catch (ObjectStoreException e) {
+                    LOG.warn("Cannot enforce the deadline of a query: " + e.getMessage());
+                    return;
+                }
+                final Lane expiring = lane;
+                deadline = DEADLINES.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        expired = true;
+                        expiring.expired.inc();
+                        try {
+                            ios.cancelRequest(Ticket.this);
+                        } catch (ObjectStoreException e) {
+                            LOG.warn("Failed to cancel a query that passed its deadline", e);
+                        }
+                    }
+                }, lane.deadline, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * @return the name of the lane the query was admitted to, or null if it has not been
+         */
+        public String getLane() {
+            return lane == null ? null : lane.name;
+        }
+
+        /**
+         * @return the estimated time of the query in milliseconds
+         */
+        public long getCost() {
+            return cost;
+        }
+
+        /**
+         * @return the number of queries that were waiting in the lane when this one arrived,
+         * including this one, or zero if it did not have to wait
+         */
+        public int getQueuePosition() {
+            return queuePosition;
+        }
+
+        /**
+         * @return the time in milliseconds the query may run for, or zero for no limit
+         */
+        public long getDeadline() {
+            return lane == null ? 0 : lane.deadline;
+        }
+
+        /**
+         * @return true if the query was cancelled because it passed its deadline
+         */
+        public boolean isExpired() {
+            return expired;
+        }
+
+        /**
+         * Gives up the ticket's place in its lane. This must be called in the Thread that
+         * admitted the query.
+         */
+        public void close() {
+            if (lane == null) {
+                return;
+            }
+            if (deadline != null) {
+                deadline.cancel(false);
+                deadline = null;
+            }
+            if (registered) {
+                try {
+                    ((ObjectStoreInterMineImpl) os).deregisterRequestId(this);
+                } catch (ObjectStoreException e) {
+                    LOG.warn("Failed to deregister a query", e);
+                }
+                registered = false;
+            }
+            lane.permits.release();
+            lane = null;
+        }
+    }
+
+    /**
+     * A class of queries, with a limit on how many may run and wait at once.
+     */
+    protected static class Lane
+    {
+        private final String name;
+        private final long maxCost;
+        private final int queueSize;
+        private final long maxWait;
+        private final long deadline;
+        private final Semaphore permits;
+        private final AtomicInteger waiting = new AtomicInteger(0);
+        private final Counter admitted;
+        private final Counter queued;
+        private final Counter rejected;
+        private final Counter expired;
+        private final Histogram waitTime;
+
+        Lane(String name, Properties props) {
+            this.name = name;
+            maxCost = getLong(props, name, "maxCost", Long.MAX_VALUE);
+            permits = new Semaphore((int) getLong(props, name, "concurrency", 4), true);
+            queueSize = (int) getLong(props, name, "queue", 16);
+            maxWait = getLong(props, name, "wait", 10000);
+            deadline = getLong(props, name, "deadline", 0);
+            MetricsRegistry metrics = MetricsRegistry.getInstance();
+            String help = "Queries sent to each admission lane, by result";
+            admitted = metrics.counter("intermine_admission_requests_total", help, "lane", name,
+                    "result", "admitted");
+            queued = metrics.counter("intermine_admission_requests_total", help, "lane", name,
+                    "result", "queued");
+            rejected = metrics.counter("intermine_admission_requests_total", help, "lane", name,
+                    "result", "rejected");
+            expired = metrics.counter("intermine_admission_expired_total",
+                    "Queries cancelled at their deadline, by admission lane", "lane", name);
+            waitTime = metrics.timer("intermine_admission_wait_ms",
+                    "Time queries waited to be admitted, by admission lane", "lane", name);
+        }
+
+        /**
+         * Waits for a place to run a query.
+         *
+         * @return the place the query had in the queue, or zero if it did not wait
+         * @throws QueryRejectedException if the queue is full or the wait is too long
+         */
+        int acquire() throws QueryRejectedException {
+            long start = System.currentTimeMillis();
+            int position = waiting.incrementAndGet();
+            try {
+                // A timed tryAcquire respects the fairness of the Semaphore, so queries that
+                // arrive while others are waiting go to the back of the queue
+                if (permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                    admitted.inc();
+                    return 0;
+                }
+                if (position > queueSize) {
+                    rejected.inc();
+                    throw new QueryRejectedException("Too many queries are waiting in the " + name
+                            + " lane", name, position, retryAfter());
+                }
+                queued.inc();
+                if (!permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+                    rejected.inc();
+                    throw new QueryRejectedException("Query waited " + maxWait + " ms in the "
+                            + name + " lane without starting", name, position, retryAfter());
+                }
+                admitted.inc();
+                waitTime.observeSince(start);
+                return position;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryRejectedException("Interrupted while waiting in the " + name
+                        + " lane", name, position, retryAfter());
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+
+        private int retryAfter() {
+            return (int) Math.max(1, maxWait / 1000);
+        }
+
+        private static long getLong(Properties props, String lane, String key, long def) {
+            String property = PREFIX + lane + "." + key;
+            String value = props.getProperty(property);
+            if (StringUtils.isBlank(value)) {
+                return def;
+            }
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Property " + property + " is not a number: "
+                        + value);
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package org.intermine.api.query;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreQueryDurationException;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.query.Results;
+import org.intermine.pathquery.PathQuery;
+
+/**
+ * A set of independent count and summary queries that are run together, so that a request that
+ * needs several of them waits only as long as the slowest.
+ * <p>
+ * Queries are added to the batch, each returning a Future, and then run by execute(), which
+ * returns when all of them have finished.  At most a fixed number of the queries run at once, so
+ * that one request cannot take every connection to the database: by default four, or a quarter
+ * of the connection pool if that is smaller.  The other queries run on a pool of workers shared
+ * by every batch, and the calling thread runs queries too, so a batch finishes even if no
+ * workers are free.
+ * <p>
+ * If the batch has a QueryAdmissionController, each of its queries takes its own ticket in the
+ * thread that runs it, so that every query waits in its lane and can be cancelled at its deadline.
+ * <pre>
+ * QueryBatch batch = executor.newBatch(admission, workers);
+ * Future&lt;Integer&gt; count = batch.count(pq);
+ * Future&lt;Results&gt; summary = batch.summarise(pq, "Gene.length", null, false);
+ * batch.execute();
+ * </pre>
+ */
+public class QueryBatch
+{
+    private static final Logger LOG = Logger.getLogger(QueryBatch.class);
+
+    /** The most queries of one batch that run at once. */
+    public static final int DEFAULT_BUDGET = 4;
+
+    private final QueryExecutor executor;
+    private final int budget;
+    private final QueryAdmissionController admission;
+    private final ExecutorService workers;
+    private final List<FutureTask<?>> tasks = new ArrayList<FutureTask<?>>();
+
+    /**
+     * Constructor.
+     *
+     * @param executor the executor that makes and runs the queries
+     * @param budget the most queries of this batch that may run at once
+     * @param workers the pool whose threads help run the queries, or null to run them all in
+     * the calling thread
+     */
+    public QueryBatch(QueryExecutor executor, int budget, ExecutorService workers) {
+        this(executor, budget, null, workers);
+    }
+
+    /**
+     * Constructor for a batch whose queries must be admitted before they run.
+     *
+     * @param executor the executor that makes and runs the queries
+     * @param budget the most queries of this batch that may run at once
+     * @param admission the controller that admits each query, or null to run them at once
+     * @param workers the pool whose threads help run the queries, or null to run them all in
+     * the calling thread
+     */
+    public QueryBatch(QueryExecutor executor, int budget, QueryAdmissionController admission,
+            ExecutorService workers) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("budget must be at least 1, not " + budget);
+        }
+        this.executor = executor;
+        this.budget = budget;
+        this.admission = admission;
+        this.workers = workers;
+    }
+
+    /**
+     * Returns the number of queries a batch may run at once with an ObjectStore: the default
+     * budget, or a quarter of the connections to the database if that is smaller.
+     *
+     * @param os the ObjectStore
+     * @return the budget
+     */
+    public static int getBudget(ObjectStore os) {
+        if (os instanceof ObjectStoreInterMineImpl) {
+            int connections = ((ObjectStoreInterMineImpl) os).getDatabase().getMaxConnections();
+            if (connections > 0) {
+                return Math.max(1, Math.min(DEFAULT_BUDGET, connections / 4));
+            }
+        }
+        return DEFAULT_BUDGET;
+    }
+
+    /**
+     * @return the most queries of this batch that may run at once
+     */
+    public int getBudget() {
+        return budget;
+    }
+
+    /**
+     * Adds a task to the batch.
+     *
+     * @param task a task that runs one or more queries
+     * @param <T> the type of the result of the task
+     * @return the result of the task, available once execute() has returned
+     */
+    public <T> Future<T> add(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<T>(task);
+        tasks.add(future);
+        return future;
+    }
+
+    /**
+     * Adds a task to the batch that runs its queries once a ticket has admitted them.  The ticket
+     * is taken in the thread that runs the task, and closed when the task has finished.
+     *
+     * @param task a task that runs one or more queries
+     * @param <T> the type of the result of the task
+     * @return the result of the task, available once execute() has returned
+     */
+    public <T> Future<T> addAdmitted(final AdmittedTask<T> task) {
+        return add(new Callable<T>() {
+            @Override
+            public T call() throws ObjectStoreException {
+                QueryAdmissionController.Ticket ticket =
+                    (admission == null) ? null : admission.newTicket();
+                try {
+                    return task.call(ticket);
+                } catch (ObjectStoreException e) {
+                    if (ticket != null && ticket.isExpired()) {
+                        throw new ObjectStoreQueryDurationException("The query was cancelled "
+                                + "because it ran for longer than " + ticket.getDeadline() + " ms");
+                    }
+                    throw e;
+                } finally {
+                    if (ticket != null) {
+                        ticket.close();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds a count of the rows of a query to the batch.
+     *
+     * @param pq the query to count
+     * @return the number of rows
+     */
+    public Future<Integer> count(final PathQuery pq) {
+        return addAdmitted(new AdmittedTask<Integer>() {
+            @Override
+            public Integer call(QueryAdmissionController.Ticket ticket)
+                throws ObjectStoreException {
+                return executor.count(pq, ticket);
+            }
+        });
+    }
+
+    /**
+     * Adds a count of the different values of a column to the batch.
+     *
+     * @param pq the query
+     * @param path the column
+     * @return the number of different values in the column
+     */
+    public Future<Integer> uniqueColumnValues(final PathQuery pq, final String path) {
+        return addAdmitted(new AdmittedTask<Integer>() {
+            @Override
+            public Integer call(QueryAdmissionController.Ticket ticket)
+                throws ObjectStoreException {
+                return executor.uniqueColumnValues(pq, path, ticket);
+            }
+        });
+    }
+
+    /**
+     * Adds a summary of a column to the batch.  The first batch of rows of the summary is fetched
+     * when the batch is executed.
+     *
+     * @param pq the query
+     * @param path the column to summarise
+     * @param filterTerm an optional term to filter the summary by
+     * @param asOccurrences if true, only summarise the values and their counts
+     * @return the summary
+     * @see QueryExecutor#summariseQuery(PathQuery, String, String, boolean)
+     */
+    public Future<Results> summarise(final PathQuery pq, final String path,
+            final String filterTerm, final boolean asOccurrences) {
+        return addAdmitted(new AdmittedTask<Results>() {
+            @Override
+            public Results call(QueryAdmissionController.Ticket ticket)
+                throws ObjectStoreException {
+                Results retval = executor.summariseQuery(pq, path, filterTerm, asOccurrences,
+                        ticket);
+                prime(retval);
+                return retval;
+            }
+        });
+    }
+
+    /**
+     * Run every query in the batch, and wait until they have finished.
+     *
+     * @throws ObjectStoreException if any of the queries fails, in which case the others have
+     * still finished.  Only the first failure is thrown, which may also be a RuntimeException or
+     * an Error.
+     */
+    public void execute() throws ObjectStoreException {
+        final Queue<FutureTask<?>> pending = new ConcurrentLinkedQueue<FutureTask<?>>(tasks);
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                FutureTask<?> task;
+                while ((task = pending.poll()) != null) {
+                    task.run();
+                }
+            }
+        };
+        int helpers = (workers == null) ? 0 : Math.min(budget, tasks.size()) - 1;
+        for (int i = 0; i < helpers; i++) {
+            try {
+                workers.execute(worker);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("No threads free to run a query batch, running it with fewer");
+                break;
+            }
+        }
+        worker.run();
+        // wait for every task, even once one has failed, so that none is still running when
+        // this returns
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (FutureTask<?> task : tasks) {
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        tasks.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            if (failure == null) {
+                throw new ObjectStoreException("Interrupted while waiting for queries");
+            }
+        }
+        if (failure instanceof ObjectStoreException) {
+            throw (ObjectStoreException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new ObjectStoreException(failure);
+        }
+    }
+
+    /**
+     * Get the result of a query once the batch has been executed.
+     *
+     * @param future the Future returned when the query was added
+     * @param <T> the type of the result
+     * @return the result
+     * @throws IllegalStateException if the batch has not been executed, or the query failed
+     */
+    public static <T> T get(Future<T> future) {
+        if (!future.isDone()) {
+            throw new IllegalStateException("The batch has not been executed");
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("The query failed", e.getCause());
+        }
+    }
+
+    private static void prime(Results results) throws ObjectStoreException {
+        try {
+            // causes query to be strictly evaluated, and errors to surface here.
+            results.range(0, 0);
+        } catch (IndexOutOfBoundsException e) {
+            // Ignore, it just means it's empty.
+        }
+    }
+
+    /**
+     * A task of a batch whose queries are admitted by a ticket.
+     *
+     * @param <T> the type of the result of the task
+     */
+    public interface AdmittedTask<T>
+    {
+        /**
+         * Run the task.
+         *
+         * @param ticket the ticket that must admit each query before it runs, or null if the
+         * queries may run at once
+         * @return the result of the task
+         * @throws ObjectStoreException if a query fails or is not admitted
+         */
+        T call(QueryAdmissionController.Ticket ticket) throws ObjectStoreException;
+    }
+}
@@ -14,6 +14,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.log4j.Logger;
 import org.intermine.api.bag.BagManager;
@@ -187,11 +188,34 @@ public abstract class QueryExecutor
             String summaryPath,
             String filterTerm,
             boolean asOccurrances) throws ObjectStoreException {
+        return summariseQuery(pq, summaryPath, filterTerm, asOccurrances, null);
+    }
+
+    /**
+     * Summarise a query, once the query has been admitted by a ticket.
+     * @param pq The query to summarise
+     * @param summaryPath The path of the query to focus on.
+     * @param filterTerm An optional term to further filter by.
+     * @param asOccurrances If true, will only return the list of values and their counts.
+     * @param ticket a ticket from a QueryAdmissionController that must admit the query before it
+     * runs, or null to run it at once
+     * @return A set of results.
+     * @throws ObjectStoreException if there is a problem summarising, or the query is not
+     * admitted
+     */
+    public Results summariseQuery(PathQuery pq, String summaryPath, String filterTerm,
+            boolean asOccurrances, QueryAdmissionController.Ticket ticket)
+        throws ObjectStoreException {
+        Query q;
         if (filterTerm == null || filterTerm.isEmpty()) {
-            return summariseQuery(pq, summaryPath, asOccurrances);
+            q = makeSummaryQuery(pq, summaryPath, asOccurrances);
+        } else {
+            q = makeSummaryQuery(pq, summaryPath, filterTerm, asOccurrances);
+        }
+        if (ticket != null) {
+            ticket.admit(q);
         }
-        return os.execute(makeSummaryQuery(pq, summaryPath, filterTerm, asOccurrances),
-                summaryBatchSize, true, true, true);
+        return os.execute(q, summaryBatchSize, true, true, true);
     }
 
     /**
@@ -202,11 +226,31 @@ public abstract class QueryExecutor
      * @throws ObjectStoreException if there is a problem counting the query
      */
     public int count(PathQuery pathQuery) throws ObjectStoreException {
+        return count(pathQuery, null);
+    }
+
+    /**
+     * Take a query and return the results row count, once the query has been admitted by a
+     * ticket.
+     *
+     * @param pathQuery the query to count
+     * @param ticket a ticket from a QueryAdmissionController that must admit the query before it
+     * runs, or null to run it at once
+     * @return the number of rows returned
+     * @throws ObjectStoreException if there is a problem counting the query, or it is not
+     * admitted
+     */
+    public int count(PathQuery pathQuery, QueryAdmissionController.Ticket ticket)
+        throws ObjectStoreException {
         Query q = makeQuery(pathQuery);
+        if (ticket != null) {
+            ticket.admit(q);
+        }
         return os.count(q, ObjectStore.SEQUENCE_IGNORE);
     }
 
-    private static final Map<String, Integer> COUNT_CACHE = new CacheMap<String, Integer>();
+    private static final Map<String, Integer> COUNT_CACHE =
+        Collections.synchronizedMap(new CacheMap<String, Integer>());
     /**
      * Get the the total number of unique column values for a given path in the
      * context of a given query.
@@ -222,13 +266,35 @@ public abstract class QueryExecutor
      * @throws ObjectStoreException If there is a problem making the query.
      */
     public int uniqueColumnValues(PathQuery pq, String path) throws ObjectStoreException {
+        return uniqueColumnValues(pq, path, null);
+    }
+
+    /**
+     * Get the the total number of unique column values for a given path in the
+     * context of a given query, once the query has been admitted by a ticket.  A count that is
+     * already cached needs no admission.
+     *
+     * @param pq The query to execute.
+     * @param path The path whose unique column value count we want.
+     * @param ticket a ticket from a QueryAdmissionController that must admit the query before it
+     * runs, or null to run it at once
+     * @return The number of different values this path can have.
+     * @throws ObjectStoreException If there is a problem making the query, or it is not
+     * admitted
+     */
+    public int uniqueColumnValues(PathQuery pq, String path,
+            QueryAdmissionController.Ticket ticket) throws ObjectStoreException {
         Query q = makeSummaryQuery(pq, path, true);
         String cacheKey = q.toString() + "summary-path: " + path;
-        if (COUNT_CACHE.containsKey(cacheKey)) {
+        Integer cached = COUNT_CACHE.get(cacheKey);
+        if (cached != null) {
             LOG.debug("Count cache hit");
-            return COUNT_CACHE.get(cacheKey);
+            return cached;
         } else {
             LOG.debug("Count cache miss");
+            if (ticket != null) {
+                ticket.admit(q);
+            }
             Results res = os.execute(q, summaryBatchSize, true, true, true);
             int c = res.size();
             COUNT_CACHE.put(cacheKey, c);
@@ -236,6 +302,20 @@ public abstract class QueryExecutor
         }
     }
 
+    /**
+     * Creates a batch of count and summary queries that run concurrently, using at most as many
+     * database connections as QueryBatch.getBudget(ObjectStore) allows, where each query must be
+     * admitted before it runs.
+     *
+     * @param admission the controller that admits each query, or null to run them at once
+     * @param workers the pool whose threads help run the queries, or null to run them all in
+     * the calling thread
+     * @return a new, empty QueryBatch
+     */
+    public QueryBatch newBatch(QueryAdmissionController admission, ExecutorService workers) {
+        return new QueryBatch(this, QueryBatch.getBudget(os), admission, workers);
+    }
+
     /**
      * Make an InterMine Query object from a PathQuery.
      *
@@ -0,0 +1,61 @@
+package org.intermine.api.query;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * Thrown when a query is not admitted because the lane for queries of its cost is busy.
+ */
+public class QueryRejectedException extends ObjectStoreException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String lane;
+    private final int queuePosition;
+    private final int retryAfter;
+
+    /**
+     * Constructor.
+     *
+     * @param msg the detail message
+     * @param lane the name of the lane the query was meant for
+     * @param queuePosition the place the query would have had in the queue for the lane
+     * @param retryAfter a suggested number of seconds to wait before trying again
+     */
+    public QueryRejectedException(String msg, String lane, int queuePosition, int retryAfter) {
+        super(msg);
+        this.lane = lane;
+        this.queuePosition = queuePosition;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the name of the lane the query was meant for
+     */
+    public String getLane() {
+        return lane;
+    }
+
+    /**
+     * @return the place the query would have had in the queue for the lane
+     */
+    public int getQueuePosition() {
+        return queuePosition;
+    }
+
+    /**
+     * @return a suggested number of seconds to wait before trying again
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,595 @@
+package org.intermine.api.query;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.intermine.api.profile.InterMineBag;
+import org.intermine.api.results.ResultElement;
+import org.intermine.api.util.SerialNumberWatcher;
+import org.intermine.model.FastPathObject;
+import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.query.Query;
+import org.intermine.pathquery.LogicExpression;
+import org.intermine.pathquery.OrderElement;
+import org.intermine.pathquery.OuterJoinStatus;
+import org.intermine.pathquery.Path;
+import org.intermine.pathquery.PathConstraint;
+import org.intermine.pathquery.PathQuery;
+
+/**
+ * A cache of pages of PathQuery results, shared between all users of an InterMineAPI.
+ *
+ * Pages are keyed by a canonical form of the PathQuery, in which the order of the constraints
+ * and their codes, and the title and descriptions, make no difference, together with the lists
+ * used by the query, the state of the ObjectStore tables the query reads and the serial number
+ * of the production database.  The serial number is written by a new build, so all pages are
+ * dropped when a new release is deployed, and writes to the tables made through this
+ * ObjectStore (for example to lists) change the key of the queries they affect.
+ *
+ * The cache holds at most a fixed number of cells (rows times columns), discarding the least
+ * recently used pages.  With compression switched on, pages are held as deflated object ids
+ * which are turned back into objects with a single getObjectsByIds() call when the page is
+ * used again.  Pages that contain objects without ids are always held uncompressed.  Cached
+ * InterMineObjects are shared between readers, so they must not be changed.
+ */
+public class ResultsCache
+{
+    private static final Logger LOG = Logger.getLogger(ResultsCache.class);
+
+    /** The default maximum number of cells to hold. */
+    public static final int DEFAULT_MAX_CELLS = 1000000;
+    /** Pages with more rows than this are not cached. */
+    public static final int MAX_PAGE_ROWS = 10000;
+
+    private static final String PREFIX = "webapp.resultsCache.";
+    private static final int NO_PATH = -1;
+    private static final int NO_OBJECT = 0;
+    private static final int OBJECT = 1;
+
+    private final ObjectStore os;
+    private final int maxCells;
+    private final boolean compress;
+    private final LinkedHashMap<String, CachedPage> pages =
+        new LinkedHashMap<String, CachedPage>(16, 0.75f, true);
+    private int cells = 0;
+    private final SerialNumberWatcher serialNumberWatcher;
+    private String serialNumber = null;
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * Create a cache that holds uncompressed pages of up to DEFAULT_MAX_CELLS cells.
+     *
+     * @param os the ObjectStore the queries are run in
+     */
+    public ResultsCache(ObjectStore os) {
+        this(os, DEFAULT_MAX_CELLS, false);
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param os the ObjectStore the queries are run in
+     * @param maxCells the maximum number of cells to hold
+     * @param compress if true, hold pages as compressed object ids
+     */
+    public ResultsCache(ObjectStore os, int maxCells, boolean compress) {
+        this.os = os;
+        this.maxCells = maxCells;
+        this.compress = compress;
+        this.serialNumberWatcher = new SerialNumberWatcher(os);
+    }
+
+    /**
+     * Create a cache configured by the webapp.resultsCache.size property, the maximum number of
+     * cells to hold (default 1000000), and webapp.resultsCache.compress, which holds pages as
+     * compressed object ids if true (default false).
+     *
+     * @param os the ObjectStore the queries are run in
+     * @param props the properties
+     * @return the cache
+     */
+    public static ResultsCache fromProperties(ObjectStore os, Properties props) {
+        int maxCells = DEFAULT_MAX_CELLS;
+        String size = props.getProperty(PREFIX + "size");
+        if (StringUtils.isNotBlank(size)) {
+            try {
+                maxCells = Integer.parseInt(size.trim());
+            } catch (NumberFormatException e) {
+                LOG.warn("Property " + PREFIX + "size is not a number: " + size + ", using "
+                        + maxCells);
+            }
+        }
+        boolean compress = "true".equalsIgnoreCase(
+                StringUtils.trim(props.getProperty(PREFIX + "compress")));
+        return new ResultsCache(os, maxCells, compress);
+    }
+
+    /**
+     * Make the key for a page of results.
+     *
+     * @param pq the PathQuery
+     * @param q the ObjectStore query generated from the PathQuery
+     * @param bags the lists available to the user running the query
+     * @param start the index of the first row of the page
+     * @param limit the maximum number of rows in the page
+     * @return the key
+     */
+    public String getKey(PathQuery pq, Query q, Map<String, InterMineBag> bags, int start,
+            int limit) {
+        checkSerialNumber();
+        StringBuilder key = new StringBuilder(canonicalise(pq));
+        for (String bagName : new TreeSet<String>(pq.getBagNames())) {
+            InterMineBag bag = bags.get(bagName);
+            key.append(" bag:").append(bagName).append('=')
+                .append(bag == null ? "missing" : bag.getOsb().getBagId());
+        }
+        if (os != null) {
+            key.append(" sequence:")
+                .append(new TreeMap<String, Integer>(toStrings(
+                        os.getSequence(os.getComponentsForQuery(q)))));
+        }
+        key.append(" start:").append(start).append(" limit:").append(limit);
+        return key.toString();
+    }
+
+    /**
+     * Get a page of results.  The rows are new ResultElements each time, so callers are free to
+     * change them, but the InterMineObjects in them are shared and must not be changed.
+     *
+     * @param key the key from getKey()
+     * @return the rows, or null if the page is not in the cache
+     */
+    public List<List<ResultElement>> get(String key) {
+        CachedPage page;
+        synchronized (this) {
+            page = pages.get(key);
+            if (page == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        try {
+            return page.getRows();
+        } catch (ObjectStoreException e) {
+            LOG.warn("Could not restore cached results page", e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Add a page of results to the cache.
+     *
+     * @param key the key from getKey()
+     * @param rows the rows of the page
+     */
+    public void put(String key, List<List<ResultElement>> rows) {
+        if (rows.size() > MAX_PAGE_ROWS) {
+            return;
+        }
+        CachedPage page = null;
+        if (compress) {
+            page = compressPage(rows);
+        }
+        if (page == null) {
+            page = PlainPage.create(rows);
+        }
+        if (page == null || page.getCellCount() > maxCells) {
+            return;
+        }
+        synchronized (this) {
+            CachedPage old = pages.put(key, page);
+            if (old != null) {
+                cells -= old.getCellCount();
+            }
+            cells += page.getCellCount();
+            Iterator<CachedPage> iter = pages.values().iterator();
+            while (cells > maxCells && iter.hasNext()) {
+                cells -= iter.next().getCellCount();
+                iter.remove();
+            }
+        }
+    }
+
+    private synchronized void remove(String key) {
+        CachedPage old = pages.remove(key);
+        if (old != null) {
+            cells -= old.getCellCount();
+        }
+    }
+
+    /**
+     * Remove all pages from the cache.
+     */
+    public synchronized void clear() {
+        pages.clear();
+        cells = 0;
+    }
+
+    /**
+     * @return the number of pages in the cache
+     */
+    public synchronized int size() {
+        return pages.size();
+    }
+
+    /**
+     * @return the maximum number of cells the cache holds
+     */
+    public int getMaxCells() {
+        return maxCells;
+    }
+
+    /**
+     * @return true if pages are held as compressed object ids
+     */
+    public boolean isCompressed() {
+        return compress;
+    }
+
+    /**
+     * @return the number of cells held by the cache
+     */
+    public synchronized int getCellCount() {
+        return cells;
+    }
+
+    /**
+     * Drop all pages if the serial number of the production database has changed, which happens
+     * when a new release is built.  The serial number is read without holding the lock of the
+     * cache, so readers never wait for the database.
+     */
+    private void checkSerialNumber() {
+        String newSerialNumber = serialNumberWatcher.getSerialNumber();
+        if (newSerialNumber == null) {
+            return;
+        }
+        synchronized (this) {
+            if (serialNumber != null && !serialNumber.equals(newSerialNumber)) {
+                LOG.info("Production database serial number changed, clearing "
+                        + pages.size() + " cached results pages (" + hits + " hits, "
+                        + misses + " misses)");
+                clear();
+            }
+            serialNumber = newSerialNumber;
+        }
+    }
+
+    private static Map<String, Integer> toStrings(Map<Object, Integer> sequence) {
+        Map<String, Integer> retval = new HashMap<String, Integer>();
+        for (Map.Entry<Object, Integer> entry : sequence.entrySet()) {
+            retval.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return retval;
+    }
+
+    /**
+     * Return a String representing what a PathQuery selects, so that queries that only differ in
+     * the order or codes of their constraints have the same form.  Constraints are sorted and
+     * renamed C0, C1 and so on in the sorted order, and the constraint logic is rewritten to use
+     * the new names.  The title and descriptions of the query are left out.
+     *
+     * @param pq the PathQuery
+     * @return the canonical form
+     */
+    public static String canonicalise(PathQuery pq) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("view:").append(pq.getView());
+        sb.append(" order:");
+        for (OrderElement order : pq.getOrderBy()) {
+            sb.append(order).append(',');
+        }
+        sb.append(" joins:").append(new TreeMap<String, OuterJoinStatus>(pq.getOuterJoinStatus()));
+
+        TreeMap<String, List<String>> sorted = new TreeMap<String, List<String>>();
+        for (Map.Entry<PathConstraint, String> entry : pq.getConstraints().entrySet()) {
+            String constraint = entry.getKey().toString();
+            List<String> codes = sorted.get(constraint);
+            if (codes == null) {
+                codes = new ArrayList<String>();
+                sorted.put(constraint, codes);
+            }
+            codes.add(entry.getValue());
+        }
+        Map<String, String> newCodes = new HashMap<String, String>();
+        sb.append(" constraints:");
+        int i = 0;
+        for (Map.Entry<String, List<String>> entry : sorted.entrySet()) {
+            for (String code : entry.getValue()) {
+                String newCode = "C" + i++;
+                if (code != null) {
+                    newCodes.put(code, newCode);
+                }
+                sb.append(newCode).append('=').append(entry.getKey()).append(';');
+            }
+        }
+        LogicExpression logic = pq.getLogicExpression();
+        sb.append(" logic:");
+        if (logic != null) {
+            sb.append(canonicalise(logic.getRootNode(), newCodes));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write a branch of a constraint logic expression with the new constraint codes, and the
+     * operands of each operator sorted, so that the order they were written in makes no
+     * difference.
+     */
+    private static String canonicalise(LogicExpression.Node node, Map<String, String> newCodes) {
+        if (node instanceof LogicExpression.Variable) {
+            String code = ((LogicExpression.Variable) node).getName();
+            String newCode = newCodes.get(code);
+            return newCode == null ? code : newCode;
+        }
+        List<String> operands = new ArrayList<String>();
+        for (LogicExpression.Node child : ((LogicExpression.Operator) node).getChildren()) {
+            String operand = canonicalise(child, newCodes);
+            operands.add(child instanceof LogicExpression.Operator ? "(" + operand + ")"
+                    : operand);
+        }
+        Collections.sort(operands);
+        return StringUtils.join(operands, node instanceof LogicExpression.And ? " and " : " or ");
+    }
+
+    /**
+     * A page held in the cache.
+     */
+    private interface CachedPage
+    {
+        List<List<ResultElement>> getRows() throws ObjectStoreException;
+
+        int getCellCount();
+    }
+
+    /**
+     * A page held as the objects and paths of each cell.  The ResultElements are made afresh
+     * each time the page is read, but the InterMineObjects in them are shared with every other
+     * reader, just as objects from the cache of the ObjectStore are, and must not be changed.
+     * Pages holding objects that the ObjectStore does not share in this way, such as
+     * SimpleObjects, are not cached.
+     */
+    private static final class PlainPage implements CachedPage
+    {
+        private final int[] rowLengths;
+        private final Object[] values;
+        private final Path[] paths;
+        private final boolean[] keyFields;
+        private final boolean[] present;
+
+        /**
+         * Make a page of rows.
+         *
+         * @return the page, or null if the rows hold objects that are not InterMineObjects
+         */
+        static PlainPage create(List<List<ResultElement>> rows) {
+            for (List<ResultElement> row : rows) {
+                for (ResultElement element : row) {
+                    if (element != null && element.getObject() != null
+                            && !(element.getObject() instanceof InterMineObject)) {
+                        return null;
+                    }
+                }
+            }
+            return new PlainPage(rows);
+        }
+
+        private PlainPage(List<List<ResultElement>> rows) {
+            int cellCount = 0;
+            rowLengths = new int[rows.size()];
+            for (int i = 0; i < rowLengths.length; i++) {
+                rowLengths[i] = rows.get(i).size();
+                cellCount += rowLengths[i];
+            }
+            values = new Object[cellCount];
+            paths = new Path[cellCount];
+            keyFields = new boolean[cellCount];
+            present = new boolean[cellCount];
+            int cell = 0;
+            for (List<ResultElement> row : rows) {
+                for (ResultElement element : row) {
+                    if (element != null) {
+                        present[cell] = true;
+                        paths[cell] = element.getPath();
+                        keyFields[cell] = element.isKeyField();
+                        values[cell] = (paths[cell] == null ? element.getField()
+                                : element.getObject());
+                    }
+                    cell++;
+                }
+            }
+        }
+
+        @Override
+        public List<List<ResultElement>> getRows() {
+            List<List<ResultElement>> rows = new ArrayList<List<ResultElement>>();
+            int cell = 0;
+            for (int rowLength : rowLengths) {
+                List<ResultElement> row = new ArrayList<ResultElement>(rowLength);
+                for (int i = 0; i < rowLength; i++) {
+                    if (!present[cell]) {
+                        row.add(null);
+                    } else if (paths[cell] != null) {
+                        row.add(new ResultElement((FastPathObject) values[cell], paths[cell],
+                                keyFields[cell]));
+                    } else {
+                        row.add(new ResultElement(values[cell]));
+                    }
+                    cell++;
+                }
+                rows.add(row);
+            }
+            return rows;
+        }
+
+        @Override
+        public int getCellCount() {
+            return values.length;
+        }
+    }
+
+    /**
+     * Compress a page of rows.
+     *
+     * @return a CompressedPage, or null if the rows contain cells that can't be restored from an
+     * object id
+     */
+    private CachedPage compressPage(List<List<ResultElement>> rows) {
+        Map<Path, Integer> pathIndexes = new LinkedHashMap<Path, Integer>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int cellCount = 0;
+        try {
+            DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+            out.writeInt(rows.size());
+            for (List<ResultElement> row : rows) {
+                out.writeInt(row.size());
+                for (ResultElement element : row) {
+                    cellCount++;
+                    if (element == null) {
+                        out.writeInt(NO_PATH);
+                        continue;
+                    }
+                    Path path = element.getPath();
+                    FastPathObject o = element.getObject();
+                    if (path == null || (o != null && (!(o instanceof InterMineObject)
+                            || ((InterMineObject) o).getId() == null))) {
+                        return null;
+                    }
+                    Integer pathIndex = pathIndexes.get(path);
+                    if (pathIndex == null) {
+                        pathIndex = new Integer(pathIndexes.size());
+                        pathIndexes.put(path, pathIndex);
+                    }
+                    out.writeInt(pathIndex.intValue());
+                    out.writeBoolean(element.isKeyField());
+                    if (o == null) {
+                        out.writeByte(NO_OBJECT);
+                    } else {
+                        out.writeByte(OBJECT);
+                        out.writeInt(((InterMineObject) o).getId().intValue());
+                    }
+                }
+            }
+            out.close();
+        } catch (IOException e) {
+            // can't happen writing to memory
+            throw new RuntimeException(e);
+        }
+        return new CompressedPage(pathIndexes.keySet().toArray(new Path[0]), bytes.toByteArray(),
+                cellCount);
+    }
+
+    /**
+     * A page held as deflated object ids.  For each row this holds the number of cells, and for
+     * each cell the index of its path, whether it is a key field and the id of its object.
+     */
+    private class CompressedPage implements CachedPage
+    {
+        private final Path[] paths;
+        private final byte[] data;
+        private final int cellCount;
+
+        CompressedPage(Path[] paths, byte[] data, int cellCount) {
+            this.paths = paths;
+            this.data = data;
+            this.cellCount = cellCount;
+        }
+
+        @Override
+        public List<List<ResultElement>> getRows() throws ObjectStoreException {
+            try {
+                // read the ids first, so that all of the objects can be fetched at once
+                DataInputStream in = new DataInputStream(new InflaterInputStream(
+                        new ByteArrayInputStream(data)));
+                int rowCount = in.readInt();
+                int[] rowLengths = new int[rowCount];
+                int[] pathIndexes = new int[cellCount];
+                boolean[] keyFields = new boolean[cellCount];
+                Integer[] ids = new Integer[cellCount];
+                Set<Integer> idsToFetch = new LinkedHashSet<Integer>();
+                int cell = 0;
+                for (int i = 0; i < rowCount; i++) {
+                    rowLengths[i] = in.readInt();
+                    for (int j = 0; j < rowLengths[i]; j++) {
+                        pathIndexes[cell] = in.readInt();
+                        if (pathIndexes[cell] != NO_PATH) {
+                            keyFields[cell] = in.readBoolean();
+                            if (in.readByte() == OBJECT) {
+                                ids[cell] = new Integer(in.readInt());
+                                idsToFetch.add(ids[cell]);
+                            }
+                        }
+                        cell++;
+                    }
+                }
+                in.close();
+
+                Map<Integer, InterMineObject> objects = new HashMap<Integer, InterMineObject>();
+                for (InterMineObject o : os.getObjectsByIds(idsToFetch)) {
+                    objects.put(o.getId(), o);
+                }
+                if (objects.size() < idsToFetch.size()) {
+                    throw new ObjectStoreException("Objects in cached page no longer exist");
+                }
+
+                List<List<ResultElement>> rows = new ArrayList<List<ResultElement>>();
+                cell = 0;
+                for (int rowLength : rowLengths) {
+                    List<ResultElement> row = new ArrayList<ResultElement>(rowLength);
+                    for (int i = 0; i < rowLength; i++) {
+                        if (pathIndexes[cell] == NO_PATH) {
+                            row.add(null);
+                        } else {
+                            row.add(new ResultElement(ids[cell] == null ? null
+                                    : objects.get(ids[cell]), paths[pathIndexes[cell]],
+                                    keyFields[cell]));
+                        }
+                        cell++;
+                    }
+                    rows.add(row);
+                }
+                return rows;
+            } catch (IOException e) {
+                throw new ObjectStoreException("Could not read cached page", e);
+            }
+        }
+
+        @Override
+        public int getCellCount() {
+            return cellCount;
+        }
+    }
+}
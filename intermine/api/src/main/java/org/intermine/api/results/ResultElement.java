@@ -16,6 +16,7 @@ import org.intermine.model.FastPathObject;
 import org.intermine.model.InterMineObject;
 import org.intermine.pathquery.Path;
 import org.intermine.util.DynamicUtil;
+import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.TypeUtil;
 import org.intermine.metadata.Util;
 
@@ -47,7 +48,15 @@ public class ResultElement implements Serializable, ResultCell
         this.path = path;
         if (imObj != null) {
             try {
-                field = imObj.getFieldValue(path.getEndFieldDescriptor().getName());
+                String fieldName = path.getEndFieldDescriptor().getName();
+                // every exported cell comes through here, so avoid comparing field names
+                ClassDescriptor cld = path.getModel().getOrdinalClassDescriptor(imObj);
+                int ordinal = (cld == null ? -1 : cld.getFieldOrdinal(fieldName));
+                if (ordinal < 0) {
+                    field = imObj.getFieldValue(fieldName);
+                } else {
+                    field = imObj.getFieldValue(ordinal);
+                }
             } catch (IllegalAccessException e) {
                 throw new RuntimeException(e);
             }
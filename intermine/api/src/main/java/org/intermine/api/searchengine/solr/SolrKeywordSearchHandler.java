@@ -10,6 +10,7 @@ package org.intermine.api.searchengine.solr;
  *
  */
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -21,6 +22,7 @@ import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.schema.SchemaResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.intermine.api.InterMineAPI;
 import org.intermine.api.data.Objects;
 import org.intermine.api.searchengine.KeywordSearchFacet;
@@ -45,6 +47,10 @@ import java.util.Vector;
 /**
  * Solr implementation of KeywordSearchHandler
  *
+ * The facets of a search are only counted for its first page, and remembered for the others.
+ * Each page remembers the Solr cursor mark that begins the next one, so that reading through the
+ * pages of a search in order does not make Solr rank all the earlier results again.
+ *
  * @author nils
  * @author arunans23
  */
@@ -54,6 +60,9 @@ public final class SolrKeywordSearchHandler implements KeywordSearchHandler
 
     private static final Logger LOG = Logger.getLogger(SolrKeywordSearchHandler.class);
 
+    private static final SolrSearchCache CACHE =
+        new SolrSearchCache(SolrSearchCache.TIME_TO_LIVE);
+
     @Override
     public KeywordSearchResults doKeywordSearch(InterMineAPI im, String queryString, Map<String,
             String> facetValues, List<Integer> ids, int offSet) {
@@ -61,12 +70,26 @@ public final class SolrKeywordSearchHandler implements KeywordSearchHandler
         KeywordSearchPropertiesManager keywordSearchPropertiesManager
                 = KeywordSearchPropertiesManager.getInstance(im.getObjectStore());
         Vector<KeywordSearchFacetData> facets = keywordSearchPropertiesManager.getFacets();
+        int rows = KeywordSearchPropertiesManager.PER_PAGE;
+
+        String key = SolrSearchCache.getKey(queryString, facetValues, ids);
+        Collection<KeywordSearchFacet> searchResultsFacets = CACHE.getFacets(key);
+        String cursorMark = (offSet == 0)
+            ? CursorMarkParams.CURSOR_MARK_START : CACHE.getCursorMark(key, offSet);
 
-        QueryResponse resp = performSearch(im, queryString, facetValues, ids, offSet,
-                keywordSearchPropertiesManager.PER_PAGE);
+        QueryResponse resp = performSearch(im, queryString, facetValues, ids, offSet, rows,
+                searchResultsFacets == null, cursorMark);
 
         SolrDocumentList results = resp.getResults();
 
+        if (resp.getNextCursorMark() != null) {
+            CACHE.putCursorMark(key, offSet + rows, resp.getNextCursorMark());
+        }
+        if (searchResultsFacets == null) {
+            searchResultsFacets = parseFacets(resp, facets, facetValues);
+            CACHE.putFacets(key, searchResultsFacets);
+        }
+
         Set<Integer> objectIds = getObjectIds(results);
 
         Map<Integer, InterMineObject> objMap = null;
@@ -81,9 +104,6 @@ public final class SolrKeywordSearchHandler implements KeywordSearchHandler
         Vector<KeywordSearchResultContainer> searchHits
                 = getSearchHits(results, objMap, results.getMaxScore());
 
-        Collection<KeywordSearchFacet> searchResultsFacets
-                = parseFacets(resp, facets, facetValues);
-
         return new KeywordSearchResults(searchHits, searchResultsFacets,
                 (int) results.getNumFound());
 
@@ -98,7 +118,8 @@ public final class SolrKeywordSearchHandler implements KeywordSearchHandler
             listSize = 10000;
         }
 
-        QueryResponse resp = performSearch(im, searchString, facetValues, ids, offSet, listSize);
+        QueryResponse resp = performSearch(im, searchString, facetValues, ids, offSet, listSize,
+                false, null);
 
         SolrDocumentList results = resp.getResults();
 
@@ -115,11 +136,14 @@ public final class SolrKeywordSearchHandler implements KeywordSearchHandler
                 = KeywordSearchPropertiesManager.getInstance(im.getObjectStore());
         Vector<KeywordSearchFacetData> facets = keywordSearchPropertiesManager.getFacets();
 
-        QueryResponse resp = performSearch(im, queryString, facetValues, null, 0, 0);
-
-        SolrDocumentList results = resp.getResults();
-
-        Collection<KeywordSearchFacet> searchResultsFacets = parseFacets(resp, facets, facetValues);
+        String key = SolrSearchCache.getKey(queryString, facetValues, null);
+        Collection<KeywordSearchFacet> searchResultsFacets = CACHE.getFacets(key);
+        if (searchResultsFacets == null) {
+            QueryResponse resp = performSearch(im, queryString, facetValues, null, 0, 0, true,
+                    null);
+            searchResultsFacets = parseFacets(resp, facets, facetValues);
+            CACHE.putFacets(key, searchResultsFacets);
+        }
 
         return searchResultsFacets;
 
@@ -236,7 +260,10 @@ public final class SolrKeywordSearchHandler implements KeywordSearchHandler
      * @return a list of field names
      */
     private List<String> getFieldNamesFromSolrSchema(SolrClient solrClient) {
-        List<String> fieldNames = null;
+        List<String> fieldNames = CACHE.getFieldNames();
+        if (fieldNames != null) {
+            return fieldNames;
+        }
 
         try {
             SchemaRequest.Fields request = new SchemaRequest.Fields();
@@ -256,6 +283,7 @@ public final class SolrKeywordSearchHandler implements KeywordSearchHandler
 
                 fieldNames.add(value);
             }
+            CACHE.setFieldNames(fieldNames);
 
         } catch (Exception e) {
             LOG.error("Retrieving fieldNames failed", e);
@@ -266,9 +294,13 @@ public final class SolrKeywordSearchHandler implements KeywordSearchHandler
     }
 
 
+    /**
+     * Run a search.  If a cursor mark is given, the page begins there rather than at the offset.
+     */
     private QueryResponse performSearch(InterMineAPI im, String queryString, Map<String,
                                         String> facetValues, List<Integer> ids,
-                                        int offSet, int rowSize) {
+                                        int offSet, int rowSize, boolean withFacets,
+                                        String cursorMark) {
 
         SolrClient solrClient = SolrClientManager.getClientInstance(im.getObjectStore());
 
@@ -287,14 +319,23 @@ public final class SolrKeywordSearchHandler implements KeywordSearchHandler
 
             SolrQuery newQuery = new SolrQuery();
             newQuery.setQuery(queryString);
-            newQuery.setStart(offSet);
             newQuery.setRows(rowSize);
             newQuery.addField("score");
             newQuery.addField("id");
             newQuery.add("defType", "edismax");
+            // the id breaks ties, so that the order is the same every time, as cursors need
+            newQuery.addSort("score", SolrQuery.ORDER.desc);
+            newQuery.addSort("id", SolrQuery.ORDER.asc);
+            if (cursorMark != null) {
+                newQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            } else {
+                newQuery.setStart(offSet);
+            }
 
-            for (KeywordSearchFacetData keywordSearchFacetData : facets) {
-                newQuery.addFacetField("facet_" + keywordSearchFacetData.getField());
+            if (withFacets) {
+                for (KeywordSearchFacetData keywordSearchFacetData : facets) {
+                    newQuery.addFacetField("facet_" + keywordSearchFacetData.getField());
+                }
             }
 
             // add faceting selections
@@ -306,9 +347,7 @@ public final class SolrKeywordSearchHandler implements KeywordSearchHandler
 
             //limiting the query based on search bag
             if (ids != null && !ids.isEmpty()) {
-                for (int id : ids) {
-                    newQuery.addFilterQuery("id", Integer.toString(id));
-                }
+                newQuery.addFilterQuery("{!terms f=id}" + StringUtils.join(ids, ','));
             }
 
             String boostQuery = "";
@@ -0,0 +1,177 @@
+package org.intermine.api.searchengine.solr;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.intermine.api.searchengine.KeywordSearchFacet;
+import org.intermine.api.util.LimitedMap;
+
+/**
+ * What the keyword search remembers between searches: the facets of recent searches, the cursor
+ * marks that begin the pages of their results, and the fields of the Solr schema.
+ * <p>
+ * Searches are identified by a key made from the normalised search term, the facet values
+ * selected and a digest of the ids in the list being searched, so the same search for another
+ * page, or from another user, finds the same entries, and a large list does not make every key
+ * large.  Everything is forgotten after a while, so that a search index
+ * that is rebuilt while the webapp is running is noticed.
+ */
+final class SolrSearchCache
+{
+    /** How long anything is remembered for, in milliseconds. */
+    static final long TIME_TO_LIVE = 60 * 60 * 1000L;
+
+    private static final int MAX_FACETS = 1000;
+    private static final int MAX_CURSOR_MARKS = 10000;
+
+    private final Map<String, Collection<KeywordSearchFacet>> facets =
+        new LimitedMap<String, Collection<KeywordSearchFacet>>(MAX_FACETS);
+    private final Map<String, String> cursorMarks =
+        new LimitedMap<String, String>(MAX_CURSOR_MARKS);
+    private List<String> fieldNames = null;
+    private final long timeToLive;
+    private long created;
+
+    /**
+     * Constructor.
+     *
+     * @param timeToLive how long to remember things for, in milliseconds
+     */
+    SolrSearchCache(long timeToLive) {
+        this.timeToLive = timeToLive;
+        this.created = System.currentTimeMillis();
+    }
+
+    /**
+     * Make the key for a search.  Runs of white space in the search term are treated as one
+     * space, and the order of the facet values and list ids does not matter.  The list ids are
+     * represented by a SHA-256 digest of the sorted ids.
+     *
+     * @param queryString the search term
+     * @param facetValues the selected value of each facet
+     * @param ids the ids of the objects in the list being searched, or null
+     * @return the key
+     */
+    static String getKey(String queryString, Map<String, String> facetValues, List<Integer> ids) {
+        StringBuilder key = new StringBuilder();
+        key.append(StringUtils.join(StringUtils.split(StringUtils.defaultString(queryString)),
+                ' '));
+        if (facetValues != null) {
+            for (Map.Entry<String, String> facet
+                    : new TreeMap<String, String>(facetValues).entrySet()) {
+                key.append('\u0000').append(facet.getKey()).append('=').append(facet.getValue());
+            }
+        }
+        if (ids != null && !ids.isEmpty()) {
+            List<Integer> sorted = new ArrayList<Integer>(ids);
+            Collections.sort(sorted);
+            key.append('\u0000').append(digest(sorted));
+        }
+        return key.toString();
+    }
+
+    private static String digest(List<Integer> ids) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        byte[] bytes = new byte[4];
+        for (Integer id : ids) {
+            int value = id.intValue();
+            bytes[0] = (byte) (value >>> 24);
+            bytes[1] = (byte) (value >>> 16);
+            bytes[2] = (byte) (value >>> 8);
+            bytes[3] = (byte) value;
+            md.update(bytes);
+        }
+        StringBuilder retval = new StringBuilder();
+        for (byte b : md.digest()) {
+            retval.append(Character.forDigit((b >> 4) & 15, 16))
+                .append(Character.forDigit(b & 15, 16));
+        }
+        return retval.toString();
+    }
+
+    /**
+     * @param key the key of the search
+     * @return the facets of the search, or null if they are not known
+     */
+    synchronized Collection<KeywordSearchFacet> getFacets(String key) {
+        expire();
+        return facets.get(key);
+    }
+
+    /**
+     * @param key the key of the search
+     * @param searchFacets the facets of the search
+     */
+    synchronized void putFacets(String key, Collection<KeywordSearchFacet> searchFacets) {
+        expire();
+        facets.put(key, searchFacets);
+    }
+
+    /**
+     * @param key the key of the search
+     * @param offset the position of the first result of a page
+     * @return the cursor mark that begins the page, or null if it is not known
+     */
+    synchronized String getCursorMark(String key, int offset) {
+        expire();
+        return cursorMarks.get(key + '\u0000' + offset);
+    }
+
+    /**
+     * @param key the key of the search
+     * @param offset the position of the first result of a page
+     * @param cursorMark the cursor mark that begins the page
+     */
+    synchronized void putCursorMark(String key, int offset, String cursorMark) {
+        expire();
+        cursorMarks.put(key + '\u0000' + offset, cursorMark);
+    }
+
+    /**
+     * @return the names of the fields in the Solr schema, or null if they are not known
+     */
+    synchronized List<String> getFieldNames() {
+        expire();
+        return fieldNames;
+    }
+
+    /**
+     * @param names the names of the fields in the Solr schema
+     */
+    synchronized void setFieldNames(List<String> names) {
+        expire();
+        fieldNames = names;
+    }
+
+    private void expire() {
+        long now = System.currentTimeMillis();
+        if (now - created > timeToLive) {
+            facets.clear();
+            cursorMarks.clear();
+            fieldNames = null;
+            created = now;
+        }
+    }
+}
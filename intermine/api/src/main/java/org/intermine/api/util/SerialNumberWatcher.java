@@ -0,0 +1,95 @@
+package org.intermine.api.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.intermine.modelproduction.MetadataManager;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+
+/**
+ * Keeps track of the serial number of the production database, which changes when a new release
+ * is built, for caches that must not return data from an old release.
+ * <p>
+ * The serial number is read from the database at most once per interval, by whichever thread
+ * first asks after the interval has passed.  Other threads are given the last value read rather
+ * than wait for the database, and no lock is held while it is read.
+ */
+public class SerialNumberWatcher
+{
+    private static final Logger LOG = Logger.getLogger(SerialNumberWatcher.class);
+
+    /** The default time between reads of the serial number, in milliseconds. */
+    public static final long DEFAULT_INTERVAL = 60000;
+
+    private final ObjectStore os;
+    private final long interval;
+    private final AtomicLong checkedAt;
+    private volatile String serialNumber = null;
+
+    /**
+     * Constructor, reading the serial number once a minute.
+     *
+     * @param os the production ObjectStore
+     */
+    public SerialNumberWatcher(ObjectStore os) {
+        this(os, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param os the production ObjectStore
+     * @param interval the time between reads of the serial number, in milliseconds
+     */
+    public SerialNumberWatcher(ObjectStore os, long interval) {
+        this.os = os;
+        this.interval = interval;
+        // so that the first call reads the serial number
+        this.checkedAt = new AtomicLong(System.currentTimeMillis() - interval - 1);
+    }
+
+    /**
+     * Returns the serial number of the production database, reading it again if it has not been
+     * read for the interval.
+     *
+     * @return the serial number, or null if it is not known
+     */
+    public String getSerialNumber() {
+        long now = System.currentTimeMillis();
+        long last = checkedAt.get();
+        if (now - last > interval && checkedAt.compareAndSet(last, now)) {
+            try {
+                serialNumber = readSerialNumber();
+            } catch (SQLException e) {
+                LOG.warn("Could not read the production database serial number", e);
+            }
+        }
+        return serialNumber;
+    }
+
+    /**
+     * Read the serial number from the database.
+     *
+     * @return the serial number, or null if the ObjectStore has no database
+     * @throws SQLException if the database cannot be read
+     */
+    protected String readSerialNumber() throws SQLException {
+        if (!(os instanceof ObjectStoreInterMineImpl)) {
+            return null;
+        }
+        return MetadataManager.retrieve(((ObjectStoreInterMineImpl) os).getDatabase(),
+                MetadataManager.SERIAL_NUMBER);
+    }
+}
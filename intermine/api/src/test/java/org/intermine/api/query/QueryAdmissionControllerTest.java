@@ -0,0 +1,112 @@
+package org.intermine.api.query;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreQueryDurationException;
+import org.intermine.objectstore.dummy.ObjectStoreDummyImpl;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.ResultsInfo;
+
+public class QueryAdmissionControllerTest extends TestCase
+{
+    private QueryAdmissionController controller;
+    private long cost;
+
+    public QueryAdmissionControllerTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        ObjectStoreDummyImpl os = new ObjectStoreDummyImpl() {
+            @Override
+            public ResultsInfo estimate(Query q) throws ObjectStoreException {
+                return new ResultsInfo(0, cost, 0);
+            }
+        };
+        Properties props = new Properties();
+        props.setProperty("ws.admission.lanes", "test.cheap, test.expensive");
+        props.setProperty("ws.admission.test.cheap.maxCost", "100");
+        props.setProperty("ws.admission.test.cheap.concurrency", "1");
+        props.setProperty("ws.admission.test.cheap.queue", "0");
+        props.setProperty("ws.admission.test.expensive.maxCost", "1000");
+        props.setProperty("ws.admission.test.expensive.concurrency", "1");
+        props.setProperty("ws.admission.test.expensive.wait", "10");
+        controller = new QueryAdmissionController(os, props);
+    }
+
+    public void testNoLanes() throws Exception {
+        assertNull(QueryAdmissionController.fromProperties(null, new Properties()));
+    }
+
+    public void testLaneByCost() throws Exception {
+        QueryAdmissionController.Ticket ticket = controller.newTicket();
+        cost = 50;
+        ticket.admit(new Query());
+        assertEquals("test.cheap", ticket.getLane());
+        assertEquals(0, ticket.getQueuePosition());
+        ticket.close();
+        assertNull(ticket.getLane());
+
+        cost = 500;
+        ticket.admit(new Query());
+        assertEquals("test.expensive", ticket.getLane());
+        ticket.close();
+    }
+
+    public void testTooExpensive() throws Exception {
+        cost = 5000;
+        try {
+            controller.newTicket().admit(new Query());
+            fail("Expected ObjectStoreQueryDurationException");
+        } catch (ObjectStoreQueryDurationException e) {
+            // expected
+        }
+    }
+
+    public void testQueueFull() throws Exception {
+        cost = 50;
+        QueryAdmissionController.Ticket first = controller.newTicket();
+        first.admit(new Query());
+        try {
+            controller.newTicket().admit(new Query());
+            fail("Expected QueryRejectedException");
+        } catch (QueryRejectedException e) {
+            assertEquals("test.cheap", e.getLane());
+            assertEquals(1, e.getQueuePosition());
+        } finally {
+            first.close();
+        }
+    }
+
+    public void testWaitTooLong() throws Exception {
+        cost = 500;
+        QueryAdmissionController.Ticket first = controller.newTicket();
+        first.admit(new Query());
+        try {
+            controller.newTicket().admit(new Query());
+            fail("Expected QueryRejectedException");
+        } catch (QueryRejectedException e) {
+            assertEquals("test.expensive", e.getLane());
+            assertEquals(1, e.getRetryAfter());
+        } finally {
+            first.close();
+        }
+        QueryAdmissionController.Ticket second = controller.newTicket();
+        second.admit(new Query());
+        assertEquals("test.expensive", second.getLane());
+        second.close();
+    }
+}
@@ -0,0 +1,214 @@
+package org.intermine.api.query;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.dummy.ObjectStoreDummyImpl;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.ResultsInfo;
+
+public class QueryBatchTest extends TestCase
+{
+    private final AtomicInteger running = new AtomicInteger(0);
+    private final AtomicInteger mostRunning = new AtomicInteger(0);
+    private ExecutorService workers;
+
+    @Override
+    public void setUp() {
+        workers = Executors.newCachedThreadPool();
+    }
+
+    @Override
+    public void tearDown() {
+        workers.shutdownNow();
+    }
+
+    public void testDefaultBudget() {
+        assertEquals(QueryBatch.DEFAULT_BUDGET, QueryBatch.getBudget(new ObjectStoreDummyImpl()));
+    }
+
+    public void testBadBudget() {
+        try {
+            new QueryBatch(null, 0, workers);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testRunsEveryTaskWithinBudget() throws Exception {
+        QueryBatch batch = new QueryBatch(null, 3, workers);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < 12; i++) {
+            results.add(batch.add(new SlowTask(i)));
+        }
+        batch.execute();
+        for (int i = 0; i < 12; i++) {
+            assertEquals(new Integer(i), QueryBatch.get(results.get(i)));
+        }
+        assertTrue("Ran " + mostRunning.get() + " tasks at once", mostRunning.get() <= 3);
+        assertTrue(mostRunning.get() > 1);
+    }
+
+    public void testBudgetOfOneRunsInCaller() throws Exception {
+        final Thread caller = Thread.currentThread();
+        QueryBatch batch = new QueryBatch(null, 1, workers);
+        Future<Boolean> inCaller = batch.add(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return Thread.currentThread() == caller;
+            }
+        });
+        batch.execute();
+        assertTrue(QueryBatch.get(inCaller));
+    }
+
+    public void testFailure() throws Exception {
+        QueryBatch batch = new QueryBatch(null, 2, workers);
+        Future<Integer> ok = batch.add(new SlowTask(1));
+        batch.add(new Callable<Integer>() {
+            @Override
+            public Integer call() throws ObjectStoreException {
+                throw new ObjectStoreException("Boom");
+            }
+        });
+        try {
+            batch.execute();
+            fail("Expected ObjectStoreException");
+        } catch (ObjectStoreException e) {
+            assertEquals("Boom", e.getMessage());
+        }
+        assertEquals(new Integer(1), QueryBatch.get(ok));
+    }
+
+    public void testUncheckedFailureWaitsForOthers() throws Exception {
+        QueryBatch batch = new QueryBatch(null, 2, workers);
+        batch.add(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                throw new IllegalArgumentException("First");
+            }
+        });
+        Future<Integer> slow = batch.add(new SlowTask(1));
+        batch.add(new Callable<Integer>() {
+            @Override
+            public Integer call() throws ObjectStoreException {
+                throw new ObjectStoreException("Second");
+            }
+        });
+        try {
+            batch.execute();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("First", e.getMessage());
+        }
+        assertTrue(slow.isDone());
+        assertEquals(new Integer(1), QueryBatch.get(slow));
+    }
+
+    public void testGetBeforeExecute() {
+        QueryBatch batch = new QueryBatch(null, 2, workers);
+        Future<Integer> result = batch.add(new SlowTask(1));
+        try {
+            QueryBatch.get(result);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testEachTaskHasItsOwnTicket() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("ws.admission.lanes", "batch.test");
+        props.setProperty("ws.admission.batch.test.concurrency", "2");
+        QueryAdmissionController admission = new QueryAdmissionController(
+                new ObjectStoreDummyImpl() {
+                    @Override
+                    public ResultsInfo estimate(Query q) {
+                        return new ResultsInfo(0, 10, 0);
+                    }
+                }, props);
+        final Set<QueryAdmissionController.Ticket> tickets =
+            Collections.synchronizedSet(new HashSet<QueryAdmissionController.Ticket>());
+        final List<QueryAdmissionController.Ticket> admitted =
+            Collections.synchronizedList(new ArrayList<QueryAdmissionController.Ticket>());
+        QueryBatch batch = new QueryBatch(null, 2, admission, workers);
+        List<Future<String>> lanes = new ArrayList<Future<String>>();
+        for (int i = 0; i < 4; i++) {
+            lanes.add(batch.addAdmitted(new QueryBatch.AdmittedTask<String>() {
+                @Override
+                public String call(QueryAdmissionController.Ticket ticket)
+                    throws ObjectStoreException {
+                    ticket.admit(new Query());
+                    tickets.add(ticket);
+                    admitted.add(ticket);
+                    return ticket.getLane();
+                }
+            }));
+        }
+        batch.execute();
+        assertEquals(4, tickets.size());
+        for (Future<String> lane : lanes) {
+            assertEquals("batch.test", QueryBatch.get(lane));
+        }
+        for (QueryAdmissionController.Ticket ticket : admitted) {
+            // closed once its task finished
+            assertNull(ticket.getLane());
+        }
+    }
+
+    public void testNoTicketWithoutAdmission() throws Exception {
+        QueryBatch batch = new QueryBatch(null, 2, workers);
+        Future<Boolean> noTicket = batch.addAdmitted(new QueryBatch.AdmittedTask<Boolean>() {
+            @Override
+            public Boolean call(QueryAdmissionController.Ticket ticket) {
+                return ticket == null;
+            }
+        });
+        batch.execute();
+        assertTrue(QueryBatch.get(noTicket));
+    }
+
+    private class SlowTask implements Callable<Integer>
+    {
+        private final int value;
+
+        SlowTask(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public Integer call() throws InterruptedException {
+            int now = running.incrementAndGet();
+            int most;
+            while ((most = mostRunning.get()) < now && !mostRunning.compareAndSet(most, now)) {
+                // retry
+            }
+            Thread.sleep(50);
+            running.decrementAndGet();
+            return value;
+        }
+    }
+}
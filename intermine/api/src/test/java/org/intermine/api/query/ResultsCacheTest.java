@@ -0,0 +1,183 @@
+package org.intermine.api.query;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.intermine.api.profile.InterMineBag;
+import org.intermine.api.results.ResultElement;
+import org.intermine.metadata.Model;
+import org.intermine.model.testmodel.Company;
+import org.intermine.pathquery.Constraints;
+import org.intermine.pathquery.Path;
+import org.intermine.pathquery.PathQuery;
+import org.intermine.util.DynamicUtil;
+
+public class ResultsCacheTest extends TestCase
+{
+    private Model model;
+
+    public ResultsCacheTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        model = Model.getInstanceByName("testmodel");
+    }
+
+    public void testCanonicalConstraintOrder() throws Exception {
+        PathQuery pq1 = new PathQuery(model);
+        pq1.addViews("Employee.name", "Employee.age");
+        pq1.addConstraint(Constraints.eq("Employee.name", "EmployeeA1"), "A");
+        pq1.addConstraint(Constraints.greaterThan("Employee.age", "10"), "B");
+        pq1.addConstraint(Constraints.lessThan("Employee.age", "60"), "C");
+        pq1.setConstraintLogic("A or (B and C)");
+        pq1.setTitle("first");
+
+        PathQuery pq2 = new PathQuery(model);
+        pq2.addViews("Employee.name", "Employee.age");
+        pq2.addConstraint(Constraints.lessThan("Employee.age", "60"), "A");
+        pq2.addConstraint(Constraints.eq("Employee.name", "EmployeeA1"), "B");
+        pq2.addConstraint(Constraints.greaterThan("Employee.age", "10"), "C");
+        pq2.setConstraintLogic("B or (C and A)");
+        pq2.setTitle("second");
+
+        assertEquals(ResultsCache.canonicalise(pq1), ResultsCache.canonicalise(pq2));
+
+        pq2.setConstraintLogic("B and (C or A)");
+        assertFalse(ResultsCache.canonicalise(pq1).equals(ResultsCache.canonicalise(pq2)));
+    }
+
+    public void testCanonicalLogicOrder() throws Exception {
+        PathQuery pq1 = new PathQuery(model);
+        pq1.addView("Employee.name");
+        pq1.addConstraint(Constraints.eq("Employee.name", "EmployeeA1"), "A");
+        pq1.addConstraint(Constraints.greaterThan("Employee.age", "10"), "B");
+        pq1.addConstraint(Constraints.lessThan("Employee.age", "60"), "C");
+        pq1.setConstraintLogic("(B and C) or A");
+
+        PathQuery pq2 = new PathQuery(model);
+        pq2.addView("Employee.name");
+        pq2.addConstraint(Constraints.eq("Employee.name", "EmployeeA1"), "A");
+        pq2.addConstraint(Constraints.greaterThan("Employee.age", "10"), "B");
+        pq2.addConstraint(Constraints.lessThan("Employee.age", "60"), "C");
+        pq2.setConstraintLogic("A OR (C AND B)");
+
+        assertEquals(ResultsCache.canonicalise(pq1), ResultsCache.canonicalise(pq2));
+        String canonical = ResultsCache.canonicalise(pq1);
+        assertTrue(canonical, canonical.endsWith(" logic:(C0 and C1) or C2"));
+    }
+
+    public void testCanonicalView() throws Exception {
+        PathQuery pq1 = new PathQuery(model);
+        pq1.addViews("Employee.name", "Employee.age");
+        PathQuery pq2 = new PathQuery(model);
+        pq2.addViews("Employee.age", "Employee.name");
+        assertFalse(ResultsCache.canonicalise(pq1).equals(ResultsCache.canonicalise(pq2)));
+    }
+
+    public void testKey() throws Exception {
+        ResultsCache cache = new ResultsCache(null);
+        PathQuery pq = new PathQuery(model);
+        pq.addView("Employee.name");
+        pq.addConstraint(Constraints.in("Employee", "mylist"));
+        Map<String, InterMineBag> bags = Collections.emptyMap();
+        String key = cache.getKey(pq, null, bags, 0, 10);
+        assertTrue(key, key.contains("bag:mylist=missing"));
+        assertFalse(key.equals(cache.getKey(pq, null, bags, 10, 10)));
+    }
+
+    public void testGetAndPut() throws Exception {
+        ResultsCache cache = new ResultsCache(null, 10, false);
+        assertNull(cache.get("a"));
+        cache.put("a", rows(2, 2));
+        List<List<ResultElement>> rows = cache.get("a");
+        assertEquals(2, rows.size());
+        assertEquals("0-1", rows.get(0).get(1).getField());
+        assertNull(rows.get(1).get(0));
+
+        // the rows are copies
+        rows.get(0).get(1).setField("changed");
+        assertEquals("0-1", cache.get("a").get(0).get(1).getField());
+    }
+
+    public void testCompressedWithoutId() throws Exception {
+        ResultsCache cache = new ResultsCache(null, 10, true);
+        Company company = (Company) DynamicUtil.createObject(Collections.singleton(Company.class));
+        company.setName("CompanyA");
+        Path path = new Path(model, "Company.name");
+        List<ResultElement> row = new ArrayList<ResultElement>();
+        row.add(new ResultElement(company, path, true));
+        List<List<ResultElement>> rows = new ArrayList<List<ResultElement>>();
+        rows.add(row);
+
+        // an object without an id, as from an outer join, is held uncompressed
+        cache.put("a", rows);
+        List<List<ResultElement>> cached = cache.get("a");
+        assertSame(company, cached.get(0).get(0).getObject());
+        assertEquals("CompanyA", cached.get(0).get(0).getField());
+    }
+
+    public void testEviction() throws Exception {
+        ResultsCache cache = new ResultsCache(null, 10, false);
+        cache.put("a", rows(2, 2));
+        cache.put("b", rows(2, 2));
+        cache.get("a");
+        cache.put("c", rows(2, 1));
+        assertEquals(10, cache.getCellCount());
+        cache.put("d", rows(1, 2));
+        // b was the least recently used
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertEquals(3, cache.size());
+        assertEquals(8, cache.getCellCount());
+
+        // too big for the cache
+        cache.put("e", rows(4, 3));
+        assertNull(cache.get("e"));
+        assertEquals(3, cache.size());
+    }
+
+    public void testFromProperties() throws Exception {
+        Properties props = new Properties();
+        ResultsCache cache = ResultsCache.fromProperties(null, props);
+        assertEquals(ResultsCache.DEFAULT_MAX_CELLS, cache.getMaxCells());
+        assertFalse(cache.isCompressed());
+
+        props.setProperty("webapp.resultsCache.size", "500");
+        props.setProperty("webapp.resultsCache.compress", "true");
+        cache = ResultsCache.fromProperties(null, props);
+        assertEquals(500, cache.getMaxCells());
+        assertTrue(cache.isCompressed());
+    }
+
+    private static List<List<ResultElement>> rows(int rowCount, int columnCount) {
+        List<List<ResultElement>> rows = new ArrayList<List<ResultElement>>();
+        for (int i = 0; i < rowCount; i++) {
+            List<ResultElement> row = new ArrayList<ResultElement>();
+            for (int j = 0; j < columnCount; j++) {
+                // leave one empty cell
+                row.add((i == 1 && j == 0) ? null : new ResultElement(i + "-" + j));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,81 @@
+package org.intermine.api.searchengine.solr;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.api.searchengine.KeywordSearchFacet;
+
+public class SolrSearchCacheTest extends TestCase
+{
+    public void testKeyIgnoresWhiteSpaceAndOrder() {
+        Map<String, String> facets = new LinkedHashMap<String, String>();
+        facets.put("Category", "Gene");
+        facets.put("organism.shortName", "D. melanogaster");
+        Map<String, String> reversed = new LinkedHashMap<String, String>();
+        reversed.put("organism.shortName", "D. melanogaster");
+        reversed.put("Category", "Gene");
+
+        assertEquals(SolrSearchCache.getKey("eve  zen", facets, Arrays.asList(3, 1, 2)),
+                SolrSearchCache.getKey(" eve zen ", reversed, Arrays.asList(1, 2, 3)));
+        assertFalse(SolrSearchCache.getKey("eve", facets, null).equals(
+                SolrSearchCache.getKey("eve", new HashMap<String, String>(), null)));
+        assertFalse(SolrSearchCache.getKey("eve", facets, null).equals(
+                SolrSearchCache.getKey("eve", facets, Arrays.asList(1))));
+        assertEquals("", SolrSearchCache.getKey(null, null, null));
+    }
+
+    public void testListKeyIsDigest() {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 10000; i > 0; i--) {
+            ids.add(i);
+        }
+        String key = SolrSearchCache.getKey("eve", null, ids);
+        assertTrue(key.length() < 100);
+        Collections.sort(ids);
+        assertEquals(key, SolrSearchCache.getKey("eve", null, ids));
+        ids.remove(0);
+        assertFalse(key.equals(SolrSearchCache.getKey("eve", null, ids)));
+    }
+
+    public void testFacetsAndCursorMarks() {
+        SolrSearchCache cache = new SolrSearchCache(SolrSearchCache.TIME_TO_LIVE);
+        Collection<KeywordSearchFacet> facets = Collections.emptyList();
+        assertNull(cache.getFacets("eve"));
+        cache.putFacets("eve", facets);
+        assertSame(facets, cache.getFacets("eve"));
+
+        cache.putCursorMark("eve", 100, "AoE=");
+        assertEquals("AoE=", cache.getCursorMark("eve", 100));
+        assertNull(cache.getCursorMark("eve", 200));
+        assertNull(cache.getCursorMark("zen", 100));
+    }
+
+    public void testExpiry() throws Exception {
+        SolrSearchCache cache = new SolrSearchCache(10);
+        cache.putFacets("eve", Collections.<KeywordSearchFacet>emptyList());
+        cache.putCursorMark("eve", 100, "AoE=");
+        cache.setFieldNames(Arrays.asList("name"));
+        Thread.sleep(50);
+        assertNull(cache.getFacets("eve"));
+        assertNull(cache.getCursorMark("eve", 100));
+        assertNull(cache.getFieldNames());
+    }
+}
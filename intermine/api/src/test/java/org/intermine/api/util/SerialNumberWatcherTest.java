@@ -0,0 +1,63 @@
+package org.intermine.api.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.SQLException;
+
+import junit.framework.TestCase;
+
+public class SerialNumberWatcherTest extends TestCase
+{
+    public void testNoDatabase() {
+        assertNull(new SerialNumberWatcher(null).getSerialNumber());
+    }
+
+    public void testReadsOncePerInterval() throws Exception {
+        CountingWatcher watcher = new CountingWatcher(60000);
+        assertEquals("1", watcher.getSerialNumber());
+        assertEquals("1", watcher.getSerialNumber());
+        assertEquals(1, watcher.reads);
+    }
+
+    public void testReadsAgainAfterInterval() throws Exception {
+        CountingWatcher watcher = new CountingWatcher(10);
+        assertEquals("1", watcher.getSerialNumber());
+        Thread.sleep(50);
+        assertEquals("2", watcher.getSerialNumber());
+    }
+
+    public void testKeepsLastValueOnError() throws Exception {
+        CountingWatcher watcher = new CountingWatcher(10);
+        assertEquals("1", watcher.getSerialNumber());
+        watcher.fail = true;
+        Thread.sleep(50);
+        assertEquals("1", watcher.getSerialNumber());
+    }
+
+    private static class CountingWatcher extends SerialNumberWatcher
+    {
+        private int reads = 0;
+        private boolean fail = false;
+
+        CountingWatcher(long interval) {
+            super(null, interval);
+        }
+
+        @Override
+        protected String readSerialNumber() throws SQLException {
+            if (fail) {
+                throw new SQLException("Boom");
+            }
+            reads++;
+            return String.valueOf(reads);
+        }
+    }
+}
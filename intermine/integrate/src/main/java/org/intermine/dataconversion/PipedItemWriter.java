@@ -0,0 +1,172 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.util.ObjectPipe;
+
+/**
+ * An ItemWriter that passes Items through an ObjectPipe to another ItemWriter running in a
+ * separate Thread, so that a converter can carry on reading and creating Items while the
+ * previous ones are being written to the objectstore.
+ *
+ * Because the Items are written later, store(Item) cannot return the database id of the Item
+ * and returns null instead. Only use this writer with converters that do not need the ids
+ * returned by store(). Any exception thrown by the underlying ItemWriter is thrown from the next
+ * call to this writer, or from close().
+ */
+public class PipedItemWriter implements ItemWriter
+{
+    private static final Logger LOG = Logger.getLogger(PipedItemWriter.class);
+
+    private final ItemWriter writer;
+    private final ObjectPipe<Job> jobs;
+    private final Thread writerThread;
+    private volatile ObjectStoreException error = null;
+
+    /**
+     * Constructs the PipedItemWriter and starts the writing Thread.
+     *
+     * @param writer the ItemWriter to write Items to
+     * @param maxBuffer the maximum number of store operations to buffer between the threads
+     */
+    public PipedItemWriter(ItemWriter writer, int maxBuffer) {
+        this.writer = writer;
+        this.jobs = new ObjectPipe<Job>(maxBuffer);
+        writerThread = new Thread(new Worker(), "PipedItemWriter");
+        writerThread.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Integer store(final Item item) throws ObjectStoreException {
+        put(new Job() {
+            public void run() throws ObjectStoreException {
+                writer.store(item);
+            }
+        });
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void store(final ReferenceList refList, final Integer itemId)
+        throws ObjectStoreException {
+        put(new Job() {
+            public void run() throws ObjectStoreException {
+                writer.store(refList, itemId);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void store(final Reference ref, final Integer itemId) throws ObjectStoreException {
+        put(new Job() {
+            public void run() throws ObjectStoreException {
+                writer.store(ref, itemId);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void store(final Attribute att, final Integer itemId) throws ObjectStoreException {
+        put(new Job() {
+            public void run() throws ObjectStoreException {
+                writer.store(att, itemId);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void storeAll(Collection<Item> items) throws ObjectStoreException {
+        for (Item item : items) {
+            store(item);
+        }
+    }
+
+    /**
+     * Waits for all buffered Items to be written, and then closes the underlying ItemWriter, even
+     * if writing failed.
+     *
+     * {@inheritDoc}
+     */
+    public void close() throws ObjectStoreException {
+        try {
+            jobs.finish();
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                throw new ObjectStoreException("Interrupted while waiting for Items to be written",
+                        e);
+            }
+            checkError();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void put(Job job) throws ObjectStoreException {
+        checkError();
+        jobs.put(job);
+    }
+
+    private void checkError() throws ObjectStoreException {
+        if (error != null) {
+            throw new ObjectStoreException("Error in PipedItemWriter writing thread", error);
+        }
+    }
+
+    private interface Job
+    {
+        void run() throws ObjectStoreException;
+    }
+
+    private class Worker implements Runnable
+    {
+        public void run() {
+            try {
+                while (true) {
+                    Job job = jobs.next();
+                    if (error == null) {
+                        try {
+                            job.run();
+                        } catch (ObjectStoreException e) {
+                            LOG.error("Error writing Item", e);
+                            error = e;
+                        } catch (RuntimeException e) {
+                            LOG.error("Error writing Item", e);
+                            error = new ObjectStoreException(e);
+                        }
+                    }
+                    // after an error keep draining the pipe so that the converter never blocks
+                }
+            } catch (NoSuchElementException e) {
+                // pipe has been finished
+            }
+        }
+    }
+}
@@ -45,6 +45,7 @@ public class DirectDataLoader extends DataLoader
     private String sourceName;
     private String sourceType;
     private List<FastPathObject> buffer = new ArrayList<FastPathObject>();
+    private int batchSize = BATCH_SIZE;
     Map<Class<?>, Set<String>> keyClassRefs = null;
 
     private static final int LOG_FREQUENCY = 100000;
@@ -75,11 +76,25 @@ public class DirectDataLoader extends DataLoader
 
         buffer.add(o);
 
-        if (buffer.size() == BATCH_SIZE) {
+        if (buffer.size() >= batchSize) {
             storeBatch();
         }
     }
 
+    /**
+     * Set the number of objects that are buffered before the equivalent objects for the whole
+     * batch are fetched and the batch is stored. Larger batches mean fewer primary key queries
+     * for loaders producing many similar objects, at the cost of holding more objects in memory.
+     * The default is 1000.
+     * @param batchSize the number of objects in each batch
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Illegal batch size: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
     /**
      *
      * @throws ObjectStoreException
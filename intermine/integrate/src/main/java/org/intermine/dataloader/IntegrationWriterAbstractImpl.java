@@ -19,6 +19,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
+import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.FieldDescriptor;
 import org.intermine.metadata.Model;
 import org.intermine.metadata.ReferenceDescriptor;
@@ -229,17 +230,19 @@ public abstract class IntegrationWriterAbstractImpl implements IntegrationWriter
             int type) throws IllegalAccessException, ObjectStoreException {
         String fieldName = field.getName();
         if (!"id".equals(fieldName)) {
+            int srcOrdinal = getFieldOrdinal(srcObj, fieldName);
+            int destOrdinal = getFieldOrdinal(dest, fieldName);
             switch (field.relationType()) {
                 case FieldDescriptor.NOT_RELATION:
-                    Object value = srcObj.getFieldValue(fieldName);
+                    Object value = getFieldValue(srcObj, srcOrdinal, fieldName);
                     if (value instanceof ClobAccess) {
                         // Don't copy field if this is a skeleton - this avoids creating the Clob
                         // twice
                         if ((type == FROM_DB) || (type == SOURCE)) {
-                            dest.setFieldValue(fieldName, value);
+                            setFieldValue(dest, destOrdinal, fieldName, value);
                         }
                     } else {
-                        dest.setFieldValue(fieldName, value);
+                        setFieldValue(dest, destOrdinal, fieldName, value);
                     }
                     break;
                 case FieldDescriptor.N_ONE_RELATION:
@@ -247,10 +250,11 @@ public abstract class IntegrationWriterAbstractImpl implements IntegrationWriter
                             || DataLoaderHelper.fieldIsPrimaryKey(getModel(),
                                 dest.getClass(), fieldName, source)) {
                         if (type == FROM_DB) {
-                            dest.setFieldValue(fieldName, srcObj.getFieldProxy(fieldName));
+                            setFieldValue(dest, destOrdinal, fieldName,
+                                    getFieldProxy(srcObj, srcOrdinal, fieldName));
                         } else {
                             InterMineObject sourceTarget = (InterMineObject)
-                                srcObj.getFieldProxy(fieldName);
+                                getFieldProxy(srcObj, srcOrdinal, fieldName);
                             if (sourceTarget instanceof ProxyReference) {
                                 if (idMap.get(sourceTarget.getId()) == null) {
                                     if (type == SOURCE) {
@@ -270,13 +274,14 @@ public abstract class IntegrationWriterAbstractImpl implements IntegrationWriter
                                     SKELETON);
                             long time2 = System.currentTimeMillis();
                             timeSpentRecursing += time2 - time1;
-                            dest.setFieldValue(fieldName, target);
+                            setFieldValue(dest, destOrdinal, fieldName, target);
                         }
                     }
                     break;
                 case FieldDescriptor.ONE_ONE_RELATION:
                     if ((type == FROM_DB) || (type == SOURCE)) {
-                        InterMineObject loser = (InterMineObject) dest.getFieldValue(fieldName);
+                        InterMineObject loser = (InterMineObject) getFieldValue(dest,
+                                destOrdinal, fieldName);
                         ReferenceDescriptor reverseRef = ((ReferenceDescriptor) field)
                             .getReverseReferenceDescriptor();
                         if (loser != null) {
@@ -293,7 +298,7 @@ public abstract class IntegrationWriterAbstractImpl implements IntegrationWriter
                         }
                         InterMineObject target = null;
                         if (type == SOURCE) {
-                            target = (InterMineObject) srcObj.getFieldProxy(fieldName);
+                            target = (InterMineObject) getFieldProxy(srcObj, srcOrdinal, fieldName);
                             if ((target != null) && (target.getId() != null)
                                     && (idMap.get(target.getId()) == null)
                                     && (target instanceof ProxyReference)) {
@@ -304,7 +309,7 @@ public abstract class IntegrationWriterAbstractImpl implements IntegrationWriter
                             long time2 = System.currentTimeMillis();
                             timeSpentRecursing += time2 - time1;
                         } else {
-                            target = (InterMineObject) srcObj.getFieldValue(fieldName);
+                            target = (InterMineObject) getFieldValue(srcObj, srcOrdinal, fieldName);
                         }
                         /*if (target != null) {
                             if (target instanceof ProxyReference) {
@@ -321,7 +326,7 @@ public abstract class IntegrationWriterAbstractImpl implements IntegrationWriter
                             target.setFieldValue(reverseRef.getName(), dest);
                             store(target);
                         }*/
-                        dest.setFieldValue(fieldName, target);
+                        setFieldValue(dest, destOrdinal, fieldName, target);
                     }
                     break;
                 case FieldDescriptor.ONE_N_RELATION:
@@ -331,7 +336,7 @@ public abstract class IntegrationWriterAbstractImpl implements IntegrationWriter
                             + "." + field.getName();
                         if (!seenBrokenOneToMany.contains(brokenOneToMany)) {
                             @SuppressWarnings("unchecked") Collection<InterMineObject> col =
-                                (Collection) srcObj.getFieldValue(fieldName);
+                                (Collection) getFieldValue(srcObj, srcOrdinal, fieldName);
                             if (!col.isEmpty()) {
                                 LOG.error("Data source should not contain data in the one to many "
                                         + "relation " + brokenOneToMany + ", as it is ignored. "
@@ -347,9 +352,9 @@ public abstract class IntegrationWriterAbstractImpl implements IntegrationWriter
                                 || (!((InterMineObject) dest).getId()
                                     .equals(((InterMineObject) srcObj).getId()))))) {
                         @SuppressWarnings("unchecked") Collection<InterMineObject> destCol =
-                            (Collection) dest.getFieldValue(fieldName);
+                            (Collection) getFieldValue(dest, destOrdinal, fieldName);
                         @SuppressWarnings("unchecked") Collection<InterMineObject> col =
-                            (Collection) srcObj.getFieldValue(fieldName);
+                            (Collection) getFieldValue(srcObj, srcOrdinal, fieldName);
                         for (InterMineObject colObj : col) {
                             if (type == FROM_DB) {
                                 destCol.add(colObj);
@@ -381,6 +386,38 @@ public abstract class IntegrationWriterAbstractImpl implements IntegrationWriter
         }
     }
 
+    /**
+     * Returns the ordinal of a field of an object, so that the field can be accessed without
+     * comparing field names.
+     *
+     * @param o an object
+     * @param fieldName the name of the field
+     * @return the ordinal, or -1 if the field must be accessed by name
+     */
+    private int getFieldOrdinal(FastPathObject o, String fieldName) {
+        ClassDescriptor cld = getModel().getOrdinalClassDescriptor(o);
+        return cld == null ? -1 : cld.getFieldOrdinal(fieldName);
+    }
+
+    private static Object getFieldValue(FastPathObject o, int ordinal, String fieldName)
+        throws IllegalAccessException {
+        return ordinal < 0 ? o.getFieldValue(fieldName) : o.getFieldValue(ordinal);
+    }
+
+    private static Object getFieldProxy(FastPathObject o, int ordinal, String fieldName)
+        throws IllegalAccessException {
+        return ordinal < 0 ? o.getFieldProxy(fieldName) : o.getFieldProxy(ordinal);
+    }
+
+    private static void setFieldValue(FastPathObject o, int ordinal, String fieldName,
+            Object value) {
+        if (ordinal < 0) {
+            o.setFieldValue(fieldName, value);
+        } else {
+            o.setFieldValue(ordinal, value);
+        }
+    }
+
     /**
      * Puts a mapping into idMap.
      *
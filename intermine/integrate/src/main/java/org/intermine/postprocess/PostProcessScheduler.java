@@ -0,0 +1,292 @@
+package org.intermine.postprocess;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.intermine.metadata.ClassDescriptor;
+import org.intermine.metadata.Model;
+import org.intermine.metadata.TypeUtil;
+
+/**
+ * Runs a sequence of post-processors, running a post-processor alongside the ones before it when
+ * it does not depend on them.
+ * <p>
+ * A post-processor depends on an earlier one in the sequence if it names it in
+ * getDependencies(), or if one of them writes a class that the other reads or writes (a class
+ * also conflicts with its subclasses and superclasses). Post-processors that do not declare what
+ * they read and write depend on every earlier one, and every later one depends on them, so the
+ * sequence keeps its meaning. Each post-processor should have its own ObjectStoreWriter.
+ * <p>
+ * If a post-processor fails, the ones that depend on it are not run, the others are run to
+ * completion, and then the first failure is thrown. getFailures() then tells which steps failed or
+ * were not run. The time taken by each post-processor and the critical path through the sequence
+ * are logged.
+ */
+public class PostProcessScheduler
+{
+    private static final Logger LOG = Logger.getLogger(PostProcessScheduler.class);
+
+    private final Model model;
+    private final Map<String, Step> steps = new LinkedHashMap<String, Step>();
+
+    /**
+     * Constructor.
+     *
+     * @param model the model used to find the subclasses and superclasses of declared classes
+     */
+    public PostProcessScheduler(Model model) {
+        this.model = model;
+    }
+
+    /**
+     * Add a post-processor to the end of the sequence.
+     *
+     * @param name the name of the step, used in logging and to match getDependencies()
+     * @param postProcessor the post-processor
+     */
+    public void add(String name, PostProcessor postProcessor) {
+        if (steps.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate post-process step " + name);
+        }
+        Step step = new Step(name, postProcessor);
+        for (Step earlier : steps.values()) {
+            if (dependsOn(step, earlier)) {
+                step.dependencies.add(earlier);
+            }
+        }
+        steps.put(name, step);
+    }
+
+    /**
+     * Return the steps that a step waits for.
+     *
+     * @param name the name of the step
+     * @return the names of the earlier steps that must finish first
+     */
+    public Set<String> getDependencies(String name) {
+        Set<String> retval = new LinkedHashSet<String>();
+        for (Step dependency : steps.get(name).dependencies) {
+            retval.add(dependency.name);
+        }
+        return retval;
+    }
+
+    /**
+     * Return the steps that failed in the last run, and those that were not run because a step
+     * they depend on failed, in the order they were added.
+     *
+     * @return a map from the name of each step to the exception it threw, or to an exception
+     * naming the failed step it depends on
+     */
+    public Map<String, Exception> getFailures() {
+        Map<String, Exception> retval = new LinkedHashMap<String, Exception>();
+        for (Step step : steps.values()) {
+            if (step.failure != null) {
+                retval.put(step.name, step.failure);
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Run all the post-processors.
+     *
+     * @param threads the greatest number of post-processors to run at once
+     * @throws Exception the first exception thrown by a post-processor
+     */
+    public void run(int threads) throws Exception {
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        CompletionService<Step> completion = new ExecutorCompletionService<Step>(executor);
+        List<Step> waiting = new LinkedList<Step>(steps.values());
+        Set<Step> finished = new LinkedHashSet<Step>();
+        Exception failure = null;
+        int running = 0;
+        try {
+            while (!waiting.isEmpty() || running > 0) {
+                for (Step step : new ArrayList<Step>(waiting)) {
+                    if (step.failedDependency() != null) {
+                        String message = "Not running post-process " + step.name + " because "
+                            + step.failedDependency().name + " failed";
+                        LOG.error(message);
+                        step.failure = new Exception(message);
+                        waiting.remove(step);
+                    } else if (finished.containsAll(step.dependencies)) {
+                        waiting.remove(step);
+                        completion.submit(step);
+                        running++;
+                    }
+                }
+                if (running == 0) {
+                    break;
+                }
+                Future<Step> done = completion.take();
+                running--;
+                try {
+                    finished.add(done.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = (e.getCause() instanceof Exception) ? (Exception) e.getCause()
+                            : e;
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        logCriticalPath(System.currentTimeMillis() - startTime);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void logCriticalPath(long elapsed) {
+        Step last = null;
+        for (Step step : steps.values()) {
+            if (step.end > 0 && (last == null || step.end > last.end)) {
+                last = step;
+            }
+        }
+        List<String> path = new LinkedList<String>();
+        long total = 0;
+        for (Step step = last; step != null; step = step.latestDependency()) {
+            path.add(0, step.name + " (" + step.duration() + " ms)");
+            total += step.duration();
+        }
+        LOG.info("Post-processing took " + elapsed + " ms, critical path " + total + " ms: "
+                + path);
+    }
+
+    private boolean dependsOn(Step step, Step earlier) {
+        PostProcessor later = step.postProcessor;
+        PostProcessor before = earlier.postProcessor;
+        for (String dependency : later.getDependencies()) {
+            if (dependency.equals(earlier.name)
+                    || dependency.equals(before.getClass().getName())
+                    || dependency.equals(before.getClass().getSimpleName())) {
+                return true;
+            }
+        }
+        if (!isDeclared(later) || !isDeclared(before)) {
+            return true;
+        }
+        return overlaps(later.getWrites(), before.getWrites())
+            || overlaps(later.getWrites(), before.getReads())
+            || overlaps(later.getReads(), before.getWrites());
+    }
+
+    private static boolean isDeclared(PostProcessor postProcessor) {
+        return postProcessor.getReads() != null || postProcessor.getWrites() != null;
+    }
+
+    private boolean overlaps(Set<String> classNames, Set<String> otherClassNames) {
+        if (classNames == null || otherClassNames == null) {
+            return false;
+        }
+        for (String className : classNames) {
+            for (String otherClassName : otherClassNames) {
+                if (isRelated(className, otherClassName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isRelated(String className, String otherClassName) {
+        String name = TypeUtil.unqualifiedName(className);
+        String otherName = TypeUtil.unqualifiedName(otherClassName);
+        if (name.equals(otherName)) {
+            return true;
+        }
+        ClassDescriptor cld = model.getClassDescriptorByName(name);
+        ClassDescriptor otherCld = model.getClassDescriptorByName(otherName);
+        if (cld == null || otherCld == null) {
+            return false;
+        }
+        return cld.getAllSuperclassNames().contains(otherCld.getName())
+            || otherCld.getAllSuperclassNames().contains(cld.getName());
+    }
+
+    /**
+     * A post-processor, with the steps it waits for and how long it took.
+     */
+    private static class Step implements Callable<Step>
+    {
+        private final String name;
+        private final PostProcessor postProcessor;
+        private final List<Step> dependencies = new ArrayList<Step>();
+        private volatile long start = 0;
+        private volatile long end = 0;
+        private volatile Exception failure = null;
+
+        Step(String name, PostProcessor postProcessor) {
+            this.name = name;
+            this.postProcessor = postProcessor;
+        }
+
+        @Override
+        public Step call() throws Exception {
+            LOG.info("Starting post-process " + name);
+            start = System.currentTimeMillis();
+            try {
+                postProcessor.postProcess();
+            } catch (Exception e) {
+                failure = e;
+                LOG.error("Post-process " + name + " failed", e);
+                throw e;
+            } finally {
+                end = System.currentTimeMillis();
+            }
+            LOG.info("Finished post-process " + name + " in " + duration() + " ms");
+            return this;
+        }
+
+        long duration() {
+            return end - start;
+        }
+
+        Step failedDependency() {
+            for (Step dependency : dependencies) {
+                if (dependency.failure != null) {
+                    return dependency;
+                }
+            }
+            return null;
+        }
+
+        // the dependency that this step waited for last, or null if it didn't wait
+        Step latestDependency() {
+            Step retval = null;
+            for (Step dependency : dependencies) {
+                if (dependency.end > 0 && (retval == null || dependency.end > retval.end)) {
+                    retval = dependency;
+                }
+            }
+            return retval;
+        }
+    }
+}
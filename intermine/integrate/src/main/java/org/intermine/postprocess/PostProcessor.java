@@ -10,6 +10,9 @@ package org.intermine.postprocess;
  *
  */
 
+import java.util.Collections;
+import java.util.Set;
+
 import org.intermine.objectstore.ObjectStoreWriter;
 
 /**
@@ -46,4 +49,37 @@ public abstract class PostProcessor
      * */
     public abstract void postProcess() throws Exception;
 
+    /**
+     * Return the names of the classes that this post-processor reads, for deciding which
+     * post-processors can be run at the same time. If this and getWrites() both return null, the
+     * post-processor is never run alongside another one.
+     *
+     * @return the class names, or null if they are not known
+     * @see PostProcessScheduler
+     */
+    public Set<String> getReads() {
+        return null;
+    }
+
+    /**
+     * Return the names of the classes that this post-processor stores, or otherwise changes.
+     *
+     * @return the class names, or null if they are not known
+     * @see PostProcessScheduler
+     */
+    public Set<String> getWrites() {
+        return null;
+    }
+
+    /**
+     * Return the names of other post-processors that must have finished before this one starts,
+     * if they are run at the same time as this one. These may be class names or post-process
+     * names.
+     *
+     * @return the names, empty by default
+     */
+    public Set<String> getDependencies() {
+        return Collections.emptySet();
+    }
+
 }
@@ -11,10 +11,15 @@ package org.intermine.task;
  */
 
 import org.apache.tools.ant.BuildException;
+import org.intermine.postprocess.PostProcessScheduler;
 import org.intermine.postprocess.PostProcessor;
+import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.ObjectStoreWriterFactory;
 import org.intermine.objectstore.ObjectStoreWriter;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Generic defn of a post process step...
@@ -26,6 +31,9 @@ public class PostProcessorTask extends DynamicAttributeTask
 
     protected String clsName;
     protected String osName;
+    protected String clsNames;
+    protected int threads = 1;
+    protected String failureProperty;
 
     /**
      * Set the name of the PostProcessor sub-class to load to do the postprocessing.
@@ -43,29 +51,50 @@ public class PostProcessorTask extends DynamicAttributeTask
         this.osName = osName;
     }
 
+    /**
+     * Set a comma separated list of PostProcessor sub-classes to run, in order, instead of
+     * clsName. Post-processors that don't depend on each other are run at the same time, each
+     * with its own ObjectStoreWriter.
+     * @param clsNames the class names
+     */
+    public void setClsNames(String clsNames) {
+        this.clsNames = clsNames;
+    }
+
+    /**
+     * Set the greatest number of post-processors from clsNames to run at once.
+     * @param threads the number of threads, 1 by default
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Set a prefix for properties that record the post-processors from clsNames that failed,
+     * instead of failing the task. For each one that failed, or was not run because one it depends
+     * on failed, the property made of this prefix, a dot and the class name is set to the error
+     * message.
+     * @param failureProperty the property name prefix
+     */
+    public void setFailureProperty(String failureProperty) {
+        this.failureProperty = failureProperty;
+    }
 
     /**
      * Run the task
      * @throws org.apache.tools.ant.BuildException if a problem occurs
      */
     public void execute() {
+        if (clsNames != null) {
+            executeAll();
+            return;
+        }
 
         ObjectStoreWriter osw = null;
         try {
             osw = ObjectStoreWriterFactory.getObjectStoreWriter(osName);
 
-            Class c = Class.forName(clsName);
-
-            if (!PostProcessor.class.isAssignableFrom(c)) {
-                throw new IllegalArgumentException("Class (" + clsName + ") is not a subclass"
-                                             + "of org.intermine.postprocess.PostProcessor!");
-            }
-
-            Constructor m = c.getConstructor(new Class[] {ObjectStoreWriter.class});
-
-            PostProcessor pp = (PostProcessor) m.newInstance(new Object[] {osw});
-
-            configureDynamicAttributes(pp);
+            PostProcessor pp = createPostProcessor(clsName, osw);
 
             pp.postProcess();
 
@@ -74,4 +103,58 @@ public class PostProcessorTask extends DynamicAttributeTask
         }
     }
 
+    private void executeAll() {
+        List<ObjectStoreWriter> writers = new ArrayList<ObjectStoreWriter>();
+        PostProcessScheduler scheduler = null;
+        try {
+            for (String name : clsNames.split("\\s*,\\s*")) {
+                if (name.length() == 0) {
+                    continue;
+                }
+                ObjectStoreWriter osw = ObjectStoreWriterFactory.getObjectStoreWriter(osName);
+                writers.add(osw);
+                if (scheduler == null) {
+                    scheduler = new PostProcessScheduler(osw.getModel());
+                }
+                scheduler.add(name, createPostProcessor(name, osw));
+            }
+            if (scheduler != null) {
+                scheduler.run(threads);
+            }
+        } catch (Exception e) {
+            if (failureProperty == null || scheduler == null || scheduler.getFailures().isEmpty()) {
+                throw new BuildException(e);
+            }
+            for (Map.Entry<String, Exception> failure : scheduler.getFailures().entrySet()) {
+                getProject().setProperty(failureProperty + "." + failure.getKey(),
+                        String.valueOf(failure.getValue().getMessage()));
+            }
+        } finally {
+            for (ObjectStoreWriter osw : writers) {
+                try {
+                    osw.close();
+                } catch (ObjectStoreException e) {
+                    LOG.warn("Failed to close ObjectStoreWriter", e);
+                }
+            }
+        }
+    }
+
+    private PostProcessor createPostProcessor(String name, ObjectStoreWriter osw)
+        throws Exception {
+        Class c = Class.forName(name);
+
+        if (!PostProcessor.class.isAssignableFrom(c)) {
+            throw new IllegalArgumentException("Class (" + name + ") is not a subclass"
+                                         + "of org.intermine.postprocess.PostProcessor!");
+        }
+
+        Constructor m = c.getConstructor(new Class[] {ObjectStoreWriter.class});
+
+        PostProcessor pp = (PostProcessor) m.newInstance(new Object[] {osw});
+
+        configureDynamicAttributes(pp);
+
+        return pp;
+    }
 }
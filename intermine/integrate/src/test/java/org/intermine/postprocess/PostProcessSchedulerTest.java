@@ -0,0 +1,147 @@
+package org.intermine.postprocess;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.intermine.metadata.Model;
+
+public class PostProcessSchedulerTest extends TestCase
+{
+    private PostProcessScheduler scheduler;
+    private List<String> ran;
+
+    public PostProcessSchedulerTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        scheduler = new PostProcessScheduler(Model.getInstanceByName("testmodel"));
+        ran = new Vector<String>();
+    }
+
+    public void testDependencies() throws Exception {
+        scheduler.add("employees", new Step("employees", set("Employee"), set("Address")));
+        scheduler.add("companies", new Step("companies", set("Company"), set("Department")));
+        // Manager is a subclass of Employee
+        scheduler.add("managers", new Step("managers", set(), set("Manager")));
+        scheduler.add("undeclared", new Step("undeclared", null, null));
+        scheduler.add("after", new Step("after", set("Company"), set()));
+        Step explicit = new Step("explicit", set("Types"), set());
+        explicit.dependencies = set("companies");
+        scheduler.add("explicit", explicit);
+
+        assertEquals(set(), scheduler.getDependencies("companies"));
+        assertEquals(set("employees"), scheduler.getDependencies("managers"));
+        assertEquals(set("employees", "companies", "managers"),
+                scheduler.getDependencies("undeclared"));
+        assertEquals(set("undeclared"), scheduler.getDependencies("after"));
+        assertEquals(set("companies", "undeclared"), scheduler.getDependencies("explicit"));
+    }
+
+    public void testRunConcurrently() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        scheduler.add("first", new Step("first", set("Company"), set()) {
+            @Override
+            public void postProcess() throws Exception {
+                bothStarted.countDown();
+                assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+                super.postProcess();
+            }
+        });
+        scheduler.add("second", new Step("second", set("Employee"), set()) {
+            @Override
+            public void postProcess() throws Exception {
+                bothStarted.countDown();
+                assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+                super.postProcess();
+            }
+        });
+        scheduler.add("last", new Step("last", null, null));
+        scheduler.run(2);
+        assertEquals(3, ran.size());
+        assertEquals("last", ran.get(2));
+    }
+
+    public void testFailure() throws Exception {
+        scheduler.add("broken", new Step("broken", set(), set("Department")) {
+            @Override
+            public void postProcess() throws Exception {
+                throw new IllegalStateException("broken");
+            }
+        });
+        scheduler.add("dependent", new Step("dependent", set("Department"), set()));
+        scheduler.add("transitive", new Step("transitive", set(), set("Department")));
+        scheduler.add("independent", new Step("independent", set("Employee"), set()));
+        try {
+            scheduler.run(2);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        assertEquals(Collections.singletonList("independent"), ran);
+        Map<String, Exception> failures = scheduler.getFailures();
+        assertEquals(Arrays.asList("broken", "dependent", "transitive"),
+                new ArrayList<String>(failures.keySet()));
+        assertEquals("broken", failures.get("broken").getMessage());
+        assertTrue(failures.get("dependent").getMessage().contains("broken failed"));
+    }
+
+    private static Set<String> set(String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    private class Step extends PostProcessor
+    {
+        private String name;
+        private Set<String> reads;
+        private Set<String> writes;
+        Set<String> dependencies = Collections.emptySet();
+
+        Step(String name, Set<String> reads, Set<String> writes) {
+            super(null);
+            this.name = name;
+            this.reads = reads;
+            this.writes = writes;
+        }
+
+        @Override
+        public void postProcess() throws Exception {
+            ran.add(name);
+        }
+
+        @Override
+        public Set<String> getReads() {
+            return reads;
+        }
+
+        @Override
+        public Set<String> getWrites() {
+            return writes;
+        }
+
+        @Override
+        public Set<String> getDependencies() {
+            return dependencies;
+        }
+    }
+}
@@ -16,6 +16,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -204,7 +205,8 @@ public class JavaModelOutput
                 .append(generateGetFieldValue(cld, false))
                 .append(generateGetFieldValue(cld, true))
                 .append(generateSetFieldValue(cld))
-                .append(generateGetFieldType(cld));
+                .append(generateGetFieldType(cld))
+                .append(generateOrdinalAccessors(cld));
             if (cld.getSuperDescriptors().size() > 0) {
                 sb.append(generateGetObject(cld))
                     .append(generateSetObject(cld))
@@ -941,6 +943,125 @@ public class JavaModelOutput
         return sb.toString();
     }
 
+    /**
+     * Generates the getOrdinalClassName method, and the getFieldValue, getFieldProxy and
+     * setFieldValue methods that take the ordinal of a field in the field table of the
+     * ClassDescriptor rather than its name.
+     *
+     * @param cld the ClassDescriptor
+     * @return a String with the methods
+     */
+    public String generateOrdinalAccessors(ClassDescriptor cld) {
+        List<FieldDescriptor> table = cld.getFieldTable();
+        StringBuffer sb = new StringBuffer();
+        sb.append(INDENT)
+            .append("public String getOrdinalClassName() {\n")
+            .append(INDENT + INDENT)
+            .append("return \"" + cld.getName() + "\";\n")
+            .append(INDENT)
+            .append("}\n");
+        for (boolean proxy : new boolean[] {false, true}) {
+            sb.append(INDENT)
+                .append("public Object getField" + (proxy ? "Proxy" : "Value")
+                        + "(final int ordinal) throws IllegalAccessException {\n")
+                .append(INDENT + INDENT)
+                .append("switch (ordinal) {\n");
+            for (int i = 0; i < table.size(); i++) {
+                FieldDescriptor field = table.get(i);
+                String fieldName = "this." + field.getName();
+                sb.append(INDENT + INDENT + INDENT)
+                    .append("case " + i + ":\n")
+                    .append(INDENT + INDENT + INDENT + INDENT);
+                if (field instanceof AttributeDescriptor) {
+                    String wrapper = getWrapperClass(((AttributeDescriptor) field).getType());
+                    if (wrapper == null) {
+                        sb.append("return " + fieldName + ";\n");
+                    } else {
+                        sb.append("return " + wrapper + ".valueOf(" + fieldName + ");\n");
+                    }
+                } else if (field.isReference() && (!proxy)) {
+                    sb.append("if (" + fieldName + " instanceof ProxyReference) {\n")
+                        .append(INDENT + INDENT + INDENT + INDENT + INDENT)
+                        .append("return ((ProxyReference) " + fieldName + ").getObject();\n")
+                        .append(INDENT + INDENT + INDENT + INDENT)
+                        .append("}\n")
+                        .append(INDENT + INDENT + INDENT + INDENT)
+                        .append("return " + fieldName + ";\n");
+                } else {
+                    sb.append("return " + fieldName + ";\n");
+                }
+            }
+            sb.append(INDENT + INDENT + INDENT)
+                .append("default:\n")
+                .append(INDENT + INDENT + INDENT + INDENT)
+                .append("throw new IllegalArgumentException(\"Unknown field ordinal \"")
+                .append(" + ordinal);\n")
+                .append(INDENT + INDENT)
+                .append("}\n")
+                .append(INDENT)
+                .append("}\n");
+        }
+        sb.append(INDENT)
+            .append("public void setFieldValue(final int ordinal, final Object value) {\n")
+            .append(INDENT + INDENT)
+            .append("switch (ordinal) {\n");
+        for (int i = 0; i < table.size(); i++) {
+            FieldDescriptor field = table.get(i);
+            String fieldName = "this." + field.getName();
+            sb.append(INDENT + INDENT + INDENT)
+                .append("case " + i + ":\n")
+                .append(INDENT + INDENT + INDENT + INDENT);
+            if (field instanceof AttributeDescriptor) {
+                String type = ((AttributeDescriptor) field).getType();
+                String wrapper = getWrapperClass(type);
+                if (wrapper == null) {
+                    sb.append(fieldName + " = (" + type + ") value;\n");
+                } else {
+                    sb.append(fieldName + " = ((" + wrapper + ") value)." + type + "Value();\n");
+                }
+            } else if (field.isReference()) {
+                sb.append(fieldName + " = (org.intermine.model.InterMineObject) value;\n");
+            } else {
+                sb.append(fieldName + " = (java.util.Set) value;\n");
+            }
+            sb.append(INDENT + INDENT + INDENT + INDENT)
+                .append("return;\n");
+        }
+        sb.append(INDENT + INDENT + INDENT)
+            .append("default:\n")
+            .append(INDENT + INDENT + INDENT + INDENT)
+            .append("throw new IllegalArgumentException(\"Unknown field ordinal \"")
+            .append(" + ordinal);\n")
+            .append(INDENT + INDENT)
+            .append("}\n")
+            .append(INDENT)
+            .append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Returns the name of the wrapper class for a primitive type.
+     *
+     * @param type the name of a type
+     * @return the wrapper class name, or null if the type is not primitive
+     */
+    protected static String getWrapperClass(String type) {
+        if ("boolean".equals(type)) {
+            return "Boolean";
+        } else if ("short".equals(type)) {
+            return "Short";
+        } else if ("int".equals(type)) {
+            return "Integer";
+        } else if ("long".equals(type)) {
+            return "Long";
+        } else if ("float".equals(type)) {
+            return "Float";
+        } else if ("double".equals(type)) {
+            return "Double";
+        }
+        return null;
+    }
+
     /**
      * Generates the addCollectionElement method.
      *
@@ -12,6 +12,9 @@ package org.intermine.metadata;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -53,6 +56,8 @@ public class ClassDescriptor implements Comparable<ClassDescriptor>
         = new LinkedHashMap<String, FieldDescriptor>();
     private Map<String, FieldDescriptor> allFieldDescriptors
         = new LinkedHashMap<String, FieldDescriptor>();
+    private List<FieldDescriptor> fieldTable = Collections.emptyList();
+    private Map<String, Integer> fieldOrdinals = Collections.emptyMap();
 
     private Model model;  // set when ClassDescriptor added to DescriptorRespository
     private boolean modelSet = false;
@@ -232,6 +237,42 @@ public class ClassDescriptor implements Comparable<ClassDescriptor>
      */
     protected void setAllFieldDescriptors() throws MetaDataException {
         allFieldDescriptors = findAllFieldDescriptors();
+        List<FieldDescriptor> table = new ArrayList<FieldDescriptor>(allFieldDescriptors.values());
+        Collections.sort(table, new Comparator<FieldDescriptor>() {
+            @Override
+            public int compare(FieldDescriptor a, FieldDescriptor b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        Map<String, Integer> ordinals = new HashMap<String, Integer>();
+        for (int i = 0; i < table.size(); i++) {
+            ordinals.put(table.get(i).getName(), Integer.valueOf(i));
+        }
+        fieldTable = Collections.unmodifiableList(table);
+        fieldOrdinals = ordinals;
+    }
+
+    /**
+     * Gets the FieldDescriptors for this class and all superclasses and interfaces, ordered by
+     * name. The position of a field in this list is its ordinal, which may be passed to the
+     * getFieldValue(int), getFieldProxy(int) and setFieldValue(int, Object) methods of the
+     * generated class for this ClassDescriptor instead of the field name.
+     *
+     * @return an unmodifiable List of FieldDescriptors
+     */
+    public List<FieldDescriptor> getFieldTable() {
+        return fieldTable;
+    }
+
+    /**
+     * Returns the ordinal of a field of this class, that is its position in getFieldTable().
+     *
+     * @param name the name of the field
+     * @return the ordinal, or -1 if the class has no such field
+     */
+    public int getFieldOrdinal(String name) {
+        Integer ordinal = fieldOrdinals.get(name);
+        return ordinal == null ? -1 : ordinal.intValue();
     }
 
     private LinkedHashMap<String, FieldDescriptor> findAllFieldDescriptors()
@@ -26,6 +26,7 @@ import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
 
+import org.intermine.model.FastPathObject;
 import org.intermine.model.InterMineFastPathObject;
 
 /**
@@ -247,6 +248,19 @@ public class Model
         return cd;
     }
 
+    /**
+     * Returns the ClassDescriptor whose field table gives the ordinals of the fields of an object,
+     * or null if the object can only be accessed by field name.
+     *
+     * @param o an object
+     * @return a ClassDescriptor, or null
+     * @see ClassDescriptor#getFieldTable()
+     */
+    public ClassDescriptor getOrdinalClassDescriptor(FastPathObject o) {
+        String name = o.getOrdinalClassName();
+        return name == null ? null : cldMap.get(name);
+    }
+
     /**
      * Get all ClassDescriptors in this model.
      *
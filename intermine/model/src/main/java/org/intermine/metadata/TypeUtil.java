@@ -358,6 +358,30 @@ public final class TypeUtil
         return getFieldInfos(c).get(fieldname);
     }
 
+    /**
+     * Returns the name of a field of a class by its ordinal, that is its position in the names of
+     * the fields of the class in alphabetical order.  For a class generated from a model this is
+     * the same as the field table of its ClassDescriptor.
+     *
+     * @param c the Class
+     * @param ordinal the ordinal of the field
+     * @return the name of the field
+     * @throws IllegalArgumentException if the class has no field with that ordinal
+     * @see ClassDescriptor#getFieldTable()
+     */
+    public static String getFieldName(Class<?> c, int ordinal) {
+        if (ordinal >= 0) {
+            int i = 0;
+            for (String fieldName : getFieldInfos(c).keySet()) {
+                if (i++ == ordinal) {
+                    return fieldName;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown field ordinal " + ordinal + " for "
+                + c.getName());
+    }
+
     /**
      * Gets the getter methods for the bean properties of a class
      *
@@ -23,7 +23,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -32,6 +31,8 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.log4j.Logger;
 
@@ -597,9 +598,11 @@ public final class Util
         return loadProperties(getFilename(KEY_DEFINITIONS, modelName));
     }
 
-    private static HashMap<Class<?>, Set<Class<?>>> decomposeMap = new HashMap<Class<?>,
-            Set<Class<?>>>();
-    private static Map<Class<?>, String> friendlyNameMap = new HashMap<Class<?>, String>();
+    // read without locking - two threads may decompose the same class, with the same result
+    private static ConcurrentMap<Class<?>, Set<Class<?>>> decomposeMap
+        = new ConcurrentHashMap<Class<?>, Set<Class<?>>>();
+    private static ConcurrentMap<Class<?>, String> friendlyNameMap
+        = new ConcurrentHashMap<Class<?>, String>();
 
     /**
      * Convert a dynamic Class into a Set of Class objects that comprise it.
@@ -607,7 +610,7 @@ public final class Util
      * @param clazz the Class to decompose
      * @return a Set of Class objects
      */
-    public static synchronized Set<Class<?>> decomposeClass(Class<?> clazz) {
+    public static Set<Class<?>> decomposeClass(Class<?> clazz) {
         Set<Class<?>> retval = decomposeMap.get(clazz);
         if (retval == null) {
             if (net.sf.cglib.proxy.Factory.class.isAssignableFrom(clazz)) {
@@ -666,7 +669,7 @@ public final class Util
      * @param clazz the class
      * @return a String describing the class, without package names
      */
-    public static synchronized String getFriendlyName(Class<?> clazz) {
+    public static String getFriendlyName(Class<?> clazz) {
         String retval = friendlyNameMap.get(clazz);
         if (retval == null) {
             retval = "";
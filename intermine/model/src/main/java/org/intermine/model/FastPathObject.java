@@ -10,6 +10,8 @@ package org.intermine.model;
  *
  */
 
+import org.intermine.metadata.TypeUtil;
+
 /**
  * A root interface for all objects that can be stored in a InterMine database.
  *
@@ -51,4 +53,53 @@ public interface FastPathObject
      * @return the type of the field
      */
     Class<?> getFieldType(String fieldName);
+
+    /**
+     * Returns the name of the model class whose field table is used by the ordinal accessors of
+     * this object, or null if this object does not support access to fields by ordinal. Classes
+     * generated from a model return the name of the ClassDescriptor they were generated from.
+     *
+     * @return a class name, or null
+     * @see org.intermine.metadata.ClassDescriptor#getFieldTable()
+     */
+    default String getOrdinalClassName() {
+        return null;
+    }
+
+    /**
+     * Returns the value of a field by its ordinal in the field table of the class named by
+     * getOrdinalClassName().  By default the field is looked up by name, taking the ordinal from
+     * the fields of this object's class in alphabetical order.
+     *
+     * @param ordinal the ordinal of the field
+     * @return the value of the field
+     * @throws IllegalAccessException when something goes wrong
+     * @see TypeUtil#getFieldName(Class, int)
+     */
+    default Object getFieldValue(int ordinal) throws IllegalAccessException {
+        return getFieldValue(TypeUtil.getFieldName(getClass(), ordinal));
+    }
+
+    /**
+     * Returns the value of a field by ordinal without dereferencing any ProxyReference objects.
+     * By default the field is looked up by name, as getFieldValue(int) does.
+     *
+     * @param ordinal the ordinal of the field
+     * @return the value of the field, or a ProxyReference representing it
+     * @throws IllegalAccessException when something goes wrong
+     */
+    default Object getFieldProxy(int ordinal) throws IllegalAccessException {
+        return getFieldProxy(TypeUtil.getFieldName(getClass(), ordinal));
+    }
+
+    /**
+     * Sets the value of a field by ordinal.  By default the field is looked up by name, as
+     * getFieldValue(int) does.
+     *
+     * @param ordinal the ordinal of the field
+     * @param value the value of the field, or a ProxyReference representing it
+     */
+    default void setFieldValue(int ordinal, Object value) {
+        setFieldValue(TypeUtil.getFieldName(getClass(), ordinal), value);
+    }
 }
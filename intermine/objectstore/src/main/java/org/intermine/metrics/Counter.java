@@ -0,0 +1,73 @@
+package org.intermine.metrics;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up, such as the number of cache hits. Threads can add to it at once
+ * without contending.
+ */
+public class Counter extends Metric
+{
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the metric
+     * @param help a description of the metric
+     * @param labels the formatted labels of the metric
+     */
+    Counter(String name, String help, String labels) {
+        super(name, help, labels);
+    }
+
+    /**
+     * Adds one to the count.
+     */
+    public void inc() {
+        count.increment();
+    }
+
+    /**
+     * Adds to the count.
+     *
+     * @param amount the amount to add
+     */
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    /**
+     * @return the count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getType() {
+        return "counter";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void addSamples(Map<String, Number> samples) {
+        samples.put(sampleName("", null), Long.valueOf(getCount()));
+    }
+}
@@ -0,0 +1,109 @@
+package org.intermine.metrics;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts observations, such as the time taken by queries, in buckets with fixed upper bounds, and
+ * keeps their number and total. Timers are histograms of times in milliseconds.
+ */
+public class Histogram extends Metric
+{
+    private final double[] bounds;
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the metric
+     * @param help a description of the metric
+     * @param labels the formatted labels of the metric
+     * @param bounds the upper bounds of the buckets, in increasing order
+     */
+    Histogram(String name, String help, String labels, double[] bounds) {
+        super(name, help, labels);
+        this.bounds = bounds.clone();
+        buckets = new LongAdder[bounds.length];
+        for (int i = 0; i < bounds.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records an observation.
+     *
+     * @param value the observed value
+     */
+    public void observe(double value) {
+        for (int i = 0; i < bounds.length; i++) {
+            if (value <= bounds[i]) {
+                buckets[i].increment();
+                break;
+            }
+        }
+        count.increment();
+        sum.add(value);
+    }
+
+    /**
+     * Records the time since a start time.
+     *
+     * @param startMillis the start time, from System.currentTimeMillis()
+     */
+    public void observeSince(long startMillis) {
+        observe(System.currentTimeMillis() - startMillis);
+    }
+
+    /**
+     * @return the number of observations
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the total of the observations
+     */
+    public double getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getType() {
+        return "histogram";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void addSamples(Map<String, Number> samples) {
+        // Read the count first, so the buckets are never behind it
+        long total = getCount();
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += buckets[i].sum();
+            samples.put(sampleName("_bucket", "le=\"" + bounds[i] + "\""),
+                    Long.valueOf(Math.min(cumulative, total)));
+        }
+        samples.put(sampleName("_bucket", "le=\"+Inf\""), Long.valueOf(total));
+        samples.put(sampleName("_sum", null), Double.valueOf(getSum()));
+        samples.put(sampleName("_count", null), Long.valueOf(total));
+    }
+}
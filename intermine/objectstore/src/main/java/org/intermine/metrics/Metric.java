@@ -0,0 +1,87 @@
+package org.intermine.metrics;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Map;
+
+/**
+ * A named measurement held in a MetricsRegistry. Metrics with the same name and different labels
+ * make up one family, for example the latency of each web service.
+ */
+public abstract class Metric
+{
+    private final String name;
+    private final String help;
+    private final String labels;
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the metric, for example intermine_query_execute_ms
+     * @param help a description of the metric
+     * @param labels the labels of the metric, already formatted as label="value" pairs separated
+     * by commas, or an empty String
+     */
+    protected Metric(String name, String help, String labels) {
+        this.name = name;
+        this.help = help;
+        this.labels = labels;
+    }
+
+    /**
+     * @return the name of the metric
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the description of the metric
+     */
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * @return the labels of the metric, formatted as label="value" pairs separated by commas
+     */
+    public String getLabels() {
+        return labels;
+    }
+
+    /**
+     * @return the type of the metric in the Prometheus text format, counter or histogram
+     */
+    public abstract String getType();
+
+    /**
+     * Adds the current values of this metric to a Map, keyed by sample name with labels, as they
+     * are written in the Prometheus text format.
+     *
+     * @param samples the Map to add to
+     */
+    protected abstract void addSamples(Map<String, Number> samples);
+
+    /**
+     * Returns the name of a sample of this metric.
+     *
+     * @param suffix a suffix for the metric name, such as _count, or an empty String
+     * @param extraLabel another label="value" pair for this sample, or null
+     * @return the sample name, with labels in braces if there are any
+     */
+    protected String sampleName(String suffix, String extraLabel) {
+        String allLabels = labels;
+        if (extraLabel != null) {
+            allLabels = labels.isEmpty() ? extraLabel : labels + "," + extraLabel;
+        }
+        return name + suffix + (allLabels.isEmpty() ? "" : "{" + allLabels + "}");
+    }
+}
@@ -0,0 +1,109 @@
+package org.intermine.metrics;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Shows the samples of a MetricsRegistry as read-only JMX attributes, named as they are in the
+ * Prometheus text format.
+ */
+class MetricsMBean implements DynamicMBean
+{
+    private final MetricsRegistry registry;
+
+    /**
+     * Constructor.
+     *
+     * @param registry the MetricsRegistry to show
+     */
+    MetricsMBean(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number retval = registry.getSamples().get(attribute);
+        if (retval == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> samples = registry.getSamples();
+        AttributeList retval = new AttributeList();
+        for (String attribute : attributes) {
+            Number value = samples.get(attribute);
+            if (value != null) {
+                retval.add(new Attribute(attribute, value));
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature)
+        throws MBeanException, ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        for (Map.Entry<String, Number> sample : registry.getSamples().entrySet()) {
+            attributes.add(new MBeanAttributeInfo(sample.getKey(),
+                    sample.getValue().getClass().getName(), sample.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "InterMine metrics",
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+    }
+}
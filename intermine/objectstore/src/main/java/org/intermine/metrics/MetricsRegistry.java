@@ -0,0 +1,238 @@
+package org.intermine.metrics;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Holds the metrics of a process, such as query times and cache hit counts. The shared instance
+ * is registered with the platform MBeanServer, so the metrics can be read over JMX, and can be
+ * written in the Prometheus text format for a scrape endpoint.
+ * <p>
+ * Metrics are created on first use and live as long as the registry. Code that updates a metric
+ * often should keep a reference to it rather than look it up each time.
+ */
+public class MetricsRegistry
+{
+    private static final Logger LOG = Logger.getLogger(MetricsRegistry.class);
+
+    /** The name the shared registry is registered under with JMX. */
+    public static final String OBJECT_NAME = "org.intermine:type=Metrics";
+
+    /** Bucket bounds for timers, in milliseconds. */
+    public static final double[] TIMER_BOUNDS = new double[] {1, 5, 10, 50, 100, 500, 1000, 5000,
+        10000, 60000};
+
+    private static MetricsRegistry instance = null;
+
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+
+    /**
+     * Constructor, for a registry that is not registered with JMX.
+     */
+    MetricsRegistry() {
+        // empty
+    }
+
+    /**
+     * Returns the registry shared by the whole process, registering it with JMX the first time.
+     *
+     * @return the MetricsRegistry
+     */
+    public static synchronized MetricsRegistry getInstance() {
+        if (instance == null) {
+            instance = new MetricsRegistry();
+            instance.registerMBean();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns a counter, creating it if necessary.
+     *
+     * @param name the name of the counter, which should end in _total
+     * @param help a description of the counter
+     * @param labels label names and values, alternately
+     * @return the Counter
+     */
+    public Counter counter(String name, String help, String... labels) {
+        String formatted = formatLabels(labels);
+        Metric retval = metrics.get(key(name, formatted));
+        if (retval == null) {
+            retval = register(new Counter(name, help, formatted));
+        }
+        return (Counter) retval;
+    }
+
+    /**
+     * Returns the counter of hits or misses for a cache. The counters of every cache are one
+     * family, so hit rates can be compared.
+     *
+     * @param cache the name of the cache
+     * @param hit true for the counter of hits, false for misses
+     * @return the Counter
+     */
+    public Counter cacheCounter(String cache, boolean hit) {
+        return counter("intermine_cache_requests_total", "Requests to caches, by cache and result",
+                "cache", cache, "result", hit ? "hit" : "miss");
+    }
+
+    /**
+     * Returns a histogram of times in milliseconds, creating it if necessary.
+     *
+     * @param name the name of the timer, which should end in _ms
+     * @param help a description of the timer
+     * @param labels label names and values, alternately
+     * @return the Histogram
+     */
+    public Histogram timer(String name, String help, String... labels) {
+        return histogram(name, help, TIMER_BOUNDS, labels);
+    }
+
+    /**
+     * Returns a histogram, creating it if necessary.
+     *
+     * @param name the name of the histogram
+     * @param help a description of the histogram
+     * @param bounds the upper bounds of the buckets, in increasing order, if it is created
+     * @param labels label names and values, alternately
+     * @return the Histogram
+     */
+    public Histogram histogram(String name, String help, double[] bounds, String... labels) {
+        String formatted = formatLabels(labels);
+        Metric retval = metrics.get(key(name, formatted));
+        if (retval == null) {
+            retval = register(new Histogram(name, help, formatted, bounds));
+        }
+        return (Histogram) retval;
+    }
+
+    /**
+     * Returns the current value of every sample of every metric, keyed by sample name with
+     * labels, in the order they are written by writeText().
+     *
+     * @return a Map from sample name to value
+     */
+    public Map<String, Number> getSamples() {
+        Map<String, Number> retval = new LinkedHashMap<String, Number>();
+        for (Metric metric : getSortedMetrics()) {
+            metric.addSamples(retval);
+        }
+        return retval;
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format, version 0.0.4.
+     *
+     * @param out the Writer to write to
+     * @throws IOException if the Writer fails
+     */
+    public void writeText(Writer out) throws IOException {
+        String lastName = null;
+        Map<String, Number> samples = new LinkedHashMap<String, Number>();
+        for (Metric metric : getSortedMetrics()) {
+            if (!metric.getName().equals(lastName)) {
+                lastName = metric.getName();
+                out.write("# HELP " + lastName + " " + escapeHelp(metric.getHelp()) + "\n");
+                out.write("# TYPE " + lastName + " " + metric.getType() + "\n");
+            }
+            samples.clear();
+            metric.addSamples(samples);
+            for (Map.Entry<String, Number> sample : samples.entrySet()) {
+                out.write(sample.getKey() + " " + sample.getValue() + "\n");
+            }
+        }
+    }
+
+    private Metric register(Metric metric) {
+        Metric existing = metrics.putIfAbsent(key(metric.getName(), metric.getLabels()), metric);
+        if (existing != null) {
+            return existing;
+        }
+        return metric;
+    }
+
+    private List<Metric> getSortedMetrics() {
+        // sorted by name first, so that each family is written together
+        List<Metric> retval = new ArrayList<Metric>(metrics.values());
+        Collections.sort(retval, new Comparator<Metric>() {
+            @Override
+            public int compare(Metric a, Metric b) {
+                int byName = a.getName().compareTo(b.getName());
+                return byName != 0 ? byName : a.getLabels().compareTo(b.getLabels());
+            }
+        });
+        return retval;
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // A redeployed webapp has a new registry, so replace the old one
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new MetricsMBean(this), name);
+        } catch (JMException e) {
+            LOG.warn("Could not register metrics with JMX", e);
+        } catch (SecurityException e) {
+            LOG.warn("Could not register metrics with JMX", e);
+        }
+    }
+
+    private static String key(String name, String labels) {
+        return name + "{" + labels + "}";
+    }
+
+    /**
+     * Formats label names and values as label="value" pairs separated by commas.
+     *
+     * @param labels label names and values, alternately
+     * @return the formatted labels
+     */
+    static String formatLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as name, value pairs");
+        }
+        StringBuilder retval = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                retval.append(',');
+            }
+            retval.append(labels[i]).append("=\"");
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            retval.append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+            retval.append('"');
+        }
+        return retval.toString();
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+}
@@ -24,6 +24,8 @@ import java.util.WeakHashMap;
 import org.apache.log4j.Logger;
 import org.intermine.metadata.MetaDataException;
 import org.intermine.metadata.Model;
+import org.intermine.metrics.Counter;
+import org.intermine.metrics.MetricsRegistry;
 import org.intermine.model.InterMineObject;
 import org.intermine.objectstore.query.Clob;
 import org.intermine.objectstore.query.ObjectStoreBag;
@@ -33,6 +35,7 @@ import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.objectstore.query.SingletonResults;
 import org.intermine.util.CacheMap;
+import org.intermine.util.ConcurrentCacheMap;
 import org.intermine.util.PropertiesUtil;
 
 /**
@@ -45,6 +48,10 @@ import org.intermine.util.PropertiesUtil;
 public abstract class ObjectStoreAbstractImpl implements ObjectStore
 {
     private static final Logger LOG = Logger.getLogger(ObjectStoreAbstractImpl.class);
+    private static final Counter GET_OBJECT_HITS = MetricsRegistry.getInstance()
+        .cacheCounter("objectbyid", true);
+    private static final Counter GET_OBJECT_MISSES = MetricsRegistry.getInstance()
+        .cacheCounter("objectbyid", false);
 
     protected static Random rand = new Random();
 
@@ -97,8 +104,9 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
 
         LOG.info("Creating new " + getClass().getName() + " with sequence = " + sequenceNumber
                 + ", model = \"" + model.getName() + "\"");
-        cache = new CacheMap<Integer, InterMineObject>(getClass().getName() + " with sequence = "
-                + sequenceNumber + ", model = \"" + model.getName() + "\" getObjectById cache");
+        cache = new ConcurrentCacheMap<Integer, InterMineObject>(getClass().getName()
+                + " with sequence = " + sequenceNumber + ", model = \"" + model.getName()
+                + "\" getObjectById cache");
     }
 
     /**
@@ -190,30 +198,21 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
             LOG.info("getObjectById called " + getObjectOps + " times. Cache hits: "
                     + getObjectHits + ". Prefetches: " + getObjectPrefetches);
         }
-        boolean contains = true;
-        InterMineObject cached = null;
-        synchronized (cache) {
-            cached = cache.get(id);
-            if (cached == null) {
-                contains = cache.containsKey(id);
-            }
-        }
-        if (contains) {
+        // The cache is a ConcurrentCacheMap, so no lock is held here. Two Threads that miss on
+        // the same id at once will both fetch it, which is harmless.
+        InterMineObject cached = cache.get(id);
+        if ((cached != null) || cache.containsKey(id)) {
             getObjectHits++;
+            GET_OBJECT_HITS.inc();
             return cached;
         }
+        GET_OBJECT_MISSES.inc();
         InterMineObject fromDb = internalGetObjectById(id, clazz);
-        synchronized (cache) {
-            cached = cache.get(id);
-            if (cached == null) {
-                contains = cache.containsKey(id);
-            }
-            if (contains) {
-                fromDb = cached;
-            } else {
-                cacheObjectById(id, fromDb);
-            }
+        cached = cache.get(id);
+        if ((cached != null) || cache.containsKey(id)) {
+            return cached;
         }
+        cacheObjectById(id, fromDb);
         return fromDb;
     }
 
@@ -295,18 +294,14 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
      * {@inheritDoc}
      */
     public void invalidateObjectById(Integer id) {
-        synchronized (cache) {
-            cache.remove(id);
-        }
+        cache.remove(id);
     }
 
     /**
      * {@inheritDoc}
      */
     public Object cacheObjectById(Integer id, InterMineObject obj) {
-        synchronized (cache) {
-            cache.put(id, obj);
-        }
+        cache.put(id, obj);
         return obj;
     }
 
@@ -314,18 +309,14 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
      * {@inheritDoc}
      */
     public void flushObjectById() {
-        synchronized (cache) {
-            cache.clear();
-        }
+        cache.clear();
     }
 
     /**
      * {@inheritDoc}
      */
     public InterMineObject pilferObjectById(Integer id) {
-        synchronized (cache) {
-            return cache.get(id);
-        }
+        return cache.get(id);
     }
 
     /**
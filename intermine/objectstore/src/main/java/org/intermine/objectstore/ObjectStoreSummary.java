@@ -22,6 +22,11 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 import org.intermine.metadata.AttributeDescriptor;
@@ -39,12 +44,15 @@ import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
 import org.intermine.objectstore.query.QueryCollectionReference;
 import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryFunction;
 import org.intermine.objectstore.query.QueryObjectReference;
 import org.intermine.objectstore.query.QueryReference;
 import org.intermine.objectstore.query.QueryValue;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.objectstore.query.SubqueryExistsConstraint;
+import org.intermine.util.HyperLogLog;
 
 /**
  * A summary of the data in an ObjectStore
@@ -63,6 +71,7 @@ public class ObjectStoreSummary
     protected final Map<String, Set<String>> emptyAttributesMap =
         new HashMap<String, Set<String>>();
     private final Map<String, Set<String>> nonEmptyFieldsMap = new HashMap<String, Set<String>>();
+    private final Map<String, Long> distinctCountsMap = new HashMap<String, Long>();
     // This should be overwritten by MAX_FIELD_VALUES from properties
     protected int maxValues = DEFAULT_MAX_VALUES;
 
@@ -70,19 +79,49 @@ public class ObjectStoreSummary
     static final String CLASS_COUNTS_SUFFIX = ".classCount";
     static final String FIELDS_SUFFIX = ".fieldValues";
     static final String EMPTY_ATTRIBUTES_SUFFIX = ".emptyAttributes";
+    static final String DISTINCT_COUNT_SUFFIX = ".distinctCount";
     static final String NULL_MARKER = "___NULL___";
     static final String FIELD_DELIM = "$_^";
     static final String MAX_FIELD_VALUES = "max.field.values";
+    static final String THREADS = "summary.threads";
+    static final String APPROXIMATE_COUNTS = "approximate.counts";
 
     /**
      * The default number of values to make available for UI dropdowns - attributes with more values
      * will not become dropdowns.
      */
     public static final int DEFAULT_MAX_VALUES = 200;
+    /**
+     * The default number of Threads used to run the summary queries.
+     */
+    public static final int DEFAULT_THREADS = 4;
+
+    private static final int SCAN_BATCH_SIZE = 10000;
+    private static final int PARTITION_ROWS = 1000000;
+
+    private static final Comparator<Object> NULL_LAST_COMPARATOR = new Comparator<Object>() {
+        @Override
+        public int compare(Object arg0, Object arg1) {
+            if (arg0 == null) {
+                return arg1 == null ? 0 : 1;
+            }
+            if (arg1 == null) {
+                return arg0 == null ? 0 : -1;
+            }
+            return arg0.toString().compareTo(arg1.toString());
+        }
+    };
 
     /**
      * Construct a summary from by running queries in the ObjectStore.
      *
+     * The queries are run in parallel by a pool of summary.threads Threads, or one if it is set
+     * lower. Classes are processed one level of the model at a time, so that what is learned
+     * about a class can still be used to skip queries for its superclasses (or, for class
+     * counts, its subclasses). If
+     * approximate.counts is true, the number of distinct values of each attribute with more than
+     * max.field.values values is estimated with a HyperLogLog counter.
+     *
      * @param os the objectstore
      * @param configuration the configuration for summarization
      * @throws ClassNotFoundException if a class cannot be found
@@ -99,38 +138,133 @@ public class ObjectStoreSummary
         // 5. Always empty attributes per class
 
         Model model = os.getModel();
+        String threadsString = (String) configuration.get(THREADS);
+        int threads = (threadsString == null ? DEFAULT_THREADS : Integer.parseInt(threadsString));
+        if (threads < 1) {
+            LOG.warn(THREADS + " must be at least 1, not " + threads + ", using 1 thread");
+            threads = 1;
+        }
+        boolean approximateCounts = "true".equals(configuration.get(APPROXIMATE_COUNTS));
+        List<List<ClassDescriptor>> levels = getLevels(model);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // classCounts - number of objects of each type in the database
+            LOG.info("Collecting class counts using " + threads + " threads...");
+            for (List<ClassDescriptor> level : levels) {
+                countAndStore(os, model, level, executor);
+            }
+
+            // fieldValues - find all attributes with few unique values for populating dropdowns,
+            // also look for any attributes that are empty.
+            LOG.info("Summarising field values...");
+            String maxValuesString = (String) configuration.get(MAX_FIELD_VALUES);
+            maxValues =
+                (maxValuesString == null ? DEFAULT_MAX_VALUES : Integer.parseInt(maxValuesString));
+
+            // always empty references and collections
+            LOG.info("Looking for empty collections and references...");
+            Set<String> ignoreFields = getIgnoreFields((String) configuration.get("ignore.counts"));
+            if (ignoreFields.size() > 0) {
+                LOG.warn("Not counting ignored fields: " + ignoreFields);
+            }
 
-        // classCounts - number of objects of each type in the database
-        LOG.info("Collecting class counts...");
+            Set<String> doneFields = new HashSet<String>();
+            for (int i = levels.size() - 1; i >= 0; i--) {
+                summariseAttributes(os, levels.get(i), ignoreFields, doneFields, approximateCounts,
+                        executor);
+            }
+
+            // This is faster as a bottom up traversal, though this may save fewer queres the saved
+            // queries would take longer. If a ref/col is not empty it must not be empty in all
+            // parents.
+            Set<String> notEmptyFields = new HashSet<String>();
+            for (int i = levels.size() - 1; i >= 0; i--) {
+                findEmptyReferences(os, levels.get(i), ignoreFields, notEmptyFields, executor);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Split the classes of the model into levels, such that every class is in a later level than
+     * all of its superclasses. The classes in one level can therefore be processed independently.
+     */
+    private static List<List<ClassDescriptor>> getLevels(Model model) {
+        Map<ClassDescriptor, Integer> depths = new HashMap<ClassDescriptor, Integer>();
+        List<List<ClassDescriptor>> levels = new ArrayList<List<ClassDescriptor>>();
         for (ClassDescriptor cld : model.getTopDownLevelTraversal()) {
-            nonEmptyFieldsMap.put(cld.getName(), new HashSet<String>());
-            countAndStore(os, model, cld);
+            int depth = getDepth(cld, depths);
+            while (levels.size() <= depth) {
+                levels.add(new ArrayList<ClassDescriptor>());
+            }
+            levels.get(depth).add(cld);
         }
+        return levels;
+    }
 
-        // fieldValues - find all attributes with few unique values for populating dropdowns,
-        // also look for any attributes that are empty.
-        LOG.info("Summarising field values...");
-        String maxValuesString = (String) configuration.get(MAX_FIELD_VALUES);
-        maxValues =
-            (maxValuesString == null ? DEFAULT_MAX_VALUES : Integer.parseInt(maxValuesString));
-
-        // always empty references and collections
-        LOG.info("Looking for empty collections and references...");
-        Set<String> ignoreFields = getIgnoreFields((String) configuration.get("ignore.counts"));
-        if (ignoreFields.size() > 0) {
-            LOG.warn("Not counting ignored fields: " + ignoreFields);
+    private static int getDepth(ClassDescriptor cld, Map<ClassDescriptor, Integer> depths) {
+        Integer depth = depths.get(cld);
+        if (depth == null) {
+            int maxDepth = 0;
+            for (ClassDescriptor superCld : cld.getSuperDescriptors()) {
+                maxDepth = Math.max(maxDepth, getDepth(superCld, depths) + 1);
+            }
+            depth = new Integer(maxDepth);
+            depths.put(cld, depth);
         }
+        return depth.intValue();
+    }
 
-        Set<String> doneFields = new HashSet<String>();
-        for (ClassDescriptor cld : model.getBottomUpLevelTraversal()) {
+    private void countAndStore(final ObjectStore os, Model model, List<ClassDescriptor> level,
+            ExecutorService executor) throws ObjectStoreException {
+        List<ClassDescriptor> toCount = new ArrayList<ClassDescriptor>();
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (final ClassDescriptor cld : level) {
+            nonEmptyFieldsMap.put(cld.getName(), new HashSet<String>());
+            if (!classCountsMap.containsKey(cld.getName())) {
+                toCount.add(cld);
+                tasks.add(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws ObjectStoreException {
+                        return new Integer(countClass(os, cld.getType()));
+                    }
+                });
+            }
+        }
+        List<Integer> counts = runAll(tasks, executor);
+        for (int i = 0; i < toCount.size(); i++) {
+            ClassDescriptor cld = toCount.get(i);
+            Integer classCount = counts.get(i);
+            LOG.info("Adding class count: " + cld.getUnqualifiedName() + " = " + classCount);
+            classCountsMap.put(cld.getName(), classCount);
+
+            // if this class is empty all subclasses MUST be empty as well
+            if (classCount.intValue() == 0) {
+                for (ClassDescriptor subCld : model.getAllSubs(cld)) {
+                    if (!classCountsMap.containsKey(subCld.getName())) {
+                        classCountsMap.put(subCld.getName(), classCount);
+                    }
+                }
+            }
+        }
+    }
 
+    private void summariseAttributes(final ObjectStore os, List<ClassDescriptor> level,
+            Set<String> ignoreFields, Set<String> doneFields, boolean approximateCounts,
+            ExecutorService executor) throws ObjectStoreException {
+        List<ClassDescriptor> clds = new ArrayList<ClassDescriptor>();
+        List<String> fieldNames = new ArrayList<String>();
+        List<Callable<FieldSummary>> tasks = new ArrayList<Callable<FieldSummary>>();
+        for (final ClassDescriptor cld : level) {
             int classCount = classCountsMap.get(cld.getName()).intValue();
             if (classCount == 0) {
                 continue;
             }
 
             for (AttributeDescriptor att : cld.getAllAttributeDescriptors()) {
-                String fieldName = att.getName();
+                final String fieldName = att.getName();
                 if ("id".equals(fieldName)) {
                     continue;
                 }
@@ -139,65 +273,70 @@ public class ObjectStoreSummary
                 if (doneFields.contains(clsFieldName) || ignoreFields.contains(clsFieldName)) {
                     continue;
                 }
+                clds.add(cld);
+                fieldNames.add(fieldName);
+                tasks.add(new Callable<FieldSummary>() {
+                    @Override
+                    public FieldSummary call() throws ObjectStoreException {
+                        return getFieldSummary(cld, fieldName, os);
+                    }
+                });
+            }
+        }
 
-                Results results = getFieldSummary(cld, fieldName, os);
-                if (results.size() <= maxValues) {
-                    List<Object> fieldValues = new ArrayList<Object>();
-                    for (Object resRow: results) {
-                        Object fieldValue = ((ResultsRow<?>) resRow).get(0);
-                        fieldValues.add(fieldValue == null ? null : fieldValue.toString());
+        List<FieldSummary> summaries = runAll(tasks, executor);
+        for (int i = 0; i < clds.size(); i++) {
+            ClassDescriptor cld = clds.get(i);
+            String fieldName = fieldNames.get(i);
+            String clsFieldName = cld.getName() + "." + fieldName;
+            FieldSummary summary = summaries.get(i);
+            if (summary.values != null) {
+                List<Object> fieldValues = summary.values;
+                if (fieldValues.size() == 1 && fieldValues.get(0) == null) {
+                    Set<String> emptyAttributes = emptyAttributesMap.get(cld.getName());
+                    if (emptyAttributes == null) {
+                        emptyAttributes = new HashSet<String>();
+                        emptyAttributesMap.put(cld.getName(), emptyAttributes);
                     }
-                    if (fieldValues.size() == 1 && fieldValues.get(0) == null) {
-                        Set<String> emptyAttributes = emptyAttributesMap.get(cld.getName());
-                        if (emptyAttributes == null) {
-                            emptyAttributes = new HashSet<String>();
-                            emptyAttributesMap.put(cld.getName(), emptyAttributes);
-                        }
-                        emptyAttributes.add(fieldName);
+                    emptyAttributes.add(fieldName);
+                }
+                Collections.sort(fieldValues, NULL_LAST_COMPARATOR);
+                fieldValuesMap.put(clsFieldName, fieldValues);
+                LOG.info("Adding " + fieldValues.size() + " values for "
+                        + cld.getUnqualifiedName() + "." + fieldName);
+
+            } else {
+                LOG.info("Too many values for " + cld.getUnqualifiedName() + "." + fieldName);
+                if (approximateCounts) {
+                    distinctCountsMap.put(clsFieldName,
+                            new Long(countDistinct(cld, fieldName, os, executor)));
+                }
+                // all superclasses must also have too many values for this field
+                for (ClassDescriptor superCld : cld.getAllSuperDescriptors()) {
+                    if (cld.equals(superCld)
+                            || superCld.getType().equals(InterMineObject.class)) {
+                        continue;
                     }
-                    Collections.sort(fieldValues, new Comparator<Object>() {
-                        @Override
-                        public int compare(Object arg0, Object arg1) {
-                            if (arg0 == null) {
-                                return arg1 == null ? 0 : 1;
-                            }
-                            if (arg1 == null) {
-                                return arg0 == null ? 0 : -1;
-                            }
-                            return arg0.toString().compareTo(arg1.toString());
-                        }
-                    });
-                    fieldValuesMap.put(clsFieldName, fieldValues);
-                    LOG.info("Adding " + fieldValues.size() + " values for "
-                            + cld.getUnqualifiedName() + "." + fieldName);
-
-                } else {
-                    LOG.info("Too many values for " + cld.getUnqualifiedName() + "." + fieldName);
-                    // all superclasses must also have too many values for this field
-                    for (ClassDescriptor superCld : cld.getAllSuperDescriptors()) {
-                        if (cld.equals(superCld)
-                                || superCld.getType().equals(InterMineObject.class)) {
-                            continue;
-                        }
-                        String superClsField = superCld.getName() + "." + fieldName;
-                        if (!doneFields.contains(superClsField)
-                                && (superCld.getAttributeDescriptorByName(fieldName,
-                                        true) != null)) {
-                            LOG.info("Pushing too many values from " + cld.getUnqualifiedName()
-                                    + "." + fieldName + " to " + superCld.getUnqualifiedName());
-                            doneFields.add(superClsField);
-                        }
+                    String superClsField = superCld.getName() + "." + fieldName;
+                    if (!doneFields.contains(superClsField)
+                            && (superCld.getAttributeDescriptorByName(fieldName,
+                                    true) != null)) {
+                        LOG.info("Pushing too many values from " + cld.getUnqualifiedName()
+                                + "." + fieldName + " to " + superCld.getUnqualifiedName());
+                        doneFields.add(superClsField);
                     }
                 }
             }
         }
+    }
 
-
-
-        // This is faster as a bottom up traversal, though this may save fewer queres the saved
-        // queries would take longer. If a ref/col is not empty it must not be empty in all parents.
-        Set<String> notEmptyFields = new HashSet<String>();
-        for (ClassDescriptor cld: model.getBottomUpLevelTraversal()) {
+    private void findEmptyReferences(final ObjectStore os, List<ClassDescriptor> level,
+            Set<String> ignoreFields, Set<String> notEmptyFields, ExecutorService executor)
+        throws ObjectStoreException {
+        List<ClassDescriptor> clds = new ArrayList<ClassDescriptor>();
+        List<ReferenceDescriptor> refs = new ArrayList<ReferenceDescriptor>();
+        List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+        for (final ClassDescriptor cld : level) {
             int classCount = classCountsMap.get(cld.getName()).intValue();
             if (classCount == 0) {
                 continue;
@@ -206,7 +345,7 @@ public class ObjectStoreSummary
             Set<ReferenceDescriptor> refsAndCols = new HashSet<ReferenceDescriptor>();
             refsAndCols.addAll(cld.getAllReferenceDescriptors());
             refsAndCols.addAll(cld.getAllCollectionDescriptors());
-            for (ReferenceDescriptor ref : refsAndCols) {
+            for (final ReferenceDescriptor ref : refsAndCols) {
                 String fieldName = ref.getName();
                 String clsFieldName = cld.getName() + "." + fieldName;
 
@@ -218,29 +357,41 @@ public class ObjectStoreSummary
                     LOG.info("Skipping " + clsFieldName + " - already know it's not empty");
                     continue;
                 }
+                clds.add(cld);
+                refs.add(ref);
+                tasks.add(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return Boolean.valueOf(isReferenceEmpty(cld, ref, os));
+                    }
+                });
+            }
+        }
 
-                boolean refIsEmpty = isReferenceEmpty(cld, ref, os);
-                if (refIsEmpty) {
-                    addToEmptyFields(cld.getName(), ref.getName());
-                    LOG.info("Adding empty field " + cld.getUnqualifiedName() + "." + fieldName);
-                } else {
-                    // this isn't empty, so CAN'T be empty for any super classes
-                    for (ClassDescriptor superCld : cld.getAllSuperDescriptors()) {
-                        if (cld.equals(superCld)
-                                || superCld.getType().equals(InterMineObject.class)) {
-                            continue;
-                        }
-                        String superClsField = superCld.getName() + "." + fieldName;
-
-                        if (!notEmptyFields.contains(superClsField)) {
-                            if ((superCld.getReferenceDescriptorByName(fieldName, true) != null)
-                                    || (superCld.getCollectionDescriptorByName(fieldName,
-                                            true) != null)) {
-                                LOG.info("Pushing not empty ref/col from "
-                                        + cld.getUnqualifiedName() + "." + fieldName + " to "
-                                        + superCld.getUnqualifiedName());
-                                notEmptyFields.add(superClsField);
-                            }
+        List<Boolean> empties = runAll(tasks, executor);
+        for (int i = 0; i < clds.size(); i++) {
+            ClassDescriptor cld = clds.get(i);
+            String fieldName = refs.get(i).getName();
+            if (empties.get(i).booleanValue()) {
+                addToEmptyFields(cld.getName(), fieldName);
+                LOG.info("Adding empty field " + cld.getUnqualifiedName() + "." + fieldName);
+            } else {
+                // this isn't empty, so CAN'T be empty for any super classes
+                for (ClassDescriptor superCld : cld.getAllSuperDescriptors()) {
+                    if (cld.equals(superCld)
+                            || superCld.getType().equals(InterMineObject.class)) {
+                        continue;
+                    }
+                    String superClsField = superCld.getName() + "." + fieldName;
+
+                    if (!notEmptyFields.contains(superClsField)) {
+                        if ((superCld.getReferenceDescriptorByName(fieldName, true) != null)
+                                || (superCld.getCollectionDescriptorByName(fieldName,
+                                        true) != null)) {
+                            LOG.info("Pushing not empty ref/col from "
+                                    + cld.getUnqualifiedName() + "." + fieldName + " to "
+                                    + superCld.getUnqualifiedName());
+                            notEmptyFields.add(superClsField);
                         }
                     }
                 }
@@ -248,26 +399,38 @@ public class ObjectStoreSummary
         }
     }
 
-
-    private void countAndStore(ObjectStore os, Model model, ClassDescriptor cld)
+    /**
+     * Run the given tasks in the executor and return their results in the same order.
+     */
+    private static <T> List<T> runAll(List<Callable<T>> tasks, ExecutorService executor)
         throws ObjectStoreException {
-        if (!classCountsMap.containsKey(cld.getName())) {
-            int classCount = countClass(os, cld.getType());
-            LOG.info("Adding class count: " + cld.getUnqualifiedName() + " = " + classCount);
-            classCountsMap.put(cld.getName(), new Integer(classCount));
-
-            // if this class is empty all subclasses MUST be empty as well
-            if (classCount == 0) {
-                for (ClassDescriptor subCld : model.getAllSubs(cld)) {
-                    if (!classCountsMap.containsKey(subCld.getName())) {
-                        classCountsMap.put(subCld.getName(), new Integer(classCount));
-                    }
-                }
+        List<Future<T>> futures = new ArrayList<Future<T>>();
+        for (Callable<T> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        List<T> results = new ArrayList<T>();
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            throw new ObjectStoreException("Interrupted while summarising objectstore", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ObjectStoreException) {
+                throw (ObjectStoreException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ObjectStoreException("Error while summarising objectstore", cause);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
             }
         }
+        return results;
     }
 
-
     /**
      * Construct a summary from a properties object.
      *
@@ -298,6 +461,9 @@ public class ObjectStoreSummary
                 String className = key.substring(0, key.lastIndexOf("."));
                 List<String> attributeNames = Arrays.asList(StringUtil.split(value, FIELD_DELIM));
                 emptyAttributesMap.put(className, new TreeSet<String>(attributeNames));
+            } else if (key.endsWith(DISTINCT_COUNT_SUFFIX)) {
+                String classAndFieldName = key.substring(0, key.lastIndexOf("."));
+                distinctCountsMap.put(classAndFieldName, Long.valueOf(value));
             } else if (key.equals(MAX_FIELD_VALUES)) {
                 this.maxValues = Integer.parseInt(value);
             }
@@ -338,6 +504,19 @@ public class ObjectStoreSummary
         return fieldValuesMap.get(className + "." + fieldName);
     }
 
+    /**
+     * Get the approximate number of distinct values of a given field in a given class. This is
+     * only available for attributes with more than the maximum number of values, and only if the
+     * summary was configured with approximate.counts.
+     *
+     * @param className the class to search for
+     * @param fieldName the field name to search for
+     * @return the estimated number of distinct values, or null if no estimate is available
+     */
+    public Long getApproximateDistinctCount(String className, String fieldName) {
+        return distinctCountsMap.get(className + "." + fieldName);
+    }
+
     /**
      * Get a list of the reference and collection names that, for a given class, are always
      * null or empty.
@@ -412,6 +591,9 @@ public class ObjectStoreSummary
             }
             properties.put(key + FIELDS_SUFFIX, sb.toString());
         }
+        for (Map.Entry<String, Long> entry: distinctCountsMap.entrySet()) {
+            properties.put(entry.getKey() + DISTINCT_COUNT_SUFFIX, entry.getValue().toString());
+        }
         // emptyFieldsMap contains empty references and collections
         writeEmptyMapToProperties(properties, NULL_FIELDS_SUFFIX, emptyFieldsMap);
 
@@ -446,14 +628,95 @@ public class ObjectStoreSummary
         }
     }
 
-    private Results getFieldSummary(ClassDescriptor cld, String fieldName, ObjectStore os) {
+    /**
+     * Fetch the distinct values of a field, if there are no more than maxValues of them. Only
+     * maxValues + 1 rows are fetched, rather than counting all of the distinct values.
+     */
+    private FieldSummary getFieldSummary(ClassDescriptor cld, String fieldName, ObjectStore os)
+        throws ObjectStoreException {
         Query q = new Query();
         q.setDistinct(true);
         QueryClass qc = new QueryClass(cld.getType());
         q.addToSelect(new QueryField(qc, fieldName));
         q.addFrom(qc);
-        Results results = os.execute(q);
-        return results;
+        List<ResultsRow<Object>> rows = os.execute(q, 0, maxValues + 1, false, false,
+                ObjectStore.SEQUENCE_IGNORE);
+        FieldSummary summary = new FieldSummary();
+        if (rows.size() <= maxValues) {
+            summary.values = new ArrayList<Object>();
+            for (ResultsRow<Object> row : rows) {
+                Object fieldValue = row.get(0);
+                summary.values.add(fieldValue == null ? null : fieldValue.toString());
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Estimate the number of distinct values of a field. The objects are split into ranges of id
+     * of about PARTITION_ROWS objects, and each range is read by a separate task into its own
+     * HyperLogLog counter, which are then merged. Each range is read in id order, which the
+     * database can do with the index on id, but every value is still sent over JDBC, so this
+     * takes longer than a COUNT(DISTINCT) of a small column.
+     */
+    private long countDistinct(ClassDescriptor cld, final String fieldName,
+            final ObjectStore os, ExecutorService executor) throws ObjectStoreException {
+        long startTime = System.currentTimeMillis();
+        final QueryClass qc = new QueryClass(cld.getType());
+        final QueryField idField = new QueryField(qc, "id");
+        Query q = new Query();
+        q.setDistinct(false);
+        q.addToSelect(new QueryFunction(idField, QueryFunction.MIN));
+        q.addToSelect(new QueryFunction(idField, QueryFunction.MAX));
+        q.addFrom(qc);
+        List<ResultsRow<Object>> rows = os.execute(q, 0, 1, false, false,
+                ObjectStore.SEQUENCE_IGNORE);
+        if (rows.isEmpty() || rows.get(0).get(0) == null) {
+            return 0;
+        }
+        long minId = ((Number) rows.get(0).get(0)).longValue();
+        long maxId = ((Number) rows.get(0).get(1)).longValue();
+        int classCount = classCountsMap.get(cld.getName()).intValue();
+        int partitions = Math.max(1, (classCount + PARTITION_ROWS - 1) / PARTITION_ROWS);
+        long rangeSize = (maxId - minId) / partitions + 1;
+
+        List<Callable<HyperLogLog>> tasks = new ArrayList<Callable<HyperLogLog>>();
+        for (long from = minId; from <= maxId; from += rangeSize) {
+            final int lower = (int) from;
+            final int upper = (int) Math.min(maxId, from + rangeSize - 1);
+            tasks.add(new Callable<HyperLogLog>() {
+                @Override
+                public HyperLogLog call() {
+                    Query pq = new Query();
+                    pq.setDistinct(false);
+                    pq.addFrom(qc);
+                    // id first, so that the results are batched in id order
+                    pq.addToSelect(idField);
+                    pq.addToSelect(new QueryField(qc, fieldName));
+                    ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+                    cs.addConstraint(new SimpleConstraint(idField,
+                            ConstraintOp.GREATER_THAN_EQUALS, new QueryValue(lower)));
+                    cs.addConstraint(new SimpleConstraint(idField,
+                            ConstraintOp.LESS_THAN_EQUALS, new QueryValue(upper)));
+                    pq.setConstraint(cs);
+                    Results results = os.execute(pq, SCAN_BATCH_SIZE, false, false, false);
+                    HyperLogLog counter = new HyperLogLog();
+                    for (Object row : results) {
+                        counter.offer(((ResultsRow<?>) row).get(1));
+                    }
+                    return counter;
+                }
+            });
+        }
+        HyperLogLog counter = new HyperLogLog();
+        for (HyperLogLog partial : runAll(tasks, executor)) {
+            counter.merge(partial);
+        }
+        long estimate = counter.estimate();
+        LOG.info("Estimated " + estimate + " distinct values for " + cld.getUnqualifiedName()
+                + "." + fieldName + " from " + tasks.size() + " id ranges in "
+                + (System.currentTimeMillis() - startTime) + "ms.");
+        return estimate;
     }
 
     /**
@@ -540,4 +803,12 @@ public class ObjectStoreSummary
         return retval;
     }
 
+    /**
+     * The result of summarising one attribute - either the values, or if there are too many of
+     * them possibly an estimate of how many there are.
+     */
+    private static class FieldSummary
+    {
+        private List<Object> values = null;
+    }
 }
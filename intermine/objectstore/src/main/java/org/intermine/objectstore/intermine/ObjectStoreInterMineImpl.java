@@ -43,6 +43,9 @@ import org.intermine.metadata.FieldDescriptor;
 import org.intermine.metadata.MetaDataException;
 import org.intermine.metadata.Model;
 import org.intermine.metadata.TypeUtil;
+import org.intermine.metrics.Counter;
+import org.intermine.metrics.Histogram;
+import org.intermine.metrics.MetricsRegistry;
 import org.intermine.model.InterMineObject;
 import org.intermine.modelproduction.MetadataManager;
 import org.intermine.objectstore.DataChangedException;
@@ -107,6 +110,18 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
 
     private static final Logger SQLLOGGER = Logger.getLogger("sqllogger");
 
+    private static final MetricsRegistry METRICS = MetricsRegistry.getInstance();
+    private static final Histogram OPTIMISE_TIME = METRICS.timer("intermine_query_optimise_ms",
+            "Time spent optimising the SQL of objectstore queries");
+    private static final Histogram EXECUTE_TIME = METRICS.timer("intermine_query_execute_ms",
+            "Time spent running objectstore queries in the database");
+    private static final Histogram CONVERT_TIME = METRICS.timer("intermine_query_convert_ms",
+            "Time spent converting SQL results into objects");
+    private static final Histogram CONNECTION_WAIT = METRICS.timer("intermine_connection_wait_ms",
+            "Time spent waiting for a database connection from the pool");
+    private static final Counter RESULTS_HITS = METRICS.cacheCounter("results", true);
+    private static final Counter RESULTS_MISSES = METRICS.cacheCounter("results", false);
+
     protected static final int CACHE_LARGEST_OBJECT = 5000000;
     protected static Map<String, ObjectStoreInterMineImpl> instances
         = new HashMap<String, ObjectStoreInterMineImpl>();
@@ -128,11 +143,12 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
     protected QueryOptimiserContext limitedContext;
     protected boolean verboseQueryLog = false;
     protected boolean logBeforeExecute = false;
-    protected int sequenceBase = 0;
-    protected int sequenceOffset = SEQUENCE_MULTIPLE;
     protected static final int SEQUENCE_MULTIPLE = 1000000;
+    protected SerialAllocator serials = new SerialAllocator(SEQUENCE_MULTIPLE);
     protected boolean logExplains = false;
     protected boolean disableResultsCache = false;
+    // write the residues of sequences as PackedClobPages
+    protected boolean packSequences = false;
 
     // don't use a table to represent bags if the bag is smaller than this value
     protected int minBagTableSize = -1;
@@ -258,7 +274,9 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
      * @throws SQLException if there is a problem with that
      */
     public Connection getConnection() throws SQLException {
+        long start = System.currentTimeMillis();
         Connection retval = db.getConnection();
+        CONNECTION_WAIT.observeSince(start);
         if (!retval.getAutoCommit()) {
             retval.setAutoCommit(true);
         }
@@ -347,6 +365,7 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         String logExplainsString = props.getProperty("logExplains");
         String logBeforeExecuteString = props.getProperty("logBeforeExecute");
         String disableResultsCacheString = props.getProperty("disableResultsCache");
+        String packSequencesString = props.getProperty("packSequences");
 
         synchronized (instances) {
             ObjectStoreInterMineImpl os = instances.get(osAlias);
@@ -508,6 +527,10 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                     os.setDisableResultsCache(true);
                 }
 
+                if ("true".equals(packSequencesString)) {
+                    os.setPackSequences(true);
+                }
+
                 instances.put(osAlias, os);
             }
 
@@ -656,6 +679,26 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         return disableResultsCache;
     }
 
+    /**
+     * Sets the packSequences configuration option. If true, the residues of Sequence objects are
+     * written to the clob table in the packed form read by PackedClobPage. Databases written this
+     * way can only be read by code that understands that form, so it is off by default.
+     *
+     * @param packSequences a boolean
+     */
+    public void setPackSequences(boolean packSequences) {
+        this.packSequences = packSequences;
+    }
+
+    /**
+     * Gets the packSequences configuration option.
+     *
+     * @return a boolean
+     */
+    public boolean getPackSequences() {
+        return packSequences;
+    }
+
     /**
      * Allows the log table to be flushed, guaranteeing that all log entries are committed to the
      * database.
@@ -740,6 +783,7 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                     retval = null;
                 }
             }
+            (retval == null ? RESULTS_MISSES : RESULTS_HITS).inc();
             if (retval == null) {
                 String batchesKey = q.toString();
                 synchronized (batchesCache) {
@@ -796,6 +840,7 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                 }
             }
 
+            (retval == null ? RESULTS_MISSES : RESULTS_HITS).inc();
             if (retval == null) {
                 String batchesKey = q.toString();
                 synchronized (batchesCache) {
@@ -1262,6 +1307,9 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                 dbLog(endOptimiseTime - startOptimiseTime, estimatedTime, postExecute - preExecute,
                         permittedTime, postConvert - postExecute, q, sql);
             }
+            OPTIMISE_TIME.observe(endOptimiseTime - startOptimiseTime);
+            EXECUTE_TIME.observe(postExecute - preExecute);
+            CONVERT_TIME.observe(postConvert - postExecute - extra.getQueryTime());
             long bagTableTime = preGenTime - preBagTableTime;
             statsBagTableTime += bagTableTime;
             long genTime = startOptimiseTime - preGenTime;
@@ -2333,12 +2381,18 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
     }
 
     /**
-     * Gets an ID number which is unique in the database.
+     * Gets an ID number which is unique in the database. A database connection is only needed
+     * when the current block of ID numbers runs out, so threads sharing this ObjectStore do not
+     * wait for each other.
      *
      * @return an Integer
      * @throws ObjectStoreException if a problem occurs
      */
     public Integer getSerial() throws ObjectStoreException {
+        Integer retval = serials.tryNext();
+        if (retval != null) {
+            return serialAllocated(retval);
+        }
         try {
             Connection c = null;
             try {
@@ -2360,21 +2414,55 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
      * @throws SQLException if a problem occurs
      */
     protected Integer getSerialWithConnection(Connection c) throws SQLException {
-        if (sequenceOffset >= SEQUENCE_MULTIPLE) {
-            sequenceOffset = 0;
-            Statement s = c.createStatement();
-            ResultSet r = s.executeQuery("SELECT nextval('serial');");
+        return serialAllocated(Integer.valueOf(serials.next(c)));
+    }
 
-            if (!r.next()) {
-                throw new SQLException("No result while attempting to get a unique id");
-            }
+    /**
+     * Called with each ID number handed out by getSerial() or getSerialWithConnection(), from
+     * the thread that asked for it.
+     *
+     * @param serial the ID number
+     * @return the ID number
+     */
+    protected Integer serialAllocated(Integer serial) {
+        return serial;
+    }
 
-            long nextSequence = r.getLong(1);
-            sequenceBase = (int) (nextSequence * SEQUENCE_MULTIPLE);
-            LOG.info("Got new set of serial numbers with base " + sequenceBase);
+    /**
+     * Reserves a block of SEQUENCE_MULTIPLE ID numbers without using it, so that it can be handed
+     * to another ObjectStore with setSerialBlocks(). Several writers working at the same time can
+     * then be given their blocks in a fixed order, so that the IDs each one uses do not depend on
+     * how their work is interleaved.
+     *
+     * @return the number of the block
+     * @throws ObjectStoreException if a problem occurs
+     */
+    public long reserveSerialBlock() throws ObjectStoreException {
+        try {
+            Connection c = null;
+            try {
+                c = getConnection();
+                return serials.lease(c);
+            } finally {
+                releaseConnection(c);
+            }
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Error reserving serial numbers", e);
         }
+    }
 
-        return sequenceBase + ++sequenceOffset;
+    /**
+     * Makes this ObjectStore take its ID numbers only from blocks returned by
+     * reserveSerialBlock(), in the given order. Once they have all been used, asking for another
+     * ID number fails rather than leasing a new block, so the IDs never depend on which of
+     * several writers reaches the database sequence first.
+     *
+     * @param blocks the numbers of the blocks
+     */
+    public void setSerialBlocks(List<Long> blocks) {
+        serials.setBlocks(blocks);
+        LOG.info("Using " + blocks.size() + " reserved sets of serial numbers with bases "
+                + blocks + " * " + SEQUENCE_MULTIPLE);
     }
 
     /**
@@ -38,6 +38,7 @@ import org.intermine.metadata.FieldDescriptor;
 import org.intermine.metadata.ReferenceDescriptor;
 import org.intermine.metadata.TypeUtil;
 import org.intermine.metadata.Util;
+import org.intermine.model.FastPathObject;
 import org.intermine.model.InterMineObject;
 import org.intermine.model.StringConstructor;
 import org.intermine.objectstore.DataChangedException;
@@ -49,6 +50,7 @@ import org.intermine.objectstore.query.Clob;
 import org.intermine.objectstore.query.ClobAccess;
 import org.intermine.objectstore.query.Constraint;
 import org.intermine.objectstore.query.ObjectStoreBag;
+import org.intermine.objectstore.query.PackedClobPage;
 import org.intermine.objectstore.query.PendingClob;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
@@ -82,6 +84,7 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
     private static final Logger LOG = Logger.getLogger(ObjectStoreWriterInterMineImpl.class);
     private static final String[] CLOB_COLUMNS = new String[] {CLOBID_COLUMN, CLOBPAGE_COLUMN,
         CLOBVAL_COLUMN};
+    private static final String CLOB_ACCESS_TYPE = ClobAccess.class.getName();
     protected Connection conn = null;
     protected boolean connInUse = false;
     protected ObjectStoreInterMineImpl os;
@@ -556,6 +559,7 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
 
             conn = null;
             connInUse = true;
+            serials.close();
             // remove reference to this writer from the parent ObjectStore
             this.os.writers.remove(this);
             notifyAll();
@@ -1001,35 +1005,49 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
         recentSequences.remove(o.getId());
 
         // Make sure all objects pointed to have IDs
-        for (Map.Entry<String, TypeUtil.FieldInfo> fieldEntry
-                : TypeUtil.getFieldInfos(o.getClass()).entrySet()) {
-            TypeUtil.FieldInfo fieldInfo = fieldEntry.getValue();
-            if (InterMineObject.class.isAssignableFrom(fieldInfo.getType())) {
-                InterMineObject obj = (InterMineObject) TypeUtil.getFieldProxy(o,
-                        fieldInfo.getName());
-                if ((obj != null) && (obj.getId() == null)) {
-                    obj.setId(getSerialWithConnection(c));
+        ClassDescriptor cld = model.getOrdinalClassDescriptor(o);
+        if (cld != null) {
+            List<FieldDescriptor> fields = cld.getFieldTable();
+            for (int i = 0; i < fields.size(); i++) {
+                FieldDescriptor field = fields.get(i);
+                if (field instanceof CollectionDescriptor) {
+                    populateIds(c, (Collection<?>) o.getFieldValue(i));
+                } else if (field instanceof ReferenceDescriptor) {
+                    populateId(c, (InterMineObject) o.getFieldProxy(i));
                 }
-            } else if (Collection.class.isAssignableFrom(fieldInfo.getType())) {
-                @SuppressWarnings("unchecked") Collection<Object> coll
-                    = (Collection<Object>) o.getFieldValue(fieldInfo.getName());
-
-                if (!(coll instanceof Lazy)) {
-                    for (Object obj : coll) {
-                        // the collection may contain simple objects which don't have ids
-                        if (obj instanceof InterMineObject) {
-                            InterMineObject imo = (InterMineObject) obj;
-                            if (imo.getId() == null) {
-                                imo.setId(getSerialWithConnection(c));
-                            }
-                        }
-                    }
+            }
+        } else {
+            for (Map.Entry<String, TypeUtil.FieldInfo> fieldEntry
+                    : TypeUtil.getFieldInfos(o.getClass()).entrySet()) {
+                TypeUtil.FieldInfo fieldInfo = fieldEntry.getValue();
+                if (InterMineObject.class.isAssignableFrom(fieldInfo.getType())) {
+                    populateId(c, (InterMineObject) TypeUtil.getFieldProxy(o,
+                            fieldInfo.getName()));
+                } else if (Collection.class.isAssignableFrom(fieldInfo.getType())) {
+                    populateIds(c, (Collection<?>) o.getFieldValue(fieldInfo.getName()));
                 }
             }
         }
         return doDeletes;
     }
 
+    private void populateId(Connection c, InterMineObject obj) throws SQLException {
+        if ((obj != null) && (obj.getId() == null)) {
+            obj.setId(getSerialWithConnection(c));
+        }
+    }
+
+    private void populateIds(Connection c, Collection<?> coll) throws SQLException {
+        if (!(coll instanceof Lazy)) {
+            for (Object obj : coll) {
+                // the collection may contain simple objects which don't have ids
+                if (obj instanceof InterMineObject) {
+                    populateId(c, (InterMineObject) obj);
+                }
+            }
+        }
+    }
+
     /**
      * Writes the contents of any pending Clobs to the database, and replaces them in the objects
      * with a real ClobAccess object.
@@ -1042,6 +1060,26 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
      */
     protected void writePendingClobs(Connection c, Object o) throws ObjectStoreException,
         SQLException, IllegalAccessException {
+        ClassDescriptor cld = (o instanceof FastPathObject
+                ? model.getOrdinalClassDescriptor((FastPathObject) o) : null);
+        if (cld != null) {
+            FastPathObject fpo = (FastPathObject) o;
+            List<FieldDescriptor> fields = cld.getFieldTable();
+            for (int i = 0; i < fields.size(); i++) {
+                FieldDescriptor field = fields.get(i);
+                if ((field instanceof AttributeDescriptor) && CLOB_ACCESS_TYPE.equals(
+                            ((AttributeDescriptor) field).getType())) {
+                    Object ca = fpo.getFieldValue(i);
+                    if (ca instanceof PendingClob) {
+                        Clob clob = new Clob(getSerialWithConnection(c));
+                        replaceClobWithConnection(c, clob, ca.toString(),
+                                os.getPackSequences() && isSequenceResidues(field));
+                        fpo.setFieldValue(i, new ClobAccess(this, clob));
+                    }
+                }
+            }
+            return;
+        }
         for (Map.Entry<String, TypeUtil.FieldInfo> fieldEntry
                 : TypeUtil.getFieldInfos(o.getClass()).entrySet()) {
             TypeUtil.FieldInfo fieldInfo = fieldEntry.getValue();
@@ -1310,6 +1348,17 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
         }
     }
 
+    /**
+     * Returns true if a field holds the residues of a Sequence, which may be written packed.
+     *
+     * @param field a field of type ClobAccess
+     * @return a boolean
+     */
+    protected static boolean isSequenceResidues(FieldDescriptor field) {
+        return "residues".equals(field.getName())
+            && "Sequence".equals(field.getClassDescriptor().getUnqualifiedName());
+    }
+
     /**
      * Replaces the contents of the given Clob with the given String.
      *
@@ -1319,6 +1368,21 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
      * @throws ObjectStoreException if something goes wrong
      */
     public void replaceClobWithConnection(Connection c, Clob clob, String text)
+        throws ObjectStoreException {
+        replaceClobWithConnection(c, clob, text, false);
+    }
+
+    /**
+     * Replaces the contents of the given Clob with the given String, optionally writing the pages
+     * in the packed form read by PackedClobPage.
+     *
+     * @param c a Connection
+     * @param clob the Clob to write to
+     * @param text the text to write to the Clob
+     * @param pack true to pack the pages, which should only be used for nucleotide sequences
+     * @throws ObjectStoreException if something goes wrong
+     */
+    protected void replaceClobWithConnection(Connection c, Clob clob, String text, boolean pack)
         throws ObjectStoreException {
         boolean wasInTransaction = isInTransactionWithConnection(c);
         if (!wasInTransaction) {
@@ -1330,9 +1394,10 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
             batch.deleteRow(c, CLOB_TABLE_NAME, CLOBID_COLUMN, clobId);
             int length = text.length();
             for (int i = 0; i < length; i += CLOB_PAGE_SIZE) {
+                String page = text.substring(i, Math.min(i + CLOB_PAGE_SIZE, length));
+                page = pack ? PackedClobPage.pack(page) : PackedClobPage.escape(page);
                 batch.addRow(c, CLOB_TABLE_NAME, clobId, CLOB_COLUMNS, new Object[] {clobId,
-                    new Integer(i / CLOB_PAGE_SIZE), text.substring(i, Math.min(i + CLOB_PAGE_SIZE,
-                            length))});
+                    new Integer(i / CLOB_PAGE_SIZE), page});
             }
             tablesAltered.add(clob);
             tablesAltered.add(CLOB_TABLE_NAME);
@@ -1780,15 +1845,13 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
     /**
      * Overrides, in order to store recentSequences.
      *
-     * @param c the Connection
-     * @return an Integer
-     * @throws SQLException if an error occurs
+     * @param serial the ID number
+     * @return the ID number
      */
     @Override
-    protected Integer getSerialWithConnection(Connection c) throws SQLException {
-        Integer retval = super.getSerialWithConnection(c);
-        recentSequences.put(retval, Boolean.TRUE);
-        return retval;
+    protected Integer serialAllocated(Integer serial) {
+        recentSequences.put(serial, Boolean.TRUE);
+        return serial;
     }
 
     private static class TableInfo
@@ -19,11 +19,12 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.intermine.metadata.AttributeDescriptor;
 import org.intermine.metadata.CollectionDescriptor;
@@ -35,6 +36,7 @@ import org.intermine.model.InterMineObject;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.proxy.ProxyCollection;
 import org.intermine.objectstore.proxy.ProxyReference;
+import org.intermine.objectstore.proxy.ProxyReferenceBatch;
 import org.intermine.objectstore.query.BagConstraint;
 import org.intermine.objectstore.query.ClobAccess;
 import org.intermine.objectstore.query.PathExpressionField;
@@ -59,6 +61,9 @@ import org.intermine.util.DynamicUtil;
  */
 public final class ResultsConverter
 {
+    private static final Map<DatabaseSchema, Map<Query, SelectColumn[]>> PLANS
+        = new WeakHashMap<DatabaseSchema, Map<Query, SelectColumn[]>>();
+
     private ResultsConverter() {
     }
 
@@ -89,110 +94,62 @@ public final class ResultsConverter
             boolean optimise, ExtraQueryTime extra, Set<PrecomputedTable> goFasterTables,
             OptimiserCache goFasterCache) throws ObjectStoreException {
         Object currentColumn = null;
-        HashSet<QuerySelectable> noObjectColumns = new HashSet<QuerySelectable>();
-        HashSet<String> noObjectClassColumns = new HashSet<String>();
-        boolean needPathExpressions = false;
+        // references from the objects in this batch of results are materialised together
+        ProxyReferenceBatch proxies = ProxyReferenceBatch.open(os);
         try {
             List<ResultsRow<Object>> retval = new ArrayList<ResultsRow<Object>>();
             HashSet<Integer> idsToFetch = new HashSet<Integer>();
 
-            // populate aliases map once - ensure keys are Java object ids not the hashCode
-            Map<QuerySelectable, String> aliases = new IdentityHashMap<QuerySelectable, String>();
-            for (QuerySelectable node : q.getSelect()) {
-                aliases.put(node, DatabaseUtil.generateSqlCompatibleName(q.getAliases().get(node)));
+            // the plan is shared by every batch of this query, the column indexes are found once
+            // for this batch, as the optimiser may choose different SQL for each batch
+            SelectColumn[] columns = getPlan(q, os);
+            ColumnIndexes[] indexes = new ColumnIndexes[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                indexes[i] = new ColumnIndexes();
             }
 
             while (sqlResults.next()) {
                 ResultsRow<Object> row = new ResultsRow<Object>();
-                for (QuerySelectable node : q.getSelect()) {
-                    String alias = aliases.get(node);
-                    if (node instanceof QueryClass) {
+                for (int i = 0; i < columns.length; i++) {
+                    SelectColumn column = columns[i];
+                    ColumnIndexes index = indexes[i];
+                    if (column.kind == SelectColumn.OBJECT) {
                         Integer idField = null;
                         Object obj = null;
-                        if (InterMineObject.class.isAssignableFrom(((QueryClass) node).getType())) {
-                            idField = new Integer(sqlResults.getInt(alias + "id"));
+                        if (column.interMineObject) {
+                            idField = new Integer(sqlResults.getInt(index.id(sqlResults, column)));
                             obj = os.pilferObjectById(idField);
                         }
                         if (obj == null) {
-                            String objectField = null;
-                            if (noObjectColumns.contains(node)) {
-                                if (obj == null) {
-                                    obj = new ProxyReference(os, idField, InterMineObject.class);
-                                    idsToFetch.add(idField);
+                            if (column.flatMode) {
+                                obj = buildObject(sqlResults, column, index, os);
+                                if (idField != null) {
+                                    os.cacheObjectById(idField, (InterMineObject) obj);
                                 }
                             } else {
-                                if (os.getSchema().isFlatMode(((QueryClass) node).getType())) {
-                                    obj = buildObject(sqlResults, alias, os,
-                                            ((QueryClass) node).getType(), noObjectClassColumns);
-                                    if (idField != null) {
-                                        os.cacheObjectById(idField, (InterMineObject) obj);
-                                    }
+                                int objectIndex = index.object(sqlResults, column);
+                                if (objectIndex == ColumnIndexes.MISSING) {
+                                    // no notxml column, so fetch the objects afterwards
+                                    obj = new ProxyReference(os, idField, InterMineObject.class);
+                                    idsToFetch.add(idField);
                                 } else {
-                                    try {
-                                        objectField = sqlResults.getString(alias);
-                                        if (objectField != null) {
-                                            currentColumn = objectField;
-                                            obj = NotXmlParser.parse(objectField, os);
-                                            //if (objectField.length() < ObjectStoreInterMineImpl
-                                            //        .CACHE_LARGEST_OBJECT) {
-                                            os.cacheObjectById(((InterMineObject) obj).getId(),
-                                                    (InterMineObject) obj);
-                                            //} else {
-                                            //    LOG.debug("Not cacheing large object "
-                                            //            + obj.getId() + " on read" + " (size = "
-                                            //            + (objectField.length() / 512) + " kB)");
-                                            //}
-                                        }
-                                    } catch (SQLException e) {
-                                        // Do nothing - it's just a notxml missing. However, to
-                                        // avoid an Exception-storm, we should probably stop trying
-                                        // this on future rows. We don't know how slow this
-                                        // ResultSet is at throwing these exceptions.
-                                        noObjectColumns.add(node);
-                                        if (obj == null) {
-                                            obj = new ProxyReference(os, idField,
-                                                    InterMineObject.class);
-                                            idsToFetch.add(idField);
-                                        }
+                                    String objectField = sqlResults.getString(objectIndex);
+                                    if (objectField != null) {
+                                        currentColumn = objectField;
+                                        obj = NotXmlParser.parse(objectField, os);
+                                        os.cacheObjectById(((InterMineObject) obj).getId(),
+                                                (InterMineObject) obj);
                                     }
                                 }
                             }
                         }
                         row.add(obj);
-                    } else if (node instanceof QueryPathExpression) {
+                    } else if (column.kind == SelectColumn.PATH_EXPRESSION) {
                         row.add(null);
-                        needPathExpressions = true;
                     } else {
-                        currentColumn = sqlResults.getObject(alias);
+                        currentColumn = sqlResults.getObject(index.value(sqlResults, column));
                         if (currentColumn != null) {
-                            if (Date.class.equals(node.getType())) {
-                                currentColumn = new Date(((Long) currentColumn).longValue());
-                            } else if (Class.class.equals(node.getType())) {
-                                Set<Class<?>> classes = new HashSet<Class<?>>();
-                                try {
-                                    String[] b = ((String) currentColumn).split(" ");
-                                    for (int i = 0; i < b.length; i++) {
-                                        classes.add(Class.forName(b[i]));
-                                    }
-                                } catch (ClassNotFoundException e) {
-                                    SQLException e2
-                                        = new SQLException("Invalid entry in class column");
-                                    e2.initCause(e);
-                                    throw e2;
-                                }
-                                if (classes.size() == 1) {
-                                    currentColumn = classes.iterator().next();
-                                } else {
-                                    currentColumn = DynamicUtil.composeClass(classes);
-                                }
-                            } else if (Short.class.equals(node.getType())
-                                    && (currentColumn instanceof Integer)) {
-                                int i = ((Integer) currentColumn).intValue();
-                                currentColumn = new Short((short) i);
-                            } else if (ClobAccess.class.equals(node.getType())) {
-                                currentColumn = ClobAccess.decodeDbDescription(os,
-                                        (String) currentColumn);
-                            }
+                            currentColumn = column.decodeValue(currentColumn, os);
                         }
                         row.add(currentColumn);
                     }
@@ -219,7 +176,7 @@ public final class ResultsConverter
                 }
             }
             // resolve outer join queries
-            if (needPathExpressions) {
+            if (!retval.isEmpty() && hasPathExpressions(columns)) {
                 HashSet<QuerySelectable> done = new HashSet<QuerySelectable>();
                 for (QuerySelectable node : q.getSelect()) {
                     if (node instanceof QueryObjectPathExpression) {
@@ -253,104 +210,300 @@ public final class ResultsConverter
         } catch (ClassCastException e) {
             throw new ObjectStoreException("Object is of wrong type while converting results: "
                     + currentColumn, e);
+        } finally {
+            proxies.close();
         }
     }
 
-    //private static long timeSpentBuildObject = 0;
-    //private static long timeSpentSql = 0;
-    //private static int countBuildObject = 0;
-
     /**
      * Builds an object from separate fields in flat mode.
      *
      * @param sqlResults the SQL ResultSet
-     * @param alias the name of the column being built
+     * @param column the plan for the column being built
+     * @param index the indexes of the columns in this ResultSet
      * @param os the ObjectStore
-     * @param type a Class matching the QueryClass that is this column
-     * @param noObjectClassColumns a Set used internally
      * @return an InterMineObject
      * @throws SQLException if something goes wrong
      */
-    protected static Object buildObject(ResultSet sqlResults, String alias,
-            ObjectStoreInterMineImpl os, Class<?> type, Set<String> noObjectClassColumns)
-        throws SQLException {
-        //long time1 = System.currentTimeMillis();
-        @SuppressWarnings("unchecked") Set<Class<?>> classes = (Set) Collections.singleton(type);
-        if (!noObjectClassColumns.contains(alias)) {
-            String objectClass = null;
-            try {
-                //long time3 = System.currentTimeMillis();
-                objectClass = sqlResults.getString(alias + "objectclass");
-                //timeSpentSql += System.currentTimeMillis() - time3;
-            } catch (SQLException e) {
-                noObjectClassColumns.add(alias);
-            }
+    private static Object buildObject(ResultSet sqlResults, SelectColumn column,
+            ColumnIndexes index, ObjectStoreInterMineImpl os) throws SQLException {
+        @SuppressWarnings("unchecked") Set<Class<?>> classes = (Set) Collections.singleton(
+                column.type);
+        int objectClassIndex = index.objectClass(sqlResults, column);
+        if (objectClassIndex != ColumnIndexes.MISSING) {
+            String objectClass = sqlResults.getString(objectClassIndex);
             if (objectClass != null) {
-                classes = new HashSet<Class<?>>();
-                try {
-                    String[] b = objectClass.split(" ");
-                    for (int i = 0; i < b.length; i++) {
-                        classes.add(Class.forName(b[i]));
-                    }
-                } catch (ClassNotFoundException e) {
-                    SQLException e2 = new SQLException("Invalid entry in objectclass column");
-                    e2.initCause(e);
-                    throw e2;
-                }
+                classes = column.getClasses(objectClass);
             }
         }
         FastPathObject retval = DynamicUtil.createObject(classes);
-        Map<String, FieldDescriptor> fields = os.getModel().getFieldDescriptorsForClass(retval
-                .getClass());
-        for (Map.Entry<String, FieldDescriptor> entry : fields.entrySet()) {
-            String fieldName = entry.getKey();
-            FieldDescriptor fd = entry.getValue();
-            if (fd instanceof AttributeDescriptor) {
-                //long time3 = System.currentTimeMillis();
-                Object value = sqlResults.getObject(alias + DatabaseUtil.getColumnName(fd));
-                //timeSpentSql += System.currentTimeMillis() - time3;
-                Class<?> expectedType = retval.getFieldType(fieldName);
-                if ((value instanceof Long) && Date.class.equals(expectedType)) {
+        FieldColumn[] fields = column.getFields(retval, os);
+        int[] fieldIndexes = index.fields(sqlResults, retval.getClass(), fields);
+        for (int i = 0; i < fields.length; i++) {
+            FieldColumn field = fields[i];
+            if (field.kind == FieldColumn.ATTRIBUTE) {
+                Object value = sqlResults.getObject(fieldIndexes[i]);
+                if ((value instanceof Long) && Date.class.equals(field.type)) {
                     value = new Date(((Long) value).longValue());
-                } else if ((value instanceof Integer) && (Short.class.equals(expectedType)
-                        || Short.TYPE.equals(expectedType))) {
+                } else if ((value instanceof Integer) && (Short.class.equals(field.type)
+                        || Short.TYPE.equals(field.type))) {
                     value = new Short((short) ((Integer) value).intValue());
                 }
                 try {
-                    retval.setFieldValue(fieldName, value);
+                    retval.setFieldValue(field.name, value);
                 } catch (Exception e) {
                     throw new IllegalArgumentException(e);
                 }
-            } else if (fd instanceof CollectionDescriptor) {
-                CollectionDescriptor cd = (CollectionDescriptor) fd;
+            } else if (field.kind == FieldColumn.COLLECTION) {
                 @SuppressWarnings("unchecked") Collection lazyColl = new ProxyCollection(os,
-                        (InterMineObject) retval, cd.getName(), cd.getReferencedClassDescriptor()
-                            .getType());
-                retval.setFieldValue(cd.getName(), lazyColl);
-            } else if (fd instanceof ReferenceDescriptor) {
-                ReferenceDescriptor rd = (ReferenceDescriptor) fd;
-                //long time3 = System.currentTimeMillis();
-                Integer id = (Integer) sqlResults.getObject(alias + DatabaseUtil.getColumnName(fd));
-                //timeSpentSql += System.currentTimeMillis() - time3;
-                @SuppressWarnings("unchecked") Class<? extends InterMineObject> refType =
-                    (Class) rd.getReferencedClassDescriptor().getType();
+                        (InterMineObject) retval, field.name, field.type);
+                retval.setFieldValue(field.name, lazyColl);
+            } else {
+                Integer id = (Integer) sqlResults.getObject(fieldIndexes[i]);
                 if (id == null) {
-                    retval.setFieldValue(fieldName, null);
+                    retval.setFieldValue(field.name, null);
                 } else {
-                    retval.setFieldValue(fieldName, new ProxyReference(os, id, refType));
+                    @SuppressWarnings("unchecked") Class<? extends InterMineObject> refType =
+                        (Class) field.type;
+                    retval.setFieldValue(field.name, new ProxyReference(os, id, refType));
                 }
             }
         }
-        //long time2 = System.currentTimeMillis();
-        //timeSpentBuildObject += time2 - time1;
-        //countBuildObject++;
-        //if (countBuildObject % 100000 == 0) {
-        //    LOG.info("Called buildObject " + countBuildObject + " times. Time spent: "
-        //    + timeSpentBuildObject + ", Sql: " + timeSpentSql);
-        //}
         return retval;
     }
 
+    /**
+     * Returns the plan for decoding the rows of a query, creating it the first time the query is
+     * converted. Plans are kept for as long as the Query object, like the SQL cached by
+     * SqlGenerator.
+     */
+    private static SelectColumn[] getPlan(Query q, ObjectStoreInterMineImpl os) {
+        Map<Query, SelectColumn[]> schemaPlans;
+        synchronized (PLANS) {
+            schemaPlans = PLANS.get(os.getSchema());
+            if (schemaPlans == null) {
+                schemaPlans = Collections.synchronizedMap(
+                        new WeakHashMap<Query, SelectColumn[]>());
+                PLANS.put(os.getSchema(), schemaPlans);
+            }
+        }
+        SelectColumn[] retval = schemaPlans.get(q);
+        if (retval == null) {
+            List<QuerySelectable> select = q.getSelect();
+            retval = new SelectColumn[select.size()];
+            for (int i = 0; i < retval.length; i++) {
+                QuerySelectable node = select.get(i);
+                retval[i] = new SelectColumn(node, DatabaseUtil.generateSqlCompatibleName(
+                            q.getAliases().get(node)), os.getSchema());
+            }
+            schemaPlans.put(q, retval);
+        }
+        return retval;
+    }
+
+    /**
+     * How to decode one column of the SELECT list, worked out once for each Query.
+     */
+    private static class SelectColumn
+    {
+        static final int OBJECT = 0;
+        static final int PATH_EXPRESSION = 1;
+        static final int VALUE = 2;
+
+        final int kind;
+        final Class<?> type;
+        final String alias;
+        final boolean interMineObject;
+        final boolean flatMode;
+        private final Map<String, Set<Class<?>>> classes
+            = new ConcurrentHashMap<String, Set<Class<?>>>();
+        private final Map<Class<?>, FieldColumn[]> fields
+            = new ConcurrentHashMap<Class<?>, FieldColumn[]>();
+
+        SelectColumn(QuerySelectable node, String alias, DatabaseSchema schema) {
+            this.alias = alias;
+            this.type = node.getType();
+            if (node instanceof QueryClass) {
+                kind = OBJECT;
+                interMineObject = InterMineObject.class.isAssignableFrom(type);
+                flatMode = schema.isFlatMode(type);
+            } else {
+                kind = (node instanceof QueryPathExpression) ? PATH_EXPRESSION : VALUE;
+                interMineObject = false;
+                flatMode = false;
+            }
+        }
+
+        Object decodeValue(Object value, ObjectStoreInterMineImpl os) throws SQLException {
+            if (Date.class.equals(type)) {
+                return new Date(((Long) value).longValue());
+            } else if (Class.class.equals(type)) {
+                Set<Class<?>> valueClasses = getClasses((String) value);
+                if (valueClasses.size() == 1) {
+                    return valueClasses.iterator().next();
+                }
+                return DynamicUtil.composeClass(valueClasses);
+            } else if (Short.class.equals(type) && (value instanceof Integer)) {
+                return new Short((short) ((Integer) value).intValue());
+            } else if (ClobAccess.class.equals(type)) {
+                return ClobAccess.decodeDbDescription(os, (String) value);
+            }
+            return value;
+        }
+
+        Set<Class<?>> getClasses(String classNames) throws SQLException {
+            Set<Class<?>> retval = classes.get(classNames);
+            if (retval == null) {
+                retval = new HashSet<Class<?>>();
+                try {
+                    String[] b = classNames.split(" ");
+                    for (int i = 0; i < b.length; i++) {
+                        retval.add(Class.forName(b[i]));
+                    }
+                } catch (ClassNotFoundException e) {
+                    SQLException e2 = new SQLException("Invalid entry in "
+                            + (kind == OBJECT ? "objectclass" : "class") + " column");
+                    e2.initCause(e);
+                    throw e2;
+                }
+                retval = Collections.unmodifiableSet(retval);
+                classes.put(classNames, retval);
+            }
+            return retval;
+        }
+
+        FieldColumn[] getFields(FastPathObject o, ObjectStoreInterMineImpl os) {
+            Class<?> cls = o.getClass();
+            FieldColumn[] retval = fields.get(cls);
+            if (retval == null) {
+                Map<String, FieldDescriptor> descriptors = os.getModel()
+                    .getFieldDescriptorsForClass(cls);
+                List<FieldColumn> list = new ArrayList<FieldColumn>();
+                for (Map.Entry<String, FieldDescriptor> entry : descriptors.entrySet()) {
+                    FieldDescriptor fd = entry.getValue();
+                    if (fd instanceof AttributeDescriptor) {
+                        list.add(new FieldColumn(FieldColumn.ATTRIBUTE, entry.getKey(),
+                                alias + DatabaseUtil.getColumnName(fd),
+                                o.getFieldType(entry.getKey())));
+                    } else if (fd instanceof CollectionDescriptor) {
+                        list.add(new FieldColumn(FieldColumn.COLLECTION, fd.getName(), null,
+                                ((CollectionDescriptor) fd).getReferencedClassDescriptor()
+                                .getType()));
+                    } else if (fd instanceof ReferenceDescriptor) {
+                        list.add(new FieldColumn(FieldColumn.REFERENCE, entry.getKey(),
+                                alias + DatabaseUtil.getColumnName(fd),
+                                ((ReferenceDescriptor) fd).getReferencedClassDescriptor()
+                                .getType()));
+                    }
+                }
+                retval = list.toArray(new FieldColumn[list.size()]);
+                fields.put(cls, retval);
+            }
+            return retval;
+        }
+    }
+
+    /**
+     * A field of an object built from separate columns in flat mode.
+     */
+    private static class FieldColumn
+    {
+        static final int ATTRIBUTE = 0;
+        static final int COLLECTION = 1;
+        static final int REFERENCE = 2;
+
+        final int kind;
+        final String name;
+        final String columnName;
+        final Class<?> type;
+
+        FieldColumn(int kind, String name, String columnName, Class<?> type) {
+            this.kind = kind;
+            this.name = name;
+            this.columnName = columnName;
+            this.type = type;
+        }
+    }
+
+    /**
+     * The indexes in one ResultSet of the columns of a SelectColumn, found the first time each
+     * is needed.
+     */
+    private static class ColumnIndexes
+    {
+        static final int MISSING = -1;
+        private static final int UNKNOWN = 0;
+
+        private int id = UNKNOWN;
+        private int object = UNKNOWN;
+        private int objectClass = UNKNOWN;
+        private Map<Class<?>, int[]> fields = null;
+
+        int id(ResultSet sqlResults, SelectColumn column) throws SQLException {
+            if (id == UNKNOWN) {
+                id = sqlResults.findColumn(column.alias + "id");
+            }
+            return id;
+        }
+
+        int value(ResultSet sqlResults, SelectColumn column) throws SQLException {
+            if (object == UNKNOWN) {
+                object = sqlResults.findColumn(column.alias);
+            }
+            return object;
+        }
+
+        int object(ResultSet sqlResults, SelectColumn column) {
+            if (object == UNKNOWN) {
+                object = findOptional(sqlResults, column.alias);
+            }
+            return object;
+        }
+
+        int objectClass(ResultSet sqlResults, SelectColumn column) {
+            if (objectClass == UNKNOWN) {
+                objectClass = findOptional(sqlResults, column.alias + "objectclass");
+            }
+            return objectClass;
+        }
+
+        int[] fields(ResultSet sqlResults, Class<?> cls, FieldColumn[] fieldColumns)
+            throws SQLException {
+            if (fields == null) {
+                fields = new HashMap<Class<?>, int[]>();
+            }
+            int[] retval = fields.get(cls);
+            if (retval == null) {
+                retval = new int[fieldColumns.length];
+                for (int i = 0; i < fieldColumns.length; i++) {
+                    if (fieldColumns[i].columnName != null) {
+                        retval[i] = sqlResults.findColumn(fieldColumns[i].columnName);
+                    }
+                }
+                fields.put(cls, retval);
+            }
+            return retval;
+        }
+
+        private static int findOptional(ResultSet sqlResults, String columnName) {
+            try {
+                return sqlResults.findColumn(columnName);
+            } catch (SQLException e) {
+                // the column isn't in this ResultSet
+                return MISSING;
+            }
+        }
+    }
+
+    private static boolean hasPathExpressions(SelectColumn[] columns) {
+        for (SelectColumn column : columns) {
+            if (column.kind == SelectColumn.PATH_EXPRESSION) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Fetches the contents of a QueryObjectPathExpression for a query.
      *
@@ -0,0 +1,190 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Hands out ID numbers from blocks leased from the serial SEQUENCE in the database, without
+ * locking. Block number n holds the IDs from n * blockSize + 1 to (n + 1) * blockSize.
+ * <p>
+ * Threads take IDs from the current block with an atomic increment, and only need a database
+ * connection when the block runs out. If several threads find the block empty at once, each may
+ * lease a new block; one of them becomes the current block and the others are kept to be used
+ * next, so no IDs are lost. The part of a block that is left unused when it is replaced with
+ * setBlocks() is logged.
+ * <p>
+ * Once setBlocks() has been called, IDs only come from the given blocks, in order, and next()
+ * fails when they run out rather than leasing another block.
+ */
+class SerialAllocator
+{
+    private static final Logger LOG = Logger.getLogger(SerialAllocator.class);
+
+    private final int blockSize;
+    private final AtomicReference<Block> current = new AtomicReference<Block>();
+    private final Queue<Block> spare = new ConcurrentLinkedQueue<Block>();
+    private volatile boolean reservedOnly = false;
+
+    /**
+     * Constructor.
+     *
+     * @param blockSize the number of IDs in each block
+     */
+    SerialAllocator(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns the next ID if one is available without leasing a new block.
+     *
+     * @return an ID, or null if a new block is needed
+     */
+    Integer tryNext() {
+        while (true) {
+            Block block = current.get();
+            if (block != null) {
+                Integer retval = block.next();
+                if (retval != null) {
+                    return retval;
+                }
+            }
+            Block replacement = spare.poll();
+            if (replacement == null) {
+                return null;
+            }
+            if (!current.compareAndSet(block, replacement)) {
+                spare.add(replacement);
+            }
+        }
+    }
+
+    /**
+     * Returns the next ID, leasing a new block with the given Connection if necessary.
+     *
+     * @param c a Connection to the database
+     * @return an ID
+     * @throws SQLException if the database cannot produce a new block, or the blocks given to
+     * setBlocks() have run out
+     */
+    int next(Connection c) throws SQLException {
+        while (true) {
+            Integer retval = tryNext();
+            if (retval != null) {
+                return retval.intValue();
+            }
+            Block block = current.get();
+            if (block != null && block.hasNext()) {
+                continue;
+            }
+            if (reservedOnly) {
+                throw new SQLException("The reserved serial numbers have run out");
+            }
+            Block leased = new Block(lease(c));
+            LOG.info("Got new set of serial numbers with base " + leased.base);
+            if (!current.compareAndSet(block, leased)) {
+                spare.add(leased);
+            }
+        }
+    }
+
+    /**
+     * Reserves a block without using it.
+     *
+     * @param c a Connection to the database
+     * @return the number of the block
+     * @throws SQLException if the database cannot produce a new block
+     */
+    long lease(Connection c) throws SQLException {
+        Statement s = c.createStatement();
+        ResultSet r = s.executeQuery("SELECT nextval('serial');");
+
+        if (!r.next()) {
+            throw new SQLException("No result while attempting to get a unique id");
+        }
+        return r.getLong(1);
+    }
+
+    /**
+     * Makes IDs come only from the given blocks, in order. Once they have all been used, next()
+     * throws an exception instead of leasing another block.
+     *
+     * @param blockNumbers the numbers of blocks returned by lease()
+     */
+    void setBlocks(List<Long> blockNumbers) {
+        reservedOnly = true;
+        for (Block old = spare.poll(); old != null; old = spare.poll()) {
+            old.logUnused();
+        }
+        Block first = null;
+        for (Long blockNumber : blockNumbers) {
+            if (first == null) {
+                first = new Block(blockNumber.longValue());
+            } else {
+                spare.add(new Block(blockNumber.longValue()));
+            }
+        }
+        Block old = current.getAndSet(first);
+        if (old != null) {
+            old.logUnused();
+        }
+    }
+
+    /**
+     * Logs the unused part of the current block, when the IDs are no longer needed.
+     */
+    void close() {
+        Block old = current.getAndSet(null);
+        if (old != null) {
+            old.logUnused();
+        }
+        for (old = spare.poll(); old != null; old = spare.poll()) {
+            old.logUnused();
+        }
+    }
+
+    private class Block
+    {
+        private final int base;
+        private final AtomicInteger used = new AtomicInteger(0);
+
+        Block(long blockNumber) {
+            base = (int) (blockNumber * blockSize);
+        }
+
+        Integer next() {
+            int offset = used.incrementAndGet();
+            return offset <= blockSize ? Integer.valueOf(base + offset) : null;
+        }
+
+        boolean hasNext() {
+            return used.get() < blockSize;
+        }
+
+        void logUnused() {
+            int offset = Math.min(used.get(), blockSize);
+            if (offset < blockSize) {
+                LOG.info("Serial numbers " + (base + offset + 1) + " to " + (base + blockSize)
+                        + " were not used");
+            }
+        }
+    }
+}
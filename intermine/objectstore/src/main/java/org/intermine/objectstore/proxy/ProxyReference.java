@@ -28,9 +28,11 @@ public class ProxyReference implements InterMineObject, Lazy
     private ObjectStore os;
     private Integer id;
     private Class<? extends InterMineObject> clazz;
+    private ProxyReferenceBatch.Siblings siblings;
 
     /**
-     * Construct a ProxyReference object.
+     * Construct a ProxyReference object. If a ProxyReferenceBatch is open for this Thread and
+     * ObjectStore, the proxy joins it.
      *
      * @param os the ObjectStore to retrieve the object from
      * @param id the internal id of the real object
@@ -40,16 +42,28 @@ public class ProxyReference implements InterMineObject, Lazy
         this.os = os;
         this.id = id;
         this.clazz = clazz;
+        this.siblings = ProxyReferenceBatch.join(os, id, clazz);
     }
 
     /**
-     * Gets the real object from the database.
+     * Gets the real object from the database. If this proxy belongs to a ProxyReferenceBatch, the
+     * objects for its siblings are fetched at the same time.
      *
      * @return a InterMineObject
      */
     public InterMineObject getObject() {
         try {
-            InterMineObject retval = os.getObjectById(id, clazz);
+            InterMineObject retval = null;
+            ProxyReferenceBatch.Siblings batch = siblings;
+            if (batch != null) {
+                siblings = null;
+                if (os.pilferObjectById(id) == null) {
+                    retval = batch.fetch(id);
+                }
+            }
+            if (retval == null) {
+                retval = os.getObjectById(id, clazz);
+            }
             if (retval == null) {
                 if (os instanceof ObjectStoreTranslatingImpl) {
                     Translator trans = ((ObjectStoreTranslatingImpl) os).getTranslator();
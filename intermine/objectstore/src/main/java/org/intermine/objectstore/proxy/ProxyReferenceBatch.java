@@ -0,0 +1,177 @@
+package org.intermine.objectstore.proxy;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.query.QueryCreator;
+import org.intermine.objectstore.query.ResultsRow;
+
+/**
+ * A group of ProxyReferences that were created together, usually while converting one batch of
+ * results. When one of the proxies is materialised, the objects for its siblings that point to
+ * the same class are fetched at the same time with a single query, rather than one query per
+ * proxy.
+ * <p>
+ * A batch is opened for the current Thread with open(), and every ProxyReference created for the
+ * same ObjectStore by that Thread until the batch is closed joins it. Batches may be nested - a
+ * batch that is closed restores the batch that was open before it. Once closed, a batch can
+ * still be used by its proxies from any Thread.
+ */
+public final class ProxyReferenceBatch
+{
+    private static final Logger LOG = Logger.getLogger(ProxyReferenceBatch.class);
+    /** The maximum number of objects fetched by a single query. */
+    public static final int FETCH_SIZE = 1000;
+
+    private static ThreadLocal<ProxyReferenceBatch> current
+        = new ThreadLocal<ProxyReferenceBatch>();
+
+    private final ObjectStore os;
+    private final ProxyReferenceBatch previous;
+    private final Map<Class<? extends InterMineObject>, Siblings> siblings
+        = new HashMap<Class<? extends InterMineObject>, Siblings>();
+
+    private ProxyReferenceBatch(ObjectStore os, ProxyReferenceBatch previous) {
+        this.os = os;
+        this.previous = previous;
+    }
+
+    /**
+     * Opens a new batch for the current Thread. The caller must close the batch when it has
+     * finished creating proxies, preferably in a finally block.
+     *
+     * @param os the ObjectStore that the proxies in the batch will be created for
+     * @return the new batch
+     */
+    public static ProxyReferenceBatch open(ObjectStore os) {
+        ProxyReferenceBatch batch = new ProxyReferenceBatch(os, current.get());
+        current.set(batch);
+        return batch;
+    }
+
+    /**
+     * Stops new proxies created by the current Thread from joining this batch.
+     */
+    public void close() {
+        if (current.get() != this) {
+            throw new IllegalStateException("Closing a ProxyReferenceBatch that is not the"
+                    + " current batch for this Thread");
+        }
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    /**
+     * Returns the batch that a new proxy for the given ObjectStore should join, if there is one.
+     *
+     * @param os the ObjectStore of the new proxy
+     * @param id the id of the object referenced by the new proxy
+     * @param clazz the class hint of the new proxy
+     * @return the group of siblings that the proxy has been added to, or null
+     */
+    static Siblings join(ObjectStore os, Integer id, Class<? extends InterMineObject> clazz) {
+        ProxyReferenceBatch batch = current.get();
+        if ((batch == null) || (batch.os != os) || (os == null) || (id == null)) {
+            return null;
+        }
+        Siblings retval;
+        synchronized (batch) {
+            retval = batch.siblings.get(clazz);
+            if (retval == null) {
+                retval = new Siblings(os, clazz);
+                batch.siblings.put(clazz, retval);
+            }
+        }
+        retval.add(id);
+        return retval;
+    }
+
+    /**
+     * The proxies in a batch that share a class hint, and so can be fetched with one query.
+     */
+    static final class Siblings
+    {
+        private final ObjectStore os;
+        private final Class<? extends InterMineObject> clazz;
+        private Set<Integer> pending = new LinkedHashSet<Integer>();
+
+        Siblings(ObjectStore os, Class<? extends InterMineObject> clazz) {
+            this.os = os;
+            this.clazz = clazz;
+        }
+
+        synchronized void add(Integer id) {
+            pending.add(id);
+        }
+
+        /**
+         * Fetches the object with the given id along with up to FETCH_SIZE - 1 of its siblings
+         * that are not already in the ObjectStore's cache. The fetched objects are placed in the
+         * cache.
+         *
+         * @param id the id of the object that is needed now
+         * @return the object, or null if the object was not fetched by this call, in which case
+         * the caller should fall back to ObjectStore.getObjectById()
+         * @throws ObjectStoreException if the query fails
+         */
+        synchronized InterMineObject fetch(Integer id) throws ObjectStoreException {
+            if (!pending.remove(id)) {
+                return null;
+            }
+            List<Integer> ids = new ArrayList<Integer>();
+            ids.add(id);
+            Iterator<Integer> iter = pending.iterator();
+            while (iter.hasNext() && (ids.size() < FETCH_SIZE)) {
+                Integer sibling = iter.next();
+                iter.remove();
+                if (os.pilferObjectById(sibling) == null) {
+                    ids.add(sibling);
+                }
+            }
+            if (pending.isEmpty()) {
+                // let the set's storage be collected while the proxies live on
+                pending = new LinkedHashSet<Integer>();
+            }
+            if (ids.size() == 1) {
+                return null;
+            }
+            InterMineObject retval = null;
+            List<ResultsRow<Object>> rows = os.execute(QueryCreator.createQueryForIds(ids, clazz),
+                    0, ids.size(), false, false, ObjectStore.SEQUENCE_IGNORE);
+            for (ResultsRow<Object> row : rows) {
+                InterMineObject obj = (InterMineObject) row.get(0);
+                os.cacheObjectById(obj.getId(), obj);
+                if (id.equals(obj.getId())) {
+                    retval = obj;
+                }
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Fetched " + rows.size() + " of " + ids.size() + " "
+                        + clazz.getName() + " objects for sibling proxies");
+            }
+            return retval;
+        }
+    }
+}
@@ -86,12 +86,40 @@ public class ClobAccess implements CharSequence, Lazy
             if (pageCount == 0) {
                 length = 0;
             } else {
-                String lastPage = (String) results.get(pageCount - 1);
-                length = CLOB_PAGE_SIZE * (pageCount - 1) + lastPage.length();
+                length = CLOB_PAGE_SIZE * (pageCount - 1) + getPage(pageCount - 1).length();
             }
         }
     }
 
+    /**
+     * Returns the contents of a page of the Clob, decoding it if it was stored packed. See
+     * PackedClobPage.
+     *
+     * @param page the page number
+     * @return a CharSequence of at most CLOB_PAGE_SIZE characters
+     */
+    protected CharSequence getPage(int page) {
+        return PackedClobPage.unpack(os, clob, page, (String) results.get(page));
+    }
+
+    /**
+     * Copies a range of characters from a page returned by getPage() into a char array.
+     *
+     * @param page the page contents
+     * @param start the index in the page of the first character to copy
+     * @param end the index in the page after the last character to copy
+     * @param dst the destination array
+     * @param dstBegin the start offset in the destination array
+     */
+    protected static void getChars(CharSequence page, int start, int end, char[] dst,
+            int dstBegin) {
+        if (page instanceof PackedClobPage) {
+            ((PackedClobPage) page).getChars(start, end, dst, dstBegin);
+        } else {
+            ((String) page).getChars(start, end, dst, dstBegin);
+        }
+    }
+
     /**
      * Return the Clob that this object is accessing.
      *
@@ -126,9 +154,8 @@ public class ClobAccess implements CharSequence, Lazy
         if (index >= length) {
             throw new IndexOutOfBoundsException("index is not less than length");
         }
-        int page = index / CLOB_PAGE_SIZE;
-        String pageText = (String) results.get(page);
-        return pageText.charAt(index - page * CLOB_PAGE_SIZE);
+        int page = (index + offset) / CLOB_PAGE_SIZE;
+        return getPage(page).charAt(index + offset - page * CLOB_PAGE_SIZE);
     }
 
     /**
@@ -187,25 +214,30 @@ public class ClobAccess implements CharSequence, Lazy
      */
     @Override
     public String toString() {
-        init();
-        StringBuilder retval = new StringBuilder();
+        return new String(toCharArray());
+    }
 
+    /**
+     * Copies the contents of the Clob into a new char array. Be careful that it can fit in
+     * memory!
+     *
+     * @return a char array
+     */
+    public char[] toCharArray() {
+        init();
+        char[] retval = new char[length];
         if (length > 0) {
             int lowestPage = offset / CLOB_PAGE_SIZE;
             int highestPage = (offset + length - 1) / CLOB_PAGE_SIZE;
             for (int page = lowestPage; page <= highestPage; page++) {
-                String pageText = (String) results.get(page);
-                if (page == highestPage) {
-                    pageText = pageText.substring(0, offset + length - page * CLOB_PAGE_SIZE);
-                }
-                if (page == lowestPage) {
-                    pageText = pageText.substring(offset - page
-                            * CLOB_PAGE_SIZE, pageText.length());
-                }
-                retval.append(pageText);
+                int pageStart = page * CLOB_PAGE_SIZE;
+                int start = Math.max(offset, pageStart);
+                int end = Math.min(offset + length, pageStart + CLOB_PAGE_SIZE);
+                getChars(getPage(page), start - pageStart, end - pageStart, retval,
+                        start - offset);
             }
         }
-        return retval.toString();
+        return retval;
     }
 
     /**
@@ -219,14 +251,10 @@ public class ClobAccess implements CharSequence, Lazy
         int lowestPage = offset / CLOB_PAGE_SIZE;
         int highestPage = (offset + length - 1) / CLOB_PAGE_SIZE;
         for (int page = lowestPage; page <= highestPage; page++) {
-            String pageText = (String) results.get(page);
-            if (page == highestPage) {
-                pageText = pageText.substring(0, offset + length - page * CLOB_PAGE_SIZE);
-            }
-            if (page == lowestPage) {
-                pageText = pageText.substring(offset - page * CLOB_PAGE_SIZE, pageText.length());
-            }
-            out.print(pageText);
+            int pageStart = page * CLOB_PAGE_SIZE;
+            int start = Math.max(offset, pageStart);
+            int end = Math.min(offset + length, pageStart + CLOB_PAGE_SIZE);
+            out.print(getPage(page).subSequence(start - pageStart, end - pageStart).toString());
         }
     }
 
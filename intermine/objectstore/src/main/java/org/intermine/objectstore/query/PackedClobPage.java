@@ -0,0 +1,380 @@
+package org.intermine.objectstore.query;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.util.ConcurrentCacheMap;
+
+/**
+ * A page of a Clob that holds nucleotide sequence, with two bits per base.
+ * <p>
+ * When a page of a Clob is mostly A, C, G and T, it is written to the database in a packed text
+ * form: a header listing the runs of any other characters (such as N, or IUPAC ambiguity codes)
+ * and the runs of lower case (soft-masked) bases, followed by the bases at three per character.
+ * Packing is lossless, and pages that do not shrink are stored as plain text. Only the residues of
+ * sequences are packed, and only if the ObjectStore has the packSequences property set. A packed
+ * page is decoded into four bases per byte, and only the characters that are asked for are
+ * expanded. Decoded pages are shared through a soft cache, keyed by the ObjectStore, Clob id and
+ * page number, and a cached page is only used if the text it was decoded from is the same as the
+ * text read, so a page that has been written again is decoded again.
+ */
+public final class PackedClobPage implements CharSequence
+{
+    /** The first character of every packed page. Plain pages starting with it are packed too. */
+    public static final char MARKER = '\u0001';
+
+    // pages shorter than this are not worth packing
+    private static final int MIN_PACKED_LENGTH = 64;
+    private static final char SEPARATOR = ';';
+    private static final char DIGIT_ZERO = '0';
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+    private static final int[] EMPTY = new int[0];
+
+    private static ConcurrentCacheMap<PageKey, PackedClobPage> cache
+        = new ConcurrentCacheMap<PageKey, PackedClobPage>("PackedClobPage cache");
+
+    // the packed text, to notice a page that has been written again
+    private final String stored;
+    private final int length;
+    private final byte[] bases;
+    // runs of characters other than A, C, G and T - start, end (exclusive) and upper case char
+    private final int[] otherStarts;
+    private final int[] otherEnds;
+    private final char[] otherChars;
+    // runs of lower case characters - start and end (exclusive)
+    private final int[] lowerStarts;
+    private final int[] lowerEnds;
+
+    private PackedClobPage(String stored, int length, byte[] bases, int[] others,
+            int[] lowers) {
+        this.stored = stored;
+        this.length = length;
+        this.bases = bases;
+        otherStarts = new int[others.length / 3];
+        otherEnds = new int[others.length / 3];
+        otherChars = new char[others.length / 3];
+        for (int i = 0; i < otherStarts.length; i++) {
+            otherStarts[i] = others[i * 3];
+            otherEnds[i] = others[i * 3] + others[i * 3 + 1];
+            otherChars[i] = (char) others[i * 3 + 2];
+        }
+        lowerStarts = new int[lowers.length / 2];
+        lowerEnds = new int[lowers.length / 2];
+        for (int i = 0; i < lowerStarts.length; i++) {
+            lowerStarts[i] = lowers[i * 2];
+            lowerEnds[i] = lowers[i * 2] + lowers[i * 2 + 1];
+        }
+    }
+
+    /**
+     * Converts the text of a page into the form that is written to the database. This is the
+     * packed form if the text is mostly nucleotides and packing makes it smaller, otherwise the
+     * text itself.
+     *
+     * @param text the text of a page
+     * @return the text to store
+     */
+    public static String pack(String text) {
+        int length = text.length();
+        boolean mustPack = (length > 0) && (text.charAt(0) == MARKER);
+        if ((!mustPack) && (length < MIN_PACKED_LENGTH)) {
+            return text;
+        }
+        int runLimit = mustPack ? Integer.MAX_VALUE : length / 16;
+        StringBuilder others = new StringBuilder();
+        StringBuilder lowers = new StringBuilder();
+        int otherRuns = 0;
+        int otherStart = -1;
+        char otherChar = 0;
+        int lowerStart = -1;
+        char[] payload = new char[(length + 2) / 3];
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            boolean lower = (c >= 'a') && (c <= 'z');
+            if (lower) {
+                c = (char) (c - 'a' + 'A');
+                if (lowerStart == -1) {
+                    lowerStart = i;
+                }
+            } else if (lowerStart != -1) {
+                appendRun(lowers, lowerStart, i - lowerStart);
+                lowerStart = -1;
+            }
+            int code = codeOf(c);
+            if ((otherStart != -1) && ((code != -1) || (c != otherChar))) {
+                appendRun(others, otherStart, i - otherStart).append(',').append((int) otherChar);
+                otherStart = -1;
+            }
+            if (code == -1) {
+                if (otherStart == -1) {
+                    otherStart = i;
+                    otherChar = c;
+                    otherRuns++;
+                    if (otherRuns > runLimit) {
+                        return text;
+                    }
+                }
+                code = 0;
+            }
+            value |= code << ((i % 3) * 2);
+            if ((i % 3 == 2) || (i == length - 1)) {
+                payload[i / 3] = (char) (DIGIT_ZERO + value);
+                value = 0;
+            }
+        }
+        if (otherStart != -1) {
+            appendRun(others, otherStart, length - otherStart).append(',')
+                .append((int) otherChar);
+        }
+        if (lowerStart != -1) {
+            appendRun(lowers, lowerStart, length - lowerStart);
+        }
+        StringBuilder retval = new StringBuilder(payload.length + others.length()
+                + lowers.length() + 16);
+        retval.append(MARKER).append(length).append(SEPARATOR).append(others).append(SEPARATOR)
+            .append(lowers).append(SEPARATOR).append(payload);
+        if ((!mustPack) && (retval.length() >= length)) {
+            return text;
+        }
+        return retval.toString();
+    }
+
+    /**
+     * Converts the text of a page that is not to be packed into the form that is written to the
+     * database. This is the text itself, unless it starts with MARKER, when it must be packed to
+     * be read back correctly.
+     *
+     * @param text the text of a page
+     * @return the text to store
+     */
+    public static String escape(String text) {
+        if ((text.length() > 0) && (text.charAt(0) == MARKER)) {
+            return pack(text);
+        }
+        return text;
+    }
+
+    private static StringBuilder appendRun(StringBuilder runs, int start, int runLength) {
+        if (runs.length() > 0) {
+            runs.append(',');
+        }
+        return runs.append(start).append(',').append(runLength);
+    }
+
+    private static int codeOf(char c) {
+        switch (c) {
+            case 'A':
+                return 0;
+            case 'C':
+                return 1;
+            case 'G':
+                return 2;
+            case 'T':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the contents of a page read from the database. Packed pages are decoded (or fetched
+     * from the cache), and plain pages are returned unchanged.
+     *
+     * @param os the ObjectStore that the page was read from
+     * @param clob the Clob that the page belongs to
+     * @param page the page number
+     * @param text the text of the page, as stored in the database
+     * @return a CharSequence of the page contents
+     */
+    public static CharSequence unpack(ObjectStore os, Clob clob, int page, String text) {
+        if ((text.length() == 0) || (text.charAt(0) != MARKER)) {
+            return text;
+        }
+        PageKey key = new PageKey(os, clob.getClobId(), page);
+        PackedClobPage retval = cache.get(key);
+        if ((retval == null) || !retval.stored.equals(text)) {
+            retval = decode(text);
+            cache.put(key, retval);
+        }
+        return retval;
+    }
+
+    private static PackedClobPage decode(String text) {
+        int lengthEnd = text.indexOf(SEPARATOR);
+        int othersEnd = text.indexOf(SEPARATOR, lengthEnd + 1);
+        int lowersEnd = text.indexOf(SEPARATOR, othersEnd + 1);
+        if (lowersEnd == -1) {
+            throw new IllegalArgumentException("Corrupt packed Clob page");
+        }
+        int length = Integer.parseInt(text.substring(1, lengthEnd));
+        byte[] bases = new byte[(length + 3) / 4];
+        for (int i = 0; i < length; i++) {
+            int value = text.charAt(lowersEnd + 1 + i / 3) - DIGIT_ZERO;
+            int code = (value >> ((i % 3) * 2)) & 3;
+            bases[i >> 2] |= code << ((i & 3) << 1);
+        }
+        return new PackedClobPage(text, length, bases,
+                parseInts(text, lengthEnd + 1, othersEnd),
+                parseInts(text, othersEnd + 1, lowersEnd));
+    }
+
+    private static int[] parseInts(String text, int start, int end) {
+        if (start == end) {
+            return EMPTY;
+        }
+        int count = 1;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == ',') {
+                count++;
+            }
+        }
+        int[] retval = new int[count];
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == ',') {
+                index++;
+            } else {
+                retval[index] = retval[index] * 10 + (c - DIGIT_ZERO);
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public char charAt(int index) {
+        if ((index < 0) || (index >= length)) {
+            throw new IndexOutOfBoundsException("index " + index + " is outside the page");
+        }
+        int other = findRun(otherStarts, otherEnds, index);
+        char retval = (other == -1 ? BASES[(bases[index >> 2] >> ((index & 3) << 1)) & 3]
+                : otherChars[other]);
+        if ((findRun(lowerStarts, lowerEnds, index) != -1) && (retval >= 'A')
+                && (retval <= 'Z')) {
+            retval = (char) (retval - 'A' + 'a');
+        }
+        return retval;
+    }
+
+    private static int findRun(int[] starts, int[] ends, int index) {
+        int run = Arrays.binarySearch(starts, index);
+        if (run < 0) {
+            run = -run - 2;
+        }
+        return ((run >= 0) && (index < ends[run])) ? run : -1;
+    }
+
+    /**
+     * Copies characters from this page into a char array, in the same way as String.getChars().
+     *
+     * @param srcBegin the index of the first character to copy
+     * @param srcEnd the index after the last character to copy
+     * @param dst the destination array
+     * @param dstBegin the start offset in the destination array
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        if ((srcBegin < 0) || (srcEnd > length) || (srcBegin > srcEnd)) {
+            throw new IndexOutOfBoundsException("Range " + srcBegin + " to " + srcEnd
+                    + " is outside the page");
+        }
+        int shift = dstBegin - srcBegin;
+        for (int i = srcBegin; i < srcEnd; i++) {
+            dst[i + shift] = BASES[(bases[i >> 2] >> ((i & 3) << 1)) & 3];
+        }
+        int run = findFirstRun(otherEnds, srcBegin);
+        while ((run < otherStarts.length) && (otherStarts[run] < srcEnd)) {
+            int end = Math.min(otherEnds[run], srcEnd);
+            for (int i = Math.max(otherStarts[run], srcBegin); i < end; i++) {
+                dst[i + shift] = otherChars[run];
+            }
+            run++;
+        }
+        run = findFirstRun(lowerEnds, srcBegin);
+        while ((run < lowerStarts.length) && (lowerStarts[run] < srcEnd)) {
+            int end = Math.min(lowerEnds[run], srcEnd);
+            for (int i = Math.max(lowerStarts[run], srcBegin); i < end; i++) {
+                char c = dst[i + shift];
+                if ((c >= 'A') && (c <= 'Z')) {
+                    dst[i + shift] = (char) (c - 'A' + 'a');
+                }
+            }
+            run++;
+        }
+    }
+
+    // the first run that ends after index
+    private static int findFirstRun(int[] ends, int index) {
+        int run = Arrays.binarySearch(ends, index);
+        return run < 0 ? -run - 1 : run + 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String subSequence(int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return subSequence(0, length);
+    }
+
+    /**
+     * The key of a page in the cache.
+     */
+    private static final class PageKey
+    {
+        private final ObjectStore os;
+        private final int clobId;
+        private final int page;
+
+        PageKey(ObjectStore os, int clobId, int page) {
+            this.os = os;
+            this.clobId = clobId;
+            this.page = page;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof PageKey) {
+                PageKey other = (PageKey) o;
+                return (os == other.os) && (clobId == other.clobId) && (page == other.page);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(os) + 31 * clobId + 1009 * page;
+        }
+    }
+}
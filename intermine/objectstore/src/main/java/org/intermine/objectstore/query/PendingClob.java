@@ -92,6 +92,14 @@ public class PendingClob extends ClobAccess
         return text;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public char[] toCharArray() {
+        return text.toCharArray();
+    }
+
     /**
      * {@inheritDoc}
      */
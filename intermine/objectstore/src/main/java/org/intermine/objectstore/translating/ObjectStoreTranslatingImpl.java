@@ -265,15 +265,13 @@ public class ObjectStoreTranslatingImpl extends ObjectStoreAbstractImpl
         //e.printStackTrace(pw);
         //pw.flush();
         //LOG.error(sw.toString());
-        synchronized (cache) {
-            Exception e = new Exception();
-            e.fillInStackTrace();
-            LOG.warn("Probable inefficiency: internalGetObjectById called "
-                    + (retval == null ? "" : "to fetch a " + Util.getFriendlyName(retval
-                            .getClass())) + " with id " + id + ", clazz " + clazz.toString()
-                    + ", cache size = " + cache.size() + " - maybe you should use"
-                    + " ObjectStoreFastCollectionsForTranslatorImpl", e);
-        }
+        Exception e = new Exception();
+        e.fillInStackTrace();
+        LOG.warn("Probable inefficiency: internalGetObjectById called "
+                + (retval == null ? "" : "to fetch a " + Util.getFriendlyName(retval
+                        .getClass())) + " with id " + id + ", clazz " + clazz.toString()
+                + ", cache size = " + cache.size() + " - maybe you should use"
+                + " ObjectStoreFastCollectionsForTranslatorImpl", e);
         internalGetObjectByIdCount++;
         if (internalGetObjectByIdCount % 1000 == 0) {
             LOG.info("internalGetObjectById run " + internalGetObjectByIdCount + " times");
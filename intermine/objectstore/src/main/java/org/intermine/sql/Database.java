@@ -162,6 +162,18 @@ public class Database implements Shutdownable
         return datasource;
     }
 
+    /**
+     * Gets the maximum number of connections the pool of this Database will open
+     *
+     * @return the size of the connection pool, or -1 if it is not known
+     */
+    public int getMaxConnections() {
+        if (datasource instanceof HikariDataSource) {
+            return ((HikariDataSource) datasource).getMaximumPoolSize();
+        }
+        return -1;
+    }
+
     /**
      * Gets a Connection to this Database
      *
@@ -29,6 +29,8 @@ import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
 import org.intermine.metadata.StringUtil;
+import org.intermine.metrics.Counter;
+import org.intermine.metrics.MetricsRegistry;
 import org.intermine.sql.Database;
 import org.intermine.sql.query.AbstractConstraint;
 import org.intermine.sql.query.AbstractTable;
@@ -64,6 +66,10 @@ public final class QueryOptimiser
     }
 
     private static final Logger LOG = Logger.getLogger(QueryOptimiser.class);
+    private static final Counter CACHE_HITS = MetricsRegistry.getInstance()
+        .cacheCounter("optimiser", true);
+    private static final Counter CACHE_MISSES = MetricsRegistry.getInstance()
+        .cacheCounter("optimiser", false);
     private static final int REPORT_INTERVAL = 10000;
 
     private static final String ALIAS_PREFIX = "P";
@@ -201,6 +207,9 @@ public final class QueryOptimiser
         }
 
         // TODO: fix so that the OptimiserCache is updated when precomputed tables are deleted
+        if (!context.isVerbose()) {
+            (cachedQuery == null ? CACHE_MISSES : CACHE_HITS).inc();
+        }
         if (cachedQuery != null) {
             LOG.debug("Optimising query took " + ((new Date()).getTime() - start)
                     + " ms - cache hit: " + query);
@@ -233,7 +242,8 @@ public final class QueryOptimiser
                 // to say optimisation is not worth it, before parsing.
                 bestQuery.add(query);
                 if (originalQuery == null) {
-                    originalQuery = new Query(query, context.getMaxQueryParseTime());
+                    originalQuery = parse(query, limitOffsetQuery,
+                            context.getMaxQueryParseTime());
                 }
                 parseTime = new Date().getTime();
                 recursiveOptimiseCheckSubquery(precomputedTables, originalQuery, bestQuery);
@@ -295,6 +305,30 @@ public final class QueryOptimiser
         return new BestQueryFallback(originalQuery, query);
     }
 
+    /**
+     * Parses a query without its LIMIT and OFFSET, and then puts them back, so that successive
+     * batches of the same query share the parse tree cached by Query. A UNION is parsed whole,
+     * because its LIMIT does not belong to any one of its members.
+     *
+     * @param query the SQL query String
+     * @param limitOffsetQuery the same query split from its LIMIT and OFFSET
+     * @param timeOut maximum time in milliseconds to spend parsing, can be null for no timeout
+     * @return a new Query
+     */
+    private static Query parse(String query, LimitOffsetQuery limitOffsetQuery,
+            Long timeOut) {
+        Query retval = new Query(limitOffsetQuery.getQuery(), timeOut);
+        if (retval.getUnion().size() > 1) {
+            return new Query(query, timeOut);
+        }
+        if (limitOffsetQuery.getLimit() != Integer.MAX_VALUE
+                || limitOffsetQuery.getOffset() != 0) {
+            retval.setLimitOffset(limitOffsetQuery.getLimit() == Integer.MAX_VALUE ? 0
+                    : limitOffsetQuery.getLimit(), limitOffsetQuery.getOffset());
+        }
+        return retval;
+    }
+
     /**
      * Remaps the aliases of any table that starts with the ALIAS_PREFIX, to avoid clashes with
      * future precomputed tables.
@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.intermine.util.CacheMap;
 import org.intermine.util.ConsistentSet;
 
 import antlr.Token;
@@ -64,6 +65,13 @@ public class Query implements SQLStringable
     private Map<String, AbstractTable> originalAliasToTable;
     // keep track of aliases defined in the select list as they may be used elsewhere
     private Map<String, AbstractValue> aliasToSelect;
+
+    // Tree-parsed ASTs of recently parsed SQL Strings. Parsing is much slower than building a
+    // Query from the AST, and the same SQL is often parsed many times, for example when the
+    // optimiser and the precomputed table manager look at each batch of a query.
+    private static final Map<String, AST> PARSED_TREES = Collections.synchronizedMap(
+            new CacheMap<String, AST>("sql.query.Query parsed trees"));
+
     /**
      * Construct a new Query.
      */
@@ -163,32 +171,12 @@ public class Query implements SQLStringable
         aliasToTable = new HashMap<String, AbstractTable>();
         originalAliasToTable = new HashMap<String, AbstractTable>();
         try {
-            InputStream is = new ByteArrayInputStream(sql.getBytes());
-
-            SqlLexer lexer = new SqlLexer(is);
-            SqlParser parser = new SqlParser(lexer);
-            parser.start_rule();
-
-            AST ast = parser.getAST();
+            AST ast = treeParse ? PARSED_TREES.get(sql) : null;
             if (ast == null) {
-                throw (new IllegalArgumentException("Invalid SQL string " + sql));
-            }
-            if (treeParse) {
-                AST oldAst;
-                long startTime = System.currentTimeMillis();
-                do {
-                    oldAst = ast;
-                    SqlTreeParser treeparser = new SqlTreeParser();
-                    treeparser.start_rule(ast);
-                    ast = treeparser.getAST();
-                    if (ast == null) {
-                        throw (new IllegalArgumentException("Invalid SQL string " + sql));
-                    }
-                    long elapsedTime = System.currentTimeMillis() - startTime;
-                    if (timeOut != null && elapsedTime > timeOut.longValue()) {
-                        throw new QueryParseTimeoutException();
-                    }
-                } while (!oldAst.equalsList(ast));
+                ast = parse(sql, treeParse, timeOut);
+                if (treeParse) {
+                    PARSED_TREES.put(sql, ast);
+                }
             }
 
             processSqlStatementAST(ast);
@@ -223,6 +211,48 @@ public class Query implements SQLStringable
         }
     }
 
+    /**
+     * Parses a SQL String into an AST, which is not altered when it is processed into a Query.
+     *
+     * @param sql a SQL SELECT String to parse
+     * @param treeParse true if a tree-parse step is required
+     * @param timeOut maximum time in milliseconds to spend parsing, can be null for no timeout
+     * @return the AST
+     * @throws antlr.RecognitionException if the SQL String is invalid
+     * @throws antlr.TokenStreamException if the SQL String cannot be lexed
+     */
+    private static AST parse(String sql, boolean treeParse, Long timeOut)
+        throws antlr.RecognitionException, antlr.TokenStreamException {
+        InputStream is = new ByteArrayInputStream(sql.getBytes());
+
+        SqlLexer lexer = new SqlLexer(is);
+        SqlParser parser = new SqlParser(lexer);
+        parser.start_rule();
+
+        AST ast = parser.getAST();
+        if (ast == null) {
+            throw (new IllegalArgumentException("Invalid SQL string " + sql));
+        }
+        if (treeParse) {
+            AST oldAst;
+            long startTime = System.currentTimeMillis();
+            do {
+                oldAst = ast;
+                SqlTreeParser treeparser = new SqlTreeParser();
+                treeparser.start_rule(ast);
+                ast = treeparser.getAST();
+                if (ast == null) {
+                    throw (new IllegalArgumentException("Invalid SQL string " + sql));
+                }
+                long elapsedTime = System.currentTimeMillis() - startTime;
+                if (timeOut != null && elapsedTime > timeOut.longValue()) {
+                    throw new QueryParseTimeoutException();
+                }
+            } while (!oldAst.equalsList(ast));
+        }
+        return ast;
+    }
+
     /**
      * Gets the current distinct status of this query.
      *
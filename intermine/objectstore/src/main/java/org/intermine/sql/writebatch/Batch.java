@@ -20,6 +20,9 @@ import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
+import org.intermine.metrics.Counter;
+import org.intermine.metrics.Histogram;
+import org.intermine.metrics.MetricsRegistry;
 
 /**
  * A class representing a collection of writes to an SQL database. This class is intended for the
@@ -35,6 +38,13 @@ import org.apache.log4j.Logger;
 public class Batch
 {
     private static final Logger LOG = Logger.getLogger(Batch.class);
+    private static final MetricsRegistry METRICS = MetricsRegistry.getInstance();
+    private static final Counter FLUSHED_BYTES = METRICS.counter(
+            "intermine_batch_flushed_bytes_total", "Bytes of writes handed to the batch flusher");
+    private static final Histogram FLUSH_TIME = METRICS.timer("intermine_batch_flush_ms",
+            "Time the batch flusher spends writing each set of jobs to the database");
+    private static final Histogram FLUSH_WAIT = METRICS.timer("intermine_batch_flush_wait_ms",
+            "Time spent waiting for the batch flusher to take the next set of jobs");
     private static final int OPP_BATCH_SIZE = 10000000;
     private static final int MAX_BATCH_SIZE = 100000000;
 
@@ -278,6 +288,7 @@ public class Batch
             batchSize += table.getSize();
         }
         lastCheckBatchSize = batchSize;
+        FLUSHED_BYTES.add(oldBatchSize - batchSize);
         if (needBatchCommit) {
             jobs.add(new FlushJobBatchCommit(con));
             needBatchCommit = false;
@@ -413,6 +424,7 @@ public class Batch
             }
         }
         long endTime = System.currentTimeMillis();
+        FLUSH_WAIT.observe(endTime - startTime);
         if (endTime > startTime + 100) {
             LOG.info("Waited " + (endTime - startTime) + " ms for batch flusher");
         }
@@ -461,6 +473,7 @@ public class Batch
                         job.flush();
                     }
                     long end = System.currentTimeMillis();
+                    FLUSH_TIME.observe(end - start);
                     totalSpent += end - start;
                     if (end / 100000 > (timeAtLastMessage) / 100000) {
                         int totalDutyCycle = (int) (((100 * totalSpent + ((end - flusherStart) / 2))
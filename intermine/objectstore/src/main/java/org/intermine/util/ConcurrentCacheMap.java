@@ -0,0 +1,44 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.ref.Reference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A CacheMap that may be used by several Threads at once without external synchronisation.
+ * The values are held softly as in CacheMap, but the underlying Map is a ConcurrentHashMap, so
+ * readers do not block each other or writers. Null keys are not permitted.
+ * <p>
+ * The entrySet() and values() methods of this class do not work.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+public class ConcurrentCacheMap<K, V> extends CacheMap<K, V>
+{
+    /**
+     * Constructs a new, empty <tt>ConcurrentCacheMap</tt>.
+     */
+    public ConcurrentCacheMap() {
+        this("unknown");
+    }
+
+    /**
+     * Constructs a new, empty <tt>ConcurrentCacheMap</tt> with a name.
+     *
+     * @param name the name of the map - printed out in log messages
+     */
+    public ConcurrentCacheMap(String name) {
+        super(name);
+        subMap = new ConcurrentHashMap<K, Reference<Object>>();
+    }
+}
@@ -120,6 +120,18 @@ public class DynamicBean implements MethodInterceptor
         if ("toString".equals(method.getName())) {
             return doToString(obj);
         }
+        // the fields of a dynamic object are held in a map, so there is no generated field table
+        if ("getOrdinalClassName".equals(method.getName()) && (args.length == 0)) {
+            return null;
+        }
+        if ((args.length > 0) && (args[0] instanceof Integer) && ("getFieldValue".equals(method
+                .getName()) || "getFieldProxy".equals(method.getName())
+                || "setFieldValue".equals(method.getName()))) {
+            // an ordinal is a position in the field names in alphabetical order, and the field
+            // is then found by name like any other
+            args = args.clone();
+            args[0] = TypeUtil.getFieldName(obj.getClass(), ((Integer) args[0]).intValue());
+        }
         if ("getoBJECT".equals(method.getName()) && (args.length == 0)) {
             return NotXmlRenderer.render(obj);
         }
@@ -12,13 +12,15 @@ package org.intermine.util;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import net.sf.cglib.proxy.Callback;
 import net.sf.cglib.proxy.Factory;
+import net.sf.cglib.proxy.NoOp;
 
 import org.intermine.metadata.StringUtil;
 import org.intermine.metadata.TypeUtil;
@@ -34,11 +36,17 @@ import org.intermine.objectstore.proxy.ProxyReference;
  */
 public final class DynamicUtil
 {
-    private static Map<Set<? extends Class<?>>, Class<? extends FastPathObject>> classMap
-        = new HashMap<Set<? extends Class<?>>, Class<? extends FastPathObject>>();
-
-
-    private static Map<Class<?>, String> simpleNameMap = new HashMap<Class<?>, String>();
+    // Read without locking. Only the first composition of a particular set of classes into a
+    // new cglib class takes a lock, so that the same set is never enhanced twice.
+    private static ConcurrentMap<Set<? extends Class<?>>, Class<? extends FastPathObject>> classMap
+        = new ConcurrentHashMap<Set<? extends Class<?>>, Class<? extends FastPathObject>>();
+    private static final Object COMPOSE_LOCK = new Object();
+    // An instance of each cglib class, used to create further instances without reflection
+    private static ConcurrentMap<Class<?>, Factory> factories
+        = new ConcurrentHashMap<Class<?>, Factory>();
+
+    private static ConcurrentMap<Class<?>, String> simpleNameMap
+        = new ConcurrentHashMap<Class<?>, String>();
 
     /**
      * Cannot construct
@@ -56,65 +64,70 @@ public final class DynamicUtil
      * @throws IllegalArgumentException if there is more than one Class, or if fields are not
      * compatible.
      */
-    @SuppressWarnings("unchecked")
-    public static synchronized FastPathObject createObject(Set<? extends Class<?>> classes) {
+    public static FastPathObject createObject(Set<? extends Class<?>> classes) {
         Class<? extends FastPathObject> requiredClass = classMap.get(classes);
-        if (requiredClass != null) {
-            return createObject(requiredClass);
-        } else {
-            Class<?> clazz = null;
-            Set<Class<?>> interfaces = new HashSet<Class<?>>();
-            for (Class<?> cls : classes) {
-                if (cls.isInterface()) {
-                    interfaces.add(cls);
-                } else if ((clazz == null) || clazz.isAssignableFrom(cls)) {
-                    clazz = cls;
-                } else if (!cls.isAssignableFrom(clazz)) {
-                    throw new IllegalArgumentException("Cannot create a class from multiple"
-                            + " classes: " + classes);
-                }
-            }
-            if ((clazz != null) && (!FastPathObject.class.isAssignableFrom(clazz))) {
-                throw new ClassCastException("Expected to create a FastPathObject, but was "
-                        + clazz.getName());
+        if (requiredClass == null) {
+            requiredClass = findClass(classes);
+        }
+        return createObject(requiredClass);
+    }
+
+    /**
+     * Find or create the Class that implements a set of classes and interfaces, and place it in
+     * the classMap.
+     *
+     * @param classes the classes and interfaces to extend/implement
+     * @return a Class that may be passed to createObject(Class)
+     */
+    @SuppressWarnings("unchecked")
+    private static Class<? extends FastPathObject> findClass(Set<? extends Class<?>> classes) {
+        Class<?> clazz = null;
+        Set<Class<?>> interfaces = new HashSet<Class<?>>();
+        for (Class<?> cls : classes) {
+            if (cls.isInterface()) {
+                interfaces.add(cls);
+            } else if ((clazz == null) || clazz.isAssignableFrom(cls)) {
+                clazz = cls;
+            } else if (!cls.isAssignableFrom(clazz)) {
+                throw new IllegalArgumentException("Cannot create a class from multiple"
+                        + " classes: " + classes);
             }
-            Class<? extends FastPathObject> fpclazz = (Class<? extends FastPathObject>) clazz;
-            if (clazz != null && fpclazz != null) {
-                interfaces.removeAll(Arrays.asList(clazz.getInterfaces()));
+        }
+        if ((clazz != null) && (!FastPathObject.class.isAssignableFrom(clazz))) {
+            throw new ClassCastException("Expected to create a FastPathObject, but was "
+                    + clazz.getName());
+        }
+        Class<? extends FastPathObject> fpclazz = (Class<? extends FastPathObject>) clazz;
+        if (fpclazz != null) {
+            interfaces.removeAll(Arrays.asList(fpclazz.getInterfaces()));
+        }
+        if (interfaces.isEmpty()) {
+            if (fpclazz == null) {
+                throw new IllegalArgumentException("Cannot create an object without a class "
+                                                   + "for: " + classes);
             }
-            if (interfaces.isEmpty()) {
-                if (fpclazz == null) {
-                    throw new IllegalArgumentException("Cannot create an object without a class "
-                                                       + "for: " + classes);
-                } else {
-                    try {
-                        classMap.put(classes, fpclazz);
-                        return fpclazz.newInstance();
-                    } catch (InstantiationException e) {
-                        IllegalArgumentException e2 = new IllegalArgumentException("Problem running"
-                                + " constructor");
-                        e2.initCause(e);
-                        throw e2;
-                    } catch (IllegalAccessException e) {
-                        IllegalArgumentException e2 = new IllegalArgumentException("Problem running"
-                                + " constructor");
-                        e2.initCause(e);
-                        throw e2;
-                    }
-                }
+            classMap.putIfAbsent(classes, fpclazz);
+            return fpclazz;
+        }
+        if ((fpclazz == null) && (interfaces.size() == 1)) {
+            try {
+                Class<FastPathObject> retval = (Class<FastPathObject>) Class.forName(interfaces
+                        .iterator().next().getName() + "Shadow");
+                classMap.putIfAbsent(classes, retval);
+                return retval;
+            } catch (ClassNotFoundException e) {
+                // No problem - falling back on dynamic
             }
-            if ((fpclazz == null) && (interfaces.size() == 1)) {
-                try {
-                    Class<FastPathObject> retval = (Class<FastPathObject>) Class.forName(interfaces
-                            .iterator().next().getName() + "Shadow");
-                    classMap.put(classes, retval);
-                    return createObject(retval);
-                } catch (ClassNotFoundException e) {
-                    // No problem - falling back on dynamic
-                }
+        }
+        synchronized (COMPOSE_LOCK) {
+            Class<? extends FastPathObject> retval = classMap.get(classes);
+            if (retval == null) {
+                FastPathObject prototype = DynamicBean.create(fpclazz,
+                        interfaces.toArray(new Class[] {}));
+                retval = prototype.getClass();
+                factories.put(retval, (Factory) prototype);
+                classMap.put(classes, retval);
             }
-            FastPathObject retval = DynamicBean.create(fpclazz, interfaces.toArray(new Class[] {}));
-            classMap.put(classes, retval.getClass());
             return retval;
         }
     }
@@ -143,7 +156,12 @@ public final class DynamicUtil
      * @return the object
      * @throws IllegalArgumentException if an error occurs
      */
+    @SuppressWarnings("unchecked")
     public static <C extends FastPathObject> C createObject(Class<C> clazz) {
+        Factory factory = factories.get(clazz);
+        if (factory != null) {
+            return (C) factory.newInstance(new Callback[] {new DynamicBean(), NoOp.INSTANCE});
+        }
         C retval = null;
         try {
             retval = clazz.newInstance();
@@ -202,10 +220,10 @@ public final class DynamicUtil
      * @throws IllegalArgumentException if there is more than one Class, or if the fields are not
      * compatible.
      */
-    public static synchronized Class<? extends FastPathObject> composeClass(Set<Class<?>> classes) {
+    public static Class<? extends FastPathObject> composeClass(Set<Class<?>> classes) {
         Class<? extends FastPathObject> retval = classMap.get(classes);
         if (retval == null) {
-            retval = createObject(classes).getClass();
+            retval = findClass(classes);
         }
         return retval;
     }
@@ -280,7 +298,7 @@ public final class DynamicUtil
      * @param clazz the class
      * @return the simple class name
      */
-    public static synchronized String getSimpleClassName(Class<?> clazz) {
+    public static String getSimpleClassName(Class<?> clazz) {
         String retval = simpleNameMap.get(clazz);
         if (retval == null) {
             Set<Class<?>> decomposedClass = Util.decomposeClass(clazz);
@@ -289,7 +307,7 @@ public final class DynamicUtil
                                                    + Util.getFriendlyName(clazz));
             } else {
                 retval = decomposedClass.iterator().next().getName();
-                simpleNameMap.put(clazz, retval);
+                simpleNameMap.putIfAbsent(clazz, retval);
             }
 
         }
@@ -302,7 +320,7 @@ public final class DynamicUtil
      * @param obj an object from the model
      * @return the simple class name
      */
-    public static synchronized String getSimpleClassName(FastPathObject obj) {
+    public static String getSimpleClassName(FastPathObject obj) {
         return getSimpleClassName(obj.getClass());
     }
 
@@ -0,0 +1,163 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * An approximate counter of distinct values, using the HyperLogLog algorithm. Values are hashed
+ * into a fixed number of registers, so the memory used does not depend on the number of values
+ * offered. With the default precision of 14 the counter uses 16kB and the estimate is typically
+ * within 1% of the true number of distinct values.
+ *
+ * Two counters with the same precision can be merged, which gives the same result as offering
+ * all the values to a single counter. This means that the values can be counted in several
+ * pieces, for example in separate Threads, and combined afterwards. This class is not thread
+ * safe.
+ */
+public class HyperLogLog
+{
+    /** The default precision. */
+    public static final int DEFAULT_PRECISION = 14;
+
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 16;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Creates an empty counter with the default precision.
+     */
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Creates an empty counter that uses 2^precision registers.
+     *
+     * @param precision the number of bits of each hash used to choose a register, between 4 and
+     * 16
+     */
+    public HyperLogLog(int precision) {
+        if ((precision < MIN_PRECISION) || (precision > MAX_PRECISION)) {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION
+                    + " and " + MAX_PRECISION + ", was " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Returns the precision of this counter.
+     *
+     * @return the precision
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Adds a value to the counter. Values are compared by their String representation, and null
+     * is counted as a distinct value of its own.
+     *
+     * @param value the value to add
+     */
+    public void offer(Object value) {
+        offerHash(hash(value == null ? null : value.toString()));
+    }
+
+    private void offerHash(long hash) {
+        int index = (int) (hash >>> (Long.SIZE - precision));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision) + 1,
+                Long.SIZE - precision + 1);
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Merges another counter into this one, so that this counter estimates the number of
+     * distinct values offered to either.
+     *
+     * @param other a counter with the same precision as this one
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge a counter of precision "
+                    + other.precision + " into one of precision " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct values offered to this counter.
+     *
+     * @return the estimate
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if ((estimate <= 2.5 * m) && (zeros > 0)) {
+            // linear counting is more accurate for small numbers of values
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1.0 + 1.079 / m);
+        }
+    }
+
+    /**
+     * A 64 bit FNV-1a hash of the characters of the String, followed by the finalisation step of
+     * MurmurHash3 so that all of the bits are well mixed.
+     */
+    private static long hash(String value) {
+        long h = FNV_OFFSET;
+        if (value == null) {
+            h ^= 0xff;
+            h *= FNV_PRIME;
+        } else {
+            for (int i = 0; i < value.length(); i++) {
+                h ^= value.charAt(i);
+                h *= FNV_PRIME;
+            }
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -50,11 +50,8 @@ public abstract class ReferenceMap<K, V> implements Map<K, V>
         int oldSize = subMap.size();
         ReferenceWithKey<K> r;
         while ((r = (ReferenceWithKey<K>) queue.poll()) != null) {
-            K key = r.getKey();
-            Reference<Object> ref = subMap.get(key);
-            if (r == ref) {
-                subMap.remove(key);
-            }
+            // only remove the entry if it has not been replaced since the value was cleared
+            subMap.remove(r.getKey(), r);
         }
         int newSize = subMap.size();
         if (newSize != oldSize) {
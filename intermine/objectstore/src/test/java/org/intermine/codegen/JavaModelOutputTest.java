@@ -286,6 +286,37 @@ public class JavaModelOutputTest extends TestCase
         assertEquals(expected, mo.generateToString(cld1));
     }
 
+    public void testGenerateOrdinalAccessors() throws Exception {
+        AttributeDescriptor atd1 = new AttributeDescriptor("inty", "int", null);
+        AttributeDescriptor atd2 = new AttributeDescriptor("str", "java.lang.String", null);
+        ReferenceDescriptor rfd1 = new ReferenceDescriptor("rfd1", "package.name.Class2", null);
+        Set<AttributeDescriptor> atts = new LinkedHashSet(Arrays.asList(atd1, atd2));
+        Set<ReferenceDescriptor> refs = new LinkedHashSet(Arrays.asList(rfd1));
+        ClassDescriptor cld1 = new ClassDescriptor("package.name.Class1", null, false, atts, refs, new HashSet(), null);
+        ClassDescriptor cld2 = new ClassDescriptor("package.name.Class2", null, false, new HashSet(), new HashSet(), new HashSet(), null);
+        Model model = new Model("model", "package.name", new LinkedHashSet(Arrays.asList(cld1, cld2)));
+
+        assertEquals(Arrays.asList("id", "inty", "rfd1", "str"), Arrays.asList(
+                    cld1.getFieldTable().get(0).getName(), cld1.getFieldTable().get(1).getName(),
+                    cld1.getFieldTable().get(2).getName(), cld1.getFieldTable().get(3).getName()));
+        assertEquals(2, cld1.getFieldOrdinal("rfd1"));
+        assertEquals(-1, cld1.getFieldOrdinal("nothing"));
+
+        String actual = mo.generateOrdinalAccessors(cld1);
+        assertTrue(actual, actual.contains(INDENT + "public String getOrdinalClassName() {\n"
+                    + INDENT + INDENT + "return \"package.name.Class1\";\n"));
+        assertTrue(actual, actual.contains("case 1:\n" + INDENT + INDENT + INDENT + INDENT
+                    + "return Integer.valueOf(this.inty);\n"));
+        assertTrue(actual, actual.contains("case 2:\n" + INDENT + INDENT + INDENT + INDENT
+                    + "if (this.rfd1 instanceof ProxyReference) {\n"));
+        assertTrue(actual, actual.contains("case 2:\n" + INDENT + INDENT + INDENT + INDENT
+                    + "return this.rfd1;\n"));
+        assertTrue(actual, actual.contains("case 1:\n" + INDENT + INDENT + INDENT + INDENT
+                    + "this.inty = ((Integer) value).intValue();\n"));
+        assertTrue(actual, actual.contains("case 3:\n" + INDENT + INDENT + INDENT + INDENT
+                    + "this.str = (java.lang.String) value;\n"));
+    }
+
     public void testGetType() throws Exception {
         AttributeDescriptor atd1 = new AttributeDescriptor("atd1", "java.lang.String", null);
         assertEquals("java.lang.String", mo.getType(atd1));
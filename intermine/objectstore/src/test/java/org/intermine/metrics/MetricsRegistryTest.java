@@ -0,0 +1,91 @@
+package org.intermine.metrics;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+public class MetricsRegistryTest extends TestCase
+{
+    private MetricsRegistry registry;
+
+    public MetricsRegistryTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        registry = new MetricsRegistry();
+    }
+
+    public void testCounter() throws Exception {
+        Counter counter = registry.counter("test_total", "A test");
+        counter.inc();
+        counter.add(4);
+        assertSame(counter, registry.counter("test_total", "A test"));
+        assertEquals(5, counter.getCount());
+        assertEquals(Long.valueOf(5), registry.getSamples().get("test_total"));
+    }
+
+    public void testLabels() throws Exception {
+        registry.cacheCounter("results", true).inc();
+        registry.cacheCounter("results", false).add(2);
+        registry.counter("test_total", "A test", "name", "a \"quoted\" name").inc();
+        StringWriter out = new StringWriter();
+        registry.writeText(out);
+        assertEquals("# HELP intermine_cache_requests_total "
+                + "Requests to caches, by cache and result\n"
+                + "# TYPE intermine_cache_requests_total counter\n"
+                + "intermine_cache_requests_total{cache=\"results\",result=\"hit\"} 1\n"
+                + "intermine_cache_requests_total{cache=\"results\",result=\"miss\"} 2\n"
+                + "# HELP test_total A test\n"
+                + "# TYPE test_total counter\n"
+                + "test_total{name=\"a \\\"quoted\\\" name\"} 1\n", out.toString());
+    }
+
+    public void testHistogram() throws Exception {
+        Histogram histogram = registry.histogram("test_ms", "A test", new double[] {10, 100},
+                "service", "test");
+        histogram.observe(5);
+        histogram.observe(10);
+        histogram.observe(50);
+        histogram.observe(500);
+        assertEquals(4, histogram.getCount());
+        StringWriter out = new StringWriter();
+        registry.writeText(out);
+        assertEquals("# HELP test_ms A test\n"
+                + "# TYPE test_ms histogram\n"
+                + "test_ms_bucket{service=\"test\",le=\"10.0\"} 2\n"
+                + "test_ms_bucket{service=\"test\",le=\"100.0\"} 3\n"
+                + "test_ms_bucket{service=\"test\",le=\"+Inf\"} 4\n"
+                + "test_ms_sum{service=\"test\"} 565.0\n"
+                + "test_ms_count{service=\"test\"} 4\n", out.toString());
+    }
+
+    public void testBadLabels() throws Exception {
+        try {
+            registry.counter("test_total", "A test", "name");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testJmx() throws Exception {
+        MetricsRegistry shared = MetricsRegistry.getInstance();
+        shared.counter("test_jmx_total", "A test").add(3);
+        assertEquals(Long.valueOf(3), ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName(MetricsRegistry.OBJECT_NAME), "test_jmx_total"));
+    }
+}
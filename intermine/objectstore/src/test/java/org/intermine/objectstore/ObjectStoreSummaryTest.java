@@ -45,6 +45,15 @@ public class ObjectStoreSummaryTest
         Assert.assertEquals(2, oss.getClassCount("org.intermine.model.testmodel.Company"));
     }
 
+    @Test
+    public void testTooFewThreads() throws Exception {
+        ObjectStore os = ObjectStoreFactory.getObjectStore("os.unittest");
+        Properties config = new Properties();
+        config.put("summary.threads", "0");
+        ObjectStoreSummary oss = new ObjectStoreSummary(os, config);
+        Assert.assertEquals(2, oss.getClassCount("org.intermine.model.testmodel.Company"));
+    }
+
     @Test
     public void testIgnore() throws Exception {
         ObjectStore os = ObjectStoreFactory.getObjectStore("os.unittest");
@@ -77,6 +86,24 @@ public class ObjectStoreSummaryTest
         Assert.assertNull(oss.getFieldValues("org.intermine.model.InterMineObject", "id"));
     }
 
+    @Test
+    public void testApproximateCounts() throws Exception {
+        Properties config = new Properties();
+        config.put("max.field.values", "2");
+        config.put("summary.threads", "2");
+        config.put("approximate.counts", "true");
+        ObjectStore os = ObjectStoreFactory.getObjectStore("os.unittest");
+        ObjectStoreSummary oss = new ObjectStoreSummary(os, config);
+
+        Assert.assertNull(oss.getFieldValues("org.intermine.model.testmodel.Employee", "age"));
+        Assert.assertEquals(new Long(6),
+                oss.getApproximateDistinctCount("org.intermine.model.testmodel.Employee", "age"));
+
+        ObjectStoreSummary ossFromProps = new ObjectStoreSummary(oss.toProperties());
+        Assert.assertEquals(new Long(6), ossFromProps.getApproximateDistinctCount(
+                    "org.intermine.model.testmodel.Employee", "age"));
+    }
+
     @Test
     public void testEmptyAttributes() throws Exception {
         // delete names of existing employees so we have some empty attributes
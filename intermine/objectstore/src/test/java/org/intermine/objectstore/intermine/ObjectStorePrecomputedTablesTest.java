@@ -12,6 +12,7 @@ package org.intermine.objectstore.intermine;
 
 import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -50,8 +51,7 @@ public class ObjectStorePrecomputedTablesTest extends TestCase
         ObjectStoreTestUtils.deleteAllObjectsInClass(writer, Department.class);
         ObjectStoreTestUtils.deleteAllObjectsInClass(writer, Employee.class);
 
-        writer.sequenceBase = sequenceMillions * 1000000;
-        writer.sequenceOffset = 0;
+        writer.setSerialBlocks(Collections.singletonList(Long.valueOf(sequenceMillions)));
         List toRemove = new ArrayList();
         try {
             writer.beginTransaction();
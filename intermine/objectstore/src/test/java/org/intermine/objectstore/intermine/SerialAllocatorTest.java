@@ -0,0 +1,104 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+public class SerialAllocatorTest extends TestCase
+{
+    private AtomicLong sequence;
+    private SerialAllocator allocator;
+
+    public void setUp() throws Exception {
+        sequence = new AtomicLong(3);
+        allocator = new SerialAllocator(100) {
+            @Override
+            long lease(Connection c) {
+                return sequence.getAndIncrement();
+            }
+        };
+    }
+
+    public void testBlocks() throws Exception {
+        assertNull(allocator.tryNext());
+        assertEquals(301, allocator.next(null));
+        assertEquals(Integer.valueOf(302), allocator.tryNext());
+        for (int i = 303; i <= 400; i++) {
+            assertEquals(i, allocator.next(null));
+        }
+        assertNull(allocator.tryNext());
+        assertEquals(401, allocator.next(null));
+    }
+
+    public void testReservedBlocks() throws Exception {
+        assertEquals(301, allocator.next(null));
+        allocator.setBlocks(Arrays.asList(Long.valueOf(7), Long.valueOf(5)));
+        for (int i = 701; i <= 800; i++) {
+            assertEquals(i, allocator.next(null));
+        }
+        for (int i = 501; i <= 600; i++) {
+            assertEquals(i, allocator.next(null));
+        }
+        assertNull(allocator.tryNext());
+        try {
+            allocator.next(null);
+            fail("Expected SQLException");
+        } catch (SQLException e) {
+            // the reserved blocks have run out
+        }
+        assertEquals(4, sequence.get());
+    }
+
+    public void testConcurrent() throws Exception {
+        final List<Set<Integer>> allocated = new ArrayList<Set<Integer>>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final Set<Integer> ids = new HashSet<Integer>();
+            allocated.add(ids);
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 10000; i++) {
+                            ids.add(Integer.valueOf(allocator.next(null)));
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Set<Integer> all = new HashSet<Integer>();
+        for (Set<Integer> ids : allocated) {
+            assertEquals(10000, ids.size());
+            all.addAll(ids);
+        }
+        assertEquals(80000, all.size());
+        // blocks leased by threads that lost a race are used later, so at most one per thread
+        // can be left over
+        assertTrue(sequence.get() <= 3 + 800 + 8);
+    }
+}
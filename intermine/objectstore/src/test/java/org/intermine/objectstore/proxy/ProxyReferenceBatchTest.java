@@ -0,0 +1,167 @@
+package org.intermine.objectstore.proxy;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.model.InterMineObject;
+import org.intermine.model.fulldata.Item;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.dummy.ObjectStoreDummyImpl;
+import org.intermine.objectstore.query.BagConstraint;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.ResultsRow;
+
+public class ProxyReferenceBatchTest extends TestCase
+{
+    private CountingObjectStore os;
+
+    public ProxyReferenceBatchTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        os = new CountingObjectStore();
+        // proxies without an ObjectStore stand in for real objects
+        for (int i : new int[] {1, 2, 3, 10}) {
+            os.database.put(new Integer(i), new ProxyReference(null, new Integer(i),
+                    InterMineObject.class));
+        }
+    }
+
+    public void testSiblingsFetchedTogether() throws Exception {
+        ProxyReference p1, p2, p3, item;
+        ProxyReferenceBatch batch = ProxyReferenceBatch.open(os);
+        try {
+            p1 = new ProxyReference(os, new Integer(1), InterMineObject.class);
+            p2 = new ProxyReference(os, new Integer(2), InterMineObject.class);
+            p3 = new ProxyReference(os, new Integer(3), InterMineObject.class);
+            item = new ProxyReference(os, new Integer(10), Item.class);
+        } finally {
+            batch.close();
+        }
+        assertEquals(new Integer(2), p2.getObject().getId());
+        assertEquals(1, os.queries);
+        assertEquals(3, os.lastIds.size());
+        assertEquals(new Integer(1), p1.getObject().getId());
+        assertEquals(new Integer(3), p3.getObject().getId());
+        assertEquals(1, os.queries);
+        assertEquals(0, os.singleFetches);
+
+        // a different class hint is a different group, with only one member
+        assertEquals(new Integer(10), item.getObject().getId());
+        assertEquals(1, os.queries);
+        assertEquals(1, os.singleFetches);
+    }
+
+    public void testCachedSiblingsSkipped() throws Exception {
+        os.cacheObjectById(new Integer(3), os.database.get(new Integer(3)));
+        ProxyReference p1;
+        ProxyReferenceBatch batch = ProxyReferenceBatch.open(os);
+        try {
+            p1 = new ProxyReference(os, new Integer(1), InterMineObject.class);
+            new ProxyReference(os, new Integer(2), InterMineObject.class);
+            new ProxyReference(os, new Integer(3), InterMineObject.class);
+        } finally {
+            batch.close();
+        }
+        assertEquals(new Integer(1), p1.getObject().getId());
+        assertEquals(1, os.queries);
+        assertEquals(2, os.lastIds.size());
+        assertFalse(os.lastIds.contains(new Integer(3)));
+    }
+
+    public void testNoBatch() throws Exception {
+        ProxyReference p1 = new ProxyReference(os, new Integer(1), InterMineObject.class);
+        new ProxyReference(os, new Integer(2), InterMineObject.class);
+        assertEquals(new Integer(1), p1.getObject().getId());
+        assertEquals(0, os.queries);
+        assertEquals(1, os.singleFetches);
+    }
+
+    public void testNested() throws Exception {
+        ProxyReference outer, inner;
+        ProxyReferenceBatch first = ProxyReferenceBatch.open(os);
+        try {
+            new ProxyReference(os, new Integer(1), InterMineObject.class);
+            ProxyReferenceBatch second = ProxyReferenceBatch.open(os);
+            try {
+                inner = new ProxyReference(os, new Integer(2), InterMineObject.class);
+                try {
+                    first.close();
+                    fail("Expected IllegalStateException");
+                } catch (IllegalStateException e) {
+                    // expected
+                }
+            } finally {
+                second.close();
+            }
+            outer = new ProxyReference(os, new Integer(3), InterMineObject.class);
+        } finally {
+            first.close();
+        }
+        assertEquals(new Integer(3), outer.getObject().getId());
+        assertEquals(1, os.queries);
+        assertEquals(2, os.lastIds.size());
+        assertEquals(new Integer(2), inner.getObject().getId());
+        assertEquals(1, os.queries);
+        assertEquals(1, os.singleFetches);
+    }
+
+    private static class CountingObjectStore extends ObjectStoreDummyImpl
+    {
+        Map<Integer, InterMineObject> database = new HashMap<Integer, InterMineObject>();
+        Map<Integer, InterMineObject> cached = new HashMap<Integer, InterMineObject>();
+        Collection<?> lastIds;
+        int queries = 0;
+        int singleFetches = 0;
+
+        @Override
+        public List execute(Query q, int start, int limit, boolean optimise, boolean explain,
+                Map<Object, Integer> sequence) throws ObjectStoreException {
+            queries++;
+            lastIds = ((BagConstraint) q.getConstraint()).getBag();
+            List<ResultsRow<Object>> rows = new ArrayList<ResultsRow<Object>>();
+            for (Object id : lastIds) {
+                ResultsRow<Object> row = new ResultsRow<Object>();
+                row.add(database.get(id));
+                rows.add(row);
+            }
+            return rows;
+        }
+
+        @Override
+        public InterMineObject getObjectById(Integer id, Class<? extends InterMineObject> clazz) {
+            if (cached.containsKey(id)) {
+                return cached.get(id);
+            }
+            singleFetches++;
+            return database.get(id);
+        }
+
+        @Override
+        public Object cacheObjectById(Integer id, InterMineObject o) {
+            cached.put(id, o);
+            return o;
+        }
+
+        @Override
+        public InterMineObject pilferObjectById(Integer id) {
+            return cached.get(id);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.intermine.objectstore.query;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class PackedClobPageTest extends TestCase
+{
+    private int clobId = 100;
+
+    public PackedClobPageTest(String arg) {
+        super(arg);
+    }
+
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(42);
+        String alphabet = "ACGTACGTACGTACGTacgtNnRY.-";
+        for (int test = 0; test < 50; test++) {
+            StringBuilder text = new StringBuilder();
+            int length = 64 + random.nextInt(Clob.CLOB_PAGE_SIZE - 64);
+            while (text.length() < length) {
+                char c = alphabet.charAt(random.nextInt(alphabet.length()));
+                int run = 1 + (random.nextInt(10) == 0 ? random.nextInt(100) : 0);
+                for (int i = 0; i < run; i++) {
+                    text.append(c);
+                }
+            }
+            assertRoundTrip(text.toString());
+        }
+    }
+
+    public void testPacked() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("GATTACA");
+        }
+        text.append("NNNNNNNNNNacgtacgt");
+        String packed = PackedClobPage.pack(text.toString());
+        assertEquals(PackedClobPage.MARKER, packed.charAt(0));
+        assertTrue(packed.length() * 2 < text.length());
+        Clob clob = new Clob(1);
+        CharSequence page = PackedClobPage.unpack(null, clob, 0, packed);
+        assertTrue(page instanceof PackedClobPage);
+        assertEquals(text.length(), page.length());
+        assertEquals('G', page.charAt(0));
+        assertEquals('N', page.charAt(7000));
+        assertEquals('c', page.charAt(7011));
+        assertEquals("ANNNNNNNNNNacg", page.subSequence(6999, 7013));
+        assertSame(page, PackedClobPage.unpack(null, clob, 0, new String(packed)));
+        assertNotSame(page, PackedClobPage.unpack(null, clob, 1, packed));
+        assertNotSame(page, PackedClobPage.unpack(null, new Clob(2), 0, packed));
+    }
+
+    public void testRewrittenPage() throws Exception {
+        Clob clob = new Clob(3);
+        String first = PackedClobPage.pack(repeat("ACGT", 100));
+        String second = PackedClobPage.pack(repeat("TTGCA", 100));
+        assertEquals(repeat("ACGT", 100),
+                PackedClobPage.unpack(null, clob, 0, first).toString());
+        assertEquals(repeat("TTGCA", 100),
+                PackedClobPage.unpack(null, clob, 0, second).toString());
+    }
+
+    public void testRewrittenPageSameLength() throws Exception {
+        Clob clob = new Clob(6);
+        String first = PackedClobPage.pack(repeat("ACGT", 100));
+        String second = PackedClobPage.pack(repeat("TGCA", 100));
+        assertEquals(first.length(), second.length());
+        assertEquals(repeat("ACGT", 100),
+                PackedClobPage.unpack(null, clob, 0, first).toString());
+        assertEquals(repeat("TGCA", 100),
+                PackedClobPage.unpack(null, clob, 0, second).toString());
+    }
+
+    public void testNotPacked() throws Exception {
+        String prose = "This is not a DNA sequence, it is a description of something else, "
+            + "and should be stored as it is.";
+        assertSame(prose, PackedClobPage.pack(prose));
+        assertSame(prose, PackedClobPage.unpack(null, new Clob(4), 0, prose));
+        assertSame("ACGT", PackedClobPage.pack("ACGT"));
+        assertEquals("", PackedClobPage.pack(""));
+    }
+
+    public void testMarkerAlwaysPacked() throws Exception {
+        assertRoundTrip(PackedClobPage.MARKER + "short");
+    }
+
+    public void testEscape() throws Exception {
+        String sequence = repeat("GATTACA", 100);
+        assertSame(sequence, PackedClobPage.escape(sequence));
+        String escaped = PackedClobPage.escape(PackedClobPage.MARKER + "short");
+        assertEquals(PackedClobPage.MARKER + "short",
+                PackedClobPage.unpack(null, new Clob(5), 0, escaped).toString());
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder retval = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            retval.append(s);
+        }
+        return retval.toString();
+    }
+
+    private void assertRoundTrip(String text) {
+        String packed = PackedClobPage.pack(text);
+        CharSequence page = PackedClobPage.unpack(null, new Clob(clobId++), 0, packed);
+        assertEquals(text, page.toString());
+        assertEquals(text.length(), page.length());
+        for (int i = 0; i < text.length(); i += 7) {
+            assertEquals(text.charAt(i), page.charAt(i));
+        }
+        int start = text.length() / 3;
+        int end = text.length() - start / 2;
+        assertEquals(text.substring(start, end), page.subSequence(start, end).toString());
+    }
+}
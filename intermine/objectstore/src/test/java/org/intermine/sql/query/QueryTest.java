@@ -1270,4 +1270,17 @@ public class QueryTest extends TestCase
         } catch (QueryParseTimeoutException e) {
         }
     }
+
+    public void testParseSameStringTwice() throws Exception {
+        // the second parse is built from a cached tree, and must not share state with the first
+        String sql = "SELECT table1.field1 AS a FROM table1 WHERE table1.field1 = 5 ORDER BY table1.field1";
+        Query first = new Query(sql);
+        first.addWhere(new Constraint(new Field("field2", new Table("table1")), Constraint.EQ,
+                    new Constant("6")));
+        first.setLimitOffset(10, 0);
+        Query second = new Query(sql);
+        assertEquals(new Query(sql, false), second);
+        assertEquals(sql, second.getSQLString());
+        assertFalse(first.equals(second));
+    }
 }
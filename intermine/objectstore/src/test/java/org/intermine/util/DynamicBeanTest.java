@@ -10,10 +10,12 @@ package org.intermine.util;
  *
  */
 
+import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.TestCase;
 
+import org.intermine.metadata.TypeUtil;
 import org.intermine.model.testmodel.*;
 
 public class DynamicBeanTest extends TestCase
@@ -60,6 +62,17 @@ public class DynamicBeanTest extends TestCase
         assertTrue(obj instanceof ImportantPerson);
     }
 
+    public void testFieldOrdinals() throws Exception {
+        Company c = (Company) DynamicBean.create(null, new Class[] { Company.class });
+        int name = new ArrayList<String>(TypeUtil.getFieldInfos(c.getClass()).keySet())
+            .indexOf("name");
+        c.setFieldValue(name, "Company1");
+        assertEquals("Company1", c.getName());
+        assertEquals("Company1", c.getFieldValue(name));
+        assertEquals("Company1", c.getFieldProxy(name));
+        assertNull(c.getOrdinalClassName());
+    }
+
     public void testCreateObjectClassTwoInterfaces() {
         Object obj = DynamicBean.create(Department.class, new Class[] { Employable.class, ImportantPerson.class });
         assertTrue(obj instanceof Department);
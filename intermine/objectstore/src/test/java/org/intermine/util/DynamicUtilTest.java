@@ -10,9 +10,11 @@ package org.intermine.util;
  *
  */
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import junit.framework.TestCase;
@@ -144,6 +146,41 @@ public class DynamicUtilTest extends TestCase
         assertEquals("Fred", obj.getName());
     }
 
+    public void testCreateObjectConcurrently() throws Exception {
+        final Set<Class<?>> classes = new HashSet<Class<?>>();
+        classes.add(Company.class);
+        classes.add(Broke.class);
+        final Set<Class<?>> seen = Collections.synchronizedSet(new HashSet<Class<?>>());
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final String name = "Company" + i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 100; j++) {
+                            Company c = (Company) DynamicUtil.createObject(classes);
+                            c.setName(name);
+                            assertEquals(name, c.getName());
+                            seen.add(c.getClass());
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            };
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.EMPTY_LIST, failures);
+        assertEquals(1, seen.size());
+        assertEquals(seen.iterator().next(), DynamicUtil.composeClass(classes));
+    }
+
     public void testInstantiateObjectNullClassName() throws Exception {
         Object obj = DynamicUtil.instantiateObject(null, "org.intermine.model.testmodel.Broke");
         assertTrue(obj instanceof Broke);
@@ -0,0 +1,80 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import junit.framework.TestCase;
+
+public class HyperLogLogTest extends TestCase
+{
+    public HyperLogLogTest(String arg) {
+        super(arg);
+    }
+
+    public void testEmpty() throws Exception {
+        assertEquals(0, new HyperLogLog().estimate());
+    }
+
+    public void testSmall() throws Exception {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 3; i++) {
+            hll.offer("a");
+            hll.offer("b");
+            hll.offer(null);
+            hll.offer(new Integer(42));
+        }
+        assertEquals(4, hll.estimate());
+    }
+
+    public void testLarge() throws Exception {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 1000000; i++) {
+            hll.offer("value" + (i % 200000));
+        }
+        assertWithin(200000, hll.estimate(), 0.03);
+    }
+
+    public void testMerge() throws Exception {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        HyperLogLog all = new HyperLogLog();
+        for (int i = 0; i < 50000; i++) {
+            first.offer("value" + i);
+            all.offer("value" + i);
+        }
+        for (int i = 25000; i < 100000; i++) {
+            second.offer("value" + i);
+            all.offer("value" + i);
+        }
+        first.merge(second);
+        assertEquals(all.estimate(), first.estimate());
+        assertWithin(100000, first.estimate(), 0.03);
+    }
+
+    public void testPrecision() throws Exception {
+        try {
+            new HyperLogLog(3);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new HyperLogLog(10).merge(new HyperLogLog(12));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static void assertWithin(long expected, long actual, double error) {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected * error);
+    }
+}
@@ -133,6 +133,18 @@ public class TypeUtilTest extends TestCase
 
     }
 
+    public void testGetFieldName() throws Exception {
+        Class<?> c = DynamicUtil.createObject(Collections.singleton(Company.class)).getClass();
+        assertEquals("CEO", TypeUtil.getFieldName(c, 0));
+        assertEquals("vatNumber", TypeUtil.getFieldName(c, 9));
+        try {
+            TypeUtil.getFieldName(c, 10);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
     public void testGetFieldInfosNoGetters() throws Exception {
         Map expected = new HashMap();
         Class c = NoGetSet.class;  // random class with no getters
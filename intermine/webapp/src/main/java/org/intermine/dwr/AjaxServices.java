@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -278,8 +279,13 @@ public class AjaxServices
                 try {
                     profile.fixInvalidBag(name, newName);
                     InterMineAPI im = SessionMethods.getInterMineAPI(session);
-                    new Thread(new UpgradeBagList(profile, im.getBagQueryRunner()))
-                        .start();
+                    try {
+                        InterMineContext.getUpgradeExecutor().execute(
+                                new UpgradeBagList(profile, im.getBagQueryRunner()));
+                    } catch (RejectedExecutionException e) {
+                        LOG.warn("Too busy to upgrade the lists of " + profile.getUsername()
+                                + " now, they will be upgraded at the next login");
+                    }
                 } catch (UnknownBagTypeException e) {
                     return "<i>" + e.getMessage() + "</i>";
                 } catch (ObjectStoreException e) {
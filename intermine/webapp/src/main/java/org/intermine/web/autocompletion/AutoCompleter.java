@@ -11,10 +11,14 @@ package org.intermine.web.autocompletion;
  */
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -31,16 +35,25 @@ import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrInputDocument;
 import org.intermine.metadata.ClassDescriptor;
+import org.intermine.modelproduction.MetadataManager;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
 import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryFunction;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 
 /**
- * Autocompleter class for initializing and using the autocompletion
+ * Autocompleter class for initializing and using the autocompletion.
+ *
+ * The values of the fields to autocomplete are kept in a PrefixIndex, which is built with the
+ * other post-processing, stored in the metadata table of the production database, and read when
+ * the webapp starts, so that looking up a value needs no request to another server.  The values
+ * are also sent to Solr if autocomplete.solrurl is set, and Solr is used to look up values if
+ * the database has no index.
  *
  * @author Dominik Grimm
  * @author Michael Menden
@@ -57,6 +70,8 @@ public class AutoCompleter
 
     ObjectStore os;
 
+    private PrefixIndex prefixIndex;
+
     private static final String CLASSNAME_FIELD = "className";
 
     /**
@@ -73,7 +88,7 @@ public class AutoCompleter
             this.classFieldMap = propertiesManager.getClassFieldMap();
             createFieldIndexMap();
         }
-
+        this.prefixIndex = readPrefixIndex(os);
     }
 
 
@@ -90,6 +105,19 @@ public class AutoCompleter
         String status = "true";
         String[] stringResults = null;
 
+        if (prefixIndex != null && prefixIndex.contains(className, field)) {
+            if ("".equals(query) || query.trim().startsWith("*")) {
+                return null;
+            }
+            List<String> matches = prefixIndex.search(query, className, field, n);
+            stringResults = new String[matches.size() + 1];
+            stringResults[0] = status;
+            for (int i = 0; i < matches.size(); i++) {
+                stringResults[i + 1] = matches.get(i);
+            }
+            return stringResults;
+        }
+
         SolrClient solrClient
                 = SolrClientHandler.getClientInstance(this.propertiesManager.getSolrUrl());
 
@@ -163,7 +191,7 @@ public class AutoCompleter
     }
 
     /**
-     * Build the index from the database blob
+     * Build the index of the values of the fields to autocomplete, and store it in the database.
      * @param os Objectstore
      * @throws IOException IOException
      * @throws ObjectStoreException ObjectStoreException
@@ -175,6 +203,7 @@ public class AutoCompleter
 
         List<SolrInputDocument> solrDocumentList = new ArrayList<SolrInputDocument>();
         List<String> fieldList = new ArrayList<String>();
+        PrefixIndex index = new PrefixIndex();
 
         fieldList.add(CLASSNAME_FIELD);
 
@@ -200,25 +229,45 @@ public class AutoCompleter
                 }
 
                 Query q = new Query();
-                q.setDistinct(true);
                 QueryClass qc = new QueryClass(Class.forName(cld.getName()));
-                q.addToSelect(new QueryField(qc, fieldName));
+                QueryField qf = new QueryField(qc, fieldName);
+                q.addToSelect(qf);
+                q.addToSelect(new QueryFunction());
                 q.addFrom(qc);
+                q.addToGroupBy(qf);
                 Results results = os.execute(q);
 
+                Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
                 for (Object resRow: results) {
                     @SuppressWarnings("rawtypes")
-                    Object fieldValue = ((ResultsRow) resRow).get(0);
+                    ResultsRow row = (ResultsRow) resRow;
+                    Object fieldValue = row.get(0);
                     if (fieldValue != null) {
-                        SolrInputDocument solrInputDocument = new SolrInputDocument();
-                        solrInputDocument.addField(fieldName, fieldValue.toString());
-                        solrInputDocument.addField(CLASSNAME_FIELD, cld.getUnqualifiedName());
-                        solrDocumentList.add(solrInputDocument);
+                        String fieldString = fieldValue.toString();
+                        Integer count = counts.get(fieldString);
+                        int objects = ((Number) row.get(1)).intValue();
+                        counts.put(fieldString, (count == null) ? objects : count + objects);
                     }
                 }
+                index.put(cld.getUnqualifiedName(), fieldName, counts);
+
+                for (String fieldString: counts.keySet()) {
+                    SolrInputDocument solrInputDocument = new SolrInputDocument();
+                    solrInputDocument.addField(fieldName, fieldString);
+                    solrInputDocument.addField(CLASSNAME_FIELD, cld.getUnqualifiedName());
+                    solrDocumentList.add(solrInputDocument);
+                }
             }
         }
 
+        storePrefixIndex(os, index);
+        prefixIndex = index;
+
+        if (propertiesManager.getSolrUrl() == null) {
+            LOG.info("autocomplete.solrurl is not set, so not sending the values to Solr");
+            return;
+        }
+
         SolrClient solrClient = SolrClientHandler
                 .getClientInstance(this.propertiesManager.getSolrUrl());
 
@@ -315,6 +364,50 @@ public class AutoCompleter
         }
     }
 
+    private static void storePrefixIndex(ObjectStore os, PrefixIndex index) throws IOException {
+        if (!(os instanceof ObjectStoreInterMineImpl)) {
+            LOG.warn("Not storing the autocompletion index, as " + os + " has no database");
+            return;
+        }
+        try {
+            OutputStream out = MetadataManager.storeLargeBinary(
+                    ((ObjectStoreInterMineImpl) os).getDatabase(),
+                    MetadataManager.AUTOCOMPLETE_INDEX);
+            try {
+                index.write(out);
+            } finally {
+                out.close();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to store the autocompletion index", e);
+        }
+    }
+
+    private static PrefixIndex readPrefixIndex(ObjectStore os) {
+        if (!(os instanceof ObjectStoreInterMineImpl)) {
+            return null;
+        }
+        try {
+            InputStream in = MetadataManager.readLargeBinary(
+                    ((ObjectStoreInterMineImpl) os).getDatabase(),
+                    MetadataManager.AUTOCOMPLETE_INDEX);
+            if (in == null) {
+                LOG.info("No autocompletion index in the database, using Solr");
+                return null;
+            }
+            try {
+                return PrefixIndex.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (SQLException e) {
+            LOG.warn("Could not read the autocompletion index, using Solr", e);
+        } catch (IOException e) {
+            LOG.warn("Could not read the autocompletion index, using Solr", e);
+        }
+        return null;
+    }
+
     private List<String> getAllExistingFieldsFromSolr(SolrClient solrClient)
             throws IOException, SolrServerException {
         List<String> allFields = new ArrayList<String>();
@@ -0,0 +1,255 @@
+package org.intermine.web.autocompletion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An in-memory index of the values of the fields that can be autocompleted, answering prefix
+ * queries without leaving the webapp.
+ * <p>
+ * The values of each field are held in order of how many objects have them, and every word of
+ * every value is held in a sorted array, with the positions of the values it appears in.  A query
+ * is answered by finding the words starting with each word of the query by binary search, and
+ * taking the values that contain a match for every word of the query.  As the values are in order
+ * of score, the best matches are the first ones found.
+ * <p>
+ * Only the values are written out by write(); the words are found again when the index is read.
+ */
+public class PrefixIndex
+{
+    private static final int FORMAT_VERSION = 1;
+
+    private final Map<String, FieldIndex> fields = new HashMap<String, FieldIndex>();
+
+    /**
+     * Add the values of a field to the index, replacing any that were there before.
+     *
+     * @param className the unqualified name of the class, eg. SOTerm
+     * @param field the name of the field, eg. name
+     * @param counts the values of the field, with the number of objects that have each one
+     */
+    public void put(String className, String field, final Map<String, Integer> counts) {
+        List<String> values = new ArrayList<String>(counts.keySet());
+        Collections.sort(values, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int byCount = counts.get(b).compareTo(counts.get(a));
+                if (byCount != 0) {
+                    return byCount;
+                }
+                int byLength = a.length() - b.length();
+                return (byLength != 0) ? byLength : a.compareTo(b);
+            }
+        });
+        fields.put(key(className, field), new FieldIndex(values.toArray(new String[0])));
+    }
+
+    /**
+     * @param className the unqualified name of the class
+     * @param field the name of the field
+     * @return whether the index has the values of this field
+     */
+    public boolean contains(String className, String field) {
+        return fields.containsKey(key(className, field));
+    }
+
+    /**
+     * Find the values of a field with a word starting with each word of the query, ignoring case.
+     *
+     * @param query one or more words, or the start of them
+     * @param className the unqualified name of the class
+     * @param field the name of the field
+     * @param n the most values to return
+     * @return the matching values, the commonest first
+     */
+    public List<String> search(String query, String className, String field, int n) {
+        FieldIndex index = fields.get(key(className, field));
+        if (index == null || n <= 0) {
+            return Collections.emptyList();
+        }
+        return index.search(tokenise(query), n);
+    }
+
+    /**
+     * Write the index, compressed, to a stream.  The stream is not closed.
+     *
+     * @param os the stream to write to
+     * @throws IOException if the index cannot be written
+     */
+    public void write(OutputStream os) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(os, 64 * 1024);
+        DataOutputStream out = new DataOutputStream(gzip);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(fields.size());
+        for (Map.Entry<String, FieldIndex> entry : fields.entrySet()) {
+            writeString(out, entry.getKey());
+            String[] values = entry.getValue().values;
+            out.writeInt(values.length);
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+        out.flush();
+        gzip.finish();
+    }
+
+    /**
+     * Read an index written by write().
+     *
+     * @param is the stream to read from, which is not closed
+     * @return the index
+     * @throws IOException if the index cannot be read
+     */
+    public static PrefixIndex read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(new GZIPInputStream(is, 64 * 1024));
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown autocompletion index version " + version);
+        }
+        PrefixIndex index = new PrefixIndex();
+        int fieldCount = in.readInt();
+        for (int i = 0; i < fieldCount; i++) {
+            String key = readString(in);
+            String[] values = new String[in.readInt()];
+            for (int j = 0; j < values.length; j++) {
+                values[j] = readString(in);
+            }
+            index.fields.put(key, new FieldIndex(values));
+        }
+        return index;
+    }
+
+    private static String key(String className, String field) {
+        return className + "." + field;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        // not writeUTF, which can't write strings of more than 64k bytes
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Split a value or a query into lower case words, at anything that is not a letter or digit.
+     */
+    static List<String> tokenise(String s) {
+        List<String> tokens = new ArrayList<String>();
+        String lower = s.toLowerCase();
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean inWord = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * The values of one field, and the words in them.
+     */
+    private static final class FieldIndex
+    {
+        // the values, the commonest first
+        private final String[] values;
+        // every word in the values, sorted
+        private final String[] words;
+        // for each word, the positions in values of the values that contain it, in order
+        private final int[][] postings;
+
+        FieldIndex(String[] values) {
+            this.values = values;
+            Map<String, List<Integer>> byWord = new HashMap<String, List<Integer>>();
+            for (int i = 0; i < values.length; i++) {
+                for (String token : new HashSet<String>(tokenise(values[i]))) {
+                    List<Integer> ids = byWord.get(token);
+                    if (ids == null) {
+                        ids = new ArrayList<Integer>(1);
+                        byWord.put(token, ids);
+                    }
+                    ids.add(i);
+                }
+            }
+            words = byWord.keySet().toArray(new String[byWord.size()]);
+            Arrays.sort(words);
+            postings = new int[words.length][];
+            for (int i = 0; i < words.length; i++) {
+                List<Integer> ids = byWord.get(words[i]);
+                postings[i] = new int[ids.size()];
+                for (int j = 0; j < postings[i].length; j++) {
+                    postings[i][j] = ids.get(j);
+                }
+            }
+        }
+
+        List<String> search(List<String> prefixes, int n) {
+            if (prefixes.isEmpty()) {
+                return Collections.emptyList();
+            }
+            BitSet matches = null;
+            for (String prefix : prefixes) {
+                BitSet found = new BitSet(values.length);
+                int from = firstWordFrom(prefix);
+                for (int i = from; i < words.length && words[i].startsWith(prefix); i++) {
+                    for (int id : postings[i]) {
+                        found.set(id);
+                    }
+                }
+                if (matches == null) {
+                    matches = found;
+                } else {
+                    matches.and(found);
+                }
+                if (matches.isEmpty()) {
+                    return Collections.emptyList();
+                }
+            }
+            List<String> results = new ArrayList<String>(Math.min(n, matches.cardinality()));
+            for (int id = matches.nextSetBit(0); id >= 0 && results.size() < n;
+                    id = matches.nextSetBit(id + 1)) {
+                results.add(values[id]);
+            }
+            return results;
+        }
+
+        private int firstWordFrom(String prefix) {
+            int pos = Arrays.binarySearch(words, prefix);
+            return (pos >= 0) ? pos : -(pos + 1);
+        }
+    }
+}
@@ -11,6 +11,7 @@ package org.intermine.web.context;
  */
 
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A thread factory that automatically sets threads it creates to be
@@ -20,9 +21,28 @@ import java.util.concurrent.ThreadFactory;
  */
 class DaemonThreadFactory implements ThreadFactory
 {
+    private final String prefix;
+    private final AtomicInteger count = new AtomicInteger(0);
+
+    /**
+     * Create a factory for threads with the default names.
+     */
+    DaemonThreadFactory() {
+        this(null);
+    }
+
+    /**
+     * Create a factory for threads named after the pool they belong to.
+     * @param prefix the start of the name of each thread, which is followed by a number
+     */
+    DaemonThreadFactory(String prefix) {
+        this.prefix = prefix;
+    }
+
     @Override
     public Thread newThread(Runnable r) {
-        Thread t = new Thread(r);
+        Thread t = (prefix == null) ? new Thread(r)
+            : new Thread(r, prefix + " " + count.incrementAndGet());
         t.setDaemon(true);
         return t;
     }
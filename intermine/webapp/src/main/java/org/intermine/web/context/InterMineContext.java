@@ -21,6 +21,12 @@ import java.util.Properties;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 import org.intermine.api.InterMineAPI;
@@ -48,6 +54,24 @@ public final class InterMineContext implements Shutdownable
     }
 
     private static final int WORKERS = 10;
+    private static final int QUERY_THREADS = 16;
+    private static final int QUERY_QUEUE = 256;
+    private static final int UPGRADE_THREADS = 2;
+    private static final int UPGRADE_QUEUE = 1024;
+    private static final int BATCH_THREADS = 64;
+    private static final int REPORT_OBJECT_THREADS = 8;
+
+    /**
+     * Runs rejected work in the thread that submitted it.  Unlike CallerRunsPolicy it does so
+     * even after the pool has been shut down, so that nobody waits for work that never runs.
+     */
+    private static final RejectedExecutionHandler RUN_IN_CALLER = new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            r.run();
+        }
+    };
+
     private static InterMineAPI im;
     private static Properties webProperties;
     private static WebConfig webConfig;
@@ -57,6 +81,12 @@ public final class InterMineContext implements Shutdownable
     private static KeyStore keyStore = null;
     private static ArrayBlockingQueue<MailAction> mailQueue;
     private static ExecutorService mailService;
+    private static ThreadPoolExecutor queryService;
+    private static ThreadPoolExecutor upgradeService;
+    private static ScheduledExecutorService scheduler;
+    private static ThreadPoolExecutor batchService;
+    private static ThreadPoolExecutor reportObjectService;
+    private static ThreadPoolExecutor compressionService;
     private static ResourceOpener opener;
 
     /**
@@ -86,6 +116,25 @@ public final class InterMineContext implements Shutdownable
         mailQueue = new ArrayBlockingQueue<MailAction>(10000);
         mailService = Executors.newCachedThreadPool(new DaemonThreadFactory());
         startMailerThreads(emailer);
+        queryService = createPool("query worker",
+                getInt(webProps, "webapp.query.threads", QUERY_THREADS),
+                getInt(webProps, "webapp.query.queue", QUERY_QUEUE));
+        upgradeService = createPool("list upgrader",
+                getInt(webProps, "webapp.upgrade.threads", UPGRADE_THREADS),
+                getInt(webProps, "webapp.upgrade.queue", UPGRADE_QUEUE));
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                new DaemonThreadFactory("scheduler"));
+        batchService = new ThreadPoolExecutor(0,
+                Math.max(1, getInt(webProps, "webapp.queryBatch.threads", BATCH_THREADS)), 60L,
+                TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new DaemonThreadFactory("QueryBatch worker"));
+        int loaders = Math.max(1, getInt(webProps, "webapp.reportObjectCache.threads",
+                REPORT_OBJECT_THREADS));
+        reportObjectService = createPool("ReportObject loader", loaders, loaders * 16);
+        reportObjectService.setRejectedExecutionHandler(RUN_IN_CALLER);
+        int compressors = Runtime.getRuntime().availableProcessors();
+        compressionService = createPool("gzip compressor", compressors, compressors * 64);
+        compressionService.setRejectedExecutionHandler(RUN_IN_CALLER);
         ShutdownHook.registerObject(new InterMineContext());
 
         isInitialised = true;
@@ -157,6 +206,107 @@ public final class InterMineContext implements Shutdownable
         }
     }
 
+    /**
+     * Get the pool that runs the queries started from users' sessions. The pool has a fixed
+     * number of threads, set by the webapp.query.threads property, and a bounded queue, set by
+     * webapp.query.queue, so it rejects new work when too many queries are waiting.
+     *
+     * @return The executor for background queries.
+     */
+    public static ExecutorService getQueryExecutor() {
+        checkInit();
+        return queryService;
+    }
+
+    /**
+     * Get the pool that upgrades users' lists after a new release. It is kept apart from the query
+     * pool, so that the upgrades started when the webapp starts cannot hold up users' queries.
+     * The number of threads is set by the webapp.upgrade.threads property, and the queue, which
+     * rejects new work when it is full, by webapp.upgrade.queue.
+     *
+     * @return The executor for list upgrades.
+     */
+    public static ExecutorService getUpgradeExecutor() {
+        checkInit();
+        return upgradeService;
+    }
+
+    /**
+     * Get the scheduler for short periodic or delayed tasks, such as checking whether a running
+     * query has been cancelled. Tasks must not block.
+     *
+     * @return The shared scheduler.
+     */
+    public static ScheduledExecutorService getScheduler() {
+        checkInit();
+        return scheduler;
+    }
+
+    /**
+     * Get the pool whose threads help to run the queries of a QueryBatch.  The pool has no queue,
+     * so when all of its threads, set by the webapp.queryBatch.threads property, are busy, a batch
+     * runs its queries in fewer threads.
+     *
+     * @return The executor for query batches.
+     */
+    public static ExecutorService getQueryBatchExecutor() {
+        checkInit();
+        return batchService;
+    }
+
+    /**
+     * Get the pool that loads the inline lists and collections of report pages.  The number of
+     * threads is set by the webapp.reportObjectCache.threads property.  When the pool is busy, or
+     * has been shut down, the work is done in the thread that asked for it instead.
+     *
+     * @return The executor for report page loading.
+     */
+    public static ExecutorService getReportObjectExecutor() {
+        checkInit();
+        return reportObjectService;
+    }
+
+    /**
+     * Get the pool that compresses the output of web services, with a thread for each processor.
+     * When the pool is busy, or has been shut down, the work is done in the thread that asked for
+     * it instead.
+     *
+     * @return The executor for compression.
+     */
+    public static ExecutorService getCompressionExecutor() {
+        checkInit();
+        return compressionService;
+    }
+
+    private static ThreadPoolExecutor createPool(String name, int threads, int queue) {
+        ThreadPoolExecutor retval = new ThreadPoolExecutor(threads, threads, 60L,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queue),
+                new DaemonThreadFactory(name));
+        retval.allowCoreThreadTimeOut(true);
+        return retval;
+    }
+
+    /**
+     * Read a whole number from some properties.
+     *
+     * @param props the properties, may be null
+     * @param key the name of the property
+     * @param def the value to use if the property is not set or is not a number
+     * @return the value of the property
+     */
+    public static int getInt(Properties props, String key, int def) {
+        String value = (props == null) ? null : props.getProperty(key);
+        if (value == null || "".equals(value.trim())) {
+            return def;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Property " + key + " is not a number: " + value + ", using " + def);
+            return def;
+        }
+    }
+
     /**
      * Send the signal that shutdown is happening - try and release resources.
      */
@@ -182,6 +332,25 @@ public final class InterMineContext implements Shutdownable
             // Tell the pool to close.
             mailService.shutdownNow();
         }
+        if (queryService != null) {
+            queryService.shutdownNow();
+        }
+        if (upgradeService != null) {
+            upgradeService.shutdownNow();
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (batchService != null) {
+            batchService.shutdownNow();
+        }
+        // requests wait for the work already queued on these, so let it finish
+        if (reportObjectService != null) {
+            reportObjectService.shutdown();
+        }
+        if (compressionService != null) {
+            compressionService.shutdown();
+        }
         im = null;
         webProperties = null;
         webConfig = null;
@@ -189,6 +358,12 @@ public final class InterMineContext implements Shutdownable
         keyStore = null;
         mailQueue = null;
         mailService = null;
+        queryService = null;
+        upgradeService = null;
+        scheduler = null;
+        batchService = null;
+        reportObjectService = null;
+        compressionService = null;
         isInitialised = false;
     }
 
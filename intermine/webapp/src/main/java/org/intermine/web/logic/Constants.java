@@ -152,6 +152,12 @@ public final class Constants
      */
     public static final String RUNNING_QUERIES = "RUNNING_QUERIES";
 
+    /**
+     * Session attribute.  A Map from query id to the background task running that query, so the
+     * queries of a session can be cancelled when it expires.
+     */
+    public static final String RUNNING_QUERY_TASKS = "RUNNING_QUERY_TASKS";
+
     /**
      * Servlet attribute. Map from MultiKey(experiment, gene) id to temp file name.
      */
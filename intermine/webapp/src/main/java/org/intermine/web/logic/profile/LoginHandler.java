@@ -14,6 +14,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
@@ -34,6 +35,7 @@ import org.intermine.api.util.NameUtil;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.intermine.ObjectStoreWriterInterMineImpl;
 import org.intermine.sql.DatabaseUtil;
+import org.intermine.web.context.InterMineContext;
 import org.intermine.web.logic.Constants;
 import org.intermine.web.logic.session.SessionMethods;
 import org.intermine.web.struts.InterMineAction;
@@ -226,9 +228,12 @@ public abstract class LoginHandler extends InterMineAction
                     .getConnection();
             if (api.getBagManager().isAnyBagNotCurrent(profile)
                     && !DatabaseUtil.isBagValuesEmpty(con)) {
-                Thread upgrade = new Thread(procedure);
-                upgrade.setDaemon(true);
-                upgrade.start();
+                try {
+                    InterMineContext.getUpgradeExecutor().execute(procedure);
+                } catch (RejectedExecutionException e) {
+                    LOG.warn("Too busy to upgrade the lists of " + profile.getUsername()
+                            + " now, they will be upgraded at the next login");
+                }
             }
         } catch (SQLException sqle) {
             LOG.error("Problems retrieving the connection", sqle);
@@ -21,6 +21,11 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -103,6 +108,10 @@ public class ReportObject
      */
     private Properties webProperties;
 
+    /** @var the pool to load inline lists and collections with, or null to load them in turn */
+    private final ExecutorService loader;
+    private volatile boolean initialised = false;
+
     private static final Logger LOG = Logger.getLogger(ReportObject.class);
 
     /**
@@ -115,7 +124,22 @@ public class ReportObject
      */
     public ReportObject(InterMineObject object, WebConfig webConfig, InterMineAPI im,
             Properties webProperties) throws Exception {
+        this(object, webConfig, im, webProperties, null);
+    }
+
+    /**
+     * Setup internal ReportObject that loads its inline lists and collections in parallel
+     * @param object InterMineObject
+     * @param webConfig WebConfig
+     * @param im InterMineAPI
+     * @param webProperties web properties config
+     * @param loader the pool to load inline lists and collections with, or null
+     * @throws Exception Exception
+     */
+    public ReportObject(InterMineObject object, WebConfig webConfig, InterMineAPI im,
+            Properties webProperties, ExecutorService loader) throws Exception {
         this.object = object;
+        this.loader = loader;
         this.webConfig = webConfig;
         this.im = im;
         this.webProperties = webProperties;
@@ -157,9 +181,7 @@ public class ReportObject
      * @return the attributes
      */
     public Map<String, Object> getAttributes() {
-        if (attributes == null) {
-            initialise();
-        }
+        initialise();
         return attributes;
     }
 
@@ -176,9 +198,7 @@ public class ReportObject
      * @return the collections
      */
     public Map<String, DisplayCollection> getCollections() {
-        if (collections == null) {
-            initialise();
-        }
+        initialise();
         return collections;
     }
 
@@ -198,7 +218,8 @@ public class ReportObject
         long startTime = System.currentTimeMillis();
         // are we setup yet?
         if (objectSummaryFields == null) {
-            objectSummaryFields = new ArrayList<ReportObjectField>();
+            // build the list before publishing it, as ReportObjects are shared between requests
+            List<ReportObjectField> summaryFields = new ArrayList<ReportObjectField>();
             List<ReportObjectField> objectOtherSummaryFields = new ArrayList<ReportObjectField>();
 
             // to make sure we do not show fields that are replaced elsewhere
@@ -236,7 +257,7 @@ public class ReportObject
                     if (!fc.getHide()) {
                         // summary fields should go first
                         if (fc.getShowInSummary()) {
-                            objectSummaryFields.add(rof);
+                            summaryFields.add(rof);
                         } else { // show in summary also, but not right now...
                             objectOtherSummaryFields.add(rof);
                         }
@@ -246,7 +267,7 @@ public class ReportObject
             }
 
             // 2. then add configured fields that don't have showInSummary=true
-            objectSummaryFields.addAll(objectOtherSummaryFields);
+            summaryFields.addAll(objectOtherSummaryFields);
 
             // 3. any attributes not configured at all are shown last
             if (attributes != null) {
@@ -260,7 +281,7 @@ public class ReportObject
                                 false,
                                 false
                         );
-                        objectSummaryFields.add(rof);
+                        summaryFields.add(rof);
                     }
                 }
             }
@@ -277,14 +298,15 @@ public class ReportObject
             }
             if (allTitles.size() > 0) {
                 List<ReportObjectField> temp = new ArrayList<ReportObjectField>();
-                for (ReportObjectField rof : objectSummaryFields) {
+                for (ReportObjectField rof : summaryFields) {
                     String rofName = rof.getName();
                     if (!allTitles.contains(rofName)) {
                         temp.add(rof);
                     }
                 }
-                objectSummaryFields = temp;
+                summaryFields = temp;
             }
+            objectSummaryFields = summaryFields;
             long endTime = System.currentTimeMillis();
             LOG.info("TIME objectSummaryFields creation took: " + (endTime - startTime) + "ms");
         } else {
@@ -641,12 +663,10 @@ public class ReportObject
     /**
      * Resolve an InlineList by filling it up with a list of list objects, part of initialise()
      * @param listConfig retrieved from Type
-     * @param bagOfInlineListNames is a bag of names of lists we have resolved so far so these
-     *        fields are not resolved elsewhere and skipped instead
+     * @return the resolved list
      * @see setDescriptorOnInlineList() is still needed when traversing FieldDescriptors
      */
-    private void initialiseInlineList(InlineListConfig listConfig,
-            HashMap<String, Boolean> bagOfInlineListNames) {
+    private InlineList initialiseInlineList(InlineListConfig listConfig) {
         long startTime = System.currentTimeMillis();
         // soon to be list of values
         Set<Object> listOfListObjects = null;
@@ -680,33 +700,20 @@ public class ReportObject
             throw new RuntimeException("Your collections of inline lists"
                     + "are failing you", e);
         }
-
-        // place the list
-        if (listConfig.getShowInHeader()) {
-            inlineListsHeader.add(list);
-        } else {
-            inlineListsNormal.add(list);
-        }
-
-        // save name of the collection
-        String path = listConfig.getPath();
-        bagOfInlineListNames.put(path.substring(0, path.indexOf('.')), true);
         long endTime = System.currentTimeMillis();
         LOG.info("TIME initialiseInlineLists took: " + (endTime - startTime) + "ms");
+        return list;
     }
 
     /**
      * Resolve an attribute, part of initialise()
      * @param fd FieldDescriptor
+     * @param newAttributes the attribute values to add to
+     * @param newAttributeDescriptors the attribute descriptors to add to
      */
-    private void initialiseAttribute(FieldDescriptor fd) {
+    private void initialiseAttribute(FieldDescriptor fd, Map<String, Object> newAttributes,
+            Map<String, FieldDescriptor> newAttributeDescriptors) {
         long startTime = System.currentTimeMillis();
-        // bags
-        attributes = (attributes != null) ? attributes
-                : new TreeMap<String, Object>(String.CASE_INSENSITIVE_ORDER);
-        attributeDescriptors = (attributeDescriptors != null) ? attributeDescriptors
-                : new HashMap<String, FieldDescriptor>();
-
         Object fieldValue = null;
         try {
             fieldValue = object.getFieldValue(fd.getName());
@@ -723,8 +730,8 @@ public class ReportObject
                 }
             }
 
-            attributes.put(fd.getName(), fieldValue);
-            attributeDescriptors.put(fd.getName(), fd);
+            newAttributes.put(fd.getName(), fieldValue);
+            newAttributeDescriptors.put(fd.getName(), fd);
         }
         long endTime = System.currentTimeMillis();
         LOG.info("TIME initialiseAttribute " + fd.getName() + " took: " + (endTime - startTime)
@@ -734,16 +741,14 @@ public class ReportObject
     /**
      * Resolve a Reference, part of initialise()
      * @param fd FieldDescriptor
+     * @return the reference, or null if it is always empty for this type of object
      */
-    private void initialiseReference(FieldDescriptor fd) {
+    private DisplayReference initialiseReference(FieldDescriptor fd) {
         long startTime = System.currentTimeMillis();
-        // bag
-        references = (references != null) ? references
-                : new TreeMap<String, DisplayReference>(String.CASE_INSENSITIVE_ORDER);
-
         ReferenceDescriptor ref = (ReferenceDescriptor) fd;
 
         String refName = ref.getName();
+        DisplayReference newReference = null;
         // do not bother with 'em if they WILL be size 0
         if (!nullRefsCols.contains(refName)) {
             // check whether reference is null without dereferencing
@@ -759,34 +764,29 @@ public class ReportObject
             } else {
                 // no go on objects that are not Proxies, ie Tests
             }
-            DisplayReference newReference = null;
             try {
                 newReference = new DisplayReference(proxy, ref, webConfig, im.getClassKeys(),
                         objectType);
             } catch (Exception e) {
                 e.printStackTrace();
             }
-
-            if (newReference != null) {
-                references.put(refName, newReference);
-            }
         }
         long endTime = System.currentTimeMillis();
         LOG.info("TIME initialiseReference " + fd.getName() + " took: " + (endTime - startTime)
                 + "ms");
+        return newReference;
     }
 
     /**
-     * Resolve a Collection, part of initialise()
+     * Resolve a Collection, part of initialise().  This runs the queries for the types in the
+     * collection and for its size, so it is called in parallel for the collections of an object.
      * @param fd FieldDescriptor
+     * @return the collection, or null if it is always empty for this type of object
      */
-    private void initialiseCollection(FieldDescriptor fd) {
+    private DisplayCollection initialiseCollection(FieldDescriptor fd) {
         long startTime = System.currentTimeMillis();
-        // bag
-        collections = (collections != null) ? collections
-                : new TreeMap<String, DisplayCollection>(String.CASE_INSENSITIVE_ORDER);
-
         String colName = fd.getName();
+        DisplayCollection newCollection = null;
         // do not bother with 'em if they WILL be size 0
         if (!nullRefsCols.contains(colName)) {
             Object fieldValue = null;
@@ -803,39 +803,81 @@ public class ReportObject
             long queryTime = System.currentTimeMillis() - queryStartTime;
             LOG.info("TIME - query for types in collection: " + colName + " took: " + queryTime);
 
-            DisplayCollection newCollection = null;
             try {
                 newCollection = new DisplayCollection((Collection<?>) fieldValue,
                         (CollectionDescriptor) fd, webConfig, webProperties, im.getClassKeys(),
                         listOfTypes, objectType);
+                // the report page shows the size of every collection, so find it now
+                newCollection.getSize();
             } catch (Exception e) {
                 e.printStackTrace();
             }
-
-            if (newCollection != null) {
-                collections.put(colName, newCollection);
-            }
         }
         long endTime = System.currentTimeMillis();
         LOG.info("TIME initialiseCollection " + fd.getName() + " took: " + (endTime - startTime)
                 + "ms");
+        return newCollection;
+    }
+
+    /**
+     * Run a task on the loader, or in this thread if there is no loader.
+     */
+    private <T> Future<T> load(Callable<T> task) {
+        if (loader != null) {
+            return loader.submit(task);
+        }
+        FutureTask<T> future = new FutureTask<T>(task);
+        future.run();
+        return future;
+    }
+
+    private static <T> T getLoaded(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading a report page", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
     }
 
     /**
-     * Create the Maps and Lists returned by the getters in this class.
+     * Ensure the Maps and Lists returned by the getters in this class have been created.
      */
     private void initialise() {
+        if (!initialised) {
+            synchronized (this) {
+                if (!initialised) {
+                    doInitialise();
+                    initialised = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the Maps and Lists returned by the getters in this class.  The inline lists and the
+     * collections are loaded in parallel, as each needs its own queries.
+     */
+    private void doInitialise() {
         // TODO don't initialise replaced collections!  Work this out first.
 
         long startTime = System.currentTimeMillis();
         // combined Map of References & Collections
-        refsAndCollections = new TreeMap<String, DisplayField>(String.CASE_INSENSITIVE_ORDER);
-
-        // Ensure not null
-        inlineListsHeader = (inlineListsHeader != null)
-                ? inlineListsHeader : new ArrayList<InlineList>();
-        inlineListsNormal = (inlineListsNormal != null)
-                ? inlineListsNormal : new ArrayList<InlineList>();
+        Map<String, DisplayField> newRefsAndCollections =
+            new TreeMap<String, DisplayField>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, Object> newAttributes =
+            new TreeMap<String, Object>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, FieldDescriptor> newAttributeDescriptors =
+            new HashMap<String, FieldDescriptor>();
+        Map<String, DisplayReference> newReferences =
+            new TreeMap<String, DisplayReference>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, DisplayCollection> newCollections =
+            new TreeMap<String, DisplayCollection>(String.CASE_INSENSITIVE_ORDER);
 
         Type type = webConfig.getTypes().get(getClassDescriptor().getName());
         // init lists from WebConfig Type
@@ -843,8 +885,17 @@ public class ReportObject
         // a map of inlineList object names so we do not include them elsewhere
         HashMap<String, Boolean> bagOfInlineListNames = new HashMap<String, Boolean>();
         // fill up
-        for (InlineListConfig listConfig : inlineListsWebConfig) {
-            initialiseInlineList(listConfig, bagOfInlineListNames);
+        List<Future<InlineList>> loadingLists = new ArrayList<Future<InlineList>>();
+        for (final InlineListConfig listConfig : inlineListsWebConfig) {
+            loadingLists.add(load(new Callable<InlineList>() {
+                @Override
+                public InlineList call() {
+                    return initialiseInlineList(listConfig);
+                }
+            }));
+            // save name of the collection
+            String path = listConfig.getPath();
+            bagOfInlineListNames.put(path.substring(0, path.indexOf('.')), true);
         }
 
         /** Attributes, References, Collections through FieldDescriptors **/
@@ -853,34 +904,70 @@ public class ReportObject
                 .getNullReferencesAndCollections(getClassDescriptor().getName());
 
         Set<String> replacedFields = getReplacedFieldExprs();
-        for (FieldDescriptor fd : getClassDescriptor().getAllFieldDescriptors()) {
+        List<FieldDescriptor> inlineListDescriptors = new ArrayList<FieldDescriptor>();
+        Map<String, Future<DisplayCollection>> loadingCollections =
+            new LinkedHashMap<String, Future<DisplayCollection>>();
+        for (final FieldDescriptor fd : getClassDescriptor().getAllFieldDescriptors()) {
             // only continue if we have not included this object in an inline list
             if (!bagOfInlineListNames.containsKey(fd.getName())
                     && !replacedFields.contains(fd.getName())) {
                 if (fd.isAttribute() && !"id".equals(fd.getName())) {
                     /** Attribute **/
-                    initialiseAttribute(fd);
+                    initialiseAttribute(fd, newAttributes, newAttributeDescriptors);
                 } else if (fd.isReference()) {
                     /** Reference **/
-                    initialiseReference(fd);
+                    DisplayReference newReference = initialiseReference(fd);
+                    if (newReference != null) {
+                        newReferences.put(fd.getName(), newReference);
+                    }
                 } else if (fd.isCollection()) {
                     /** Collection **/
-                    initialiseCollection(fd);
+                    loadingCollections.put(fd.getName(), load(new Callable<DisplayCollection>() {
+                        @Override
+                        public DisplayCollection call() {
+                            return initialiseCollection(fd);
+                        }
+                    }));
                 }
             } else {
-                /** InlineList (cont...) **/
-                // assign Descriptor from FieldDescriptors to the InlineList
-                setDescriptorOnInlineList(fd.getName(), fd);
+                inlineListDescriptors.add(fd);
             }
         }
 
-        // make a combined Map
-        if (references != null) {
-            refsAndCollections.putAll(references);
+        // place the lists, in the order they are configured
+        List<InlineList> newInlineListsHeader = new ArrayList<InlineList>();
+        List<InlineList> newInlineListsNormal = new ArrayList<InlineList>();
+        for (int i = 0; i < inlineListsWebConfig.size(); i++) {
+            InlineList list = getLoaded(loadingLists.get(i));
+            if (inlineListsWebConfig.get(i).getShowInHeader()) {
+                newInlineListsHeader.add(list);
+            } else {
+                newInlineListsNormal.add(list);
+            }
+        }
+        /** InlineList (cont...) **/
+        // assign Descriptor from FieldDescriptors to the InlineList
+        for (FieldDescriptor fd : inlineListDescriptors) {
+            setDescriptorOnInlineList(newInlineListsNormal, fd.getName(), fd);
         }
-        if (collections != null) {
-            refsAndCollections.putAll(collections);
+        for (Map.Entry<String, Future<DisplayCollection>> entry : loadingCollections.entrySet()) {
+            DisplayCollection newCollection = getLoaded(entry.getValue());
+            if (newCollection != null) {
+                newCollections.put(entry.getKey(), newCollection);
+            }
         }
+
+        // make a combined Map
+        newRefsAndCollections.putAll(newReferences);
+        newRefsAndCollections.putAll(newCollections);
+
+        attributes = newAttributes;
+        attributeDescriptors = newAttributeDescriptors;
+        references = newReferences;
+        collections = newCollections;
+        refsAndCollections = newRefsAndCollections;
+        inlineListsHeader = newInlineListsHeader;
+        inlineListsNormal = newInlineListsNormal;
         long endTime = System.currentTimeMillis();
         LOG.info("TIME initialise took: " + (endTime - startTime) + "ms");
     }
@@ -890,9 +977,7 @@ public class ReportObject
      * @return the collections
      */
     public Map<String, DisplayField> getRefsAndCollections() {
-        if (refsAndCollections == null) {
-            initialise();
-        }
+        initialise();
         return refsAndCollections;
     }
 
@@ -903,10 +988,11 @@ public class ReportObject
      */
     public Set<String> getReplacedFieldExprs() {
         if (replacedFieldExprs == null) {
-            replacedFieldExprs = new HashSet<String>();
+            Set<String> replaced = new HashSet<String>();
             for (ReportDisplayer reportDisplayer : getAllReportDisplayers()) {
-                replacedFieldExprs.addAll(reportDisplayer.getReplacedFieldExprs());
+                replaced.addAll(reportDisplayer.getReplacedFieldExprs());
             }
+            replacedFieldExprs = replaced;
         }
         return replacedFieldExprs;
     }
@@ -922,20 +1008,20 @@ public class ReportObject
      * @return map of attribute descriptors
      */
     public Map<String, FieldDescriptor> getAttributeDescriptors() {
-        if (attributeDescriptors == null) {
-            initialise();
-        }
+        initialise();
         return attributeDescriptors;
     }
 
     /**
      * Set Descriptor (for placement) on an InlineList, only done for normal lists
+     * @param lists the normal InlineLists
      * @param name
      * @param fd
      */
-    private void setDescriptorOnInlineList(String name, FieldDescriptor fd) {
+    private static void setDescriptorOnInlineList(List<InlineList> lists, String name,
+            FieldDescriptor fd) {
     done:
-        for (InlineList list : inlineListsNormal) {
+        for (InlineList list : lists) {
             Object path = list.getPath();
             if (((String) path).substring(0, ((String) path).indexOf('.')).equals(name)) {
                 list.setDescriptor(fd);
@@ -949,9 +1035,7 @@ public class ReportObject
     * @return InlineLists that are resolved into their respective placements
     */
     public List<InlineList> getNormalInlineLists() {
-        if (inlineListsNormal == null) {
-            initialise();
-        }
+        initialise();
         return inlineListsNormal;
     }
 
@@ -960,9 +1044,7 @@ public class ReportObject
      * @return InlineLists to be shown in the header
      */
     public List<InlineList> getHeaderInlineLists() {
-        if (inlineListsHeader == null) {
-            initialise();
-        }
+        initialise();
         return inlineListsHeader;
     }
 
@@ -10,25 +10,65 @@ package org.intermine.web.logic.results;
  *
  */
 
+import java.lang.ref.SoftReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
+import org.apache.log4j.Logger;
 import org.intermine.api.InterMineAPI;
+import org.intermine.api.util.SerialNumberWatcher;
+import org.intermine.metrics.Counter;
+import org.intermine.metrics.MetricsRegistry;
 import org.intermine.model.InterMineObject;
-import org.intermine.util.CacheMap;
+import org.intermine.web.context.InterMineContext;
 import org.intermine.web.logic.config.WebConfig;
 
 /**
  * A factory for ReportObjects.  If get() is called and the is no existing ReportObject for the
  * argument InterMineObject, one is created, saved and returned.
+ * <p>
+ * ReportObjects are shared by every session.  The cache is keyed by the object id and the serial
+ * number of the production database, and holds at most webapp.reportObjectCache.size objects
+ * (default 1000), dropping the least recently used first.  The ReportObjects are held softly, so
+ * the garbage collector may drop them before that when memory runs short.  The lock on the cache
+ * is only held to look up and insert entries, never while a ReportObject is made.  The
+ * ReportObjects share the webapp's pool of report object loaders, sized by
+ * webapp.reportObjectCache.threads, to load their inline lists and collections in parallel.
  *
  * @author Radek Stepan (Kim Rutherford more like)
  */
-
-public class ReportObjectFactory extends CacheMap<InterMineObject, ReportObject>
+public class ReportObjectFactory extends AbstractMap<InterMineObject, ReportObject>
 {
+    private static final Logger LOG = Logger.getLogger(ReportObjectFactory.class);
+
+    private static final int DEFAULT_SIZE = 1000;
+
     private final InterMineAPI im;
     private final WebConfig webConfig;
     private final Properties webProperties;
+    private final int maxSize;
+    private final ExecutorService loader;
+    private final LinkedHashMap<String, SoftReference<ReportObject>> cache =
+        new LinkedHashMap<String, SoftReference<ReportObject>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, SoftReference<ReportObject>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    private final SerialNumberWatcher serialNumberWatcher;
+    private final Counter hits = MetricsRegistry.getInstance().cacheCounter("reportobjects", true);
+    private final Counter misses =
+        MetricsRegistry.getInstance().cacheCounter("reportobjects", false);
+    private volatile String serialNumber = null;
 
     /**
      * Create a new ReportObjectCache for the given session.
@@ -37,15 +77,36 @@ public class ReportObjectFactory extends CacheMap<InterMineObject, ReportObject>
      * @param webProperties web properties
      */
     public ReportObjectFactory(InterMineAPI im, WebConfig webConfig, Properties webProperties) {
+        this(im, webConfig, webProperties, new SerialNumberWatcher(im.getObjectStore()),
+                InterMineContext.getReportObjectExecutor());
+    }
+
+    /**
+     * Create a new ReportObjectCache that finds the serial number of the production database with
+     * the given watcher, and loads collections on the given pool.
+     * @param im the InterMine API
+     * @param webConfig global web configuration
+     * @param webProperties web properties
+     * @param serialNumberWatcher the watcher of the production database serial number
+     * @param loader the pool to load inline lists and collections with, or null to load them in
+     * the request thread
+     */
+    ReportObjectFactory(InterMineAPI im, WebConfig webConfig, Properties webProperties,
+            SerialNumberWatcher serialNumberWatcher, ExecutorService loader) {
         this.im = im;
         this.webConfig = webConfig;
         this.webProperties = webProperties;
+        this.serialNumberWatcher = serialNumberWatcher;
+        this.maxSize = InterMineContext.getInt(webProperties, "webapp.reportObjectCache.size",
+                DEFAULT_SIZE);
+        this.loader = loader;
     }
 
     /**
      * Always returns true because get always returns an Object.
      * {@inheritDoc}
      */
+    @Override
     public boolean containsKey(Object key) {
         return true;
     }
@@ -54,25 +115,51 @@ public class ReportObjectFactory extends CacheMap<InterMineObject, ReportObject>
      * Get a ReportObject for the given InterMineObject.  If there is no existing ReportObject for
      * the argument InterMineObject, one is created, saved and returned.
      * {@inheritDoc}
+     * @param key an InterMineObject to make a ReportObject for
+     * @return a ReportObject
+     */
+    @Override
+    public ReportObject get(Object key) {
+        return get((InterMineObject) key);
+    }
+
+    /**
+     * Get a ReportObject for the given InterMineObject.  If there is no existing ReportObject for
+     * the argument InterMineObject, one is created, saved and returned.
      * @param object an InterMineObject to make a ReportObject for
      * @return a ReportObject
      */
-    @Override public synchronized ReportObject get(Object object) {
-        InterMineObject imObj = (InterMineObject) object;
-        ReportObject reportObject = super.get(imObj);
-
-        if (reportObject == null) {
-            try {
-                reportObject = new ReportObject(imObj, webConfig, im, webProperties);
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to make a reportObject", e);
+    public ReportObject get(InterMineObject object) {
+        String key = getSerialNumber() + "/" + object.getId();
+        ReportObject reportObject = lookup(key);
+        if (reportObject != null) {
+            hits.inc();
+            return reportObject;
+        }
+        misses.inc();
+        try {
+            reportObject = new ReportObject(object, webConfig, im, webProperties, loader);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to make a reportObject", e);
+        }
+        synchronized (cache) {
+            // another request may have made one for the same object meanwhile
+            ReportObject existing = lookup(key);
+            if (existing != null) {
+                return existing;
             }
-
-            super.put(imObj, reportObject);
+            cache.put(key, new SoftReference<ReportObject>(reportObject));
         }
         return reportObject;
     }
 
+    private ReportObject lookup(String key) {
+        synchronized (cache) {
+            SoftReference<ReportObject> ref = cache.get(key);
+            return ref == null ? null : ref.get();
+        }
+    }
+
     /**
      * Disable this method.
      *
@@ -80,7 +167,103 @@ public class ReportObjectFactory extends CacheMap<InterMineObject, ReportObject>
      * @param value Do not use
      * @return never
      */
+    @Override
     public ReportObject put(InterMineObject key, ReportObject value) {
         throw new UnsupportedOperationException("Put called on ReportObjectFactory");
     }
+
+    /**
+     * Return a view of the cached ReportObjects, each keyed by the InterMineObject it was made
+     * for.  Removing an entry removes it from the cache.
+     *
+     * @return the cached ReportObjects
+     */
+    @Override
+    public Set<Map.Entry<InterMineObject, ReportObject>> entrySet() {
+        final List<String> keys = new ArrayList<String>();
+        final List<ReportObject> values = new ArrayList<ReportObject>();
+        synchronized (cache) {
+            for (Map.Entry<String, SoftReference<ReportObject>> entry : cache.entrySet()) {
+                ReportObject reportObject = entry.getValue().get();
+                if (reportObject != null) {
+                    keys.add(entry.getKey());
+                    values.add(reportObject);
+                }
+            }
+        }
+        return new AbstractSet<Map.Entry<InterMineObject, ReportObject>>() {
+            @Override
+            public Iterator<Map.Entry<InterMineObject, ReportObject>> iterator() {
+                return new Iterator<Map.Entry<InterMineObject, ReportObject>>() {
+                    private int index = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index + 1 < values.size();
+                    }
+
+                    @Override
+                    public Map.Entry<InterMineObject, ReportObject> next() {
+                        ReportObject reportObject = values.get(++index);
+                        return new AbstractMap.SimpleImmutableEntry<InterMineObject,
+                            ReportObject>(reportObject.getObject(), reportObject);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (index < 0) {
+                            throw new IllegalStateException();
+                        }
+                        synchronized (cache) {
+                            cache.remove(keys.get(index));
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.size();
+            }
+        };
+    }
+
+    /**
+     * Remove all ReportObjects from the cache.
+     */
+    @Override
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return the number of ReportObjects in the cache
+     */
+    @Override
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Return the serial number of the production database, which changes when a new release is
+     * built, so that objects from an old release are not found.  The cache is cleared when it
+     * changes.
+     */
+    private String getSerialNumber() {
+        String current = serialNumberWatcher.getSerialNumber();
+        String previous = serialNumber;
+        if (current != null && !current.equals(previous)) {
+            serialNumber = current;
+            if (previous != null) {
+                LOG.info("Production database serial number changed, clearing "
+                        + size() + " report objects");
+                clear();
+            }
+        }
+        return current;
+    }
 }
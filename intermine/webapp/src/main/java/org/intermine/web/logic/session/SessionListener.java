@@ -38,5 +38,6 @@ public class SessionListener implements HttpSessionListener
     public void sessionDestroyed(HttpSessionEvent se) {
         //System. out.println("sessionDestroyed");
         se.getSession().removeAttribute(Constants.TABLE_MAP);
+        SessionMethods.cancelRunningQueries(se.getSession());
     }
 }
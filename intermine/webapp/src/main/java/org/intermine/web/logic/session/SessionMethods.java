@@ -12,6 +12,7 @@ package org.intermine.web.logic.session;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -20,6 +21,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -53,6 +63,7 @@ import org.intermine.pathquery.PathQuery;
 import org.intermine.pathquery.PathQueryBinding;
 import org.intermine.template.TemplateQuery;
 import org.intermine.web.autocompletion.AutoCompleter;
+import org.intermine.web.context.InterMineContext;
 import org.intermine.web.logic.Constants;
 import org.intermine.web.logic.aspects.Aspect;
 import org.intermine.web.logic.config.WebConfig;
@@ -81,12 +92,12 @@ public final class SessionMethods
     private SessionMethods() {
     }
 
-    private interface CompletionCallBack
+    interface CompletionCallBack
     {
         void complete();
     }
 
-    private interface Action
+    interface Action
     {
         void process();
     }
@@ -94,21 +105,142 @@ public final class SessionMethods
     protected static final Logger LOG = Logger.getLogger(SessionMethods.class);
     private static int topQueryId = 0;
     private static int index = 0;
+    /** Milliseconds between checks of whether a running query should be cancelled. */
+    private static final long CANCEL_POLL = 1000;
+    /** Milliseconds a finished query's monitor is kept for the client to retrieve. */
+    private static final long MONITOR_RETENTION = 20000;
 
     /**
-     * Base class for query thread runnable.
+     * A query running in the background. The task itself is the token that registers the
+     * query with the ObjectStore, so that it can be cancelled from another thread.
      */
-    private abstract static class RunQueryThread implements Runnable
+    private static final class RunQueryThread implements Runnable
     {
-        protected boolean done = false;
-        protected boolean error = false;
+        private final HttpSession session;
+        private final MessageResources resources;
+        private final Action action;
+        private final CompletionCallBack completionCallBack;
+        private final QueryMonitor monitor;
+        private final ObjectStoreInterMineImpl ios;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+        private final AtomicBoolean settled = new AtomicBoolean(false);
+        private volatile boolean error = false;
+        private volatile CompletableFuture<Void> task = null;
+
+        RunQueryThread(HttpSession session, MessageResources resources, Action action,
+                CompletionCallBack completionCallBack, QueryMonitor monitor,
+                ObjectStoreInterMineImpl ios) {
+            this.session = session;
+            this.resources = resources;
+            this.action = action;
+            this.completionCallBack = completionCallBack;
+            this.monitor = monitor;
+            this.ios = ios;
+        }
 
-        @SuppressWarnings("unused")
-        protected boolean isDone() {
-            return done;
+        @Override
+        public void run() {
+            try {
+                // Register request id for query on this thread
+                if (ios != null) {
+                    LOG.debug("Registering request id " + this);
+                    ios.registerRequestId(this);
+                }
+                try {
+                    // call this so that if an exception occurs we notice now rather than in the
+                    // JSP code
+                    try {
+                        action.process();
+                    } catch (IndexOutOfBoundsException err) {
+                        // no results - ignore
+                        // we don't call size() first to avoid this exception because that could
+                        // be very slow on a large results set
+                    } catch (RuntimeException e) {
+                        if (e.getCause() instanceof ObjectStoreException) {
+                            throw (ObjectStoreException) e.getCause();
+                        }
+                        throw e;
+                    }
+                } finally {
+                    if (ios != null) {
+                        LOG.debug("Deregistering request id " + this);
+                        ios.deregisterRequestId(this);
+                    }
+                }
+            } catch (ObjectStoreException e) {
+                if (settled.get()) {
+                    // cancelled - the error is the result of cancelling the statement
+                    return;
+                }
+                // put stack trace in the log
+                LOG.error("Exception", e);
+
+                String key = (e instanceof ObjectStoreQueryDurationException)
+                    ? "errors.query.estimatetimetoolong"
+                    : "errors.query.objectstoreerror";
+                recordError(resources.getMessage(key), session);
+
+                error = true;
+            } catch (Throwable err) {
+                if (settled.get()) {
+                    return;
+                }
+                StringWriter sw = new StringWriter();
+                err.printStackTrace(new PrintWriter(sw));
+                recordError(sw.toString(), session);
+                LOG.error("Exception", err);
+                error = true;
+            }
+        }
+
+        /**
+         * Called when the task has run, or failed to run.
+         */
+        void finish() {
+            if (!settled.compareAndSet(false, true)) {
+                // cancelled while running
+                return;
+            }
+            boolean success = !error;
+            try {
+                if (success && completionCallBack != null) {
+                    completionCallBack.complete();
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Exception", e);
+                success = false;
+            }
+            if (monitor != null) {
+                if (success) {
+                    monitor.queryCompleted();
+                } else {
+                    monitor.queryCancelledWithError();
+                }
+            }
+            result.complete(success);
         }
-        protected boolean isError() {
-            return error;
+
+        /**
+         * Cancels the query, whether it is still waiting for a thread or already running.
+         */
+        void cancel() {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            // a query that has not started yet will now never start
+            task.cancel(false);
+            if (ios != null) {
+                try {
+                    LOG.debug("Cancelling request " + this);
+                    ios.cancelRequest(this);
+                } catch (ObjectStoreException e) {
+                    LOG.error("Exception", e);
+                }
+            }
+            if (monitor != null) {
+                monitor.queryCancelled();
+            }
+            result.complete(false);
         }
     }
 
@@ -131,106 +263,149 @@ public final class SessionMethods
                                    final Action action,
                                    final CompletionCallBack completionCallBack)
         throws Exception {
-        final InterMineAPI im = getInterMineAPI(session);
-        final ObjectStore os = im.getObjectStore();
+        return runQueryAsync(session, resources, qid, action, completionCallBack).get();
+    }
 
+    /**
+     * Submits an action to the shared pool of query threads, and returns a future that completes
+     * when the action has finished, failed or been cancelled. While the action waits or runs, the
+     * QueryMonitor registered under the query id is asked periodically whether to cancel it, and
+     * it is told how the action concluded. If the pool is too busy to accept the action, the
+     * action fails at once with an error recorded in the session.
+     *
+     * @param session   the http session
+     * @param resources message resources
+     * @param qid       the query id
+     * @param action    the action/query to perform in a pool thread
+     * @param completionCallBack the method to call when the action successfully completes
+     * @return a future of true if the query ran successfully, false if it failed or was cancelled
+     */
+    private static CompletableFuture<Boolean> runQueryAsync(final HttpSession session,
+            final MessageResources resources, final String qid, final Action action,
+            final CompletionCallBack completionCallBack) {
+        return runQueryAsync(session, resources, qid, action, completionCallBack,
+                getInterMineAPI(session).getObjectStore(), InterMineContext.getQueryExecutor(),
+                InterMineContext.getScheduler());
+    }
+
+    /**
+     * Submits an action to a pool, as runQueryAsync above.  Continuations of the returned future
+     * may run on the scheduler thread, so they must not block.
+     *
+     * @param session   the http session
+     * @param resources message resources
+     * @param qid       the query id
+     * @param action    the action/query to perform in a pool thread
+     * @param completionCallBack the method to call when the action successfully completes
+     * @param os the ObjectStore the action queries, used to cancel it while it runs
+     * @param executor the pool to run the action in
+     * @param scheduler the scheduler that checks whether the action should be cancelled
+     * @return a future of true if the query ran successfully, false if it failed or was cancelled
+     */
+    static CompletableFuture<Boolean> runQueryAsync(final HttpSession session,
+            final MessageResources resources, final String qid, final Action action,
+            final CompletionCallBack completionCallBack, final ObjectStore os,
+            final ExecutorService executor, final ScheduledExecutorService scheduler) {
         final ObjectStoreInterMineImpl ios;
         if (os instanceof ObjectStoreInterMineImpl) {
             ios = (ObjectStoreInterMineImpl) os;
         } else {
             ios = null;
         }
-        Map<String, QueryMonitor> queries = getRunningQueries(session);
-        QueryMonitor monitor = queries.get(qid);
-        // A reference to this runnable is used as a token for registering
-        // a cancelling the running query
-
-        RunQueryThread runnable = new RunQueryThread() {
-            @Override
-            public void run () {
-                try {
-
-                    // Register request id for query on this thread
-                    // We do this before setting r
-                    if (ios != null) {
-                        LOG.debug("Registering request id " + this);
-                        ios.registerRequestId(this);
-                    }
-
-                    // call this so that if an exception occurs we notice now rather than in the
-                    // JSP code
-                    try {
-                        action.process();
-                    } catch (IndexOutOfBoundsException err) {
-                        // no results - ignore
-                        // we don't call size() first to avoid this exception because that could be
-                        // very slow on a large results set
-                    } catch (RuntimeException e) {
-                        if (e.getCause() instanceof ObjectStoreException) {
-                            throw (ObjectStoreException) e.getCause();
-                        }
-                        throw e;
-                    }
-                } catch (ObjectStoreException e) {
-                    // put stack trace in the log
-                    LOG.error("Exception", e);
+        final QueryMonitor monitor = getRunningQueries(session).get(qid);
+        final RunQueryThread runnable = new RunQueryThread(session, resources, action,
+                completionCallBack, monitor, ios);
+        try {
+            runnable.task = CompletableFuture.runAsync(runnable, executor);
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Query pool is full, rejecting query " + qid);
+            recordError(resources.getMessage("errors.query.busy"), session);
+            if (monitor != null) {
+                monitor.queryCancelledWithError();
+            }
+            return CompletableFuture.completedFuture(Boolean.FALSE);
+        }
+        final Map<String, RunQueryThread> tasks = getRunningQueryTasks(session);
+        tasks.put(qid, runnable);
 
-                    String key = (e instanceof ObjectStoreQueryDurationException)
-                        ? "errors.query.estimatetimetoolong"
-                        : "errors.query.objectstoreerror";
-                    recordError(resources.getMessage(key), session);
-
-                    error = true;
-                } catch (Throwable err) {
-                    StringWriter sw = new StringWriter();
-                    err.printStackTrace(new PrintWriter(sw));
-                    recordError(sw.toString(), session);
-                    LOG.error("Exception", err);
-                    error = true;
-                } finally {
-                    try {
-                        LOG.debug("Deregistering request id " + this);
-                        ((ObjectStoreInterMineImpl) os).deregisterRequestId(this);
-                    } catch (ObjectStoreException e1) {
-                        LOG.error("Exception", e1);
-                        error = true;
+        final ScheduledFuture<?> poll;
+        if (monitor != null) {
+            poll = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    if (monitor.shouldCancelQuery()) {
+                        runnable.cancel();
                     }
                 }
+            }, CANCEL_POLL, CANCEL_POLL, TimeUnit.MILLISECONDS);
+        } else {
+            poll = null;
+        }
+        runnable.task.whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void ignored, Throwable t) {
+                runnable.finish();
             }
-        };
-        Thread thread = null;
-        thread = new Thread(runnable);
-        thread.start();
-
-        while (thread.isAlive()) {
-            Thread.sleep(1000);
-            if (monitor != null) {
-                boolean cancelled = monitor.shouldCancelQuery();
-                if (cancelled && ios != null) {
-                    LOG.debug("Cancelling request " + runnable);
-                    ios.cancelRequest(runnable);
-                    monitor.queryCancelled();
-                    return false;
+        });
+        runnable.result.whenComplete(new BiConsumer<Boolean, Throwable>() {
+            @Override
+            public void accept(Boolean success, Throwable t) {
+                if (poll != null) {
+                    poll.cancel(false);
                 }
+                tasks.remove(qid, runnable);
             }
-        }
-
-        if (runnable.isError()) {
-            if (monitor != null) {
-                monitor.queryCancelledWithError();
-            }
-            return false;
-        }
+        });
+        return runnable.result;
+    }
 
-        if (completionCallBack != null) {
-            completionCallBack.complete();
+    /**
+     * Cancel every query started from a session, for example because the session has expired.
+     *
+     * @param session the http session
+     */
+    public static void cancelRunningQueries(HttpSession session) {
+        for (RunQueryThread runnable
+                : new ArrayList<RunQueryThread>(getRunningQueryTasks(session).values())) {
+            runnable.cancel();
         }
+    }
 
-        if (monitor != null) {
-            monitor.queryCompleted();
+    /**
+     * Return the Map of background tasks running queries from the session.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, RunQueryThread> getRunningQueryTasks(final HttpSession session) {
+        synchronized (session) {
+            Map<String, RunQueryThread> tasks =
+                (Map<String, RunQueryThread>) session.getAttribute(Constants.RUNNING_QUERY_TASKS);
+            if (tasks == null) {
+                tasks = new ConcurrentHashMap<String, RunQueryThread>();
+                session.setAttribute(Constants.RUNNING_QUERY_TASKS, tasks);
+            }
+            return tasks;
         }
+    }
 
-        return true;
+    /**
+     * Remove the monitor of a finished query from the session after a pause, because we don't
+     * want to remove the monitor until the client has retrieved it in order to work out where to
+     * go next.
+     */
+    private static void unregisterRunningQueryLater(final HttpSession session, final String qid) {
+        InterMineContext.getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                LOG.debug("unregisterRunningQuery qid " + qid);
+                try {
+                    synchronized (session) {
+                        getRunningQueries(session).remove(qid);
+                    }
+                } catch (IllegalStateException e) {
+                    // the session has been invalidated, taking its queries with it
+                }
+            }
+        }, MONITOR_RETENTION, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -484,7 +659,8 @@ public final class SessionMethods
     /**
      * Start the current query running in the background, then return.  A new query id will be
      * created and added to the RUNNING_QUERIES session attribute.  That attribute is a Map from
-     * query id to QueryMonitor.  A Thread will be created to update the QueryMonitor.
+     * query id to QueryMonitor.  The query runs in the shared pool of query threads, which
+     * updates the QueryMonitor.
      * @param monitor the monitor for this query - controls cancelling and receives feedback
      *                about how the query concluded
      * @param session the current http session
@@ -504,65 +680,53 @@ public final class SessionMethods
             final String qid = "" + topQueryId++;
             queries.put(qid, monitor);
 
-            new Thread(new Runnable() {
+            final Profile profile = (Profile) session.getAttribute(Constants.PROFILE);
+            final InterMineAPI im = getInterMineAPI(session);
+            final PathQueryExecutor pqe = im.getPathQueryExecutor(profile);
+
+            // the query is saved to the history on the query thread, as it writes to the
+            // userprofile database and the continuation below may run on the scheduler thread
+            Action action = new Action() {
                 @Override
-                public void run () {
-                    final Profile profile = (Profile) session.getAttribute(Constants.PROFILE);
-                    final InterMineAPI im = getInterMineAPI(session);
+                public void process() {
                     try {
-
-                        final PathQueryExecutor pqe = im.getPathQueryExecutor(profile);
-
-                        Action action = new Action() {
-                            @Override
-                            public void process() {
-                                try {
-                                    pqe.execute(pathQuery);
-                                } catch (ObjectStoreException e) {
-                                    throw new RuntimeException("Error running query.", e);
-                                }
-                            }
-                        };
-                        CompletionCallBack completionCallBack = new CompletionCallBack() {
-                            @Override
-                            public void complete() {
-                                // Do nothing...
-                            }
-                        };
-                        SessionMethods.runQuery(session, messages, qid, action, completionCallBack);
-
+                        pqe.execute(pathQuery);
+                    } catch (ObjectStoreException e) {
+                        throw new RuntimeException("Error running query.", e);
+                    } finally {
                         if (saveQuery) {
-                            String queryName = NameUtil.findNewQueryName(
-                                    profile.getHistory().keySet());
-                            saveQueryToHistory(session, queryName, pathQuery);
+                            saveToHistory(session, profile, im, pathQuery);
                         }
-
-                        // pause because we don't want to remove the monitor from the
-                        // session until client has retrieved it in order to work out
-                        // where to go next
-                        Thread.sleep(20000);
-                    } catch (Exception err) {
-                        StringWriter sw = new StringWriter();
-                        err.printStackTrace(new PrintWriter(sw));
-                        StringBuffer errorMessage = new StringBuffer("Error while running query");
-                        if (SessionMethods.isSuperUser(session)) {
-                            errorMessage.append(": " + err.getMessage());
-                        }
-                        recordError(errorMessage.toString(), session);
-                        LOG.error("Error while running query \""
-                                + PathQueryBinding.marshal(pathQuery, "",
-                                    im.getModel().getName(), 1), err);
-                    } finally {
-                        LOG.debug("unregisterRunningQuery qid " + qid);
-                        getRunningQueries(session).remove(qid);
                     }
                 }
-            }).start();
+            };
+            runQueryAsync(session, messages, qid, action, null).thenRun(new Runnable() {
+                @Override
+                public void run() {
+                    unregisterRunningQueryLater(session, qid);
+                }
+            });
 
             return qid;
         }
     }
 
+    private static void saveToHistory(HttpSession session, Profile profile, InterMineAPI im,
+            PathQuery pathQuery) {
+        try {
+            String queryName = NameUtil.findNewQueryName(profile.getHistory().keySet());
+            saveQueryToHistory(session, queryName, pathQuery);
+        } catch (RuntimeException err) {
+            StringBuffer errorMessage = new StringBuffer("Error while running query");
+            if (SessionMethods.isSuperUser(session)) {
+                errorMessage.append(": " + err.getMessage());
+            }
+            recordError(errorMessage.toString(), session);
+            LOG.error("Error while running query \""
+                    + PathQueryBinding.marshal(pathQuery, "", im.getModel().getName(), 1), err);
+        }
+    }
+
     /**
      * Before running a query via web services, add to query history
      * and add a track
@@ -582,8 +746,8 @@ public final class SessionMethods
     /**
      * Start a query running in the background that will return the row count of the collection.
      * A new query id will be created and added to the RUNNING_QUERIES session attribute.
-     * That attribute is a Map from query id to QueryMonitor.  A Thread will be created to
-     * update the QueryMonitor.
+     * That attribute is a Map from query id to QueryMonitor.  The query runs in the shared
+     * pool of query threads, which updates the QueryMonitor.
      * @param monitor the monitor for this query - controls cancelling and receives feedback
      *                about how the query concluded
      * @param session the current http session
@@ -598,39 +762,18 @@ public final class SessionMethods
             final String qid = "" + topQueryId++;
             queries.put(qid, monitor);
 
-            new Thread(new Runnable() {
+            Action action = new Action() {
                 @Override
-                public void run () {
-                    try {
-                        LOG.debug("startQuery qid " + qid + " thread started");
-
-                        class CountAction implements Action
-                        {
-                            @Override
-                            public void process() {
-                                monitor.getPagedTable().getExactSize();
-                            }
-                        }
-
-                        Action action = new CountAction();
-
-                        SessionMethods.runQuery(session, messages, qid, action, null);
-
-                        // pause because we don't want to remove the monitor from the
-                        // session until client has retrieved it in order to work out
-                        // where to go next
-                        Thread.sleep(20000);
-                    } catch (Exception err) {
-                        StringWriter sw = new StringWriter();
-                        err.printStackTrace(new PrintWriter(sw));
-                        recordError(sw.toString(), session);
-                        LOG.error(sw.toString());
-                    } finally {
-                        LOG.debug("unregisterRunningQuery qid " + qid);
-                        getRunningQueries(session).remove(qid);
-                    }
+                public void process() {
+                    monitor.getPagedTable().getExactSize();
+                }
+            };
+            runQueryAsync(session, messages, qid, action, null).thenRun(new Runnable() {
+                @Override
+                public void run() {
+                    unregisterRunningQueryLater(session, qid);
                 }
-            }).start();
+            });
 
             return qid;
         }
@@ -654,8 +797,8 @@ public final class SessionMethods
     /**
      * Start a query running in the background that will return the row count of the query argument.
      * A new query id will be created and added to the RUNNING_QUERIES session attribute.
-     * That attribute is a Map from query id to QueryMonitor.  A Thread will be created to
-     * update the QueryMonitor.
+     * That attribute is a Map from query id to QueryMonitor.  The query runs in the shared
+     * pool of query threads, which updates the QueryMonitor.
      * @param monitor the monitor for this query - controls cancelling and receives feedback
      *                about how the query concluded
      * @param session the current http session
@@ -674,39 +817,22 @@ public final class SessionMethods
             final InterMineAPI im = getInterMineAPI(session);
             final ObjectStore os = im.getObjectStore();
 
-            new Thread(new Runnable() {
+            Action action = new Action() {
                 @Override
-                public void run () {
+                public void process() {
                     try {
-                        LOG.debug("startQuery qid " + qid + " thread started");
-                        Action action = new Action() {
-                            @Override
-                            public void process() {
-                                try {
-                                    monitor.setCount(os.count(query, ObjectStore.SEQUENCE_IGNORE));
-                                } catch (ObjectStoreException e) {
-                                    throw new RuntimeException("failed to get count of: " + query,
-                                                               e);
-                                }
-                            }
-                        };
-                        SessionMethods.runQuery(session, messages, qid, action, null);
-
-                        // pause because we don't want to remove the monitor from the
-                        // session until client has retrieved it in order to work out
-                        // where to go next
-                        Thread.sleep(20000);
-                    } catch (Exception err) {
-                        StringWriter sw = new StringWriter();
-                        err.printStackTrace(new PrintWriter(sw));
-                        recordError(sw.toString(), session);
-                        LOG.error(sw.toString());
-                    } finally {
-                        LOG.debug("unregisterRunningQuery qid " + qid);
-                        getRunningQueries(session).remove(qid);
+                        monitor.setCount(os.count(query, ObjectStore.SEQUENCE_IGNORE));
+                    } catch (ObjectStoreException e) {
+                        throw new RuntimeException("failed to get count of: " + query, e);
                     }
                 }
-            }).start();
+            };
+            runQueryAsync(session, messages, qid, action, null).thenRun(new Runnable() {
+                @Override
+                public void run() {
+                    unregisterRunningQueryLater(session, qid);
+                }
+            });
 
             return qid;
         }
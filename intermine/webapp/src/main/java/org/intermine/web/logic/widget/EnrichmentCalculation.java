@@ -11,11 +11,9 @@ package org.intermine.web.logic.widget;
  */
 
 import java.math.BigDecimal;
-import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.math3.distribution.HypergeometricDistribution;
 
 /**
  * Calculate enrichment of an attribute applied to members of a sample that is a subset of a larger
@@ -24,7 +22,7 @@ import org.apache.commons.math3.distribution.HypergeometricDistribution;
  * occurrences in the population as a whole.  Thus a low p-value indicates that the attribute may
  * be characteristic of the items in the sample.
  *
- * Enrichment is implemented using a Hypergeometric test.
+ * Enrichment is implemented using a Hypergeometric test, see {@link Hypergeometric}.
  *
  * @author Julie Sullivan
  * @author Richard Smith
@@ -60,12 +58,25 @@ public final class EnrichmentCalculation
         Map<String, PopulationInfo> annotatedPopulationInfo =
             input.getAnnotatedCountsInPopulation();
 
-        Map<String, BigDecimal> rawResults =
-                getRawResults(sampleSize, populationSize, sampleCounts, annotatedPopulationInfo);
+        // the tests are performed on arrays, one element per attribute in the sample
+        String[] attributes = new String[sampleCounts.size()];
+        int[] sampleAnnotated = new int[attributes.length];
+        int[] populationAnnotated = new int[attributes.length];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : sampleCounts.entrySet()) {
+            attributes[i] = entry.getKey();
+            sampleAnnotated[i] = entry.getValue().intValue();
+            PopulationInfo pi = annotatedPopulationInfo.get(entry.getKey());
+            populationAnnotated[i] = (pi != null) ? pi.getSize() : 0;
+            i++;
+        }
+        double[] rawResults = Hypergeometric.upperCumulativeProbabilities(populationSize,
+                sampleSize, populationAnnotated, sampleAnnotated);
         ErrorCorrection.Strategy strategy = getStrategy(errorCorrection);
 
-        Map<String, BigDecimal> correctedResults = ErrorCorrection.adjustPValues(strategy,
-                rawResults, maxValue, input.getTestCount());
+        Map<String, BigDecimal> correctedResults = ErrorCorrection.toMap(attributes,
+                ErrorCorrection.adjustPValues(strategy, rawResults, maxValue.doubleValue(),
+                        input.getTestCount()));
         if (extraCorrectionCoefficient && correctionCoefficient.isApplicable()) {
             correctionCoefficient.apply(
                     correctedResults, population, annotatedPopulationInfo, maxValue);
@@ -73,7 +84,7 @@ public final class EnrichmentCalculation
         Map<String, BigDecimal> sortedCorrectedResults = ErrorCorrection.sortMap(correctedResults);
         // record the number of items in the sample that had any values for any attribute
         // used for the "not analysed" total
-        int analysedTotal = rawResults.isEmpty() ? 0 : sampleSize;
+        int analysedTotal = (rawResults.length == 0) ? 0 : sampleSize;
 
         EnrichmentResults results = new EnrichmentResults(sortedCorrectedResults,
                 input.getAnnotatedCountsInSample(), input.getLabels(), analysedTotal,
@@ -82,25 +93,6 @@ public final class EnrichmentCalculation
         return results;
     }
 
-    private static Map<String, BigDecimal> getRawResults(int sampleSize,
-            int populationSize, Map<String, Integer> sampleCounts,
-            Map<String, PopulationInfo> annotatedPopulationInfo) {
-        Map<String, BigDecimal> rawResults = new HashMap<String, BigDecimal>();
-        for (Map.Entry<String, Integer> entry : sampleCounts.entrySet()) {
-            String attribute = entry.getKey();
-
-            Integer sampleCount = entry.getValue();
-            PopulationInfo pi = annotatedPopulationInfo.get(attribute);
-            Integer populationCount = (pi != null) ? pi.getSize() : 0;
-
-            HypergeometricDistribution h =
-                new HypergeometricDistribution(populationSize, populationCount, sampleSize);
-            Double pValue = h.upperCumulativeProbability(sampleCount);
-            rawResults.put(attribute, new BigDecimal(pValue));
-        }
-        return rawResults;
-    }
-
     private static ErrorCorrection.Strategy getStrategy(String errorCorrection) {
         ErrorCorrection.Strategy strategy = null;
         StringUtils.defaultIfBlank(errorCorrection, "None");
@@ -11,10 +11,14 @@ package org.intermine.web.logic.widget;
  */
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.query.Query;
@@ -37,18 +41,15 @@ public class EnrichmentInputWidgetLdr implements EnrichmentInput
     private Map<String, String> labels = null;
     private static final int BATCH_SIZE = 20000;
 
-    // population queries that don't involve bags can be cached between widget executions
-    private static CacheMap<String, PopulationInfo> populationCache = new CacheMap<String,
-        PopulationInfo>();
-    private static CacheMap<String, Map<String, PopulationInfo>> populationCountsCache =
-        new CacheMap<String, Map<String, PopulationInfo>>();
-
-    // TODO population counts and sizes are no longer cached
-
-    // TODO make a static cache from populate query to size and populationCounts maps,
-    // this should only have a few entries per widget depending on the organism composition
-    // of bags and other parameters, e.g. GO namespace.  But log cache size for a bit to make
-    // sure.  This should be a CacheMap, old cache was just a standard Map.
+    // Population results are cached between widget executions, keyed on the population query
+    // (which includes any organism or other constraints) and the state of the objectstore, so a
+    // new release or any change to the data gives a new key.  The caches hold the pending
+    // calculation rather than the result, so that concurrent requests for the same population
+    // wait for a single query instead of all running it.
+    private static CacheMap<String, FutureTask<PopulationInfo>> populationCache =
+        new CacheMap<String, FutureTask<PopulationInfo>>();
+    private static CacheMap<String, FutureTask<Map<String, PopulationInfo>>>
+    populationCountsCache = new CacheMap<String, FutureTask<Map<String, PopulationInfo>>>();
 
     /**
      * Construct with an EnrichmentWidgetLdr that contains queries needed for specific widget tests.
@@ -64,38 +65,44 @@ public class EnrichmentInputWidgetLdr implements EnrichmentInput
     @Override
     public Map<String, PopulationInfo> getAnnotatedCountsInPopulation() {
         if (populationCounts == null) {
-            Query query = ldr.getPopulationQuery(false);
-
-            populationCounts = populationCountsCache.get(query.toString());
-            if (populationCounts == null) {
-                populationCounts = new HashMap<String, PopulationInfo>();
-
-                Results results = os.execute(query, BATCH_SIZE, true, true, true);
-                Iterator<?> iter = results.iterator();
-                while (iter.hasNext()) {
-                    @SuppressWarnings("rawtypes")
-                    ResultsRow row =  (ResultsRow) iter.next();
-
-                    // an identifier for an attribute value, e.g. a department name
-                    String identifier = String.valueOf(row.get(0));
-
-                    // the number of times the item is applied in the population, e.g. the number of
-                    // companies that contain a department with this name
-                    // TODO should check that casting from a long gives correct result
-                    Integer count = ((Long) row.get(1)).intValue();
-
-                    float geneLengthAverage = 0;
-                    if (row.size() > 2) {
-                        if (row.get(2) != null) {
-                            geneLengthAverage = ((BigDecimal) row.get(2)).floatValue();
+            final Query query = ldr.getPopulationQuery(false);
+            populationCounts = getCached(populationCountsCache, query,
+                    new Callable<Map<String, PopulationInfo>>() {
+                        @Override
+                        public Map<String, PopulationInfo> call() {
+                            return Collections.unmodifiableMap(runPopulationQuery(query));
                         }
-                    }
-                    populationCounts.put(identifier, new PopulationInfo(count, geneLengthAverage));
+                    });
+        }
+        return populationCounts;
+    }
+
+    private Map<String, PopulationInfo> runPopulationQuery(Query query) {
+        Map<String, PopulationInfo> counts = new HashMap<String, PopulationInfo>();
+
+        Results results = os.execute(query, BATCH_SIZE, true, true, true);
+        Iterator<?> iter = results.iterator();
+        while (iter.hasNext()) {
+            @SuppressWarnings("rawtypes")
+            ResultsRow row =  (ResultsRow) iter.next();
+
+            // an identifier for an attribute value, e.g. a department name
+            String identifier = String.valueOf(row.get(0));
+
+            // the number of times the item is applied in the population, e.g. the number of
+            // companies that contain a department with this name
+            // TODO should check that casting from a long gives correct result
+            Integer count = ((Long) row.get(1)).intValue();
+
+            float geneLengthAverage = 0;
+            if (row.size() > 2) {
+                if (row.get(2) != null) {
+                    geneLengthAverage = ((BigDecimal) row.get(2)).floatValue();
                 }
-                populationCountsCache.put(query.toString(), populationCounts);
             }
+            counts.put(identifier, new PopulationInfo(count, geneLengthAverage));
         }
-        return populationCounts;
+        return counts;
     }
 
     @Override
@@ -137,24 +144,61 @@ public class EnrichmentInputWidgetLdr implements EnrichmentInput
 
     @Override
     public PopulationInfo getPopulationInfo() {
-        Query q = ldr.getPopulationQuery(true);
-        PopulationInfo populationInfo = populationCache.get(q.toString());
-        if (populationInfo == null) {
-            int size = 0;
-            float extraAttribute = 0;
-            Results res = os.execute(q);
-            @SuppressWarnings("unchecked")
-            List<Object> info = (List<Object>) res.get(0);
-            size = ((Long) info.get(0)).intValue();
-            if (info.size() > 1) {
-                if (info.get(1) != null) {
-                    extraAttribute = ((BigDecimal) info.get(1)).floatValue();
+        final Query q = ldr.getPopulationQuery(true);
+        return getCached(populationCache, q, new Callable<PopulationInfo>() {
+            @Override
+            public PopulationInfo call() {
+                int size = 0;
+                float extraAttribute = 0;
+                Results res = os.execute(q);
+                @SuppressWarnings("unchecked")
+                List<Object> info = (List<Object>) res.get(0);
+                size = ((Long) info.get(0)).intValue();
+                if (info.size() > 1) {
+                    if (info.get(1) != null) {
+                        extraAttribute = ((BigDecimal) info.get(1)).floatValue();
+                    }
                 }
+                return new PopulationInfo(size, extraAttribute);
+            }
+        });
+    }
+
+    /**
+     * Fetch a value from one of the population caches, calculating it if necessary.  If another
+     * thread is already calculating the value this waits for it rather than repeating the work.
+     */
+    private <T> T getCached(CacheMap<String, FutureTask<T>> cache, Query q, Callable<T> loader) {
+        String key = q.toString() + os.getSequence(os.getComponentsForQuery(q));
+        FutureTask<T> task;
+        boolean calculate = false;
+        synchronized (cache) {
+            task = cache.get(key);
+            if (task == null) {
+                task = new FutureTask<T>(loader);
+                cache.put(key, task);
+                calculate = true;
+            }
+        }
+        if (calculate) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted while waiting for population query", e);
+        } catch (ExecutionException e) {
+            // don't cache failures
+            synchronized (cache) {
+                if (cache.get(key) == task) {
+                    cache.remove(key);
+                }
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-            populationInfo = new PopulationInfo(size, extraAttribute);
-            populationCache.put(q.toString(), populationInfo);
+            throw new RuntimeException("Error running population query", e.getCause());
         }
-        return populationInfo;
     }
 
     @Override
@@ -11,7 +11,8 @@ package org.intermine.web.logic.widget;
  */
 
 import java.math.BigDecimal;
-import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -72,20 +73,60 @@ public final class ErrorCorrection
     public static Map<String, BigDecimal> adjustPValues(
             Strategy errorCorrection,
             Map<String, BigDecimal> results, Double max, int testCount) {
+        String[] ids = new String[results.size()];
+        double[] pValues = new double[results.size()];
+        int i = 0;
+        for (Entry<String, BigDecimal> entry : results.entrySet()) {
+            ids[i] = entry.getKey();
+            pValues[i] = entry.getValue().doubleValue();
+            i++;
+        }
+        return toMap(ids, adjustPValues(errorCorrection, pValues, max.doubleValue(), testCount));
+    }
+
+    /**
+     * Adjust an array of p-values.  Values that should not be reported, because they are greater
+     * than the maximum value, are NaN in the returned array.
+     *
+     * @param errorCorrection which error correction to use
+     * @param pValues the raw p-values, which are not modified
+     * @param max maximum value to display, selected by user
+     * @param testCount number of tests, eg. total number of go terms in database
+     * @return the adjusted p-values, in the same order as the raw p-values
+     */
+    public static double[] adjustPValues(Strategy errorCorrection, double[] pValues, double max,
+            int testCount) {
         switch (errorCorrection) {
             case NONE:
-                return calculate(results, max);
+                return calculate(pValues, max);
             case BONFERRONI:
-                return calculateBonferroni(results, testCount, max);
+                return calculateBonferroni(pValues, testCount, max);
             case BENJAMINI_HOCHBERG:
-                return calculateBenjaminiHochberg(results, testCount, max);
+                return calculateBenjaminiHochberg(pValues, testCount, max);
             case HOLM_BONFERRONI:
-                return calculateBonferroniHolm(results, testCount, max);
+                return calculateBonferroniHolm(pValues, testCount, max);
             default:
                 throw new IllegalArgumentException("Unsupported strategy: " + errorCorrection);
         }
     }
 
+    /**
+     * Convert adjusted p-values back to a map, leaving out the values that are not reported.
+     *
+     * @param ids the identifier for each p-value
+     * @param adjusted the adjusted p-values, NaN where the value should not be reported
+     * @return map of identifier to p-value
+     */
+    static Map<String, BigDecimal> toMap(String[] ids, double[] adjusted) {
+        Map<String, BigDecimal> adjustedMap = new HashMap<String, BigDecimal>();
+        for (int i = 0; i < ids.length; i++) {
+            if (!Double.isNaN(adjusted[i])) {
+                adjustedMap.put(ids[i], BigDecimal.valueOf(adjusted[i]));
+            }
+        }
+        return adjustedMap;
+    }
+
     /**
      * Sort the map by values.
      *
@@ -106,16 +147,12 @@ public final class ErrorCorrection
      *
      * @param maxValue maximum value to display
      */
-    private static Map<String, BigDecimal> calculate(Map<String, BigDecimal> results,
-            Double max) {
-        Map<String, BigDecimal> adjustedMap = new HashMap<String, BigDecimal>();
-        for (String id : results.keySet()) {
-            BigDecimal pvalue = results.get(id);
-            if (pvalue.doubleValue() <= max.doubleValue()) {
-                adjustedMap.put(id, pvalue);
-            }
+    private static double[] calculate(double[] pValues, double max) {
+        double[] adjusted = new double[pValues.length];
+        for (int i = 0; i < pValues.length; i++) {
+            adjusted[i] = (pValues[i] <= max) ? pValues[i] : Double.NaN;
         }
-        return adjustedMap;
+        return adjusted;
     }
 
     /**
@@ -128,29 +165,18 @@ public final class ErrorCorrection
      *
      * @param numberOfTests maximum value to display
      */
-    private static Map<String, BigDecimal> calculateBonferroni(Map<String, BigDecimal> results,
-            int numberOfTests, Double max) {
-        Map<String, BigDecimal> adjustedMap = new HashMap<String, BigDecimal>();
-        for (Entry<String, BigDecimal> entry : results.entrySet()) {
-
-            // get original values
-            BigDecimal p = entry.getValue();
+    private static double[] calculateBonferroni(double[] pValues, int numberOfTests,
+            double max) {
+        double[] adjusted = new double[pValues.length];
+        for (int i = 0; i < pValues.length; i++) {
 
-            // calc new value - p * N
-            BigDecimal adjustedP = p.multiply(new BigDecimal(numberOfTests),
-                    MathContext.DECIMAL128);
-
-            // p is never over 1
-            if (adjustedP.compareTo(ONE) >= 0) {
-                adjustedP = ONE;
-            }
+            // calc new value - p * N, p is never over 1
+            double adjustedP = Math.min(pValues[i] * numberOfTests, 1.0);
 
             // don't store values > maxValue
-            if (adjustedP.doubleValue() <= max.doubleValue()) {
-                adjustedMap.put(entry.getKey(), adjustedP);
-            }
+            adjusted[i] = (adjustedP <= max) ? adjustedP : Double.NaN;
         }
-        return adjustedMap;
+        return adjusted;
     }
 
     /**
@@ -164,50 +190,39 @@ public final class ErrorCorrection
      *
      * @param max maximum value to display
      */
-    private static Map<String, BigDecimal> calculateBenjaminiHochberg(
-            Map<String, BigDecimal> results, int numberOfTests, Double max) {
+    private static double[] calculateBenjaminiHochberg(double[] pValues, int numberOfTests,
+            double max) {
 
-        Map<String, BigDecimal> adjustedResults = new HashMap<String, BigDecimal>();
-        Map<String, BigDecimal> sortedResults = sortMap(results);
+        double[] adjusted = newNaNArray(pValues.length);
+        int[] order = sortedOrder(pValues);
 
-        BigDecimal lastValue = null;
-        int i = 1;
-        BigDecimal index = ONE;
+        double lastValue = Double.NaN;
+        int index = 1;
 
-        for (Entry<String, BigDecimal> entry : sortedResults.entrySet()) {
+        for (int i = 0; i < order.length; i++) {
 
-            BigDecimal p = entry.getValue();
+            double p = pValues[order[i]];
 
             // if the p-value is not the same as previous, sync the rank
-            if (lastValue == null || p.compareTo(lastValue) != 0) {
-                index = new BigDecimal(i);
+            if (i == 0 || p != lastValue) {
+                index = i + 1;
             }
 
-            // n/rank
-            BigDecimal m = new BigDecimal(numberOfTests).divide(index, MathContext.DECIMAL128);
-
-            // p-value*(n/rank)
-            BigDecimal adjustedP = p.multiply(m, MathContext.DECIMAL128);
-
-            // p-value can't be over 1
-            if (adjustedP.compareTo(ONE) > 0) {
-                adjustedP = ONE;
-            }
+            // p-value*(n/rank), p-value can't be over 1
+            double adjustedP = Math.min(p * ((double) numberOfTests / index), 1.0);
 
             // only report if value <= maximum
-            if (adjustedP.doubleValue() <= max.doubleValue()) {
-                adjustedResults.put(entry.getKey(), adjustedP);
+            if (adjustedP <= max) {
+                adjusted[order[i]] = adjustedP;
             } else {
                 // p-values are in ascending order, on first large number we can stop
-                return adjustedResults;
+                return adjusted;
             }
 
             // to compare if next value is the same
             lastValue = p;
-
-            i++;
         }
-        return adjustedResults;
+        return adjusted;
     }
 
     /**
@@ -217,48 +232,67 @@ public final class ErrorCorrection
      *
      * @param max maximum value we are interested in - used for display purposes only
      */
-    private static Map<String, BigDecimal> calculateBonferroniHolm(Map<String, BigDecimal> results,
-            int numberOfTests, Double max) {
+    private static double[] calculateBonferroniHolm(double[] pValues, int numberOfTests,
+            double max) {
 
-        Map<String, BigDecimal> adjustedResults = new HashMap<String, BigDecimal>();
-        Map<String, BigDecimal> sortedResults = sortMap(results);
+        double[] adjusted = newNaNArray(pValues.length);
+        int[] order = sortedOrder(pValues);
 
-        BigDecimal lastValue = null;
-        // array index, always increments
-        int i = 0;
+        double lastValue = Double.NaN;
         // rank, only increments if pvalue is unique
-        BigDecimal rank = ZERO;
+        int rank = 0;
 
         // smallest to largest
-        for (Entry<String, BigDecimal> entry : sortedResults.entrySet()) {
+        for (int i = 0; i < order.length; i++) {
 
-            BigDecimal p = entry.getValue();
-            BigDecimal m = null;
+            double p = pValues[order[i]];
 
-            if (lastValue != null && p.compareTo(lastValue) != 0) {
+            if (i > 0 && p != lastValue) {
                 // if the p-value is not the same as previous, increment the rank
-                rank = new BigDecimal(i);
+                rank = i;
             }
 
-            // n - rank
-            m = new BigDecimal(numberOfTests).subtract(rank, MathContext.DECIMAL128);
-
             // p-value*(n-rank)
-            BigDecimal adjustedP = p.multiply(m, MathContext.DECIMAL128);
+            double adjustedP = p * (numberOfTests - rank);
 
             // only report if value > maximum
-            if (adjustedP.doubleValue() <= max.doubleValue()) {
-                adjustedResults.put(entry.getKey(), adjustedP);
+            if (adjustedP <= max) {
+                adjusted[order[i]] = adjustedP;
             } else {
                 // p-values are ordered, so stop when we've gone too far
-                return adjustedResults;
+                return adjusted;
             }
 
             // to compare if next value is the same
             lastValue = p;
+        }
+        return adjusted;
+    }
 
-            i++;
+    private static double[] newNaNArray(int length) {
+        double[] array = new double[length];
+        Arrays.fill(array, Double.NaN);
+        return array;
+    }
+
+    /**
+     * @return the indexes of the p-values, ordered from the smallest p-value to the largest
+     */
+    private static int[] sortedOrder(final double[] pValues) {
+        Integer[] boxed = new Integer[pValues.length];
+        for (int i = 0; i < boxed.length; i++) {
+            boxed[i] = i;
+        }
+        Arrays.sort(boxed, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(pValues[a], pValues[b]);
+            }
+        });
+        int[] order = new int[boxed.length];
+        for (int i = 0; i < boxed.length; i++) {
+            order[i] = boxed[i];
         }
-        return adjustedResults;
+        return order;
     }
 }
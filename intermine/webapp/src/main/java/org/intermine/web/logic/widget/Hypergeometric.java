@@ -0,0 +1,126 @@
+package org.intermine.web.logic.widget;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import org.apache.commons.math3.special.Gamma;
+
+/**
+ * Hypergeometric tail probabilities computed in log space from a shared table of log factorials.
+ *
+ * An enrichment calculation performs one test per attribute observed in the sample, always with
+ * the same population and sample size.  Rather than creating a distribution object per test,
+ * the probability of each outcome is found from three binomial coefficients, each of which is
+ * two subtractions of values looked up in the log factorial table.  The table is grown as
+ * needed and shared between all threads.
+ */
+public final class Hypergeometric
+{
+    // terms this much smaller than the running total no longer change the result
+    private static final double NEGLIGIBLE = 1e-17;
+
+    private static volatile double[] logFactorials = new double[] {0.0};
+
+    private Hypergeometric() {
+        // hidden constructor
+    }
+
+    /**
+     * Calculate the probability of k or more successes, P(X &gt;= k).
+     *
+     * @param populationSize N, the number of items in the population
+     * @param successes M, the number of items in the population with the attribute
+     * @param sampleSize n, the number of items in the sample
+     * @param k the number of items in the sample with the attribute
+     * @return the upper cumulative probability
+     */
+    public static double upperCumulativeProbability(int populationSize, int successes,
+            int sampleSize, int k) {
+        double[] table = getLogFactorials(populationSize);
+        return upperCumulativeProbability(table, populationSize, successes, sampleSize, k);
+    }
+
+    /**
+     * Calculate the probability of k[i] or more successes for each of a number of tests that
+     * share the same population and sample.
+     *
+     * @param populationSize N, the number of items in the population
+     * @param sampleSize n, the number of items in the sample
+     * @param successes M for each test
+     * @param k the number of items in the sample with the attribute for each test
+     * @return the upper cumulative probability for each test
+     */
+    public static double[] upperCumulativeProbabilities(int populationSize, int sampleSize,
+            int[] successes, int[] k) {
+        double[] table = getLogFactorials(populationSize);
+        double[] pValues = new double[k.length];
+        for (int i = 0; i < k.length; i++) {
+            pValues[i] = upperCumulativeProbability(table, populationSize, successes[i],
+                    sampleSize, k[i]);
+        }
+        return pValues;
+    }
+
+    private static double upperCumulativeProbability(double[] table, int populationSize,
+            int successes, int sampleSize, int k) {
+        if (successes < 0 || sampleSize < 0 || successes > populationSize
+                || sampleSize > populationSize) {
+            throw new IllegalArgumentException("Invalid hypergeometric parameters, population: "
+                    + populationSize + ", successes: " + successes + ", sample: " + sampleSize);
+        }
+        int lower = Math.max(0, sampleSize + successes - populationSize);
+        int upper = Math.min(successes, sampleSize);
+        if (k <= lower) {
+            return 1.0;
+        }
+        if (k > upper) {
+            return 0.0;
+        }
+        // probabilities rise up to the mode and fall after it
+        int mode = (int) (((long) sampleSize + 1) * ((long) successes + 1)
+                / ((long) populationSize + 2));
+        double logTotal = logChoose(table, populationSize, sampleSize);
+        double sum = 0.0;
+        for (int x = k; x <= upper; x++) {
+            double p = Math.exp(logChoose(table, successes, x)
+                    + logChoose(table, populationSize - successes, sampleSize - x) - logTotal);
+            sum += p;
+            if (x > mode && p < sum * NEGLIGIBLE) {
+                break;
+            }
+        }
+        return Math.min(sum, 1.0);
+    }
+
+    private static double logChoose(double[] table, int n, int k) {
+        return table[n] - table[k] - table[n - k];
+    }
+
+    private static double[] getLogFactorials(int n) {
+        double[] table = logFactorials;
+        if (table.length > n) {
+            return table;
+        }
+        synchronized (Hypergeometric.class) {
+            table = logFactorials;
+            if (table.length <= n) {
+                double[] larger = new double[Math.max(n + 1, table.length * 2)];
+                System.arraycopy(table, 0, larger, 0, table.length);
+                for (int i = table.length; i < larger.length; i++) {
+                    // not a running sum of logs, which would accumulate rounding errors
+                    larger[i] = Gamma.logGamma(i + 1.0);
+                }
+                logFactorials = larger;
+                table = larger;
+            }
+        }
+        return table;
+    }
+}
@@ -60,6 +60,8 @@ import org.intermine.api.profile.ProfileManager;
 import org.intermine.api.profile.TagManager;
 import org.intermine.api.profile.UserNotFoundException;
 import org.intermine.api.query.MainHelper;
+import org.intermine.api.query.QueryAdmissionController;
+import org.intermine.api.query.ResultsCache;
 import org.intermine.api.search.GlobalRepository;
 import org.intermine.api.search.SearchRepository;
 import org.intermine.api.tag.TagNames;
@@ -284,6 +286,13 @@ public class InitialiserPlugin implements PlugIn
             blockingErrorKeys.put("errors.init.superuser", null);
             throw new ServletException("Super user not found");
         }
+        try {
+            im.setQueryAdmissionController(
+                    QueryAdmissionController.fromProperties(os, webProperties));
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid query admission configuration", e);
+        }
+        im.setResultsCache(ResultsCache.fromProperties(os, webProperties));
         SessionMethods.setInterMineAPI(servletContext, im);
         ResourceFinder finder = new ResourceFinder(servletContext);
 
@@ -0,0 +1,65 @@
+package org.intermine.webservice.server;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.PrintWriter;
+
+import org.intermine.api.InterMineAPI;
+import org.intermine.metrics.MetricsRegistry;
+import org.intermine.web.logic.export.ResponseUtil;
+import org.intermine.webservice.server.exceptions.ServiceForbiddenException;
+
+/**
+ * Service that returns the metrics of this webapp, such as query times, cache hit counts and the
+ * latency of each web service, in the Prometheus text format. Only the superuser may read them,
+ * so a scraper should send the superuser's API token.
+ */
+public class MetricsService extends WebService
+{
+    /**
+     * Constructor
+     * @param im The InterMine configuration object.
+     */
+    public MetricsService(InterMineAPI im) {
+        super(im);
+    }
+
+    @Override
+    protected Format getDefaultFormat() {
+        return Format.TEXT;
+    }
+
+    @Override
+    protected boolean canServe(Format format) {
+        return format == Format.TEXT;
+    }
+
+    @Override
+    protected void validateState() {
+        if (!isAuthenticated() || !getPermission().getProfile().isSuperuser()) {
+            throw new ServiceForbiddenException("Only the superuser may read the metrics");
+        }
+    }
+
+    @Override
+    protected void postInit() {
+        output = null;
+    }
+
+    @Override
+    protected void execute() throws Exception {
+        ResponseUtil.setNoCache(response);
+        response.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        PrintWriter pw = getRawOutput();
+        MetricsRegistry.getInstance().writeText(pw);
+        pw.flush();
+    }
+}
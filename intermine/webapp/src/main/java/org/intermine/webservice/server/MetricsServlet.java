@@ -0,0 +1,34 @@
+package org.intermine.webservice.server;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.intermine.api.InterMineAPI;
+import org.intermine.web.context.InterMineContext;
+
+/**
+ * Returns the metrics of the webapp, for scraping by a monitoring system.
+ */
+public class MetricsServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * {@inheritDoc}}
+     */
+    public void doGet(HttpServletRequest request, HttpServletResponse response) {
+        final InterMineAPI api = InterMineContext.getInterMineAPI();
+        new MetricsService(api).service(request, response);
+    }
+}
@@ -11,9 +11,11 @@ package org.intermine.webservice.server;
  */
 
 import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.security.KeyStoreException;
@@ -39,6 +41,7 @@ import org.intermine.api.profile.ProfileManager;
 import org.intermine.api.profile.ProfileManager.ApiPermission;
 import org.intermine.api.profile.ProfileManager.AuthenticationException;
 import org.intermine.api.util.AnonProfile;
+import org.intermine.metrics.MetricsRegistry;
 import org.intermine.util.PropertiesUtil;
 import org.intermine.web.context.InterMineContext;
 import org.intermine.web.logic.RequestUtil;
@@ -53,6 +56,7 @@ import org.intermine.webservice.server.exceptions.MissingParameterException;
 import org.intermine.webservice.server.exceptions.NotAcceptableException;
 import org.intermine.webservice.server.exceptions.ServiceException;
 import org.intermine.webservice.server.exceptions.ServiceForbiddenException;
+import org.intermine.webservice.server.exceptions.ServiceUnavailableException;
 import org.intermine.webservice.server.exceptions.UnauthorizedException;
 import org.intermine.webservice.server.output.CSVFormatter;
 import org.intermine.webservice.server.output.HTMLTableFormatter;
@@ -62,6 +66,7 @@ import org.intermine.webservice.server.output.JSONResultFormatter;
 import org.intermine.webservice.server.output.JSONRowFormatter;
 import org.intermine.webservice.server.output.JSONTableFormatter;
 import org.intermine.webservice.server.output.Output;
+import org.intermine.webservice.server.output.ParallelGZIPOutputStream;
 import org.intermine.webservice.server.output.PlainFormatter;
 import org.intermine.webservice.server.output.StreamedOutput;
 import org.intermine.webservice.server.output.TabFormatter;
@@ -104,6 +109,8 @@ public abstract class WebService
     private static final String COMPRESS = "compress";
     private static final String GZIP = "gzip";
     private static final String ZIP = "zip";
+    private static final String GZIP_THREADS = "ws.gzip.threads";
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
 
     private static final Logger LOG = Logger.getLogger(WebService.class);
     private static final String AUTHENTICATION_FIELD_NAME = "Authorization";
@@ -332,6 +339,7 @@ public abstract class WebService
      *            The response, as handled by the servlet.
      */
     public void service(HttpServletRequest request, HttpServletResponse response) {
+        long start = System.currentTimeMillis();
         this.request = request;
         this.response = response;
 
@@ -369,6 +377,17 @@ public abstract class WebService
             LOG.error("Error cleaning up", t);
         }
 
+        MetricsRegistry.getInstance().timer("intermine_webservice_request_ms",
+                "Time taken to answer web service requests, by service", "service",
+                getServiceName()).observeSince(start);
+    }
+
+    /**
+     * @return the name of this service, as it is reported in the metrics
+     */
+    protected String getServiceName() {
+        String name = getClass().getSimpleName();
+        return name.isEmpty() ? getClass().getName() : name;
     }
 
     private boolean agentIsRobot() {
@@ -589,9 +608,16 @@ public abstract class WebService
             code = Output.SC_INTERNAL_SERVER_ERROR;
         }
         String realMsg = t.getMessage();
-        if ((showAllMsgs || code < 500) && !StringUtils.isBlank(realMsg)) {
+        if ((showAllMsgs || code < 500 || t instanceof ServiceUnavailableException)
+                && !StringUtils.isBlank(realMsg)) {
             msg = realMsg;
         }
+        if (t instanceof ServiceUnavailableException && !response.isCommitted()) {
+            int retryAfter = ((ServiceUnavailableException) t).getRetryAfter();
+            if (retryAfter > 0) {
+                response.setHeader("Retry-After", String.valueOf(retryAfter));
+            }
+        }
         logError(t, realMsg, code);
         if (!formatIsJSONP()) {
             // Don't set errors statuses on jsonp requests, to enable
@@ -801,11 +827,14 @@ public abstract class WebService
             response.setBufferSize(8 * 1024);
             os = response.getOutputStream();
             if (isGzip()) {
-                os = new GZIPOutputStream(os);
+                os = makeGzipStream(os);
             } else if (isZip()) {
                 os = new ZipOutputStream(new BufferedOutputStream(os));
             }
-            out = new PrintWriter(os);
+            // The content types all declare UTF-8, so encode as that rather than the platform
+            // default, and buffer enough that the compressors get large writes.
+            out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(os, "UTF-8"),
+                    OUTPUT_BUFFER_SIZE));
         } catch (IOException e) {
             throw new ServiceException(e);
         }
@@ -887,6 +916,32 @@ public abstract class WebService
         }
     }
 
+    /**
+     * Make the stream that compresses gzipped responses. Large responses are compressed on
+     * several threads at once, up to ws.gzip.threads (by default the number of processors, at
+     * most 4) for each response. Set ws.gzip.threads to 1 to compress on the request thread only.
+     *
+     * @param os the response's output stream
+     * @return a stream that gzips what is written to it
+     * @throws IOException if the stream cannot be made
+     */
+    protected OutputStream makeGzipStream(OutputStream os) throws IOException {
+        int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+        String configured = webProperties.getProperty(GZIP_THREADS);
+        if (StringUtils.isNotBlank(configured)) {
+            try {
+                threads = Integer.parseInt(configured.trim());
+            } catch (NumberFormatException e) {
+                LOG.warn(GZIP_THREADS + " is not a number: " + configured);
+            }
+        }
+        if (threads <= 1) {
+            return new GZIPOutputStream(os, OUTPUT_BUFFER_SIZE);
+        }
+        return new ParallelGZIPOutputStream(os, InterMineContext.getCompressionExecutor(),
+                threads);
+    }
+
     /**
      * @return The line separator for the client's platform.
      */
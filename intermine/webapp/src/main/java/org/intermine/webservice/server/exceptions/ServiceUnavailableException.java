@@ -0,0 +1,42 @@
+package org.intermine.webservice.server.exceptions;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import org.intermine.webservice.server.output.Output;
+
+/**
+ * Thrown when a request cannot be handled now because the server is busy. The message is always
+ * shown to the client, who may try again after the given number of seconds.
+ */
+public class ServiceUnavailableException extends ServiceException
+{
+    private static final long serialVersionUID = 1L;
+    private static final int ERROR_CODE = Output.SC_SERVICE_UNAVAILABLE;
+
+    private final int retryAfter;
+
+    /**
+     * @param message message
+     * @param retryAfter the number of seconds the client should wait before trying again, or
+     * zero if trying again will not help
+     */
+    public ServiceUnavailableException(String message, int retryAfter) {
+        super(message, ERROR_CODE);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the number of seconds the client should wait before trying again, or zero
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+}
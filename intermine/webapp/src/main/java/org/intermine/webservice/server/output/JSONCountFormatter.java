@@ -34,4 +34,9 @@ public class JSONCountFormatter extends JSONFormatter
         }
     }
 
+    @Override
+    protected boolean canWriteItems() {
+        return false;
+    }
+
 }
@@ -211,6 +211,16 @@ public class JSONFormatter extends Formatter
         hasPrintedSomething = true;
     }
 
+    /**
+     * Whether result items may be written straight to the output with a JSONWriter, rather than
+     * formatted by formatResult, which is the case when each item is a single JSON value that
+     * this formatter would print unchanged.
+     * @return true if items may be written without calling formatResult
+     */
+    protected boolean canWriteItems() {
+        return !shouldQuote;
+    }
+
 
     /**
      * Put on the final brace, and close the call-back bracket if needed.
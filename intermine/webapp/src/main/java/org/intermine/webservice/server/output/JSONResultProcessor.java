@@ -49,6 +49,11 @@ public abstract class JSONResultProcessor extends ResultProcessor
     @Override
     public void write(Iterator<List<ResultElement>> resultIt, Output output) {
         Iterator<? extends Object> objIter = getResultsIterator(resultIt);
+        if (objIter instanceof JSONStreamingIterator && output instanceof StreamedOutput
+                && ((StreamedOutput) output).canWriteJSONItems() && objIter.hasNext()) {
+            write((JSONStreamingIterator) objIter, (StreamedOutput) output);
+            return;
+        }
         if (!objIter.hasNext()) { // address bug which means json results with < 1 results fail
             output.addResultItem(Collections.EMPTY_LIST);
         }
@@ -70,4 +75,15 @@ public abstract class JSONResultProcessor extends ResultProcessor
         }
     }
 
+    /**
+     * Write each value straight to the output, without making a JSONObject or String for it.
+     */
+    private void write(JSONStreamingIterator objIter, StreamedOutput output) {
+        boolean hasMore = objIter.hasNext();
+        while (hasMore) {
+            objIter.writeNext(output.startJSONItem());
+            hasMore = objIter.hasNext();
+            output.finishJSONItem(hasMore);
+        }
+    }
 }
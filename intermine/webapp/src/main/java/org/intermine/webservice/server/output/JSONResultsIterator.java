@@ -35,7 +35,7 @@ import org.json.JSONObject;
  * @author Alexis Kalderimis
  *
  */
-public class JSONResultsIterator implements Iterator<JSONObject>
+public class JSONResultsIterator implements Iterator<JSONObject>, JSONStreamingIterator
 {
 
     private static final String CLASS_KEY = "class";
@@ -77,6 +77,18 @@ public class JSONResultsIterator implements Iterator<JSONObject>
      * {@inheritDoc}
      */
     public JSONObject next() {
+        return new JSONObject(nextMap());
+    }
+
+    /**
+     * Write the next object straight to a JSONWriter, which saves copying it into a JSONObject.
+     * {@inheritDoc}
+     */
+    public void writeNext(JSONWriter writer) {
+        writer.value(nextMap());
+    }
+
+    private Map<String, Object> nextMap() {
         Map<String, Object> nextJsonMap = new HashMap<String, Object>();
         Integer lastId = null;
 
@@ -98,8 +110,7 @@ public class JSONResultsIterator implements Iterator<JSONObject>
                 lastId = currentId;
             }
         }
-        JSONObject nextObj = new JSONObject(nextJsonMap);
-        return nextObj;
+        return nextJsonMap;
     }
 
     private void addRowToJsonMap(List<ResultElement> results,
@@ -24,7 +24,7 @@ import org.json.JSONArray;
  * @author Alexis Kalderimis
  *
  */
-public class JSONRowIterator implements Iterator<JSONArray>
+public class JSONRowIterator implements Iterator<JSONArray>, JSONStreamingIterator
 {
 
     private final ExportResultsIterator subIter;
@@ -63,6 +63,16 @@ public class JSONRowIterator implements Iterator<JSONArray>
         return next;
     }
 
+    @Override
+    public void writeNext(JSONWriter writer) {
+        List<ResultElement> row = subIter.next();
+        writer.beginArray();
+        for (int i = 0; i < row.size(); i++) {
+            tableCellFormatter.write(row.get(i), writer);
+        }
+        writer.endArray();
+    }
+
     @Override
     public void remove() {
         throw new UnsupportedOperationException("Remove is not supported for this implementation");
@@ -0,0 +1,30 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * An iterator of JSON values that can write its next value straight to a JSONWriter, rather
+ * than returning it as a JSONObject or JSONArray to be turned into a String.
+ */
+public interface JSONStreamingIterator
+{
+    /**
+     * @return true if there is another value
+     */
+    boolean hasNext();
+
+    /**
+     * Write the next value, in the same form as next() would return it.
+     *
+     * @param writer where to write the value
+     */
+    void writeNext(JSONWriter writer);
+}
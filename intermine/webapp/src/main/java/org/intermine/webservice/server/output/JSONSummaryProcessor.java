@@ -30,6 +30,34 @@ public class JSONSummaryProcessor extends JSONResultProcessor
         return new SummaryIterator(it);
     }
 
+    /**
+     * Convert a row of a column summary to a JSON object.
+     *
+     * @param row a row of the results of QueryExecutor.summariseQuery()
+     * @return min, max, average and stdev (and buckets, bucket and count for a histogram) for a
+     * numeric column, or item and count for any other column
+     */
+    public static JSONObject toJSON(List<ResultElement> row) {
+        Map<String, Object> dict = new HashMap<String, Object>();
+        // 4 = numeric, 2 = string, 7 = numeric with histogram...
+        if (row.size() >= 4) {
+            dict.put("min", row.get(0).getField());
+            dict.put("max", row.get(1).getField());
+            dict.put("average", row.get(2).getField());
+            dict.put("stdev", row.get(3).getField());
+        }
+        if (row.size() == 7) {
+            dict.put("buckets", row.get(4).getField());
+            dict.put("bucket", row.get(5).getField());
+            dict.put("count", row.get(6).getField());
+        }
+        if (row.size() == 2) {
+            dict.put("item", row.get(0).getField());
+            dict.put("count", row.get(1).getField());
+        }
+        return new JSONObject(dict);
+    }
+
     private static class SummaryIterator implements Iterator<JSONObject>
     {
 
@@ -46,25 +74,7 @@ public class JSONSummaryProcessor extends JSONResultProcessor
 
         @Override
         public JSONObject next() {
-            List<ResultElement> row = it.next();
-            Map<String, Object> dict = new HashMap<String, Object>();
-            // 4 = numeric, 2 = string, 7 = numeric with histogram...
-            if (row.size() >= 4) {
-                dict.put("min", row.get(0).getField());
-                dict.put("max", row.get(1).getField());
-                dict.put("average", row.get(2).getField());
-                dict.put("stdev", row.get(3).getField());
-            }
-            if (row.size() == 7) {
-                dict.put("buckets", row.get(4).getField());
-                dict.put("bucket", row.get(5).getField());
-                dict.put("count", row.get(6).getField());
-            }
-            if (row.size() == 2) {
-                dict.put("item", row.get(0).getField());
-                dict.put("count", row.get(1).getField());
-            }
-            return new JSONObject(dict);
+            return toJSON(it.next());
         }
 
         @Override
@@ -0,0 +1,250 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+/**
+ * Writes JSON straight to a Writer, without building JSONObjects and JSONArrays first.
+ * <p>
+ * Values are written as org.json would write them, so the output of this class can replace
+ * <code>new JSONObject(map).toString()</code>: null values in objects are left out, nulls in
+ * arrays are written as null, numbers are written with JSONObject.numberToString, and strings are
+ * escaped with JSONObject.quote.  One JSONWriter can be reused for many values, as long as each
+ * is finished before the next is started.
+ */
+public class JSONWriter
+{
+    private Writer out;
+    // For each open object or array, whether it has had a value written to it yet.
+    private boolean[] hasValues = new boolean[16];
+    private int depth = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param out where to write the JSON
+     */
+    public JSONWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Begin a new value, writing to a different Writer.
+     *
+     * @param writer where to write the JSON
+     * @return this writer
+     */
+    public JSONWriter reset(Writer writer) {
+        this.out = writer;
+        depth = 0;
+        return this;
+    }
+
+    /**
+     * Start an array.
+     *
+     * @return this writer
+     */
+    public JSONWriter beginArray() {
+        separate();
+        write('[');
+        push();
+        return this;
+    }
+
+    /**
+     * End the current array.
+     *
+     * @return this writer
+     */
+    public JSONWriter endArray() {
+        pop();
+        write(']');
+        return this;
+    }
+
+    /**
+     * Start an object.
+     *
+     * @return this writer
+     */
+    public JSONWriter beginObject() {
+        separate();
+        write('{');
+        push();
+        return this;
+    }
+
+    /**
+     * End the current object.
+     *
+     * @return this writer
+     */
+    public JSONWriter endObject() {
+        pop();
+        write('}');
+        return this;
+    }
+
+    /**
+     * Write the key of the next member of the current object. The caller must then write exactly
+     * one value.
+     *
+     * @param key the name of the member
+     * @return this writer
+     */
+    public JSONWriter key(String key) {
+        separate();
+        quote(key);
+        write(':');
+        // The value that follows must not be preceded by a comma.
+        hasValues[depth - 1] = false;
+        return this;
+    }
+
+    /**
+     * Write a member of the current object, unless the value is null, which is how
+     * <code>new JSONObject(map)</code> treats null values.
+     *
+     * @param key the name of the member
+     * @param value the value of the member
+     * @return this writer
+     */
+    public JSONWriter field(String key, Object value) {
+        if (value != null) {
+            key(key).value(value);
+        }
+        return this;
+    }
+
+    /**
+     * Write a value.  Maps are written as objects, and collections and arrays as arrays.
+     *
+     * @param value the value, which may be null
+     * @return this writer
+     */
+    @SuppressWarnings("unchecked")
+    public JSONWriter value(Object value) {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            separate();
+            write("null");
+        } else if (value instanceof CharSequence) {
+            separate();
+            quote(value.toString());
+        } else if (value instanceof Number) {
+            separate();
+            writeNumber((Number) value);
+        } else if (value instanceof Boolean) {
+            separate();
+            write(value.toString());
+        } else if (value instanceof Map<?, ?>) {
+            beginObject();
+            for (Map.Entry<Object, Object> entry: ((Map<Object, Object>) value).entrySet()) {
+                field(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            endObject();
+        } else if (value instanceof Collection<?>) {
+            beginArray();
+            for (Object item: (Collection<?>) value) {
+                value(item);
+            }
+            endArray();
+        } else if (value.getClass().isArray()) {
+            beginArray();
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                value(Array.get(value, i));
+            }
+            endArray();
+        } else if (value instanceof JSONObject || value instanceof JSONArray
+                || value instanceof JSONString) {
+            separate();
+            write(JSONObject.valueToString(value));
+        } else {
+            separate();
+            write(JSONObject.valueToString(JSONObject.wrap(value)));
+        }
+        return this;
+    }
+
+    private void writeNumber(Number n) {
+        if ((n instanceof Double && (((Double) n).isNaN() || ((Double) n).isInfinite()))
+                || (n instanceof Float && (((Float) n).isNaN() || ((Float) n).isInfinite()))) {
+            // Not valid JSON numbers, so org.json writes them as strings.
+            quote(n.toString());
+        } else if (n instanceof Integer || n instanceof Long || n instanceof Short
+                || n instanceof Byte) {
+            write(n.toString());
+        } else {
+            write(JSONObject.numberToString(n));
+        }
+    }
+
+    private void separate() {
+        if (depth > 0) {
+            if (hasValues[depth - 1]) {
+                write(',');
+            }
+            hasValues[depth - 1] = true;
+        }
+    }
+
+    private void push() {
+        if (depth == hasValues.length) {
+            hasValues = Arrays.copyOf(hasValues, depth * 2);
+        }
+        hasValues[depth++] = false;
+    }
+
+    private void pop() {
+        if (depth == 0) {
+            throw new IllegalStateException("Nothing to end");
+        }
+        depth--;
+        if (depth > 0) {
+            hasValues[depth - 1] = true;
+        }
+    }
+
+    private void quote(String s) {
+        try {
+            JSONObject.quote(s, out);
+        } catch (IOException e) {
+            throw new JSONFormattingException("Could not write JSON", e);
+        }
+    }
+
+    private void write(char c) {
+        try {
+            out.write(c);
+        } catch (IOException e) {
+            throw new JSONFormattingException("Could not write JSON", e);
+        }
+    }
+
+    private void write(String s) {
+        try {
+            out.write(s);
+        } catch (IOException e) {
+            throw new JSONFormattingException("Could not write JSON", e);
+        }
+    }
+}
@@ -21,7 +21,7 @@ import org.json.JSONArray;
  * @author Alexis Kalderimis
  *
  */
-public class MinimalJsonIterator implements Iterator<JSONArray>
+public class MinimalJsonIterator implements Iterator<JSONArray>, JSONStreamingIterator
 {
     private final Iterator<List<ResultElement>> subIter;
 
@@ -55,6 +55,18 @@ public class MinimalJsonIterator implements Iterator<JSONArray>
         return next;
     }
 
+    @Override
+    public void writeNext(JSONWriter writer) {
+        List<ResultElement> row = subIter.next();
+        writer.beginArray();
+        for (int i = 0; i < row.size(); i++) {
+            ResultElement re = row.get(i);
+            // null in the case of flattened outerjoins.
+            writer.value(re == null ? null : re.getField());
+        }
+        writer.endArray();
+    }
+
     @Override
     public boolean hasNext() {
         return subIter.hasNext();
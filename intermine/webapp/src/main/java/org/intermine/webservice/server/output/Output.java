@@ -71,6 +71,11 @@ public abstract class Output
      */
     public static final int NOT_ACCEPTABLE = 406;
 
+    /**
+     * The server is too busy to handle the request now.
+     */
+    public static final int SC_SERVICE_UNAVAILABLE = 503;
+
     /**
      * Sets the error message
      * @param message The error message.
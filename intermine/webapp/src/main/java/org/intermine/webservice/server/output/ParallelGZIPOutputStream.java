@@ -0,0 +1,292 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A gzip output stream that compresses blocks of its input on several threads at once, in the
+ * way that pigz does.
+ * <p>
+ * The input is cut into blocks, and each block is deflated on a pool of threads, using the
+ * last 32k of the input before it as its dictionary, so the output is compressed about as well
+ * as by GZIPOutputStream. The blocks are written in order as a single gzip member, which any gzip
+ * reader can read. The checksum is calculated as the data are written.
+ * <p>
+ * Compressed blocks are written to the underlying stream by the thread that writes to this one,
+ * and only a few blocks may be waiting at once, so a client that reads slowly slows down the
+ * writer rather than filling memory.
+ */
+public class ParallelGZIPOutputStream extends FilterOutputStream
+{
+    /** The default size of the blocks that are compressed on their own. */
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private final ExecutorService compressors;
+    private final int blockSize;
+    private final int maxPending;
+    private final int level;
+    private final CRC32 crc = new CRC32();
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+    private final byte[] window = new byte[DICTIONARY_SIZE];
+    private int windowLength = 0;
+    private long size = 0;
+    private byte[] block;
+    private int count = 0;
+    private boolean headerWritten = false;
+    private boolean closed = false;
+
+    /**
+     * Constructor, for a stream compressing up to the given number of blocks at once.
+     *
+     * @param out the stream to write the compressed data to
+     * @param compressors the pool to compress blocks on, which must run work it cannot queue
+     * in the calling thread rather than drop it
+     * @param threads the most blocks of this stream to compress at once
+     */
+    public ParallelGZIPOutputStream(OutputStream out, ExecutorService compressors, int threads) {
+        this(out, compressors, threads, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param out the stream to write the compressed data to
+     * @param compressors the pool to compress blocks on, which must run work it cannot queue
+     * in the calling thread rather than drop it
+     * @param threads the most blocks of this stream to compress at once
+     * @param blockSize the number of bytes in each block
+     * @param level the compression level, from 0 to 9, or -1 for the default
+     */
+    public ParallelGZIPOutputStream(OutputStream out, ExecutorService compressors, int threads,
+            int blockSize, int level) {
+        super(out);
+        if (threads < 1 || blockSize < 1) {
+            throw new IllegalArgumentException("threads and blockSize must be positive");
+        }
+        this.compressors = compressors;
+        this.maxPending = threads;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[count++] = (byte) b;
+        if (count == blockSize) {
+            submit(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == blockSize) {
+                submit(false);
+            }
+        }
+    }
+
+    /**
+     * Compresses and writes everything written so far, and flushes the underlying stream.
+     * Flushing often makes the compression worse.
+     *
+     * @throws IOException if the data cannot be written
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (count > 0) {
+            submit(false);
+        }
+        while (!pending.isEmpty()) {
+            writeNextBlock();
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the remaining compressed data and the gzip trailer, and closes the underlying
+     * stream.
+     *
+     * @throws IOException if the data cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            submit(true);
+            while (!pending.isEmpty()) {
+                writeNextBlock();
+            }
+            writeTrailer();
+            out.flush();
+        } finally {
+            closed = true;
+            for (Future<byte[]> future : pending) {
+                future.cancel(false);
+            }
+            pending.clear();
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Hand the current block to a compressor, and write any blocks that are ready.  If too many
+     * blocks are waiting, wait for the oldest.
+     */
+    private void submit(boolean last) throws IOException {
+        crc.update(block, 0, count);
+        size += count;
+        byte[] dictionary = (windowLength == 0) ? null : Arrays.copyOf(window, windowLength);
+        BlockCompressor compressor = new BlockCompressor(block, count, dictionary, last, level);
+        updateWindow(block, count);
+        if (pending.isEmpty() && (last || maxPending == 1)) {
+            // Nothing to overlap with, so don't pay for handing the block to another thread.
+            writeBlock(compressor.call());
+        } else {
+            pending.add(compressors.submit(compressor));
+        }
+        block = last ? null : new byte[blockSize];
+        count = 0;
+        while (!pending.isEmpty() && (pending.size() > maxPending || pending.peek().isDone())) {
+            writeNextBlock();
+        }
+    }
+
+    private void updateWindow(byte[] input, int length) {
+        if (length >= DICTIONARY_SIZE) {
+            System.arraycopy(input, length - DICTIONARY_SIZE, window, 0, DICTIONARY_SIZE);
+            windowLength = DICTIONARY_SIZE;
+        } else {
+            int keep = Math.min(windowLength, DICTIONARY_SIZE - length);
+            System.arraycopy(window, windowLength - keep, window, 0, keep);
+            System.arraycopy(input, 0, window, keep, length);
+            windowLength = keep + length;
+        }
+    }
+
+    private void writeNextBlock() throws IOException {
+        Future<byte[]> future = pending.poll();
+        try {
+            writeBlock(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress", e.getCause());
+        }
+    }
+
+    private void writeBlock(byte[] compressed) throws IOException {
+        if (!headerWritten) {
+            out.write(HEADER);
+            headerWritten = true;
+        }
+        out.write(compressed);
+    }
+
+    private void writeTrailer() throws IOException {
+        byte[] trailer = new byte[8];
+        writeInt(trailer, 0, crc.getValue());
+        writeInt(trailer, 4, size);
+        out.write(trailer);
+    }
+
+    private static void writeInt(byte[] buf, int offset, long value) {
+        for (int i = 0; i < 4; i++) {
+            buf[offset + i] = (byte) (value >> (8 * i));
+        }
+    }
+
+    /**
+     * Deflates one block, ending it on a byte boundary so that the blocks can be joined.
+     */
+    private static final class BlockCompressor implements Callable<byte[]>
+    {
+        private final byte[] input;
+        private final int length;
+        private final byte[] dictionary;
+        private final boolean last;
+        private final int level;
+
+        BlockCompressor(byte[] input, int length, byte[] dictionary, boolean last, int level) {
+            this.input = input;
+            this.length = length;
+            this.dictionary = dictionary;
+            this.last = last;
+            this.level = level;
+        }
+
+        @Override
+        public byte[] call() {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                if (dictionary != null) {
+                    deflater.setDictionary(dictionary);
+                }
+                deflater.setInput(input, 0, length);
+                byte[] buf = new byte[BUFFER_SIZE];
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        compressed.write(buf, 0, deflater.deflate(buf));
+                    }
+                } else {
+                    int n;
+                    do {
+                        n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                        compressed.write(buf, 0, n);
+                    } while (n == buf.length);
+                }
+                return compressed.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -33,6 +33,7 @@ public class StreamedOutput extends Output
     private boolean headerPrinted = false;
 
     private final String separator;
+    private JSONWriter jsonWriter = null;
 
     /** Constructor.
      * @param writer writer where the data will be printed
@@ -87,6 +88,45 @@ public class StreamedOutput extends Output
         resultsCount++;
     }
 
+    /**
+     * @return true if result items may be written with startJSONItem()
+     */
+    public boolean canWriteJSONItems() {
+        return formatter instanceof JSONFormatter
+            && ((JSONFormatter) formatter).canWriteItems();
+    }
+
+    /**
+     * Start writing a result item straight to the writer as JSON, rather than formatting it from
+     * a list of strings. This saves building the item as a JSONObject or JSONArray and then as a
+     * String, and is only possible when the formatter would print the item unchanged.  The item
+     * must be finished with finishJSONItem().
+     *
+     * @return a JSONWriter to write a single value to, or null if the item must be added with
+     * addResultItem()
+     */
+    public JSONWriter startJSONItem() {
+        if (!canWriteJSONItems()) {
+            return null;
+        }
+        ensureHeaderIsPrinted();
+        ((JSONFormatter) formatter).declarePrinted();
+        if (jsonWriter == null) {
+            jsonWriter = new JSONWriter(writer);
+        }
+        return jsonWriter.reset(writer);
+    }
+
+    /**
+     * Finish a result item started with startJSONItem().
+     *
+     * @param hasMore whether there are more items to come, and so a comma is needed
+     */
+    public void finishJSONItem(boolean hasMore) {
+        writeLn(hasMore ? "," : "");
+        resultsCount++;
+    }
+
     /** Returns associated writer
      * @return writer
      * **/
@@ -59,15 +59,7 @@ public class TableCellFormatter
             mapping.put(CELL_KEY_VALUE, null);
             mapping.put(CELL_KEY_COLUMN, null);
         } else {
-            String link = null;
-            // Try to generate a link using the redirector.
-            if (redirector != null && cell.getObject() instanceof InterMineObject) {
-                link = redirector.generateLink(im, (InterMineObject) cell.getObject());
-            }
-            if (link == null) {
-                link = PortalHelper.generateReportPath(cell);
-            }
-            mapping.put(CELL_KEY_URL, link);
+            mapping.put(CELL_KEY_URL, getLink(cell));
 
             if (cell.getType() == null) {
                 mapping.put(CELL_KEY_CLASS, JSONObject.NULL);
@@ -82,29 +74,61 @@ public class TableCellFormatter
             }
 
             mapping.put(CELL_KEY_COLUMN, cell.getPath().toStringNoConstraints());
-            final Object raw = cell.getField();
-            final Object cooked; // After formatting and any transformations.
-
-            // Important that CLOBs go in as strings, to prevent infinite recursions
-            // by moronic JSON libraries... - place other edge cases here.
-            // Also, don't return too much data...
-            if (raw != null && raw instanceof CharSequence) {
-                final CharSequence cs = (CharSequence) raw;
-                if (cs.length() <= maxCellLength) {
-                    cooked = cs.toString();
-                } else {
-                    cooked = cs.subSequence(0, maxCellLength) + "...";
-                }
-            } else {
-                cooked = raw;
-            }
-            if (cooked == null) {
-                mapping.put(CELL_KEY_VALUE, JSONObject.NULL);
+            mapping.put(CELL_KEY_VALUE, getValue(cell));
+        }
+        return mapping;
+    }
+
+    /**
+     * Write a cell straight to a JSONWriter, as the object that toJSON() would return.
+     * @param cell The thing we are rendering.
+     * @param writer Where to write it.
+     */
+    public void write(ResultCell cell, JSONWriter writer) {
+        writer.beginObject();
+        if (cell != null) {
+            writer.field(CELL_KEY_URL, getLink(cell));
+            writer.field(CELL_KEY_CLASS, cell.getType() == null ? JSONObject.NULL : cell.getType());
+            writer.field(CELL_KEY_ID, cell.getId() == null ? JSONObject.NULL : cell.getId());
+            writer.field(CELL_KEY_COLUMN, cell.getPath().toStringNoConstraints());
+            writer.field(CELL_KEY_VALUE, getValue(cell));
+        }
+        writer.endObject();
+    }
+
+    private String getLink(ResultCell cell) {
+        String link = null;
+        // Try to generate a link using the redirector.
+        if (redirector != null && cell.getObject() instanceof InterMineObject) {
+            link = redirector.generateLink(im, (InterMineObject) cell.getObject());
+        }
+        if (link == null) {
+            link = PortalHelper.generateReportPath(cell);
+        }
+        return link;
+    }
+
+    private Object getValue(ResultCell cell) {
+        final Object raw = cell.getField();
+        final Object cooked; // After formatting and any transformations.
+
+        // Important that CLOBs go in as strings, to prevent infinite recursions
+        // by moronic JSON libraries... - place other edge cases here.
+        // Also, don't return too much data...
+        if (raw != null && raw instanceof CharSequence) {
+            final CharSequence cs = (CharSequence) raw;
+            if (cs.length() <= maxCellLength) {
+                cooked = cs.toString();
             } else {
-                mapping.put(CELL_KEY_VALUE, cooked);
+                cooked = cs.subSequence(0, maxCellLength) + "...";
             }
+        } else {
+            cooked = raw;
         }
-        return mapping;
+        if (cooked == null) {
+            return JSONObject.NULL;
+        }
+        return cooked;
     }
 
     /**
@@ -29,6 +29,8 @@ import org.intermine.api.InterMineAPI;
 import org.intermine.api.profile.Profile;
 import org.intermine.api.query.BagNotFound;
 import org.intermine.api.query.PathQueryExecutor;
+import org.intermine.api.query.QueryAdmissionController;
+import org.intermine.api.query.QueryRejectedException;
 import org.intermine.api.results.ExportResultsIterator;
 import org.intermine.api.results.ResultElement;
 import org.intermine.metadata.AttributeDescriptor;
@@ -47,6 +49,7 @@ import org.intermine.webservice.server.core.CountProcessor;
 import org.intermine.webservice.server.core.ResultProcessor;
 import org.intermine.webservice.server.exceptions.BadRequestException;
 import org.intermine.webservice.server.exceptions.ServiceException;
+import org.intermine.webservice.server.exceptions.ServiceUnavailableException;
 import org.intermine.webservice.server.output.FlatFileFormatter;
 import org.intermine.webservice.server.output.HTMLTableFormatter;
 import org.intermine.webservice.server.output.JSONCountFormatter;
@@ -85,6 +88,7 @@ public class QueryResultService extends AbstractQueryService
 
     private boolean wantsCount = false;
     private PathQueryExecutor executor;
+    private QueryAdmissionController.Ticket ticket = null;
 
     /**
      * Constructor
@@ -277,14 +281,32 @@ public class QueryResultService extends AbstractQueryService
     private void runCount(PathQuery pathquery) {
         int count;
         try {
-            count = executor.count(pathquery);
+            count = executor.count(pathquery, ticket);
+        } catch (QueryRejectedException e) {
+            throw rejected(e);
+        } catch (ObjectStoreQueryDurationException e) {
+            throw new ServiceException("Query would take too long to run");
         } catch (ObjectStoreException e) {
             throw new ServiceException("Problem getting count.", e);
         }
+        setAdmissionHeaders();
         CountProcessor processor = new CountProcessor();
         processor.writeCount(count, output);
     }
 
+    private ServiceException rejected(QueryRejectedException e) {
+        return new ServiceUnavailableException("The server is busy: " + e.getMessage()
+                + ". Please try again later.", e.getRetryAfter());
+    }
+
+    private void setAdmissionHeaders() {
+        if (ticket != null && ticket.getLane() != null) {
+            response.setHeader("X-InterMine-Query-Lane", ticket.getLane());
+            response.setHeader("X-InterMine-Queue-Position",
+                    String.valueOf(ticket.getQueuePosition()));
+        }
+    }
+
     /**
      * Runs path query and returns to output obtained results.
      *
@@ -296,10 +318,25 @@ public class QueryResultService extends AbstractQueryService
      *            maximum number of results
      */
     public void runPathQuery(PathQuery pathQuery, int firstResult, int maxResults) {
-        if (wantsCount) {
-            runCount(pathQuery);
-        } else {
-            runResults(pathQuery, firstResult, maxResults);
+        QueryAdmissionController admission = im.getQueryAdmissionController();
+        ticket = (admission == null) ? null : admission.newTicket();
+        try {
+            if (wantsCount) {
+                runCount(pathQuery);
+            } else {
+                runResults(pathQuery, firstResult, maxResults);
+            }
+        } catch (RuntimeException e) {
+            if (ticket != null && ticket.isExpired()) {
+                throw new ServiceUnavailableException("The query was cancelled because it ran for"
+                        + " longer than " + ticket.getDeadline() + " ms", 0);
+            }
+            throw e;
+        } finally {
+            if (ticket != null) {
+                ticket.close();
+                ticket = null;
+            }
         }
     }
 
@@ -333,7 +370,9 @@ public class QueryResultService extends AbstractQueryService
             canGoFaster = maxResults > (BATCH_SIZE * 2);
             executor.setBatchSize(BATCH_SIZE);
             try {
-                it = executor.execute(pq, firstResult, maxResults);
+                it = executor.execute(pq, firstResult, maxResults, ticket);
+            } catch (QueryRejectedException e) {
+                throw rejected(e);
             } catch (ObjectStoreQueryDurationException e) {
                 throw new ServiceException("Query would take too long to run");
             } catch (ObjectStoreException e) {
@@ -341,6 +380,7 @@ public class QueryResultService extends AbstractQueryService
             }
         }
 
+        setAdmissionHeaders();
         ResultProcessor processor = makeResultProcessor();
         if (it.hasNext()) { // Prime the batch fetching pumps
             try {
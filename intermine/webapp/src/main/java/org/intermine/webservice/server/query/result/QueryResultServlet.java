@@ -54,6 +54,8 @@ public class QueryResultServlet extends HttpServlet
         WebService ws;
         if (pathInfo != null && pathInfo.endsWith("tablerows")) {
             ws = new TableRowService(im);
+        } else if (pathInfo != null && pathInfo.endsWith("summaries")) {
+            ws = new QuerySummariesService(im);
         } else {
             ws = new QueryResultService(im);
         }
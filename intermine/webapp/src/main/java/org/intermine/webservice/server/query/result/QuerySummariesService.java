@@ -0,0 +1,208 @@
+package org.intermine.webservice.server.query.result;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang.StringUtils;
+import org.intermine.api.InterMineAPI;
+import org.intermine.api.query.BagNotFound;
+import org.intermine.api.query.PathQueryExecutor;
+import org.intermine.api.query.QueryAdmissionController;
+import org.intermine.api.query.QueryBatch;
+import org.intermine.api.query.QueryRejectedException;
+import org.intermine.api.results.ResultElement;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreQueryDurationException;
+import org.intermine.objectstore.query.Results;
+import org.intermine.pathquery.Path;
+import org.intermine.pathquery.PathException;
+import org.intermine.pathquery.PathQuery;
+import org.intermine.web.context.InterMineContext;
+import org.intermine.webservice.server.Format;
+import org.intermine.webservice.server.exceptions.BadRequestException;
+import org.intermine.webservice.server.exceptions.ServiceException;
+import org.intermine.webservice.server.exceptions.ServiceUnavailableException;
+import org.intermine.webservice.server.output.FilteringResultIterator;
+import org.intermine.webservice.server.output.JSONFormatter;
+import org.intermine.webservice.server.output.JSONSummaryProcessor;
+import org.intermine.webservice.server.output.Output;
+import org.intermine.webservice.server.output.StreamedOutput;
+import org.intermine.webservice.server.query.AbstractQueryService;
+import org.json.JSONObject;
+
+/**
+ * A service that summarises several columns of a query in one request.  Each summaryPath
+ * parameter names a column.  The different values of every column are counted concurrently as
+ * one QueryBatch, and then the columns are summarised concurrently as another, so the request
+ * takes about as long as the slowest column rather than the sum of them all.  Each of these
+ * queries is admitted by the QueryAdmissionController, if there is one.
+ *
+ * The results are a list with one object per column, in the order requested, each with the
+ * path, the number of unique values in the column and the rows of its summary in the same
+ * format as the summaryPath parameter of the query results service.
+ */
+public class QuerySummariesService extends AbstractQueryService
+{
+    private static final String PATH_PARAM = "summaryPath";
+
+    /**
+     * Constructor
+     * @param im The InterMine API settings bundle
+     */
+    public QuerySummariesService(InterMineAPI im) {
+        super(im);
+    }
+
+    @Override
+    protected Format getDefaultFormat() {
+        return Format.JSON;
+    }
+
+    @Override
+    protected boolean canServe(Format format) {
+        return format == Format.JSON;
+    }
+
+    @Override
+    protected Output makeJSONOutput(PrintWriter out, String separator) {
+        return new StreamedOutput(out, new JSONFormatter(), separator);
+    }
+
+    @Override
+    protected void execute() {
+        QueryResultInput input = new QueryResultRequestParser(im.getQueryStore(), request)
+            .getInput();
+        PathQuery pq = getQueryBuilder(input.getXml()).getQuery();
+        List<String> paths = getSummaryPaths(pq, request.getParameterValues(PATH_PARAM));
+        final String filterTerm = getOptionalParameter("filterTerm");
+        final PathQueryExecutor executor = im.getPathQueryExecutor(getPermission().getProfile());
+
+        QueryAdmissionController admission = im.getQueryAdmissionController();
+        ExecutorService workers = InterMineContext.getQueryBatchExecutor();
+
+        // a summary lists only the occurrences of a column with fewer than two values, as
+        // QueryResultService does, so the columns are counted first
+        QueryBatch counts = executor.newBatch(admission, workers);
+        Map<String, Future<Integer>> uniqueValues = new LinkedHashMap<String, Future<Integer>>();
+        for (String path: paths) {
+            uniqueValues.put(path, counts.uniqueColumnValues(pq, path));
+        }
+        runBatch(counts);
+
+        QueryBatch batch = executor.newBatch(admission, workers);
+        Map<String, Future<Results>> summaries = new LinkedHashMap<String, Future<Results>>();
+        for (String path: paths) {
+            int uniques = QueryBatch.get(uniqueValues.get(path));
+            summaries.put(path, batch.summarise(pq, path, filterTerm, uniques < 2));
+        }
+        runBatch(batch);
+
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put(JSONFormatter.KEY_INTRO, "\"results\":[");
+        attributes.put(JSONFormatter.KEY_OUTRO, "]");
+        if (formatIsJSONP()) {
+            attributes.put(JSONFormatter.KEY_CALLBACK, getCallback());
+        }
+        output.setHeaderAttributes(attributes);
+
+        Iterator<Map.Entry<String, Future<Results>>> it = summaries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Future<Results>> entry = it.next();
+            Results results = QueryBatch.get(entry.getValue());
+            List<JSONObject> rows = new ArrayList<JSONObject>();
+            Iterator<List<ResultElement>> rowIt = new FilteringResultIterator(results,
+                    input.getStart(), input.getLimit(), filterTerm);
+            while (rowIt.hasNext()) {
+                rows.add(JSONSummaryProcessor.toJSON(rowIt.next()));
+            }
+            Map<String, Object> column = new HashMap<String, Object>();
+            column.put("path", entry.getKey());
+            column.put("uniqueValues", QueryBatch.get(uniqueValues.get(entry.getKey())));
+            if (filterTerm != null) {
+                column.put("filteredCount", results.size());
+            }
+            column.put("results", rows);
+            String json = new JSONObject(column).toString();
+            if (it.hasNext()) {
+                output.addResultItem(Arrays.asList(json, ""));
+            } else {
+                output.addResultItem(Arrays.asList(json));
+            }
+        }
+    }
+
+    /**
+     * Return the columns to summarise, each once and in the order requested.
+     *
+     * @param pq the query
+     * @param values the values of the summaryPath parameter, each a list of paths separated by
+     * commas or spaces
+     * @return the paths of the columns
+     * @throws BadRequestException if there are none, or any is not an attribute of the query
+     */
+    static List<String> getSummaryPaths(PathQuery pq, String[] values) {
+        List<String> paths = new ArrayList<String>();
+        if (values != null) {
+            for (String value: values) {
+                for (String path: StringUtils.split(value, ", ")) {
+                    if (!paths.contains(path)) {
+                        paths.add(path);
+                    }
+                }
+            }
+        }
+        if (paths.isEmpty()) {
+            throw new BadRequestException("At least one " + PATH_PARAM + " is required");
+        }
+        for (String path: paths) {
+            Path p;
+            try {
+                p = pq.makePath(path);
+            } catch (PathException e) {
+                throw new BadRequestException("Summary path is invalid: " + path);
+            }
+            if (!p.endIsAttribute()) {
+                throw new BadRequestException("Summary path is invalid: " + path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Run a batch, turning a failure into the error the service returns.
+     *
+     * @param batch the batch of queries
+     */
+    static void runBatch(QueryBatch batch) {
+        try {
+            batch.execute();
+        } catch (BagNotFound e) {
+            throw new BadRequestException(e.getMessage());
+        } catch (QueryRejectedException e) {
+            throw new ServiceUnavailableException("The server is busy: " + e.getMessage()
+                    + ". Please try again later.", e.getRetryAfter());
+        } catch (ObjectStoreQueryDurationException e) {
+            throw new ServiceException("Query would take too long to run");
+        } catch (ObjectStoreException e) {
+            throw new ServiceException("Problem getting summaries.", e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.intermine.web.autocompletion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class PrefixIndexTest extends TestCase
+{
+    private PrefixIndex index;
+
+    public void setUp() {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        counts.put("protein binding", 10);
+        counts.put("protein kinase activity", 50);
+        counts.put("DNA binding", 30);
+        counts.put("kinase binding", 30);
+        counts.put("zinc ion binding", 1);
+        index = new PrefixIndex();
+        index.put("GOTerm", "name", counts);
+    }
+
+    public void testSingleWord() {
+        assertEquals(Arrays.asList("DNA binding", "kinase binding", "protein binding",
+                "zinc ion binding"), index.search("bind", "GOTerm", "name", 10));
+        assertEquals(Arrays.asList("protein kinase activity", "kinase binding"),
+                index.search("KIN", "GOTerm", "name", 10));
+    }
+
+    public void testEveryWordMustMatch() {
+        assertEquals(Arrays.asList("protein kinase activity", "protein binding"),
+                index.search("prot", "GOTerm", "name", 10));
+        assertEquals(Arrays.asList("protein binding"),
+                index.search("bin pro ", "GOTerm", "name", 10));
+        assertEquals(Collections.emptyList(), index.search("dna kin", "GOTerm", "name", 10));
+    }
+
+    public void testTopK() {
+        assertEquals(Arrays.asList("DNA binding", "kinase binding"),
+                index.search("b", "GOTerm", "name", 2));
+    }
+
+    public void testUnknownField() {
+        assertFalse(index.contains("GOTerm", "identifier"));
+        assertEquals(Collections.emptyList(), index.search("a", "GOTerm", "identifier", 10));
+        assertEquals(Collections.emptyList(), index.search(" - ", "GOTerm", "name", 10));
+    }
+
+    public void testWriteAndRead() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+        PrefixIndex read = PrefixIndex.read(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(read.contains("GOTerm", "name"));
+        assertEquals(index.search("b", "GOTerm", "name", 10),
+                read.search("b", "GOTerm", "name", 10));
+    }
+}
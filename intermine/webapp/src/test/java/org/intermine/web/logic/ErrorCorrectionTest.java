@@ -1,6 +1,7 @@
 package org.intermine.web.logic;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.math.BigDecimal;
 import java.util.LinkedHashMap;
@@ -34,20 +35,20 @@ public class ErrorCorrectionTest
         pvalues.put("C", new BigDecimal(0.000001));
         pvalues.put("D", new BigDecimal(1));
 
-        bonferroni.put("A", "0.00000000000000004950000000000000322838637474085944");
-        bonferroni.put("B", "0.00000004999999999999999697484846409699055");
-        bonferroni.put("C", "0.004999999999999999773740559129431293");
-        bonferroni.put("D", "1");
+        bonferroni.put("A", "0.000000000000000049500000000000003");
+        bonferroni.put("B", "0.000000050");
+        bonferroni.put("C", "0.005");
+        bonferroni.put("D", "1.0");
 
-        bonferroniHolm.put("A", "0.00000000000000004950000000000000322838637474085944");
-        bonferroniHolm.put("B", "0.00000004998999999999999697545349440417115");
-        bonferroniHolm.put("C", "0.004997999999999999773831062905779521");
-        bonferroniHolm.put("D", "1");
+        bonferroniHolm.put("A", "0.000000000000000049500000000000003");
+        bonferroniHolm.put("B", "0.00000004999");
+        bonferroniHolm.put("C", "0.004998");
+        bonferroniHolm.put("D", "1.0");
 
-        benjamini.put("A", "0.00000000000000004950000000000000322838637474085944");
-        benjamini.put("B", "0.00000002499999999999999848742423204849527");
-        benjamini.put("C", "0.001666666666666666591246853043143765");
-        benjamini.put("D", "1");
+        benjamini.put("A", "0.000000000000000049500000000000003");
+        benjamini.put("B", "0.000000025");
+        benjamini.put("C", "0.0016666666666666668");
+        benjamini.put("D", "1.0");
     }
 
     @Test
@@ -71,6 +72,18 @@ public class ErrorCorrectionTest
         checkValues(actual, bonferroniHolm);
     }
 
+    @Test
+    public void testArrayNotReported() throws Exception {
+        double[] pValues = new double[] {0.01, 0.0001, 0.5, 0.0001};
+        double[] actual = ErrorCorrection.adjustPValues(
+                ErrorCorrection.Strategy.BENJAMINI_HOCHBERG, pValues, 0.05, 4);
+        // tied p-values share the best rank, values over the maximum are not reported
+        assertEquals(0.0004, actual[1], 1e-15);
+        assertEquals(0.0004, actual[3], 1e-15);
+        assertEquals(0.04 / 3, actual[0], 1e-15);
+        assertTrue(Double.isNaN(actual[2]));
+    }
+
     private void checkValues(Map<String, BigDecimal> actual, Map<String, String> expected) {
         for (Map.Entry<String, BigDecimal> entry : actual.entrySet()) {
             String adjustedPvalue = entry.getValue().toPlainString();
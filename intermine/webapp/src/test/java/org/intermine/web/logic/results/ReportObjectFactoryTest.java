@@ -0,0 +1,118 @@
+package org.intermine.web.logic.results;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.intermine.api.util.SerialNumberWatcher;
+import org.intermine.model.InterMineObject;
+import org.intermine.model.testmodel.Company;
+import org.intermine.util.DynamicUtil;
+
+public class ReportObjectFactoryTest extends TestCase
+{
+    private FixedWatcher watcher;
+    private ReportObjectFactory factory;
+
+    public ReportObjectFactoryTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() {
+        Properties props = new Properties();
+        props.setProperty("webapp.reportObjectCache.size", "3");
+        watcher = new FixedWatcher();
+        factory = new ReportObjectFactory(null, null, props, watcher, null);
+    }
+
+    public void testCached() throws Exception {
+        Company company = company(1);
+        ReportObject reportObject = factory.get(company);
+        assertSame(company, reportObject.getObject());
+        assertSame(reportObject, factory.get(company));
+        assertSame(reportObject, factory.get((Object) company(1)));
+        assertEquals(1, factory.size());
+    }
+
+    public void testEviction() throws Exception {
+        ReportObject first = factory.get(company(1));
+        for (int id = 2; id <= 5; id++) {
+            factory.get(company(id));
+        }
+        assertEquals(3, factory.size());
+        ReportObject last = factory.get(company(5));
+        assertSame(last, factory.get(company(5)));
+        assertNotSame(first, factory.get(company(1)));
+        assertEquals(3, factory.size());
+    }
+
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        ReportObject first = factory.get(company(1));
+        ReportObject second = factory.get(company(2));
+        factory.get(company(3));
+        assertSame(first, factory.get(company(1)));
+        factory.get(company(4));
+        assertSame(first, factory.get(company(1)));
+        assertNotSame(second, factory.get(company(2)));
+    }
+
+    public void testSerialNumberChange() throws Exception {
+        ReportObject before = factory.get(company(1));
+        factory.get(company(2));
+        watcher.serialNumber = "2";
+        ReportObject after = factory.get(company(1));
+        assertNotSame(before, after);
+        assertEquals(1, factory.size());
+        assertSame(after, factory.get(company(1)));
+    }
+
+    public void testEntrySet() throws Exception {
+        Company company = company(1);
+        ReportObject reportObject = factory.get(company);
+        factory.get(company(2));
+        assertEquals(2, factory.entrySet().size());
+        assertTrue(factory.keySet().contains(company));
+        assertTrue(factory.values().contains(reportObject));
+        for (Map.Entry<InterMineObject, ReportObject> entry : factory.entrySet()) {
+            assertSame(entry.getKey(), entry.getValue().getObject());
+        }
+        assertNotNull(factory.toString());
+        factory.keySet().remove(company);
+        assertEquals(1, factory.size());
+        assertNotSame(reportObject, factory.get(company));
+    }
+
+    private static Company company(int id) {
+        Company company = (Company) DynamicUtil.createObject(Collections.singleton(Company.class));
+        company.setId(new Integer(id));
+        return company;
+    }
+
+    private static class FixedWatcher extends SerialNumberWatcher
+    {
+        private volatile String serialNumber = "1";
+
+        FixedWatcher() {
+            // read the serial number on every call
+            super(null, -1);
+        }
+
+        @Override
+        protected String readSerialNumber() {
+            return serialNumber;
+        }
+    }
+}
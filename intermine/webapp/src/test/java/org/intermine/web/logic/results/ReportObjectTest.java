@@ -8,6 +8,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.intermine.api.InterMineAPITestCase;
 import org.intermine.metadata.CollectionDescriptor;
@@ -222,4 +226,40 @@ public class ReportObjectTest extends InterMineAPITestCase
         }
     }
 
+    /**
+     * Loading the collections on a pool gives the same fields as loading them in turn, and a
+     * ReportObject shared between threads is only initialised once.
+     * @throws Exception
+     */
+    public void testParallelInitialise() throws Exception {
+        ExecutorService loader = Executors.newFixedThreadPool(2);
+        // the requests need their own threads, as the loader's are taken by the collections
+        ExecutorService requests = Executors.newFixedThreadPool(4);
+        try {
+            ReportObject serial = new ReportObject(company, webConfig, im, null);
+            final ReportObject parallel = new ReportObject(company, webConfig, im, null, loader);
+
+            List<Future<Map<String, DisplayField>>> results =
+                new ArrayList<Future<Map<String, DisplayField>>>();
+            for (int i = 0; i < 4; i++) {
+                results.add(requests.submit(new Callable<Map<String, DisplayField>>() {
+                    @Override
+                    public Map<String, DisplayField> call() {
+                        return parallel.getRefsAndCollections();
+                    }
+                }));
+            }
+            Map<String, DisplayField> refsAndCols = results.get(0).get();
+            for (Future<Map<String, DisplayField>> result : results) {
+                assertSame(refsAndCols, result.get());
+            }
+
+            assertEquals(serial.getRefsAndCollections().keySet(), refsAndCols.keySet());
+            assertEquals(serial.getCollections().keySet(), parallel.getCollections().keySet());
+            assertEquals(serial.getAttributes(), parallel.getAttributes());
+        } finally {
+            requests.shutdownNow();
+            loader.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,206 @@
+package org.intermine.web.logic.session;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.http.HttpSession;
+
+import junit.framework.TestCase;
+
+import org.apache.struts.mock.MockHttpSession;
+import org.apache.struts.util.MessageResources;
+import org.intermine.web.logic.Constants;
+import org.intermine.web.logic.query.QueryMonitor;
+
+public class SessionMethodsTest extends TestCase
+{
+    private static final long TIMEOUT = 10;
+
+    private HttpSession session;
+    private MessageResources resources;
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+    private Map<String, QueryMonitor> queries;
+
+    public SessionMethodsTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() {
+        session = new MockHttpSession();
+        resources = new MessageResources(null, null) {
+            @Override
+            public String getMessage(Locale locale, String key) {
+                return key;
+            }
+        };
+        // one thread and no queue, so a second query is rejected while the first runs
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<Runnable>());
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        queries = new HashMap<String, QueryMonitor>();
+        session.setAttribute(Constants.RUNNING_QUERIES, queries);
+    }
+
+    @Override
+    public void tearDown() {
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    public void testComplete() throws Exception {
+        StubMonitor monitor = new StubMonitor("1");
+        LatchAction action = new LatchAction(false);
+        final AtomicBoolean completed = new AtomicBoolean(false);
+        Future<Boolean> result = run("1", action, new SessionMethods.CompletionCallBack() {
+            @Override
+            public void complete() {
+                completed.set(true);
+            }
+        });
+        assertEquals(Boolean.TRUE, result.get(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(action.ran.get());
+        assertTrue(completed.get());
+        assertEquals("completed", monitor.outcome);
+    }
+
+    public void testCancelBeforeStart() throws Exception {
+        // a queue this time, so the second query waits for the thread
+        executor.shutdown();
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        new StubMonitor("1");
+        LatchAction blocker = new LatchAction(true);
+        Future<Boolean> first = run("1", blocker, null);
+        assertTrue(blocker.started.await(TIMEOUT, TimeUnit.SECONDS));
+
+        StubMonitor monitor = new StubMonitor("2");
+        monitor.cancel = true;
+        LatchAction waiting = new LatchAction(false);
+        Future<Boolean> second = run("2", waiting, null);
+        assertEquals(Boolean.FALSE, second.get(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals("cancelled", monitor.outcome);
+
+        blocker.release.countDown();
+        assertEquals(Boolean.TRUE, first.get(TIMEOUT, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(TIMEOUT, TimeUnit.SECONDS));
+        assertFalse(waiting.ran.get());
+    }
+
+    public void testCancelWhileRunning() throws Exception {
+        StubMonitor monitor = new StubMonitor("1");
+        LatchAction action = new LatchAction(true);
+        Future<Boolean> result = run("1", action, null);
+        assertTrue(action.started.await(TIMEOUT, TimeUnit.SECONDS));
+        monitor.cancel = true;
+        assertEquals(Boolean.FALSE, result.get(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals("cancelled", monitor.outcome);
+        action.release.countDown();
+    }
+
+    public void testRejected() throws Exception {
+        new StubMonitor("1");
+        LatchAction blocker = new LatchAction(true);
+        Future<Boolean> first = run("1", blocker, null);
+        assertTrue(blocker.started.await(TIMEOUT, TimeUnit.SECONDS));
+
+        StubMonitor monitor = new StubMonitor("2");
+        LatchAction rejected = new LatchAction(false);
+        Future<Boolean> second = run("2", rejected, null);
+        assertTrue(second.isDone());
+        assertEquals(Boolean.FALSE, second.get());
+        assertEquals("error", monitor.outcome);
+        @SuppressWarnings("unchecked")
+        Set<String> errors = (Set<String>) session.getAttribute(Constants.ERRORS);
+        assertTrue(errors.contains("errors.query.busy"));
+
+        blocker.release.countDown();
+        assertEquals(Boolean.TRUE, first.get(TIMEOUT, TimeUnit.SECONDS));
+        assertFalse(rejected.ran.get());
+    }
+
+    private Future<Boolean> run(String qid, SessionMethods.Action action,
+            SessionMethods.CompletionCallBack callBack) {
+        return SessionMethods.runQueryAsync(session, resources, qid, action, callBack, null,
+                executor, scheduler);
+    }
+
+    private class StubMonitor implements QueryMonitor
+    {
+        volatile boolean cancel = false;
+        volatile String outcome = null;
+
+        StubMonitor(String qid) {
+            queries.put(qid, this);
+        }
+
+        @Override
+        public boolean shouldCancelQuery() {
+            return cancel;
+        }
+
+        @Override
+        public void queryCompleted() {
+            outcome = "completed";
+        }
+
+        @Override
+        public void queryCancelledWithError() {
+            outcome = "error";
+        }
+
+        @Override
+        public void queryCancelled() {
+            outcome = "cancelled";
+        }
+    }
+
+    private static class LatchAction implements SessionMethods.Action
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean ran = new AtomicBoolean(false);
+        private final boolean block;
+
+        LatchAction(boolean block) {
+            this.block = block;
+        }
+
+        @Override
+        public void process() {
+            ran.set(true);
+            started.countDown();
+            if (block) {
+                try {
+                    release.await(TIMEOUT, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
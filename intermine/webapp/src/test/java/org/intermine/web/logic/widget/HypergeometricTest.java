@@ -0,0 +1,68 @@
+package org.intermine.web.logic.widget;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.math3.distribution.HypergeometricDistribution;
+import org.junit.Test;
+
+public class HypergeometricTest
+{
+    @Test
+    public void testAgainstCommonsMath() throws Exception {
+        int[][] cases = new int[][] {
+            // population, successes, sample, k
+            {20000, 150, 5000, 60},
+            {20000, 150, 5000, 37},
+            {20000, 150, 5000, 10},
+            {20000, 3, 500, 1},
+            {20000, 12000, 5000, 3100},
+            {100, 50, 50, 25},
+            {10, 10, 5, 5},
+        };
+        for (int[] c : cases) {
+            double expected = new HypergeometricDistribution(c[0], c[1], c[2])
+                .upperCumulativeProbability(c[3]);
+            double actual = Hypergeometric.upperCumulativeProbability(c[0], c[1], c[2], c[3]);
+            assertEquals(expected, actual, Math.max(expected * 1e-9, 1e-300));
+        }
+    }
+
+    @Test
+    public void testBounds() throws Exception {
+        // k no greater than the smallest possible number of successes
+        assertEquals(1.0, Hypergeometric.upperCumulativeProbability(100, 10, 10, 0), 0.0);
+        assertEquals(1.0, Hypergeometric.upperCumulativeProbability(100, 95, 10, 5), 0.0);
+        // k greater than the largest possible number of successes
+        assertEquals(0.0, Hypergeometric.upperCumulativeProbability(100, 3, 10, 4), 0.0);
+        assertEquals(0.0, Hypergeometric.upperCumulativeProbability(100, 0, 10, 1), 0.0);
+    }
+
+    @Test
+    public void testArrays() throws Exception {
+        int[] successes = new int[] {150, 3, 0};
+        int[] k = new int[] {60, 1, 1};
+        double[] expected = new double[k.length];
+        for (int i = 0; i < k.length; i++) {
+            expected[i] = Hypergeometric.upperCumulativeProbability(20000, successes[i], 5000,
+                    k[i]);
+        }
+        assertArrayEquals(expected,
+                Hypergeometric.upperCumulativeProbabilities(20000, 5000, successes, k), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid() throws Exception {
+        Hypergeometric.upperCumulativeProbability(100, 101, 10, 1);
+    }
+}
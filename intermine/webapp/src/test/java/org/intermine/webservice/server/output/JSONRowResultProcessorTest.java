@@ -5,6 +5,7 @@ package org.intermine.webservice.server.output;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -34,6 +35,7 @@ import org.intermine.web.context.InterMineContext;
 import org.intermine.web.logic.ClassResourceOpener;
 import org.intermine.web.logic.config.WebConfig;
 import org.json.JSONException;
+import org.json.JSONObject;
 import org.skyscreamer.jsonassert.JSONAssert;
 
 
@@ -51,6 +53,7 @@ public class JSONRowResultProcessorTest extends TestCase {
     private Employee lee;
 
     private ExportResultsIterator iterator;
+    private ExportResultsIterator secondIterator;
     private ExportResultsIterator emptyIterator;
 
     private final Model model = Model.getInstanceByName("testmodel");
@@ -129,6 +132,8 @@ public class JSONRowResultProcessorTest extends TestCase {
             List<Object> resultList = os.execute(q, 0, 5, true, true, new HashMap<Object, Integer>());
             Results results = new DummyResults(q, resultList);
             iterator = new ExportResultsIterator(pq, q, results, pathToQueryNode);
+            secondIterator = new ExportResultsIterator(pq, q, new DummyResults(q, resultList),
+                    pathToQueryNode);
 
             List<Object> emptyList = new ArrayList<Object>();
             Results emptyResults = new DummyResults(q, emptyList);
@@ -187,4 +192,54 @@ public class JSONRowResultProcessorTest extends TestCase {
 
     }
 
+    public void testWriteStreamed() throws JSONException {
+        for (JSONRowResultProcessor.Verbosity v: JSONRowResultProcessor.Verbosity.values()) {
+            setUpIterators();
+            StringWriter formatted = new StringWriter();
+            StreamedOutput formattedOut = makeOutput(formatted, new JSONFormatter() {
+                @Override
+                protected boolean canWriteItems() {
+                    return false;
+                }
+            });
+            new JSONRowResultProcessor(api, v).write(iterator, formattedOut);
+            formattedOut.flush();
+
+            StringWriter streamed = new StringWriter();
+            StreamedOutput streamedOut = makeOutput(streamed, new JSONFormatter());
+            new JSONRowResultProcessor(api, v).write(secondIterator, streamedOut);
+            streamedOut.flush();
+
+            assertEquals(5, streamedOut.getResultsCount());
+            assertEquals(countLines(formatted.toString()), countLines(streamed.toString()));
+            JSONObject expected = new JSONObject(formatted.toString());
+            JSONObject got = new JSONObject(streamed.toString());
+            expected.remove(JSONFormatter.KEY_TIME);
+            got.remove(JSONFormatter.KEY_TIME);
+            JSONAssert.assertEquals(expected, got, true);
+        }
+    }
+
+    private static StreamedOutput makeOutput(StringWriter sw, JSONFormatter formatter) {
+        StreamedOutput out = new StreamedOutput(new PrintWriter(sw), formatter, "\n");
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put(JSONFormatter.KEY_INTRO, "\"results\":[");
+        attributes.put(JSONFormatter.KEY_OUTRO, "]");
+        out.setHeaderAttributes(attributes);
+        return out;
+    }
+
+    private void setUpIterators() {
+        // Each verbosity needs fresh iterators.
+        try {
+            tearDown();
+            setUp();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int countLines(String s) {
+        return s.split("\n").length;
+    }
 }
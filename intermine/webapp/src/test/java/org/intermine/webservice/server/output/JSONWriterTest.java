@@ -0,0 +1,115 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Tests that JSONWriter writes the same JSON as org.json.
+ */
+public class JSONWriterTest extends TestCase
+{
+    private StringWriter sw;
+    private JSONWriter writer;
+
+    @Override
+    protected void setUp() {
+        sw = new StringWriter();
+        writer = new JSONWriter(sw);
+    }
+
+    public void testScalars() {
+        List<Object> values = Arrays.<Object>asList("simple", "quote \" and \\ slash",
+                "</script>\n\t\u0001\u2028\u00e9", "", 1, -42L, 1.5d, 2.0d, 0.1f,
+                new BigDecimal("3.140"), true, false, null, JSONObject.NULL,
+                new StringBuilder("builder"), new Date(0), 'c');
+        writer.value(values);
+        assertEquals(new JSONArray(values).toString(), sw.toString());
+    }
+
+    public void testNonFiniteNumbers() {
+        // org.json cannot write these at all, so they are written as strings
+        writer.beginArray().value(Double.NaN).value(Float.NEGATIVE_INFINITY).endArray();
+        assertEquals("[\"NaN\",\"-Infinity\"]", sw.toString());
+    }
+
+    public void testObjects() {
+        Map<String, Object> inner = new LinkedHashMap<String, Object>();
+        inner.put("id", 5);
+        inner.put("missing", null);
+        inner.put("null", JSONObject.NULL);
+        List<Object> list = new ArrayList<Object>();
+        list.add(inner);
+        list.add(null);
+        list.add(new int[] {1, 2});
+        Map<String, Object> outer = new LinkedHashMap<String, Object>();
+        outer.put("name", "Gene");
+        outer.put("list", list);
+        outer.put("empty", new ArrayList<Object>());
+        outer.put("object", new LinkedHashMap<String, Object>());
+
+        writer.value(outer);
+        assertEquals(new JSONObject(outer).toString(), new JSONObject(sw.toString()).toString());
+        assertFalse(sw.toString().contains("missing"));
+    }
+
+    public void testNesting() {
+        writer.beginObject()
+            .key("a").beginArray().value(1).beginObject().endObject().value("x").endArray()
+            .field("b", null)
+            .field("c", 2)
+            .key("d").beginObject().field("e", "f").endObject()
+            .endObject();
+        assertEquals("{\"a\":[1,{},\"x\"],\"c\":2,\"d\":{\"e\":\"f\"}}", sw.toString());
+    }
+
+    public void testReuse() {
+        writer.beginArray().value(1).endArray();
+        StringWriter second = new StringWriter();
+        writer.reset(second).beginArray().value(2).endArray();
+        assertEquals("[1]", sw.toString());
+        assertEquals("[2]", second.toString());
+    }
+
+    public void testDeepNesting() {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            writer.beginArray();
+            expected.append('[');
+        }
+        for (int i = 0; i < 40; i++) {
+            writer.endArray();
+            expected.append(']');
+        }
+        assertEquals(expected.toString(), sw.toString());
+    }
+
+    public void testUnbalanced() {
+        try {
+            writer.endObject();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
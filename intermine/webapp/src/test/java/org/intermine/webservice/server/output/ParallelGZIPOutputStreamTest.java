@@ -0,0 +1,159 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Tests that ParallelGZIPOutputStream writes gzip that GZIPInputStream can read.
+ */
+public class ParallelGZIPOutputStreamTest extends TestCase
+{
+    private static final int BLOCK = 1000;
+
+    private ExecutorService compressors;
+
+    @Override
+    public void setUp() {
+        compressors = Executors.newFixedThreadPool(4);
+    }
+
+    @Override
+    public void tearDown() {
+        compressors.shutdownNow();
+    }
+
+    public void testEmpty() throws IOException {
+        assertRoundTrip(new byte[0], 4);
+    }
+
+    public void testSmallerThanABlock() throws IOException {
+        assertRoundTrip(text(10), 4);
+    }
+
+    public void testWholeBlocks() throws IOException {
+        assertRoundTrip(text(BLOCK * 8), 4);
+    }
+
+    public void testManyBlocks() throws IOException {
+        assertRoundTrip(text(BLOCK * 50 + 17), 3);
+        assertRoundTrip(random(BLOCK * 50 + 17), 3);
+    }
+
+    public void testOneThread() throws IOException {
+        assertRoundTrip(text(BLOCK * 10 + 1), 1);
+    }
+
+    public void testSingleByteWrites() throws IOException {
+        byte[] data = text(BLOCK * 3 + 5);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(compressed, compressors, 2,
+                BLOCK, Deflater.DEFAULT_COMPRESSION);
+        for (byte b : data) {
+            out.write(b);
+        }
+        out.close();
+        assertTrue(Arrays.equals(data, gunzip(compressed.toByteArray())));
+    }
+
+    public void testFlush() throws IOException {
+        byte[] data = text(BLOCK * 4);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(compressed, compressors, 2,
+                BLOCK, Deflater.DEFAULT_COMPRESSION);
+        // flushes in the middle of blocks, and shorter than the dictionary
+        out.write(data, 0, 10);
+        out.flush();
+        int flushed = compressed.size();
+        assertTrue(flushed > 0);
+        out.write(data, 10, 1500);
+        out.flush();
+        assertTrue(compressed.size() > flushed);
+        out.write(data, 1510, data.length - 1510);
+        out.close();
+        assertTrue(Arrays.equals(data, gunzip(compressed.toByteArray())));
+    }
+
+    public void testCompressesAsWellAsGZIPOutputStream() throws IOException {
+        byte[] data = text(ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE * 6);
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(parallel, compressors, 4);
+        out.write(data);
+        out.close();
+        ByteArrayOutputStream serial = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(serial);
+        gzip.write(data);
+        gzip.close();
+        assertTrue(Arrays.equals(data, gunzip(parallel.toByteArray())));
+        assertTrue(parallel.size() + " vs " + serial.size(),
+                parallel.size() < serial.size() * 1.05);
+    }
+
+    public void testWriteAfterClose() throws IOException {
+        ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(new ByteArrayOutputStream(),
+                compressors, 2);
+        out.close();
+        out.close();
+        try {
+            out.write(1);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void assertRoundTrip(byte[] data, int threads) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(compressed, compressors,
+                threads, BLOCK, Deflater.DEFAULT_COMPRESSION);
+        // writes that cross block boundaries
+        int off = 0;
+        while (off < data.length) {
+            int len = Math.min(data.length - off, 777);
+            out.write(data, off, len);
+            off += len;
+        }
+        out.close();
+        assertTrue(Arrays.equals(data, gunzip(compressed.toByteArray())));
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        return IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+    }
+
+    private static byte[] text(int length) {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(length);
+        while (sb.length() < length) {
+            sb.append("Gene\tzen\t").append(random.nextInt(10000)).append("\tDrosophila\n");
+        }
+        return Arrays.copyOf(sb.toString().getBytes(), length);
+    }
+
+    private static byte[] random(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,130 @@
+package org.intermine.webservice.server.query.result;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.intermine.api.query.BagNotFound;
+import org.intermine.api.query.QueryBatch;
+import org.intermine.api.query.QueryRejectedException;
+import org.intermine.metadata.Model;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreQueryDurationException;
+import org.intermine.pathquery.PathQuery;
+import org.intermine.webservice.server.exceptions.BadRequestException;
+import org.intermine.webservice.server.exceptions.ServiceException;
+import org.intermine.webservice.server.exceptions.ServiceUnavailableException;
+
+public class QuerySummariesServiceTest extends TestCase
+{
+    private PathQuery pq;
+
+    public QuerySummariesServiceTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() {
+        pq = new PathQuery(Model.getInstanceByName("testmodel"));
+        pq.addViews("Employee.name", "Employee.age", "Employee.department.name");
+    }
+
+    public void testSummaryPaths() {
+        assertEquals(Arrays.asList("Employee.name", "Employee.age", "Employee.department.name"),
+                QuerySummariesService.getSummaryPaths(pq, new String[] {
+                    "Employee.name, Employee.age", "Employee.department.name Employee.name"}));
+    }
+
+    public void testNoSummaryPaths() {
+        assertBadPaths(null);
+        assertBadPaths(new String[] {" , "});
+    }
+
+    public void testInvalidSummaryPaths() {
+        assertBadPaths(new String[] {"Employee.nonsense"});
+        assertBadPaths(new String[] {"Employee.department"});
+    }
+
+    public void testRunBatch() {
+        QueryBatch batch = new QueryBatch(null, 2, null);
+        Future<Integer> result = batch.add(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 42;
+            }
+        });
+        QuerySummariesService.runBatch(batch);
+        assertEquals(new Integer(42), QueryBatch.get(result));
+    }
+
+    public void testBagNotFound() {
+        try {
+            QuerySummariesService.runBatch(failing(new BagNotFound("my list")));
+            fail("Expected BadRequestException");
+        } catch (BadRequestException e) {
+            // expected
+        }
+    }
+
+    public void testRejected() {
+        try {
+            QuerySummariesService.runBatch(failing(
+                    new QueryRejectedException("Queue full", "slow", 10, 30)));
+            fail("Expected ServiceUnavailableException");
+        } catch (ServiceUnavailableException e) {
+            assertEquals(30, e.getRetryAfter());
+        }
+    }
+
+    public void testTooLong() {
+        try {
+            QuerySummariesService.runBatch(failing(
+                    new ObjectStoreQueryDurationException("Deadline passed")));
+            fail("Expected ServiceException");
+        } catch (ServiceException e) {
+            assertEquals("Query would take too long to run", e.getMessage());
+        }
+    }
+
+    public void testFailure() {
+        ObjectStoreException cause = new ObjectStoreException("Boom");
+        try {
+            QuerySummariesService.runBatch(failing(cause));
+            fail("Expected ServiceException");
+        } catch (ServiceException e) {
+            assertSame(cause, e.getCause());
+        }
+    }
+
+    private void assertBadPaths(String[] values) {
+        try {
+            QuerySummariesService.getSummaryPaths(pq, values);
+            fail("Expected BadRequestException for " + Arrays.toString(values));
+        } catch (BadRequestException e) {
+            // expected
+        }
+    }
+
+    private static QueryBatch failing(final ObjectStoreException e) {
+        QueryBatch batch = new QueryBatch(null, 2, null);
+        batch.add(new Callable<Integer>() {
+            @Override
+            public Integer call() throws ObjectStoreException {
+                throw e;
+            }
+        });
+        return batch;
+    }
+}
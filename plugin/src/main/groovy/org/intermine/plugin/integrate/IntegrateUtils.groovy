@@ -184,6 +184,12 @@ class IntegrateUtils {
                 bioSourceProperties.getProperty("gff3.seqHandlerClassName") : ""
         String licence = (ant.project.getProperty("gff3.licence") != null) ?
                 ant.project.getProperty("gff3.licence") : ""
+        String parserThreads = (ant.project.getProperty("gff3.parserThreads") != null) ?
+                ant.project.getProperty("gff3.parserThreads") : "1"
+        String flushPerSequence = (ant.project.getProperty("gff3.flushPerSequence") != null) ?
+                ant.project.getProperty("gff3.flushPerSequence") : "false"
+        String pipedWriter = (ant.project.getProperty("gff3.pipedWriter") != null) ?
+                ant.project.getProperty("gff3.pipedWriter") : "false"
 
 
         ant.taskdef(name: "convertGFF3File", classname: "org.intermine.bio.task.GFF3ConverterTask") {
@@ -204,6 +210,9 @@ class IntegrateUtils {
                 model: "genomic",
                 handlerClassName: bioSourceProperties.getProperty("gff3.handlerClassName"),
                 seqHandlerClassName: gff3SeqHandlerClassName,
+                parserThreads: parserThreads,
+                flushPerSequence: flushPerSequence,
+                pipedWriter: pipedWriter,
                 licence: licence) {
             fileset(dir: BioSourceProperties.getUserProperty(source, "src.data.dir"),
                     includes: "*.gff,*.gff3")
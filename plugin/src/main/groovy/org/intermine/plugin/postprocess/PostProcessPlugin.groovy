@@ -67,7 +67,71 @@ class PostProcessPlugin implements Plugin<Project> {
             dependsOn 'initPostProcess', 'compileJava', 'copyDefaultInterMineProperties', 'copyMineProperties'
 
             doLast{
+                // with postProcessThreads > 1, the post-processes between do-sources steps are run
+                // together, and those that don't depend on each other are run at the same time
+                int threads = project.hasProperty('postProcessThreads') ? Integer.parseInt(project.property('postProcessThreads')) : 1
+                // with chromosomeThreads > 1, post-processes that create features one chromosome
+                // at a time share the chromosomes out between that many threads
+                def setChromosomeThreads = { ant ->
+                    if (project.hasProperty('chromosomeThreads')) {
+                        ant.project.setProperty("chromosomeThreads", project.property('chromosomeThreads'))
+                    }
+                }
+                def reportFailure = { processName, message ->
+                    println "POSTPROCESS " + processName + " FAILED."
+                    println message
+                    if(CREATE_SEARCH_INDEX.equals(processName)
+                            || CREATE_AUTO_INDEX.equals(processName)) {
+                        println "Please correct the error and run again ONLY THE POSTPROCESS"
+                        println "./gradlew postprocess -Pprocess=" + processName
+                        println "NO NEED TO RE-RUN THE ENTIRE BUILD"
+                    }
+                }
+                List<String> batch = new ArrayList<String>()
+                def runBatch = {
+                    if (batch.isEmpty()) {
+                        return
+                    }
+                    println "Performing postprocesses " + batch + " with " + threads + " threads."
+                    def ant = new AntBuilder()
+                    setChromosomeThreads(ant)
+                    String failurePrefix = "postprocess.failed"
+                    try {
+                        String postprocessorClassNames = batch.collect { bioSourceProperties.getPostProcesserClassName(it) }.join(",")
+                        ant.taskdef(name: "corePostProcesses", classname: "org.intermine.task.PostProcessorTask") {
+                            classpath {
+                                dirset(dir: project.getBuildDir().getAbsolutePath())
+                                pathelement(path: project.configurations.getByName("compile").asPath)
+                                pathelement(path: project.configurations.getByName("postProcesses").asPath)
+                            }
+                        }
+                        // failures of single post-processes are recorded in properties rather than thrown
+                        ant.corePostProcesses(clsNames: postprocessorClassNames, threads: threads, osName: "osw.production",
+                                failureProperty: failurePrefix)
+                    } catch(Exception | BuildException e) {
+                        batch.each { processName ->
+                            reportFailure(processName, e.message)
+                        }
+                        batch.clear()
+                        return
+                    }
+                    batch.each { processName ->
+                        String className = bioSourceProperties.getPostProcesserClassName(processName)
+                        String failure = ant.project.getProperty(failurePrefix + "." + className)
+                        if (failure != null) {
+                            reportFailure(processName, failure)
+                        } else {
+                            println "Postprocess " + processName + " completed."
+                        }
+                    }
+                    batch.clear()
+                }
                 processNames.each { processName ->
+                    if (threads > 1 && !DO_SOURCES.equals(processName)) {
+                        batch.add(processName)
+                        return
+                    }
+                    runBatch()
                     println "Performing postprocess " + processName + "."
                     if(DO_SOURCES.equals(processName)) {
                         //read source input property
@@ -120,6 +184,7 @@ class PostProcessPlugin implements Plugin<Project> {
                     } else {
                         try {
                             def ant = new AntBuilder()
+                            setChromosomeThreads(ant)
                             String postprocessorClassName = bioSourceProperties.getPostProcesserClassName(processName)
                             ant.taskdef(name: "corePostProcess", classname: "org.intermine.task.PostProcessorTask") {
                                 classpath {
@@ -130,19 +195,13 @@ class PostProcessPlugin implements Plugin<Project> {
                             }
                             ant.corePostProcess(clsName: postprocessorClassName, osName: "osw.production")
                         } catch(Exception | BuildException e) {
-                            println "POSTPROCESS " + processName + " FAILED."
-                            println e.message
-                            if(CREATE_SEARCH_INDEX.equals(processName)
-                                    || CREATE_AUTO_INDEX.equals(processName)) {
-                                println "Please correct the error and run again ONLY THE POSTPROCESS"
-                                println "./gradlew postprocess -Pprocess=" + processName
-                                println "NO NEED TO RE-RUN THE ENTIRE BUILD"
-                            }
+                            reportFailure(processName, e.message)
                             return
                         }
                     }
                     println "Postprocess " + processName + " completed."
                 }
+                runBatch()
             }
         }
     }